@@ -0,0 +1,80 @@
+package Fuzzy.benchmarks;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.concurrent.CohortEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cohort scoring throughput (rows per second) as parallelism grows; compare
+ * the score at parallelism=1 with higher values to check scaling, up to
+ * parallelism=0 which uses all cores. CohortEvaluatorTest asserts a minimum
+ * speedup on machines with several cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CohortEvaluatorBenchmark {
+
+    private static final int ROWS = 1 << 18;
+
+    // 0 = all cores
+    @Param({"1", "2", "4", "8", "0"})
+    public int parallelism;
+
+    @Param({"FORK_JOIN", "VIRTUAL_THREADS"})
+    public CohortEvaluator.Mode mode;
+
+    private CohortEvaluator evaluator;
+    private double[][] columns;
+    private double[] results;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        evaluator = new CohortEvaluator(trigger.getInferenceEngine(), trigger.getRuleBase(),
+                parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism, mode,
+                MedicalTrigger.INPUTS);
+
+        Random rnd = new Random(11);
+        double[] mean = {80, 98.6, 120, 95};
+        double[] sd = {15, 1.2, 20, 4};
+        columns = new double[4][ROWS];
+        for (int v = 0; v < 4; v++) {
+            for (int i = 0; i < ROWS; i++) {
+                columns[v][i] = mean[v] + sd[v] * rnd.nextGaussian();
+            }
+        }
+        results = new double[ROWS];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        evaluator.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double[] scoreCohort() {
+        evaluator.evaluate(columns, results, ROWS);
+        return results;
+    }
+}
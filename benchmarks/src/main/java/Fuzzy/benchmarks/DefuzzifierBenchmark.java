@@ -0,0 +1,84 @@
+package Fuzzy.benchmarks;
+
+import Fuzzy.Defuzzy.BisectorDefuzzifier;
+import Fuzzy.Defuzzy.CentroidDefuzzifier;
+import Fuzzy.Defuzzy.MOMDefuzzifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defuzzification of a clipped two-set output sampled at the given resolution,
+ * from the boxed map form and from the primitive grid the engines use.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DefuzzifierBenchmark {
+
+    @Param({"100", "200", "1000"})
+    public int outputSamples;
+
+    private final CentroidDefuzzifier centroid = new CentroidDefuzzifier();
+    private final MOMDefuzzifier mom = new MOMDefuzzifier();
+    private final BisectorDefuzzifier bisector = new BisectorDefuzzifier();
+    private Map<Double, Double> aggregated;
+    private double[] grid;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        aggregated = new HashMap<>();
+        grid = new double[outputSamples + 1];
+        double step = 100.0 / outputSamples;
+        for (int i = 0; i <= outputSamples; i++) {
+            double x = i * step;
+            double moderate = Math.max(0, Math.min((x - 25) / 22.5, (70 - x) / 22.5));
+            double high = Math.max(0, Math.min((x - 60) / 20, 1));
+            grid[i] = Math.max(Math.min(moderate, 0.4), Math.min(high, 0.7));
+            aggregated.put(x, grid[i]);
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation") // The Map API, kept for comparison
+    public double centroid() {
+        return centroid.defuzzify(aggregated);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation") // The Map API, kept for comparison
+    public double meanOfMaximum() {
+        return mom.defuzzify(aggregated);
+    }
+
+    @Benchmark
+    public double centroidGrid() {
+        return centroid.defuzzify(grid, grid.length, 0, 100);
+    }
+
+    @Benchmark
+    public double meanOfMaximumGrid() {
+        return mom.defuzzify(grid, grid.length, 0, 100);
+    }
+
+    @Benchmark
+    public double bisectorGrid() {
+        return bisector.defuzzify(grid, grid.length, 0, 100);
+    }
+}
@@ -0,0 +1,122 @@
+package Fuzzy.benchmarks;
+
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.MamdaniEngine;
+import Fuzzy.inference.SugenoEngine;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-sample inference cost of the map-based engines and their compiled models.
+ *
+ * The default run sweeps the rule count and MF type with the other parameters
+ * at typical values; sweep those with -p, e.g. -p antecedents=1,2,4
+ * -p inputs=4,8 -p outputSamples=100,200,1000.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"12", "100", "1000"})
+    public int rules;
+
+    @Param({"2"})
+    public int antecedents;
+
+    @Param({"4"})
+    public int inputs;
+
+    @Param({"triangle", "gaussian"})
+    public String mfType;
+
+    @Param({"200"})
+    public int outputSamples;
+
+    private SyntheticModel model;
+    private Map<String, Double>[] maps;
+    private MamdaniEngine mamdani;
+    private MamdaniEngine analytic;
+    private SugenoEngine sugeno;
+    private CompiledModel compiledMamdani;
+    private CompiledModel compiledAnalytic;
+    private CompiledModel compiledSugeno;
+    private double[] workspace;
+    private int row;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        model = new SyntheticModel(inputs, rules, antecedents, mfType, SAMPLES);
+        maps = (Map<String, Double>[]) new Map<?, ?>[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            maps[i] = model.sampleMap(i);
+        }
+
+        mamdani = new MamdaniEngine(model.variables, new MinTnorm(), new MaxSNorm(), outputSamples);
+        analytic = new MamdaniEngine(model.variables, new MinTnorm(), new MaxSNorm(),
+                CentroidMode.ANALYTIC, outputSamples);
+        sugeno = new SugenoEngine(model.variables);
+
+        compiledMamdani = mamdani.compile(model.mamdaniRules, model.inputNames);
+        compiledAnalytic = analytic.compile(model.mamdaniRules, model.inputNames);
+        compiledSugeno = sugeno.compile(model.sugenoRules, model.inputNames);
+        workspace = compiledMamdani.newWorkspace();
+    }
+
+    private int next() {
+        row = (row + 1) & (SAMPLES - 1);
+        return row;
+    }
+
+    @Benchmark
+    public double mamdaniMap() {
+        return mamdani.evaluate(maps[next()], model.mamdaniRules);
+    }
+
+    @Benchmark
+    public double mamdaniAnalyticMap() {
+        return analytic.evaluate(maps[next()], model.mamdaniRules);
+    }
+
+    @Benchmark
+    public double mamdaniCompiled() {
+        return compiledMamdani.evaluate(model.samples[next()], workspace);
+    }
+
+    @Benchmark
+    public double mamdaniAnalyticCompiled() {
+        return compiledAnalytic.evaluate(model.samples[next()]);
+    }
+
+    @Benchmark
+    public double sugenoMap() {
+        return sugeno.evaluate(maps[next()], model.sugenoRules);
+    }
+
+    @Benchmark
+    public double sugenoCompiled() {
+        return compiledSugeno.evaluate(model.samples[next()]);
+    }
+}
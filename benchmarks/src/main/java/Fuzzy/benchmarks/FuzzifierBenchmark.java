@@ -0,0 +1,57 @@
+package Fuzzy.benchmarks;
+
+import Fuzzy.fuzzifier.Fuzzifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FuzzifierBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"4", "8", "32"})
+    public int inputs;
+
+    @Param({"triangle", "trapezoid", "gaussian"})
+    public String mfType;
+
+    private Fuzzifier fuzzifier;
+    private Map<String, Double>[] maps;
+    private int row;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        SyntheticModel model = new SyntheticModel(inputs, 1, 1, mfType, SAMPLES);
+        fuzzifier = new Fuzzifier(model.variables);
+        maps = (Map<String, Double>[]) new Map<?, ?>[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            maps[i] = model.sampleMap(i);
+            maps[i].put(SyntheticModel.OUTPUT, 50.0);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Double>> fuzzifyWithErrorHandling() {
+        row = (row + 1) & (SAMPLES - 1);
+        return fuzzifier.fuzzifyWithErrorHandling(maps[row]);
+    }
+}
@@ -0,0 +1,85 @@
+package Fuzzy.benchmarks;
+
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.MamdaniEngine;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.operator.TNorm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled Mamdani models interpreted vs. with generated antecedent code, in
+ * a process serving six model variants (three MF types, two t-norms) in turn,
+ * so the interpreted membership and t-norm call sites are megamorphic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratedKernelBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final String[] MF_TYPES = {"triangle", "trapezoid", "gaussian"};
+
+    @Param({"12", "100", "1000"})
+    public int rules;
+
+    private SyntheticModel[] models;
+    private CompiledModel[] interpreted;
+    private CompiledModel[] generated;
+    private double[][] workspaces;
+    private int row;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TNorm[] tnorms = {new MinTnorm(), new ProductTNorm()};
+        int variants = MF_TYPES.length * tnorms.length;
+        models = new SyntheticModel[variants];
+        interpreted = new CompiledModel[variants];
+        generated = new CompiledModel[variants];
+        workspaces = new double[variants][];
+        for (int v = 0; v < variants; v++) {
+            models[v] = new SyntheticModel(4, rules, 2, MF_TYPES[v % MF_TYPES.length], SAMPLES);
+            MamdaniEngine engine = new MamdaniEngine(models[v].variables, tnorms[v / MF_TYPES.length],
+                    new MaxSNorm());
+            interpreted[v] = engine.compile(models[v].mamdaniRules, models[v].inputNames);
+            generated[v] = engine.generate(models[v].mamdaniRules, models[v].inputNames);
+            workspaces[v] = interpreted[v].newWorkspace();
+        }
+    }
+
+    private int next() {
+        row = (row + 1) & (SAMPLES - 1);
+        return row;
+    }
+
+    @Benchmark
+    public double interpreted() {
+        int i = next();
+        int v = i % models.length;
+        return interpreted[v].evaluate(models[v].samples[i], workspaces[v]);
+    }
+
+    @Benchmark
+    public double generated() {
+        int i = next();
+        int v = i % models.length;
+        return generated[v].evaluate(models[v].samples[i], workspaces[v]);
+    }
+}
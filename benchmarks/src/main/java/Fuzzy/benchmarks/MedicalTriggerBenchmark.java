@@ -0,0 +1,100 @@
+package Fuzzy.benchmarks;
+
+import CaseStudy.MedicalTrigger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end MedicalTrigger scoring on a realistic ward mix: most samples are
+ * near-normal vitals, the rest tachycardic/febrile, hypotensive or hypoxemic.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MedicalTriggerBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    private MedicalTrigger trigger;
+    private double[][] rows;
+    private double[][] columns;
+    private double[] results;
+    private int row;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        trigger = new MedicalTrigger();
+        Random rnd = new Random(7);
+        rows = new double[SAMPLES][];
+        columns = new double[4][SAMPLES];
+        results = new double[SAMPLES];
+
+        for (int i = 0; i < SAMPLES; i++) {
+            double p = rnd.nextDouble();
+            double hr, temp, bp, spo2;
+            if (p < 0.80) {
+                hr = gauss(rnd, 78, 10);
+                temp = gauss(rnd, 98.4, 0.6);
+                bp = gauss(rnd, 120, 12);
+                spo2 = gauss(rnd, 97, 1.5);
+            } else if (p < 0.90) {
+                hr = gauss(rnd, 108, 8);
+                temp = gauss(rnd, 101.5, 1.0);
+                bp = gauss(rnd, 130, 15);
+                spo2 = gauss(rnd, 95, 2);
+            } else if (p < 0.95) {
+                hr = gauss(rnd, 95, 15);
+                temp = gauss(rnd, 98, 1);
+                bp = gauss(rnd, 82, 8);
+                spo2 = gauss(rnd, 93, 3);
+            } else {
+                hr = gauss(rnd, 60, 12);
+                temp = gauss(rnd, 97.8, 0.8);
+                bp = gauss(rnd, 110, 15);
+                spo2 = gauss(rnd, 86, 3);
+            }
+            rows[i] = new double[]{
+                    clamp(hr, 40, 120), clamp(temp, 95, 105), clamp(bp, 60, 180), clamp(spo2, 70, 100)};
+            for (int v = 0; v < 4; v++) {
+                columns[v][i] = rows[i][v];
+            }
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        row = (row + 1) & (SAMPLES - 1);
+        double[] v = rows[row];
+        return trigger.evaluate(v[0], v[1], v[2], v[3]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double[] evaluateBatch() {
+        trigger.evaluateBatch(columns, results, SAMPLES);
+        return results;
+    }
+
+    private static double gauss(Random rnd, double mean, double sd) {
+        return mean + sd * rnd.nextGaussian();
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+}
@@ -0,0 +1,102 @@
+package Fuzzy.benchmarks;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Randomly generated but reproducible fuzzy system used by the benchmarks.
+ *
+ * Inputs are X0..Xn-1 on [0, 100] with Low/Medium/High sets of the chosen MF
+ * type; the output is Y on [0, 100] with the same sets.
+ */
+final class SyntheticModel {
+
+    static final String OUTPUT = "Y";
+    static final String[] SET_NAMES = {"Low", "Medium", "High"};
+
+    final Map<String, LinguisticVariable> variables = new HashMap<>();
+    final RuleBase mamdaniRules = new RuleBase();
+    final RuleBase sugenoRules = new RuleBase();
+    final String[] inputNames;
+    final double[][] samples;
+
+    SyntheticModel(int inputs, int rules, int antecedents, String mfType, int sampleCount) {
+        Random rnd = new Random(42);
+
+        inputNames = new String[inputs];
+        for (int i = 0; i < inputs; i++) {
+            inputNames[i] = "X" + i;
+            variables.put(inputNames[i], variable(inputNames[i], mfType));
+        }
+        variables.put(OUTPUT, variable(OUTPUT, mfType));
+
+        int clauses = Math.min(antecedents, inputs);
+        List<String> names = new ArrayList<>(List.of(inputNames));
+        for (int r = 1; r <= rules; r++) {
+            Collections.shuffle(names, rnd);
+            Map<String, String> ant = new HashMap<>();
+            for (int c = 0; c < clauses; c++) {
+                ant.put(names.get(c), SET_NAMES[rnd.nextInt(SET_NAMES.length)]);
+            }
+
+            Map<String, String> cons = new HashMap<>();
+            cons.put(OUTPUT, SET_NAMES[rnd.nextInt(SET_NAMES.length)]);
+            mamdaniRules.createRule(new Rule(r, ant, cons));
+
+            Map<String, String> sugeno = new HashMap<>();
+            sugeno.put(OUTPUT, String.format(Locale.ROOT, "%.2f*%s + %.1f",
+                    rnd.nextDouble(), names.get(0), rnd.nextDouble() * 50));
+            sugenoRules.createRule(new Rule(r, new HashMap<>(ant), sugeno));
+        }
+
+        samples = new double[sampleCount][inputs];
+        for (double[] row : samples) {
+            for (int i = 0; i < inputs; i++) {
+                row[i] = rnd.nextDouble() * 100;
+            }
+        }
+    }
+
+    Map<String, Double> sampleMap(int row) {
+        Map<String, Double> inputs = new HashMap<>();
+        for (int i = 0; i < inputNames.length; i++) {
+            inputs.put(inputNames[i], samples[row][i]);
+        }
+        return inputs;
+    }
+
+    private static LinguisticVariable variable(String name, String mfType) {
+        LinguisticVariable var = new LinguisticVariable(name, 0, 100);
+        var.addFuzzySet(new FuzzySet("Low", mf(mfType, 0, 0, 20, 45)));
+        var.addFuzzySet(new FuzzySet("Medium", mf(mfType, 25, 45, 55, 75)));
+        var.addFuzzySet(new FuzzySet("High", mf(mfType, 55, 80, 100, 100)));
+        return var;
+    }
+
+    private static IMembershipFunction mf(String type, double a, double b, double c, double d) {
+        switch (type) {
+            case "triangle":
+                return new TriangleMF(a, (b + c) / 2, d);
+            case "trapezoid":
+                return new TrapezoidMF(a, b, c, d);
+            case "gaussian":
+                return new GaussianMF((b + c) / 2, (d - a) / 4);
+            default:
+                throw new IllegalArgumentException("Unknown MF type " + type);
+        }
+    }
+}
@@ -2,16 +2,31 @@ package CaseStudy;
 
 import Fuzzy.Rules.Rule;
 import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleSnapshot;
+import Fuzzy.concurrent.BackfillJob;
+import Fuzzy.inference.CachingInferenceEngine;
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.IncrementalContext;
 import Fuzzy.inference.InferenceEngine;
 import Fuzzy.inference.MamdaniEngine;
+import Fuzzy.io.FuzzyModel;
+import Fuzzy.metrics.EngineMetrics;
 import Fuzzy.memberShip.TrapezoidMF;
 import Fuzzy.memberShip.TriangleMF;
 import Fuzzy.operator.MaxSNorm;
 import Fuzzy.operator.MinTnorm;
+import Fuzzy.store.VitalsStore;
+import Fuzzy.stream.AlertStateMachine;
+import Fuzzy.trend.TrendFeature;
+import Fuzzy.trend.TrendTracker;
 import Fuzzy.variables.FuzzySet;
 import Fuzzy.variables.LinguisticVariable;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -28,19 +43,82 @@ import java.util.Map;
  * 
  * Output Variable:
  * - Medical Alert Level: None / Moderate / High (range: 0-100)
+ * 
+ * Trend Input (streams only, see {@link #newTrendTracker()}):
+ * - SpO₂ Trend: Falling / Stable / Rising change of SpO₂ over 10 minutes
+ * 
+ * One instance can be shared across threads. Rules may be edited through
+ * {@link #getRuleBase()} (e.g. with a RuleEditor) while evaluating; the
+ * compiled model is rebuilt on the next evaluation after an edit.
  */
 public class MedicalTrigger {
     
+    /** Input order of every double[] vitals array */
+    public static final String[] INPUTS = {"HeartRate", "Temperature", "BloodPressure", "OxygenLevel"};
+    
+    /** Sensor resolution of each input: whole bpm, 0.1°F, whole mmHg, whole % */
+    public static final double[] RESOLUTIONS = {1, 0.1, 1, 1};
+    
+    /** Alert levels where None turns Moderate and Moderate turns High */
+    public static final double[] ALERT_LIMITS = {33, 66};
+    
+    /** Change of SpO₂ over the last 10 minutes, in percentage points */
+    public static final TrendFeature SPO2_TREND = TrendFeature.delta("SpO2Trend", "OxygenLevel",
+            Duration.ofMinutes(10));
+    
+    /** Input order of trend rows: {@link #INPUTS}, then SpO2Trend */
+    public static final String[] TREND_INPUTS = {"HeartRate", "Temperature", "BloodPressure", "OxygenLevel",
+            "SpO2Trend"};
+    
+    /** Most samples of a patient kept for the trend window */
+    public static final int TREND_CAPACITY = 64;
+    
     private Map<String, LinguisticVariable> variables;
     private RuleBase ruleBase;
+    private RuleBase trendRuleBase;
     private InferenceEngine inferenceEngine;
+    private volatile CompiledModel model;
+    private volatile TrendModel trendModel;
+    private volatile CachingInferenceEngine resultCache;
+    private volatile EngineMetrics metrics;
+    // Model input row of evaluate(TrendTracker, ...), refilled for every reading
+    private final ThreadLocal<double[]> trendRows = ThreadLocal.withInitial(() -> new double[TREND_INPUTS.length]);
     
     public MedicalTrigger() {
         setupVariables();
         setupRules();
+        setupTrend();
         setupInferenceEngine();
     }
     
+    /**
+     * Trigger running a saved model instead of the built-in one. The model
+     * must define the {@link #INPUTS} variables.
+     * 
+     * @param fuzzyModel Model loaded with {@link FuzzyModel#load}
+     */
+    public MedicalTrigger(FuzzyModel fuzzyModel) {
+        variables = new HashMap<>(fuzzyModel.getVariables());
+        ruleBase = fuzzyModel.newRuleBase();
+        setupTrend();
+        inferenceEngine = fuzzyModel.newEngine();
+        compileModel();
+    }
+    
+    /**
+     * The current variables, rules and operators, e.g. to save with
+     * {@link Fuzzy.io.BinaryModelFormat} or {@link Fuzzy.io.TextModelFormat}
+     */
+    public FuzzyModel toModel() {
+        Map<String, LinguisticVariable> ordered = new LinkedHashMap<>();
+        for (String input : INPUTS) {
+            ordered.put(input, variables.get(input));
+        }
+        ordered.putAll(variables);
+        return new FuzzyModel("MedicalTrigger", FuzzyModel.Type.MAMDANI, FuzzyModel.AND_MIN, FuzzyModel.OR_MAX,
+                CentroidMode.ANALYTIC, ordered, ruleBase);
+    }
+    
     /**
      * Setup input and output linguistic variables with membership functions
      */
@@ -203,13 +281,91 @@ public class MedicalTrigger {
         ruleBase.createRule(new Rule(12, ant12, cons12));
     }
     
+    /**
+     * Setup the SpO₂ trend variable and the rules that use it. A fall of 2
+     * points or more over the window is fully Falling.
+     */
+    private void setupTrend() {
+        variables.putIfAbsent("SpO2Trend", TrendFeature.directionVariable("SpO2Trend", 2, 10));
+        trendRuleBase = new RuleBase();
+        
+        // Rule 13: Early warning - Falling SpO₂, even while still normal → Moderate Alert
+        Map<String, String> ant13 = new HashMap<>();
+        ant13.put("SpO2Trend", "Falling");
+        Map<String, String> cons13 = new HashMap<>();
+        cons13.put("AlertLevel", "Moderate");
+        trendRuleBase.createRule(new Rule(13, ant13, cons13));
+        
+        // Rule 14: Critical - Low SpO₂ AND still falling → High Alert
+        Map<String, String> ant14 = new HashMap<>();
+        ant14.put("OxygenLevel", "Low");
+        ant14.put("SpO2Trend", "Falling");
+        Map<String, String> cons14 = new HashMap<>();
+        cons14.put("AlertLevel", "High");
+        trendRuleBase.createRule(new Rule(14, ant14, cons14));
+    }
+    
     /**
      * Setup inference engine (Mamdani with Min T-norm and Max S-norm)
+     * All output sets are piecewise linear, so the centroid is computed exactly
      */
     private void setupInferenceEngine() {
         MinTnorm minTnorm = new MinTnorm();
         MaxSNorm maxSNorm = new MaxSNorm();
-        inferenceEngine = new MamdaniEngine(variables, minTnorm, maxSNorm);
+        inferenceEngine = new MamdaniEngine(variables, minTnorm, maxSNorm, CentroidMode.ANALYTIC);
+        compileModel();
+    }
+    
+    /**
+     * Compiled model for the current rule base, recompiled after edits. The
+     * model carries the version it was compiled from, so one volatile read
+     * gives a consistent pair.
+     */
+    private CompiledModel model() {
+        CompiledModel current = model;
+        if (current.getVersion() != ruleBase.getVersion()) {
+            current = compileModel();
+        }
+        return current;
+    }
+    
+    private CompiledModel compileModel() {
+        CompiledModel compiled = inferenceEngine.compile(ruleBase, INPUTS);
+        model = compiled;
+        return compiled;
+    }
+    
+    /**
+     * Compiled model of the rules and the trend rules over {@link #TREND_INPUTS},
+     * recompiled after edits to either
+     */
+    private CompiledModel trendModel() {
+        TrendModel current = trendModel;
+        RuleSnapshot rules = ruleBase.snapshot();
+        RuleSnapshot trendRules = trendRuleBase.snapshot();
+        if (current != null && current.version == rules.getVersion()
+                && current.trendVersion == trendRules.getVersion()) {
+            return current.model;
+        }
+        RuleBase combined = new RuleBase();
+        combined.createRules(rules.getRules());
+        combined.createRules(trendRules.getRules());
+        current = new TrendModel(inferenceEngine.compile(combined, TREND_INPUTS), rules.getVersion(),
+                trendRules.getVersion());
+        trendModel = current;
+        return current.model;
+    }
+    
+    private static final class TrendModel {
+        final CompiledModel model;
+        final int version;
+        final int trendVersion;
+        
+        TrendModel(CompiledModel model, int version, int trendVersion) {
+            this.model = model;
+            this.version = version;
+            this.trendVersion = trendVersion;
+        }
     }
     
     /**
@@ -223,28 +379,242 @@ public class MedicalTrigger {
      */
     public double evaluate(double heartRate, double temperature, 
                           double bloodPressure, double oxygenLevel) {
-        Map<String, Double> inputs = new HashMap<>();
-        inputs.put("HeartRate", heartRate);
-        inputs.put("Temperature", temperature);
-        inputs.put("BloodPressure", bloodPressure);
-        inputs.put("OxygenLevel", oxygenLevel);
-        
-        return inferenceEngine.evaluate(inputs, ruleBase);
+        return evaluate(new double[]{heartRate, temperature, bloodPressure, oxygenLevel});
+    }
+    
+    /**
+     * Evaluate medical alert level from a reusable vitals array
+     * 
+     * @param vitals {heartRate, temperature, bloodPressure, oxygenLevel}
+     * @return Alert level (0-100)
+     */
+    public double evaluate(double[] vitals) {
+        CachingInferenceEngine cache = resultCache;
+        EngineMetrics m = metrics;
+        if (cache != null) {
+            if (m == null) {
+                return cache.evaluate(ruleBase, vitals);
+            }
+            long start = System.nanoTime();
+            double result;
+            try {
+                result = cache.evaluate(ruleBase, vitals);
+            } catch (RuntimeException e) {
+                m.recordEvaluationError();
+                throw e;
+            }
+            m.recordEvaluation(System.nanoTime() - start);
+            return result;
+        }
+        if (m != null) {
+            return m.evaluate(model(), vitals);
+        }
+        return model().evaluate(vitals);
+    }
+    
+    /**
+     * Record latency and rule activity of {@link #evaluate(double[])}, and
+     * latency of {@link #evaluate(IncrementalContext, double[])}, and export
+     * them over JMX as Fuzzy:type=EngineMetrics,name=&lt;name&gt;. While the result cache
+     * is enabled, every call counts as an evaluation but only cache misses are
+     * fuzzified, so only they move the fuzzification and rule counters.
+     * Batches and scans are not recorded.
+     * 
+     * @param name JMX name of this trigger
+     * @return The metrics, also readable directly
+     */
+    public EngineMetrics enableMetrics(String name) {
+        disableMetrics();
+        EngineMetrics m = new EngineMetrics();
+        m.register(name);
+        metrics = m;
+        wireMetrics(resultCache, m);
+        return m;
+    }
+    
+    public void disableMetrics() {
+        EngineMetrics m = metrics;
+        metrics = null;
+        wireMetrics(resultCache, null);
+        if (m != null) {
+            m.unregister();
+        }
+    }
+    
+    private static void wireMetrics(CachingInferenceEngine cache, EngineMetrics m) {
+        if (cache != null) {
+            cache.setMissEvaluator(m != null ? m::evaluateUntimed : null);
+        }
+    }
+    
+    /**
+     * Cache results of {@link #evaluate(double[])} for vitals rounded to
+     * {@link #RESOLUTIONS}. The cache is cleared whenever the rules are edited.
+     * 
+     * @param capacity Maximum number of cached results
+     * @return The cache, for hit/miss statistics
+     */
+    public CachingInferenceEngine enableResultCache(int capacity) {
+        Map<String, Double> resolutions = new LinkedHashMap<>();
+        for (int i = 0; i < INPUTS.length; i++) {
+            resolutions.put(INPUTS[i], RESOLUTIONS[i]);
+        }
+        CachingInferenceEngine cache = new CachingInferenceEngine(inferenceEngine, resolutions, capacity);
+        wireMetrics(cache, metrics);
+        resultCache = cache;
+        return cache;
+    }
+    
+    public void disableResultCache() {
+        resultCache = null;
+    }
+    
+    /**
+     * Evaluation context for one patient's stream of readings
+     * 
+     * @see #evaluate(IncrementalContext, double[])
+     */
+    public IncrementalContext newPatientContext() {
+        return model().newIncrementalContext();
+    }
+    
+    /**
+     * Evaluate the next reading of a patient, recomputing only the rules whose
+     * vitals changed since the previous reading. The context is rebound when
+     * the rules were edited since its last use.
+     * 
+     * @param context The patient's context from {@link #newPatientContext()}
+     * @param vitals {heartRate, temperature, bloodPressure, oxygenLevel}
+     * @return Alert level (0-100)
+     */
+    public double evaluate(IncrementalContext context, double[] vitals) {
+        context.bind(model());
+        EngineMetrics m = metrics;
+        if (m == null) {
+            return context.evaluate(vitals);
+        }
+        long start = System.nanoTime();
+        double result;
+        try {
+            result = context.evaluate(vitals);
+        } catch (RuntimeException e) {
+            m.recordEvaluationError();
+            throw e;
+        }
+        m.recordEvaluation(System.nanoTime() - start);
+        return result;
+    }
+    
+    /**
+     * Per-patient SpO₂ trend of a stream of readings
+     * 
+     * @see #evaluate(TrendTracker, long, long, double[])
+     */
+    public TrendTracker newTrendTracker() {
+        return new TrendTracker(variables, INPUTS, TREND_CAPACITY, SPO2_TREND);
+    }
+    
+    /**
+     * Evaluate the next reading of a patient with the rules and the trend
+     * rules, the SpO₂ trend taken from the patient's earlier readings in the
+     * tracker. Readings of a patient must come in time order.
+     * 
+     * @param tracker Trends of the patients, from {@link #newTrendTracker()}
+     * @param timestamp Time of the reading in milliseconds
+     * @param vitals {heartRate, temperature, bloodPressure, oxygenLevel}
+     * @return Alert level (0-100)
+     */
+    public double evaluate(TrendTracker tracker, long patientId, long timestamp, double[] vitals) {
+        double[] inputs = trendRows.get();
+        tracker.update(patientId, timestamp, vitals, inputs);
+        return trendModel().evaluate(inputs);
+    }
+    
+    /**
+     * Evaluate alert levels for a batch of patients stored column-wise
+     * 
+     * @param vitals {heartRates, temperatures, bloodPressures, oxygenLevels}, one array per vital
+     * @param results Receives the alert level of each row
+     * @param rows Number of rows to evaluate
+     */
+    public void evaluateBatch(double[][] vitals, double[] results, int rows) {
+        model().evaluateBatch(vitals, results, rows);
+    }
+    
+    /**
+     * Evaluate alert levels for every row of a recorded history, straight from
+     * its memory mapping
+     * 
+     * @param store Vitals with a column for each of {@link #INPUTS}
+     * @param consumer Receives the alert levels of each block of rows
+     */
+    public void scan(VitalsStore store, VitalsStore.BlockConsumer consumer) {
+        store.scan(model(), consumer);
+    }
+    
+    /**
+     * Job that re-scores a recorded history with the current rules into
+     * per-patient None/Moderate/High summaries, on all cores
+     * 
+     * @param store Vitals with a column for each of {@link #INPUTS}
+     * @param checkpointDir Progress of the job, kept across interrupted runs;
+     *                      use a new directory after editing the rules,
+     *                      as the job refuses one of other rules
+     */
+    public BackfillJob newBackfillJob(VitalsStore store, Path checkpointDir) {
+        return new BackfillJob(model(), store, checkpointDir, ALERT_LIMITS);
+    }
+    
+    /**
+     * Debounced None/Moderate/High level per patient for the outputs of
+     * {@link #evaluate}: a level is left 3 points below its limit, Moderate
+     * is entered after 30 s and High at once, and each step down needs
+     * 5 minutes of lower outputs and 10 minutes at the level
+     */
+    public AlertStateMachine newAlertStateMachine() {
+        return new AlertStateMachine(ALERT_LIMITS, new double[]{3, 3}, Duration.ofSeconds(30),
+                Duration.ofMinutes(5), Duration.ofMinutes(10), 2);
+    }
+    
+    public RuleBase getRuleBase() {
+        return ruleBase;
+    }
+    
+    /**
+     * Rules on SpO2Trend, used only by {@link #evaluate(TrendTracker, long, long, double[])}
+     */
+    public RuleBase getTrendRuleBase() {
+        return trendRuleBase;
+    }
+    
+    public InferenceEngine getInferenceEngine() {
+        return inferenceEngine;
+    }
+    
+    public Map<String, LinguisticVariable> getVariables() {
+        return variables;
     }
     
     /**
      * Get a human-readable alert level description
      */
     public String getAlertDescription(double alertValue) {
-        if (alertValue < 33) {
+        if (alertValue < ALERT_LIMITS[0]) {
             return "None - No immediate action needed";
-        } else if (alertValue < 66) {
+        } else if (alertValue < ALERT_LIMITS[1]) {
             return "Moderate - Monitor closely";
         } else {
             return "High - Immediate attention required";
         }
     }
     
+    /**
+     * Description of a level of {@link #newAlertStateMachine()}
+     */
+    public String getLevelDescription(int level) {
+        return getAlertDescription(level == 0 ? 0 : ALERT_LIMITS[level - 1]);
+    }
+    
     /**
      * Display fuzzification results for debugging
      */
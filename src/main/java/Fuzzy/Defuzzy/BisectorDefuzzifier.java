@@ -0,0 +1,88 @@
+package Fuzzy.Defuzzy;
+
+/**
+ * Bisector of area: the point that splits the area under the aggregated
+ * output in two equal halves. The output is taken as linear between grid
+ * points, so the split is located inside a grid interval rather than snapped
+ * to a grid point.
+ */
+public class BisectorDefuzzifier implements DefuzzificationMethod {
+
+    @Override
+    public double defuzzify(double[] membership, int n, double min, double max) {
+        if (n == 1) {
+            return membership[0] > 0 ? min : 0;
+        }
+        double step = DefuzzificationMethod.step(n, min, max);
+
+        // Trapezoid areas in units of step
+        double total = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            total += membership[i] + membership[i + 1];
+        }
+        if (total == 0) return 0;
+
+        double half = total / 2;
+        double area = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            double a = membership[i];
+            double b = membership[i + 1];
+            double segment = a + b;
+            if (area + segment >= half) {
+                // Twice the area over [0, t] of a + (b - a) t is 2at + (b - a)t^2
+                double t = fraction(a, b - a, half - area);
+                return min + (i + t) * step;
+            }
+            area += segment;
+        }
+        return max;
+    }
+
+    /**
+     * As above with segments of their own width: twice the area of segment i
+     * is (a + b) * h.
+     */
+    @Override
+    public double defuzzifyPoints(double[] xs, double[] membership, int n) {
+        if (n == 1) {
+            return membership[0] > 0 ? xs[0] : 0;
+        }
+
+        double total = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            total += (membership[i] + membership[i + 1]) * (xs[i + 1] - xs[i]);
+        }
+        if (total == 0) return 0;
+
+        double half = total / 2;
+        double area = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            double a = membership[i];
+            double b = membership[i + 1];
+            double h = xs[i + 1] - xs[i];
+            double segment = (a + b) * h;
+            if (area + segment >= half) {
+                double t = fraction(a, b - a, (half - area) / h);
+                return xs[i] + t * h;
+            }
+            area += segment;
+        }
+        return xs[n - 1];
+    }
+
+    /**
+     * Solve 2at + slope t^2 = target for t in [0, 1], in the form
+     * t = target / (a + sqrt(a^2 + slope target)) that stays accurate for a
+     * flat segment.
+     */
+    private static double fraction(double a, double slope, double target) {
+        double den = a + Math.sqrt(Math.max(0, a * a + slope * target));
+        if (den == 0) return 0;
+        return Math.min(1, Math.max(0, target / den));
+    }
+
+    @Override
+    public double defuzzify(double[] ruleOutputs, double[] firingStrengths, int n) {
+        throw new UnsupportedOperationException("Bisector does not support Sugeno defuzzification");
+    }
+}
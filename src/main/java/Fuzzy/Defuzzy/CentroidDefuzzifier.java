@@ -1,28 +1,52 @@
 package Fuzzy.Defuzzy;
 
-import java.util.List;
-import java.util.Map;
-
 public class CentroidDefuzzifier implements DefuzzificationMethod {
 
     @Override
-    public double defuzzify(Map<Double, Double> aggregatedFuzzySet) {
+    public double defuzzify(double[] membership, int n, double min, double max) {
+        double step = DefuzzificationMethod.step(n, min, max);
         double numerator = 0.0;
         double denominator = 0.0;
 
-        for (Map.Entry<Double, Double> entry : aggregatedFuzzySet.entrySet()) {
-            double x = entry.getKey();
-            double mu = entry.getValue();
+        for (int i = 0; i < n; i++) {
+            double mu = membership[i];
 
-            numerator += x * mu;
+            numerator += (min + i * step) * mu;
             denominator += mu;
         }
 
         return (denominator == 0) ? 0 : numerator / denominator;
     }
 
+    /**
+     * Centroid of the piecewise-linear curve through the points, integrated
+     * exactly segment by segment, so uneven spacing does not bias it.
+     */
+    @Override
+    public double defuzzifyPoints(double[] xs, double[] membership, int n) {
+        if (n == 1) {
+            return membership[0] > 0 ? xs[0] : 0;
+        }
+        double numerator = 0.0;
+        double denominator = 0.0;
+
+        for (int i = 0; i + 1 < n; i++) {
+            double x0 = xs[i];
+            double x1 = xs[i + 1];
+            double a = membership[i];
+            double b = membership[i + 1];
+            double h = x1 - x0;
+
+            // Integrals of mu and x * mu over the segment, for mu linear from a to b
+            numerator += h * (a * (2 * x0 + x1) + b * (x0 + 2 * x1)) / 6;
+            denominator += h * (a + b) / 2;
+        }
+
+        return (denominator == 0) ? 0 : numerator / denominator;
+    }
+
     @Override
-    public double defuzzify(List<Double> ruleOutputs, List<Double> firingStrengths) {
+    public double defuzzify(double[] ruleOutputs, double[] firingStrengths, int n) {
         throw new UnsupportedOperationException("Centroid does not support Sugeno defuzzification");
     }
 }
@@ -2,8 +2,92 @@ package Fuzzy.Defuzzy;
 
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
-public interface DefuzzificationMethod{
-    double defuzzify(Map<Double, Double> aggregatedFuzzySet);
-    double defuzzify(List<Double> ruleOutputs, List<Double> firingStrengths);
- }
\ No newline at end of file
+/**
+ * Turns a fuzzy output into a crisp value.
+ *
+ * Mamdani methods read the aggregated output as n memberships sampled at
+ * evenly spaced points from min to max inclusive, point i lying at
+ * min + i * ((max - min) / (n - 1)), which is how {@code MamdaniEngine}
+ * samples its output grid. Sugeno methods combine n crisp rule outputs by
+ * their firing strengths. Both read primitive arrays, so they can run per
+ * evaluation without allocating. A method that does not apply to one kind
+ * throws UnsupportedOperationException.
+ */
+public interface DefuzzificationMethod {
+
+    /**
+     * @param membership aggregated membership at each grid point, in [0, n)
+     * @return the crisp value, or 0 when the output is empty
+     */
+    double defuzzify(double[] membership, int n, double min, double max);
+
+    /**
+     * @return the crisp value of n rules, or 0 when none fired
+     */
+    double defuzzify(double[] ruleOutputs, double[] firingStrengths, int n);
+
+    /**
+     * Mamdani output given as memberships at ascending points xs[0, n), which
+     * need not be evenly spaced. The built-in methods read the points as a
+     * piecewise-linear curve; this default hands evenly spaced points to
+     * {@link #defuzzify(double[], int, double, double)} and rejects others.
+     */
+    default double defuzzifyPoints(double[] xs, double[] membership, int n) {
+        if (n == 0) return 0;
+        double min = xs[0];
+        double max = xs[n - 1];
+        double step = step(n, min, max);
+        for (int i = 1; i < n - 1; i++) {
+            if (Math.abs(xs[i] - (min + i * step)) > 1e-9 * Math.max(1, Math.abs(xs[i]))) {
+                throw new UnsupportedOperationException(
+                        getClass().getSimpleName() + " needs evenly spaced points");
+            }
+        }
+        return defuzzify(membership, n, min, max);
+    }
+
+    /**
+     * Points are sorted by x and passed on with their real x values.
+     *
+     * @deprecated boxes every point; use {@link #defuzzify(double[], int, double, double)}
+     *             or {@link #defuzzifyPoints}
+     */
+    @Deprecated
+    default double defuzzify(Map<Double, Double> aggregatedFuzzySet) {
+        if (aggregatedFuzzySet.isEmpty()) return 0;
+
+        TreeMap<Double, Double> sorted = new TreeMap<>(aggregatedFuzzySet);
+        double[] xs = new double[sorted.size()];
+        double[] membership = new double[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Double, Double> e : sorted.entrySet()) {
+            xs[i] = e.getKey();
+            membership[i++] = e.getValue();
+        }
+        return defuzzifyPoints(xs, membership, xs.length);
+    }
+
+    /**
+     * @deprecated boxes every value; use {@link #defuzzify(double[], double[], int)}
+     */
+    @Deprecated
+    default double defuzzify(List<Double> ruleOutputs, List<Double> firingStrengths) {
+        int n = ruleOutputs.size();
+        double[] outputs = new double[n];
+        double[] strengths = new double[n];
+        for (int i = 0; i < n; i++) {
+            outputs[i] = ruleOutputs.get(i);
+            strengths[i] = firingStrengths.get(i);
+        }
+        return defuzzify(outputs, strengths, n);
+    }
+
+    /**
+     * Spacing of an n-point grid over [min, max].
+     */
+    static double step(int n, double min, double max) {
+        return n > 1 ? (max - min) / (n - 1) : 0;
+    }
+}
@@ -0,0 +1,24 @@
+package Fuzzy.Defuzzy;
+
+/**
+ * Largest of maximum: the highest point of maximum membership.
+ */
+public class LOMDefuzzifier extends MaximumDefuzzifier {
+
+    public LOMDefuzzifier() {
+        this(DEFAULT_TOLERANCE);
+    }
+
+    public LOMDefuzzifier(double tolerance) {
+        super(tolerance);
+    }
+
+    @Override
+    double select(double[] xs, double[] membership, int n, double min, double step, double threshold) {
+        int i = n - 1;
+        while (membership[i] < threshold) {
+            i--;
+        }
+        return x(xs, min, step, i);
+    }
+}
@@ -1,34 +1,28 @@
 package Fuzzy.Defuzzy;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+/**
+ * Mean of maximum: the average of the points of maximum membership.
+ */
+public class MOMDefuzzifier extends MaximumDefuzzifier {
 
-public class MOMDefuzzifier implements DefuzzificationMethod{
-    @Override
-    public double defuzzify(Map<Double, Double> aggregatedFuzzySet) {
-        double max = -1;
-
-        for (double value : aggregatedFuzzySet.values()) {
-            if (value > max)
-                max = value;
-        }
-
-        List<Double> xs = new ArrayList<>();
-        for (Map.Entry<Double, Double> entry : aggregatedFuzzySet.entrySet()) {
-            if (entry.getValue() == max)
-                xs.add(entry.getKey());
-        }
-
-        if (xs.isEmpty()) return 0;
-        double sum = 0;
-        for (double x : xs) sum += x;
+    public MOMDefuzzifier() {
+        this(DEFAULT_TOLERANCE);
+    }
 
-        return sum / xs.size();
+    public MOMDefuzzifier(double tolerance) {
+        super(tolerance);
     }
 
     @Override
-    public double defuzzify(List<Double> ruleOutputs, List<Double> firingStrengths) {
-        throw new UnsupportedOperationException("MoM does not support Sugeno defuzzification");
+    double select(double[] xs, double[] membership, int n, double min, double step, double threshold) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (membership[i] >= threshold) {
+                sum += x(xs, min, step, i);
+                count++;
+            }
+        }
+        return sum / count;
     }
 }
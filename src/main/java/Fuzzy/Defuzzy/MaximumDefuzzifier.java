@@ -0,0 +1,66 @@
+package Fuzzy.Defuzzy;
+
+/**
+ * Base of the methods that pick among the points of maximum membership.
+ * A point counts as a maximum when its membership is within the tolerance of
+ * the highest one, so a plateau sampled with rounding error is still seen as
+ * one plateau.
+ */
+public abstract class MaximumDefuzzifier implements DefuzzificationMethod {
+
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+
+    private final double tolerance;
+
+    protected MaximumDefuzzifier(double tolerance) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance must be >= 0. Got: " + tolerance);
+        }
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    @Override
+    public double defuzzify(double[] membership, int n, double min, double max) {
+        double height = height(membership, n);
+        if (height == 0) return 0;
+
+        return select(null, membership, n, min, DefuzzificationMethod.step(n, min, max), height - tolerance);
+    }
+
+    @Override
+    public double defuzzifyPoints(double[] xs, double[] membership, int n) {
+        double height = height(membership, n);
+        if (height == 0) return 0;
+
+        return select(xs, membership, n, 0, 0, height - tolerance);
+    }
+
+    private static double height(double[] membership, int n) {
+        double height = 0;
+        for (int i = 0; i < n; i++) {
+            height = Math.max(height, membership[i]);
+        }
+        return height;
+    }
+
+    /**
+     * Crisp value from the points whose membership is at least threshold;
+     * there is at least one. Point i lies at xs[i], or at min + i * step
+     * when xs is null.
+     */
+    abstract double select(double[] xs, double[] membership, int n, double min, double step, double threshold);
+
+    static double x(double[] xs, double min, double step, int i) {
+        return xs != null ? xs[i] : min + i * step;
+    }
+
+    @Override
+    public double defuzzify(double[] ruleOutputs, double[] firingStrengths, int n) {
+        throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " does not support Sugeno defuzzification");
+    }
+}
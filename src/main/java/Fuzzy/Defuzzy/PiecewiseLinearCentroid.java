@@ -0,0 +1,192 @@
+package Fuzzy.Defuzzy;
+
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+
+/**
+ * Exact centroid of a Mamdani output built from triangle/trapezoid sets,
+ * each clipped (min) at a height and aggregated with max.
+ *
+ * The aggregated curve is piecewise linear. Between two consecutive
+ * breakpoints (set corners, clip points and domain bounds) every clipped set
+ * is a line, so the envelope is the max of a few lines; the points where
+ * those lines cross are added and each linear segment is integrated in closed
+ * form. Cost depends on the number of sets, not on a sampling grid.
+ */
+public final class PiecewiseLinearCentroid {
+
+    private final double min, max;
+    // Each set as a trapezoid a <= b <= c <= d (a triangle has b == c)
+    private final double[] a, b, c, d;
+
+    public PiecewiseLinearCentroid(double min, double max, IMembershipFunction[] sets) {
+        this.min = min;
+        this.max = max;
+        int k = sets.length;
+        a = new double[k];
+        b = new double[k];
+        c = new double[k];
+        d = new double[k];
+        for (int s = 0; s < k; s++) {
+            if (!supports(sets[s])) {
+                throw new IllegalArgumentException(
+                        "Analytic centroid needs triangle or trapezoid sets. Got: " + sets[s].getType());
+            }
+            double[] p = sets[s].getParameters();
+            a[s] = p[0];
+            b[s] = p[1];
+            c[s] = p.length == 3 ? p[1] : p[2];
+            d[s] = p[p.length - 1];
+        }
+    }
+
+    public static boolean supports(IMembershipFunction mf) {
+        return mf instanceof TriangleMF || mf instanceof TrapezoidMF;
+    }
+
+    public int getSetCount() {
+        return a.length;
+    }
+
+    public int workspaceSize() {
+        int k = a.length;
+        return (2 + 6 * k) + 2 * k + (k * (k - 1) / 2 + 2);
+    }
+
+    public double[] newWorkspace() {
+        return new double[workspaceSize()];
+    }
+
+    /**
+     * @param heights clip height of each set (0 for sets no rule fired)
+     * @param work scratch of at least {@link #workspaceSize()} doubles from wOff
+     * @return the centroid, or 0 if the aggregated output is empty
+     */
+    public double centroid(double[] heights, int hOff, double[] work, int wOff) {
+        int k = a.length;
+
+        // ---- Breakpoints ----
+        int bp = wOff;
+        int nb = 0;
+        work[bp + nb++] = min;
+        work[bp + nb++] = max;
+        for (int s = 0; s < k; s++) {
+            double h = heights[hOff + s];
+            if (h <= 0) continue;
+            nb = addPoint(work, bp, nb, a[s]);
+            nb = addPoint(work, bp, nb, b[s]);
+            nb = addPoint(work, bp, nb, c[s]);
+            nb = addPoint(work, bp, nb, d[s]);
+            if (h < 1) {
+                nb = addPoint(work, bp, nb, a[s] + h * (b[s] - a[s]));
+                nb = addPoint(work, bp, nb, d[s] - h * (d[s] - c[s]));
+            }
+        }
+        sort(work, bp, nb);
+
+        int l0 = bp + 2 + 6 * k;
+        int l1 = l0 + k;
+        int ts = l1 + k;
+
+        double num = 0, den = 0;
+
+        for (int i = 0; i + 1 < nb; i++) {
+            double x0 = work[bp + i];
+            double x1 = work[bp + i + 1];
+            if (x1 <= x0) continue;
+
+            // Every clipped set is linear on [x0, x1]
+            double ref = 0.5 * (x0 + x1);
+            for (int s = 0; s < k; s++) {
+                double h = heights[hOff + s];
+                if (h <= 0) {
+                    work[l0 + s] = 0;
+                    work[l1 + s] = 0;
+                } else {
+                    work[l0 + s] = Math.min(h, piece(s, x0, ref));
+                    work[l1 + s] = Math.min(h, piece(s, x1, ref));
+                }
+            }
+
+            // Crossings of the lines split the interval into segments where the max is linear
+            int nt = 0;
+            work[ts + nt++] = 0;
+            work[ts + nt++] = 1;
+            for (int p = 0; p < k; p++) {
+                for (int q = p + 1; q < k; q++) {
+                    double d0 = work[l0 + p] - work[l0 + q];
+                    double d1 = work[l1 + p] - work[l1 + q];
+                    if ((d0 < 0 && d1 > 0) || (d0 > 0 && d1 < 0)) {
+                        work[ts + nt++] = d0 / (d0 - d1);
+                    }
+                }
+            }
+            sort(work, ts, nt);
+
+            double w = x1 - x0;
+            double tPrev = work[ts];
+            double yPrev = envelope(work, l0, l1, k, tPrev);
+            for (int j = 1; j < nt; j++) {
+                double t = work[ts + j];
+                double y = envelope(work, l0, l1, k, t);
+                if (t > tPrev) {
+                    double u0 = x0 + tPrev * w;
+                    double u1 = x0 + t * w;
+                    double len = u1 - u0;
+                    den += 0.5 * (yPrev + y) * len;
+                    num += len * (u0 * (2 * yPrev + y) + u1 * (yPrev + 2 * y)) / 6.0;
+                }
+                tPrev = t;
+                yPrev = y;
+            }
+        }
+
+        if (den == 0) return 0;
+
+        return num / den;
+    }
+
+    /**
+     * Value at x of the linear piece of set s that contains ref.
+     */
+    private double piece(int s, double x, double ref) {
+        if (ref <= a[s] || ref >= d[s]) {
+            return 0;
+        }
+        if (ref >= b[s] && ref <= c[s]) {
+            return 1;
+        }
+        if (ref < b[s]) {
+            return (x - a[s]) / (b[s] - a[s]);
+        }
+        return (d[s] - x) / (d[s] - c[s]);
+    }
+
+    private static double envelope(double[] work, int l0, int l1, int k, double t) {
+        double y = 0;
+        for (int s = 0; s < k; s++) {
+            y = Math.max(y, work[l0 + s] + t * (work[l1 + s] - work[l0 + s]));
+        }
+        return y;
+    }
+
+    private int addPoint(double[] work, int off, int n, double x) {
+        if (x > min && x < max) {
+            work[off + n++] = x;
+        }
+        return n;
+    }
+
+    private static void sort(double[] v, int off, int n) {
+        for (int i = off + 1; i < off + n; i++) {
+            double x = v[i];
+            int j = i - 1;
+            while (j >= off && v[j] > x) {
+                v[j + 1] = v[j];
+                j--;
+            }
+            v[j + 1] = x;
+        }
+    }
+}
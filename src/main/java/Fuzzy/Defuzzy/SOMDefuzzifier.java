@@ -0,0 +1,24 @@
+package Fuzzy.Defuzzy;
+
+/**
+ * Smallest of maximum: the lowest point of maximum membership.
+ */
+public class SOMDefuzzifier extends MaximumDefuzzifier {
+
+    public SOMDefuzzifier() {
+        this(DEFAULT_TOLERANCE);
+    }
+
+    public SOMDefuzzifier(double tolerance) {
+        super(tolerance);
+    }
+
+    @Override
+    double select(double[] xs, double[] membership, int n, double min, double step, double threshold) {
+        int i = 0;
+        while (membership[i] < threshold) {
+            i++;
+        }
+        return x(xs, min, step, i);
+    }
+}
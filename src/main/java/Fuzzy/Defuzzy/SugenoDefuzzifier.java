@@ -1,24 +1,25 @@
 package Fuzzy.Defuzzy;
 
-import java.util.List;
-import java.util.Map;
+/**
+ * Weighted average of the rule outputs by firing strength.
+ */
+public class SugenoDefuzzifier implements DefuzzificationMethod {
 
-public class SugenoDefuzzifier implements DefuzzificationMethod{
     @Override
-    public double defuzzify(List<Double> ruleOutputs, List<Double> firingStrengths) {
+    public double defuzzify(double[] ruleOutputs, double[] firingStrengths, int n) {
         double numerator = 0.0;
         double denominator = 0.0;
 
-        for (int i = 0; i < ruleOutputs.size(); i++) {
-            numerator += ruleOutputs.get(i) * firingStrengths.get(i);
-            denominator += firingStrengths.get(i);
+        for (int i = 0; i < n; i++) {
+            numerator += ruleOutputs[i] * firingStrengths[i];
+            denominator += firingStrengths[i];
         }
 
         return (denominator == 0) ? 0 : numerator / denominator;
     }
 
     @Override
-    public double defuzzify(Map<Double, Double> aggregatedFuzzySet) {
+    public double defuzzify(double[] membership, int n, double min, double max) {
         throw new UnsupportedOperationException("Sugeno does not support Mamdani defuzzification");
     }
 }
@@ -6,7 +6,9 @@ import Fuzzy.Validation.ValidationException;
 import Fuzzy.variables.FuzzySet;
 import Fuzzy.variables.LinguisticVariable;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Rule {
@@ -18,6 +20,11 @@ public class Rule {
     public Map<String, String> antecedent;
     public Map<String, String> consequent;
 
+    // Parsed Sugeno consequent. A snapshot copy parses it once when created and,
+    // its maps being read-only, returns it without checking; other rules re-parse
+    // when the consequent text changes.
+    private SugenoExpression expression;
+    private boolean readOnly;
 
     public Rule(int id, Map<String, String> antecedent, Map<String, String> consequent) {
         this.id = id;
@@ -25,6 +32,59 @@ public class Rule {
         this.consequent = consequent;
     }
 
+    /**
+     * Independent copy with read-only antecedent and consequent maps in the
+     * same iteration order, for {@link RuleSnapshot}.
+     */
+    Rule copy() {
+        Rule copy = new Rule(id, readOnlyCopy(antecedent), readOnlyCopy(consequent));
+        copy.enabled = enabled;
+        copy.weight = weight;
+        copy.expression = parseIfValid(copy.consequent, expression);
+        copy.readOnly = true;
+        return copy;
+    }
+
+    /**
+     * The consequent as a Sugeno expression, reusing previous if it has the
+     * same text, or null if it is not one (e.g. a Mamdani set name with a
+     * space); {@link #getSugenoExpression()} then reports the error.
+     */
+    private static SugenoExpression parseIfValid(Map<String, String> consequent, SugenoExpression previous) {
+        if (consequent == null || consequent.size() != 1) {
+            return null;
+        }
+        String source = consequent.values().iterator().next();
+        if (previous != null && previous.getSource().equals(source)) {
+            return previous;
+        }
+        try {
+            return SugenoExpression.parse(source);
+        } catch (ValidationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Independent copy with its own modifiable maps, for the rules that
+     * {@link RuleBase} hands out.
+     */
+    Rule editableCopy() {
+        Rule copy = new Rule(id, modifiableCopy(antecedent), modifiableCopy(consequent));
+        copy.enabled = enabled;
+        copy.weight = weight;
+        copy.expression = expression;
+        return copy;
+    }
+
+    private static Map<String, String> modifiableCopy(Map<String, String> map) {
+        return map == null ? null : new LinkedHashMap<>(map);
+    }
+
+    private static Map<String, String> readOnlyCopy(Map<String, String> map) {
+        return map == null ? null : Collections.unmodifiableMap(new LinkedHashMap<>(map));
+    }
+
     public double evaluateAntecedent(Map<String, Double> inputs,
                                      Map<String, LinguisticVariable> variables,
                                      TNorm tnorm, SNorm snorm) {
@@ -82,20 +142,25 @@ public class Rule {
     }
 
     public double evaluateConsequent(Map<String, Double> inputs) {
+        return getSugenoExpression().evaluate(inputs);
+    }
 
-        // You can extend this for polynomials but assume single constant value
-
-        String val = consequent.values().iterator().next();
-
-        try {
-
-
-            return Double.parseDouble(val);
-        } catch (NumberFormatException e) {
-            // Sum of inputs:
-            // THEN out = HR + Temp
-            return inputs.values().stream().mapToDouble(d -> d).sum();
+    /**
+     * The consequent parsed as a Sugeno expression, e.g. THEN out = 0.5*HR + Temp - 98
+     *
+     * @throws ValidationException if the consequent is not a valid expression
+     */
+    public SugenoExpression getSugenoExpression() {
+        SugenoExpression e = expression;
+        if (readOnly && e != null) {
+            return e;
+        }
+        String source = consequent.values().iterator().next();
+        if (e == null || !e.getSource().equals(source)) {
+            e = SugenoExpression.parse(source);
+            expression = e;
         }
+        return e;
     }
 
 
@@ -1,40 +1,229 @@
 package Fuzzy.Rules;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Rules published as immutable {@link RuleSnapshot}s.
+ *
+ * Mutations are synchronized on the RuleBase; each one publishes a new
+ * snapshot with a higher version through a single volatile write, so readers
+ * ({@link #snapshot()}, {@link #getIndex()}) never lock and never see a
+ * half-applied edit.
+ *
+ * Every edit goes through the RuleBase. The rules it stores are its own
+ * copies, and the Rule objects it hands out (from findRule, listRules and
+ * getRules) are detached copies: assigning their fields changes nothing until
+ * the rule is written back with {@link #editRule} or through the
+ * {@link #getRules()} list. Likewise a rule passed to createRule may be
+ * reused by the caller without affecting the stored copy.
+ */
 public class RuleBase {
-    private final List<Rule> rules = new ArrayList<>();
     private int nextId = 1;
+    private volatile RuleSnapshot snapshot = new RuleSnapshot(0, new ArrayList<>());
+    private final List<Rule> view = new RuleList();
 
-    public Rule createRule(Rule rule) {
+    /**
+     * Add a copy of the rule, giving it the next free id if its id is not positive.
+     *
+     * @return The rule passed in, with its id set
+     */
+    public synchronized Rule createRule(Rule rule) {
+        List<Rule> copies = new ArrayList<>(snapshot.getRules());
+        copies.add(admit(rule));
+        publish(copies);
+        return rule;
+    }
+
+    /**
+     * Add many rules, e.g. a loaded model, publishing one snapshot for all of them.
+     */
+    public synchronized void createRules(List<Rule> added) {
+        List<Rule> copies = new ArrayList<>(snapshot.getRules());
+        for (Rule rule : added) {
+            copies.add(admit(rule));
+        }
+        publish(copies);
+    }
+
+    /**
+     * Assign an id if needed and take the copy to store. Called with the lock held.
+     */
+    private Rule admit(Rule rule) {
         if (rule.id <= 0) {
             rule.id = nextId++;
+        } else {
+            // Keep generated ids clear of explicit ones (e.g. rules loaded from a file)
+            nextId = Math.max(nextId, rule.id + 1);
         }
-        rules.add(rule);
-        return rule;
+        return rule.copy();
     }
 
+    /**
+     * A detached copy of the rule with this id; see {@link #editRule} to change it.
+     */
     public Optional<Rule> findRule(int id) {
-        return rules.stream().filter(r -> r.id == id).findFirst();
+        for (Rule rule : snapshot.getRules()) {
+            if (rule.id == id) {
+                return Optional.of(rule.editableCopy());
+            }
+        }
+        return Optional.empty();
     }
 
+    /**
+     * Detached copies of the rules in creation order.
+     */
     public List<Rule> listRules() {
-        return new ArrayList<>(rules);
+        List<Rule> rules = snapshot.getRules();
+        List<Rule> copies = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            copies.add(rule.editableCopy());
+        }
+        return copies;
+    }
+
+    /**
+     * Apply an edit to a copy of the rule with this id and publish the result
+     * in its place. If the edit throws, nothing is published.
+     *
+     * @return A detached copy of the edited rule, or empty if there is no such rule
+     */
+    public synchronized Optional<Rule> editRule(int id, Consumer<? super Rule> edit) {
+        List<Rule> current = snapshot.getRules();
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).id == id) {
+                Rule rule = current.get(i).editableCopy();
+                edit.accept(rule);
+                rule.id = id;
+                List<Rule> copies = new ArrayList<>(current);
+                copies.set(i, rule.copy());
+                publish(copies);
+                return Optional.of(rule);
+            }
+        }
+        return Optional.empty();
     }
 
-    public void removeRule(int id) {
-        Iterator<Rule> it = rules.iterator();
-        while (it.hasNext()) {
-            if (it.next().id == id) {
-                it.remove();
+    public synchronized void removeRule(int id) {
+        List<Rule> current = snapshot.getRules();
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).id == id) {
+                List<Rule> copies = new ArrayList<>(current);
+                copies.remove(i);
+                publish(copies);
                 break;
             }
         }
     }
+
+    /**
+     * Remove many rules, publishing one snapshot without any of them.
+     */
+    public synchronized void removeRules(Collection<Integer> ids) {
+        Set<Integer> removed = new HashSet<>(ids);
+        List<Rule> copies = new ArrayList<>(snapshot.getRules().size());
+        for (Rule copy : snapshot.getRules()) {
+            if (!removed.contains(copy.id)) {
+                copies.add(copy);
+            }
+        }
+        publish(copies);
+    }
+
+    private void publish(List<Rule> copies) {
+        snapshot = new RuleSnapshot(snapshot.getVersion() + 1, copies);
+    }
+
+    /**
+     * The current rules, as one consistent immutable version.
+     */
+    public RuleSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Incremented on every change to the rules.
+     */
+    public int getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Inverted (variable, set) -> rules index of the enabled rules of the
+     * current snapshot, built on first use after any change.
+     */
+    public RuleIndex getIndex() {
+        return snapshot.getIndex();
+    }
+
+    /**
+     * The rules as a live list. Reads see the current snapshot and return
+     * detached copies; add, set and remove (and everything built on them,
+     * e.g. removeIf) each publish a new snapshot. An element edited in place
+     * must be written back with set() or {@link #editRule}.
+     */
     public List<Rule> getRules() {
-        return rules;
+        return view;
+    }
+
+    private final class RuleList extends AbstractList<Rule> implements RandomAccess {
+
+        @Override
+        public Rule get(int index) {
+            return snapshot.getRules().get(index).editableCopy();
+        }
+
+        @Override
+        public int size() {
+            return snapshot.getRules().size();
+        }
+
+        @Override
+        public boolean add(Rule rule) {
+            createRule(rule);
+            return true;
+        }
+
+        @Override
+        public void add(int index, Rule rule) {
+            synchronized (RuleBase.this) {
+                List<Rule> copies = new ArrayList<>(snapshot.getRules());
+                if (index < 0 || index > copies.size()) {
+                    throw new IndexOutOfBoundsException("Index " + index + ", size " + copies.size());
+                }
+                copies.add(index, admit(rule));
+                publish(copies);
+            }
+        }
+
+        @Override
+        public Rule set(int index, Rule rule) {
+            synchronized (RuleBase.this) {
+                List<Rule> copies = new ArrayList<>(snapshot.getRules());
+                Objects.checkIndex(index, copies.size());
+                Rule old = copies.set(index, admit(rule));
+                publish(copies);
+                return old.editableCopy();
+            }
+        }
+
+        @Override
+        public Rule remove(int index) {
+            synchronized (RuleBase.this) {
+                List<Rule> copies = new ArrayList<>(snapshot.getRules());
+                Rule old = copies.remove(index);
+                publish(copies);
+                return old.editableCopy();
+            }
+        }
     }
-}
\ No newline at end of file
+}
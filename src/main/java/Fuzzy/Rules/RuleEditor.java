@@ -25,32 +25,37 @@ public class RuleEditor {
         return ruleBase.createRule(draft);
     }
 
+    /**
+     * Replace the clauses, weight and flag of a rule. The new values are
+     * validated first, so a rejected update leaves the rule unchanged.
+     */
     public Rule update(int id,
                        Map<String, String> antecedent,
                        Map<String, String> consequent,
                        double weight,
                        boolean enabled) {
-        Rule rule = ruleBase.findRule(id)
-                .orElseThrow(() -> new ValidationException("Rule " + id + " not found"));
-        rule.antecedent = antecedent;
-        rule.consequent = consequent;
-        rule.weight = weight;
-        rule.enabled = enabled;
-        validator.validateRule(rule);
-        return rule;
+        Rule draft = new Rule(id, antecedent, consequent);
+        draft.weight = weight;
+        draft.enabled = enabled;
+        validator.validateRule(draft);
+
+        return ruleBase.editRule(id, rule -> {
+            rule.antecedent = antecedent;
+            rule.consequent = consequent;
+            rule.weight = weight;
+            rule.enabled = enabled;
+        }).orElseThrow(() -> new ValidationException("Rule " + id + " not found"));
     }
 
     public void setWeight(int id, double weight) {
         validator.validateWeight(weight);
-        Rule rule = ruleBase.findRule(id)
+        ruleBase.editRule(id, rule -> rule.weight = weight)
                 .orElseThrow(() -> new ValidationException("Rule " + id + " not found"));
-        rule.weight = weight;
     }
 
     public void enable(int id, boolean flag) {
-        Rule rule = ruleBase.findRule(id)
+        ruleBase.editRule(id, rule -> rule.enabled = flag)
                 .orElseThrow(() -> new ValidationException("Rule " + id + " not found"));
-        rule.enabled = flag;
     }
 
     public void delete(int id) {
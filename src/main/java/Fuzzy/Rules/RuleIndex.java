@@ -0,0 +1,209 @@
+package Fuzzy.Rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index of the enabled rules of a RuleBase: for every (variable, set)
+ * pair used by an antecedent, the rules that reference it. Obtained from
+ * {@link RuleBase#getIndex()} for the current version and immutable.
+ *
+ * Engines fuzzify each indexed pair once, then use {@link #candidates} to visit
+ * only rules whose every clause has a nonzero membership. Any other rule has a
+ * firing strength of 0 under every T-norm and contributes nothing, so skipping
+ * it does not change the result.
+ */
+public final class RuleIndex {
+
+    private final int version;
+    private final Rule[] rules;
+
+    // ---- (variable, set) entries and the rules referencing each, in rule order ----
+    private final String[] entryVariable;
+    private final String[] entrySet;
+    private final int[][] entryRules;
+
+    // ---- Clauses of rule r are entries clauseEntry[clauseStart[r] .. clauseStart[r + 1]) ----
+    private final int[] clauseStart;
+    private final int[] clauseEntry;
+
+    // Rules with no clauses always fire
+    private final int[] unconditional;
+
+    private final Map<String, Integer> entryIndex = new HashMap<>();
+
+    RuleIndex(List<Rule> allRules, int version) {
+        this.version = version;
+
+        List<Rule> enabled = new ArrayList<>();
+        for (Rule rule : allRules) {
+            if (rule.enabled) enabled.add(rule);
+        }
+        this.rules = enabled.toArray(new Rule[0]);
+
+        List<String> vars = new ArrayList<>();
+        List<String> sets = new ArrayList<>();
+        List<List<Integer>> refs = new ArrayList<>();
+        List<Integer> always = new ArrayList<>();
+        this.clauseStart = new int[rules.length + 1];
+        List<Integer> clauses = new ArrayList<>();
+
+        for (int r = 0; r < rules.length; r++) {
+            for (Map.Entry<String, String> clause : rules[r].antecedent.entrySet()) {
+                String key = clause.getKey() + '\u0000' + clause.getValue();
+                Integer e = entryIndex.get(key);
+                if (e == null) {
+                    e = vars.size();
+                    entryIndex.put(key, e);
+                    vars.add(clause.getKey());
+                    sets.add(clause.getValue());
+                    refs.add(new ArrayList<>());
+                }
+                refs.get(e).add(r);
+                clauses.add(e);
+            }
+            clauseStart[r + 1] = clauses.size();
+            if (clauseStart[r + 1] == clauseStart[r]) {
+                always.add(r);
+            }
+        }
+
+        this.entryVariable = vars.toArray(new String[0]);
+        this.entrySet = sets.toArray(new String[0]);
+        this.entryRules = new int[refs.size()][];
+        for (int e = 0; e < entryRules.length; e++) {
+            entryRules[e] = refs.get(e).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.clauseEntry = clauses.stream().mapToInt(Integer::intValue).toArray();
+        this.unconditional = always.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The RuleBase version this index was built from.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Number of enabled rules; rule positions below are in [0, getRuleCount()).
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    public Rule getRule(int position) {
+        return rules[position];
+    }
+
+    public int getEntryCount() {
+        return entryVariable.length;
+    }
+
+    public String getVariable(int entry) {
+        return entryVariable[entry];
+    }
+
+    public String getSet(int entry) {
+        return entrySet[entry];
+    }
+
+    public int getClauseStart(int position) {
+        return clauseStart[position];
+    }
+
+    public int getClauseEnd(int position) {
+        return clauseStart[position + 1];
+    }
+
+    /**
+     * Entry of a clause, between {@link #getClauseStart} and {@link #getClauseEnd}
+     * of its rule, in antecedent iteration order.
+     */
+    public int getClauseEntry(int clause) {
+        return clauseEntry[clause];
+    }
+
+    /**
+     * Enabled rules whose antecedent references the set, in rule base order.
+     */
+    public List<Rule> rulesFor(String variable, String set) {
+        Integer e = entryIndex.get(variable + '\u0000' + set);
+        if (e == null) {
+            return Collections.emptyList();
+        }
+        List<Rule> result = new ArrayList<>(entryRules[e].length);
+        for (int r : entryRules[e]) {
+            result.add(rules[r]);
+        }
+        return result;
+    }
+
+    /**
+     * Collect, in rule base order, the positions of rules whose clauses all have
+     * a nonzero membership (memberships[entry]) into scratch.candidates.
+     * Only rules referencing a nonzero entry are touched.
+     *
+     * @return number of candidates
+     */
+    public int candidates(double[] memberships, Scratch scratch) {
+        scratch.ensure(rules.length);
+        int[] counts = scratch.counts;
+        int[] touched = scratch.touched;
+        int[] candidates = scratch.candidates;
+
+        int n = 0;
+        for (int r : unconditional) {
+            candidates[n++] = r;
+        }
+
+        int t = 0;
+        for (int e = 0; e < entryRules.length; e++) {
+            if (!(memberships[e] > 0)) continue;
+            for (int r : entryRules[e]) {
+                if (counts[r]++ == 0) {
+                    touched[t++] = r;
+                }
+                if (counts[r] == clauseStart[r + 1] - clauseStart[r]) {
+                    candidates[n++] = r;
+                }
+            }
+        }
+
+        // Leave the counts zeroed for the next call
+        for (int i = 0; i < t; i++) {
+            counts[touched[i]] = 0;
+        }
+
+        Arrays.sort(candidates, 0, n);
+        return n;
+    }
+
+    /**
+     * Per-thread working arrays for {@link #candidates}; reusable across indexes.
+     */
+    public static final class Scratch {
+        int[] counts = new int[0];
+        int[] touched = new int[0];
+        int[] candidates = new int[0];
+
+        /**
+         * Rule positions filled by the last {@link RuleIndex#candidates} call.
+         */
+        public int[] getCandidates() {
+            return candidates;
+        }
+
+        void ensure(int ruleCount) {
+            if (counts.length < ruleCount) {
+                counts = new int[ruleCount];
+                touched = new int[ruleCount];
+                candidates = new int[ruleCount];
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package Fuzzy.Rules;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable state of a RuleBase at one version, published by every change.
+ *
+ * The rules are private copies with unmodifiable antecedent and consequent
+ * maps, so later edits to the RuleBase (or to the Rule objects it hands out)
+ * never show up in a snapshot. Readers take the
+ * current snapshot with one volatile read in {@link RuleBase#snapshot()} and
+ * can use it for as long as they like without locking. The public fields of
+ * the copied rules must not be assigned. Their Sugeno consequents are parsed
+ * once, when the copy is made.
+ */
+public final class RuleSnapshot {
+
+    private final int version;
+    private final List<Rule> rules;
+    private volatile RuleIndex index;
+
+    RuleSnapshot(int version, List<Rule> rules) {
+        this.version = version;
+        this.rules = Collections.unmodifiableList(rules);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * All rules in creation order, including disabled ones.
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Inverted (variable, set) -> rules index of the enabled rules, built on first use.
+     */
+    public RuleIndex getIndex() {
+        RuleIndex idx = index;
+        if (idx == null) {
+            // Racing threads build equal indexes; any of them may win
+            idx = new RuleIndex(rules, version);
+            index = idx;
+        }
+        return idx;
+    }
+}
@@ -0,0 +1,231 @@
+package Fuzzy.Rules;
+
+import Fuzzy.Validation.ValidationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rules in flat primitive arrays, with every name stored once in a string
+ * table: the form models are saved in and loaded from (see Fuzzy.io), and that
+ * engines compile without building a Rule or a String map per rule.
+ *
+ * Each distinct (variable, set) antecedent clause is a pair; the clauses of
+ * rule r are pairs clausePair[clauseStart[r] .. clauseStart[r + 1]) in
+ * antecedent iteration order. A consequent is a variable name and a value (a
+ * set name for Mamdani rules, an expression for Sugeno rules). Immutable.
+ */
+public final class RuleTable {
+
+    private final String[] names;
+    private final int[] pairVariable;
+    private final int[] pairSet;
+
+    private final int[] ids;
+    private final boolean[] enabled;
+    private final double[] weights;
+    private final int[] clauseStart;
+    private final int[] clausePair;
+    private final int[] consequentVariable;
+    private final int[] consequentValue;
+
+    /**
+     * Arrays are taken over, not copied. Name and pair references are checked.
+     */
+    public RuleTable(String[] names, int[] pairVariable, int[] pairSet,
+                     int[] ids, boolean[] enabled, double[] weights,
+                     int[] clauseStart, int[] clausePair,
+                     int[] consequentVariable, int[] consequentValue) {
+        int rules = ids.length;
+        if (pairSet.length != pairVariable.length || enabled.length != rules || weights.length != rules
+                || clauseStart.length != rules + 1 || consequentVariable.length != rules
+                || consequentValue.length != rules) {
+            throw new IllegalArgumentException("Rule table arrays have inconsistent lengths");
+        }
+        if (clauseStart[0] != 0 || clauseStart[rules] != clausePair.length) {
+            throw new IllegalArgumentException("Clause offsets do not cover the clauses");
+        }
+        for (int r = 0; r < rules; r++) {
+            if (clauseStart[r + 1] < clauseStart[r]) {
+                throw new IllegalArgumentException("Clause offsets of rule " + ids[r] + " are decreasing");
+            }
+        }
+        checkRange(pairVariable, names.length, "Name");
+        checkRange(pairSet, names.length, "Name");
+        checkRange(consequentVariable, names.length, "Name");
+        checkRange(consequentValue, names.length, "Name");
+        checkRange(clausePair, pairVariable.length, "Pair");
+
+        this.names = names;
+        this.pairVariable = pairVariable;
+        this.pairSet = pairSet;
+        this.ids = ids;
+        this.enabled = enabled;
+        this.weights = weights;
+        this.clauseStart = clauseStart;
+        this.clausePair = clausePair;
+        this.consequentVariable = consequentVariable;
+        this.consequentValue = consequentValue;
+    }
+
+    private static void checkRange(int[] refs, int size, String what) {
+        for (int ref : refs) {
+            if (ref < 0 || ref >= size) {
+                throw new IllegalArgumentException(what + " reference " + ref + " out of range [0, " + size + ")");
+            }
+        }
+    }
+
+    /**
+     * Flatten rules, keeping their order and the iteration order of their clauses.
+     */
+    public static RuleTable of(List<Rule> rules) {
+        Map<String, Integer> nameIndex = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        Map<Long, Integer> pairIndex = new HashMap<>();
+        List<Integer> pairVariable = new ArrayList<>();
+        List<Integer> pairSet = new ArrayList<>();
+
+        int n = rules.size();
+        int[] ids = new int[n];
+        boolean[] enabled = new boolean[n];
+        double[] weights = new double[n];
+        int[] clauseStart = new int[n + 1];
+        List<Integer> clauses = new ArrayList<>();
+        int[] consequentVariable = new int[n];
+        int[] consequentValue = new int[n];
+
+        for (int r = 0; r < n; r++) {
+            Rule rule = rules.get(r);
+            ids[r] = rule.id;
+            enabled[r] = rule.enabled;
+            weights[r] = rule.weight;
+
+            for (Map.Entry<String, String> clause : rule.antecedent.entrySet()) {
+                int var = intern(clause.getKey(), nameIndex, names);
+                int set = intern(clause.getValue(), nameIndex, names);
+                Integer p = pairIndex.get(((long) var << 32) | set);
+                if (p == null) {
+                    p = pairVariable.size();
+                    pairIndex.put(((long) var << 32) | set, p);
+                    pairVariable.add(var);
+                    pairSet.add(set);
+                }
+                clauses.add(p);
+            }
+            clauseStart[r + 1] = clauses.size();
+
+            if (rule.consequent.size() != 1) {
+                throw new ValidationException("Rule " + rule.id + " must have exactly one consequent");
+            }
+            Map.Entry<String, String> consequent = rule.consequent.entrySet().iterator().next();
+            consequentVariable[r] = intern(consequent.getKey(), nameIndex, names);
+            consequentValue[r] = intern(consequent.getValue(), nameIndex, names);
+        }
+
+        return new RuleTable(names.toArray(new String[0]),
+                pairVariable.stream().mapToInt(Integer::intValue).toArray(),
+                pairSet.stream().mapToInt(Integer::intValue).toArray(),
+                ids, enabled, weights, clauseStart,
+                clauses.stream().mapToInt(Integer::intValue).toArray(),
+                consequentVariable, consequentValue);
+    }
+
+    private static int intern(String name, Map<String, Integer> index, List<String> names) {
+        Integer i = index.get(name);
+        if (i == null) {
+            i = names.size();
+            index.put(name, i);
+            names.add(name);
+        }
+        return i;
+    }
+
+    /**
+     * Rebuild editable Rule objects, e.g. to fill a RuleBase.
+     */
+    public List<Rule> toRules() {
+        List<Rule> rules = new ArrayList<>(ids.length);
+        for (int r = 0; r < ids.length; r++) {
+            Map<String, String> antecedent = new LinkedHashMap<>();
+            for (int c = clauseStart[r]; c < clauseStart[r + 1]; c++) {
+                int p = clausePair[c];
+                antecedent.put(names[pairVariable[p]], names[pairSet[p]]);
+            }
+            Map<String, String> consequent = new LinkedHashMap<>();
+            consequent.put(names[consequentVariable[r]], names[consequentValue[r]]);
+
+            Rule rule = new Rule(ids[r], antecedent, consequent);
+            rule.enabled = enabled[r];
+            rule.weight = weights[r];
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    public int getNameCount() {
+        return names.length;
+    }
+
+    public String getName(int name) {
+        return names[name];
+    }
+
+    public int getPairCount() {
+        return pairVariable.length;
+    }
+
+    /**
+     * Name index of the variable of a (variable, set) pair.
+     */
+    public int getPairVariable(int pair) {
+        return pairVariable[pair];
+    }
+
+    public int getPairSet(int pair) {
+        return pairSet[pair];
+    }
+
+    public int getRuleCount() {
+        return ids.length;
+    }
+
+    public int getClauseCount() {
+        return clausePair.length;
+    }
+
+    public int getId(int rule) {
+        return ids[rule];
+    }
+
+    public boolean isEnabled(int rule) {
+        return enabled[rule];
+    }
+
+    public double getWeight(int rule) {
+        return weights[rule];
+    }
+
+    public int getClauseStart(int rule) {
+        return clauseStart[rule];
+    }
+
+    public int getClauseEnd(int rule) {
+        return clauseStart[rule + 1];
+    }
+
+    public int getClausePair(int clause) {
+        return clausePair[clause];
+    }
+
+    public int getConsequentVariable(int rule) {
+        return consequentVariable[rule];
+    }
+
+    public int getConsequentValue(int rule) {
+        return consequentValue[rule];
+    }
+}
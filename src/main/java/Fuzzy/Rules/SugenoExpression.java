@@ -0,0 +1,263 @@
+package Fuzzy.Rules;
+
+import Fuzzy.Validation.ValidationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsed Sugeno consequent, e.g. {@code 0.5*HeartRate - 2*(Temperature - 98) + 10}.
+ *
+ * Grammar:
+ * <pre>
+ * expr   := term (('+' | '-') term)*
+ * term   := factor ('*' factor)*
+ * factor := ('+' | '-') factor | number | variable | '(' expr ')'
+ * </pre>
+ * The expression is expanded once into a sum of terms, each a coefficient times
+ * a product of input variables (none for a constant), so evaluating it does no
+ * parsing. Instances are immutable.
+ */
+public final class SugenoExpression {
+
+    private final String source;
+    private final double[] coefficients;
+    private final String[][] factors;
+
+    private SugenoExpression(String source, List<Term> terms) {
+        this.source = source;
+        this.coefficients = new double[terms.size()];
+        this.factors = new String[terms.size()][];
+        for (int t = 0; t < terms.size(); t++) {
+            coefficients[t] = terms.get(t).coefficient;
+            factors[t] = terms.get(t).factors.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @throws ValidationException if the expression is malformed
+     */
+    public static SugenoExpression parse(String source) {
+        if (source == null) {
+            throw new ValidationException("Sugeno expression is missing");
+        }
+        Parser p = new Parser(source);
+        List<Term> terms = p.expr();
+        p.skipSpaces();
+        if (p.pos < source.length()) {
+            throw p.error("Unexpected '" + source.charAt(p.pos) + "'");
+        }
+        return new SugenoExpression(source, terms);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getTermCount() {
+        return coefficients.length;
+    }
+
+    public double getCoefficient(int term) {
+        return coefficients[term];
+    }
+
+    /**
+     * Variables multiplied together in a term; empty for a constant term.
+     */
+    public String[] getFactors(int term) {
+        return factors[term].clone();
+    }
+
+    public boolean isConstant() {
+        for (String[] f : factors) {
+            if (f.length > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Variables referenced by the expression, in order of first appearance.
+     */
+    public Set<String> getVariables() {
+        Set<String> vars = new LinkedHashSet<>();
+        for (String[] f : factors) {
+            vars.addAll(Arrays.asList(f));
+        }
+        return Collections.unmodifiableSet(vars);
+    }
+
+    public double evaluate(Map<String, Double> inputs) {
+        double result = 0;
+        for (int t = 0; t < coefficients.length; t++) {
+            double value = coefficients[t];
+            for (String var : factors[t]) {
+                Double x = inputs.get(var);
+                if (x == null) {
+                    throw new ValidationException("Missing crisp input for variable " + var);
+                }
+                value *= x;
+            }
+            result += value;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static final class Term {
+        final double coefficient;
+        final List<String> factors;
+
+        Term(double coefficient, List<String> factors) {
+            this.coefficient = coefficient;
+            this.factors = factors;
+        }
+
+        Term times(Term other) {
+            List<String> f = new ArrayList<>(factors);
+            f.addAll(other.factors);
+            return new Term(coefficient * other.coefficient, f);
+        }
+
+        Term negate() {
+            return new Term(-coefficient, factors);
+        }
+    }
+
+    /**
+     * Recursive descent over the grammar above; every rule returns the
+     * expanded list of terms.
+     */
+    private static final class Parser {
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        List<Term> expr() {
+            List<Term> terms = new ArrayList<>(term());
+            while (true) {
+                skipSpaces();
+                if (accept('+')) {
+                    terms.addAll(term());
+                } else if (accept('-')) {
+                    for (Term t : term()) {
+                        terms.add(t.negate());
+                    }
+                } else {
+                    return terms;
+                }
+            }
+        }
+
+        List<Term> term() {
+            List<Term> product = factor();
+            while (true) {
+                skipSpaces();
+                if (!accept('*')) {
+                    return product;
+                }
+                List<Term> right = factor();
+                List<Term> expanded = new ArrayList<>(product.size() * right.size());
+                for (Term a : product) {
+                    for (Term b : right) {
+                        expanded.add(a.times(b));
+                    }
+                }
+                product = expanded;
+            }
+        }
+
+        List<Term> factor() {
+            skipSpaces();
+            if (pos >= s.length()) {
+                throw error("Unexpected end of expression");
+            }
+            char c = s.charAt(pos);
+            if (accept('+')) {
+                return factor();
+            }
+            if (accept('-')) {
+                List<Term> negated = new ArrayList<>();
+                for (Term t : factor()) {
+                    negated.add(t.negate());
+                }
+                return negated;
+            }
+            if (accept('(')) {
+                List<Term> inner = expr();
+                skipSpaces();
+                if (!accept(')')) {
+                    throw error("Expected ')'");
+                }
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return List.of(new Term(number(), List.of()));
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int start = pos;
+                while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) {
+                    pos++;
+                }
+                return List.of(new Term(1.0, List.of(s.substring(start, pos))));
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        double number() {
+            int start = pos;
+            while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) {
+                pos++;
+            }
+            if (pos < s.length() && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+                int mark = pos++;
+                if (pos < s.length() && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) {
+                    pos++;
+                }
+                if (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                    while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                        pos++;
+                    }
+                } else {
+                    pos = mark;
+                }
+            }
+            String text = s.substring(start, pos);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number '" + text + "'");
+            }
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean accept(char c) {
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        ValidationException error(String message) {
+            return new ValidationException(message + " at position " + pos + " in Sugeno expression \"" + s + "\"");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package Fuzzy.Validation;
 
 import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.SugenoExpression;
 import Fuzzy.variables.LinguisticVariable;
 
 import java.util.Map;
@@ -8,9 +9,18 @@ import java.util.Map;
 public class RuleValidator {
 
     private final Map<String, LinguisticVariable> variables;
+    private final boolean sugeno;
 
     public RuleValidator(Map<String, LinguisticVariable> variables) {
+        this(variables, false);
+    }
+
+    /**
+     * @param sugeno consequents are Sugeno expressions rather than output fuzzy sets
+     */
+    public RuleValidator(Map<String, LinguisticVariable> variables, boolean sugeno) {
         this.variables = variables;
+        this.sugeno = sugeno;
     }
 
     public void validateRule(Rule rule) {
@@ -25,6 +35,10 @@ public class RuleValidator {
         if (rule.consequent == null || rule.consequent.size() != 1) {
             throw new ValidationException("Consequent must contain exactly one clause");
         }
+        if (sugeno) {
+            validateExpression(rule.getSugenoExpression());
+            return;
+        }
         Map.Entry<String, String> cons = rule.consequent.entrySet().iterator().next();
         LinguisticVariable output = getRequiredVariable(cons.getKey());
         getRequiredSet(output, cons.getValue());
@@ -36,6 +50,15 @@ public class RuleValidator {
         }
     }
 
+    /**
+     * Every variable of a Sugeno expression must be a known input.
+     */
+    public void validateExpression(SugenoExpression expression) {
+        for (String var : expression.getVariables()) {
+            getRequiredVariable(var);
+        }
+    }
+
     private LinguisticVariable getRequiredVariable(String name) {
         LinguisticVariable var = variables.get(name);
         if (var == null) {
@@ -0,0 +1,292 @@
+package Fuzzy.concurrent;
+
+import Fuzzy.util.LongIntHashMap;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-patient aggregate of alert levels: samples, samples per band, mean,
+ * maximum (with the time of its first occurrence) and first and last sample
+ * time. Bands are split by ascending limits (33 and 66 give MedicalTrigger's
+ * None, Moderate and High): a value belongs to the first band whose limit it
+ * is below, or to the last band.
+ *
+ * Patients live in dense slots of primitive columns, found through a
+ * {@link LongIntHashMap}; adding a sample is O(1) and allocates only when the
+ * columns grow. Summaries of disjoint parts of a recording merge into the
+ * summary of the whole in any order. Not thread-safe.
+ */
+public final class AlertSummaries {
+
+    private static final int MAGIC = 0x53544C41; // "ALTS"
+
+    private final double[] bandLimits;
+    private final int bands;
+    private final LongIntHashMap slots;
+    private int size;
+    private long[] patientIds;
+    private long[] samples;
+    private long[] bandCounts;
+    private double[] sums;
+    private double[] maxima;
+    private long[] maxTimestamps;
+    private long[] firstTimestamps;
+    private long[] lastTimestamps;
+
+    public AlertSummaries(double... bandLimits) {
+        this(bandLimits, 16);
+    }
+
+    private AlertSummaries(double[] bandLimits, int capacity) {
+        for (int i = 1; i < bandLimits.length; i++) {
+            if (!(bandLimits[i] > bandLimits[i - 1])) {
+                throw new IllegalArgumentException("Band limits must be ascending: " + Arrays.toString(bandLimits));
+            }
+        }
+        this.bandLimits = bandLimits.clone();
+        this.bands = bandLimits.length + 1;
+        this.slots = new LongIntHashMap(capacity, -1);
+        allocate(Math.max(capacity, 1));
+    }
+
+    public double[] getBandLimits() {
+        return bandLimits.clone();
+    }
+
+    public int getBandCount() {
+        return bands;
+    }
+
+    /**
+     * Number of patients.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Slot of a patient for the getters, or -1.
+     */
+    public int indexOf(long patientId) {
+        return slots.get(patientId);
+    }
+
+    public int band(double alert) {
+        int b = 0;
+        while (b < bandLimits.length && !(alert < bandLimits[b])) {
+            b++;
+        }
+        return b;
+    }
+
+    public void add(long patientId, long timestamp, double alert) {
+        int i = slot(patientId);
+        if (samples[i] == 0) {
+            maxima[i] = alert;
+            maxTimestamps[i] = timestamp;
+            firstTimestamps[i] = timestamp;
+            lastTimestamps[i] = timestamp;
+        } else {
+            if (alert > maxima[i] || (alert == maxima[i] && timestamp < maxTimestamps[i])) {
+                maxima[i] = alert;
+                maxTimestamps[i] = timestamp;
+            }
+            firstTimestamps[i] = Math.min(firstTimestamps[i], timestamp);
+            lastTimestamps[i] = Math.max(lastTimestamps[i], timestamp);
+        }
+        samples[i]++;
+        bandCounts[i * bands + band(alert)]++;
+        sums[i] += alert;
+    }
+
+    /**
+     * Add the samples summarised by another instance with the same bands.
+     */
+    public void merge(AlertSummaries other) {
+        if (!Arrays.equals(bandLimits, other.bandLimits)) {
+            throw new IllegalArgumentException("Cannot merge summaries with band limits "
+                    + Arrays.toString(other.bandLimits) + " into " + Arrays.toString(bandLimits));
+        }
+        for (int j = 0; j < other.size; j++) {
+            int i = slot(other.patientIds[j]);
+            if (samples[i] == 0) {
+                maxima[i] = other.maxima[j];
+                maxTimestamps[i] = other.maxTimestamps[j];
+                firstTimestamps[i] = other.firstTimestamps[j];
+                lastTimestamps[i] = other.lastTimestamps[j];
+            } else {
+                if (other.maxima[j] > maxima[i]
+                        || (other.maxima[j] == maxima[i] && other.maxTimestamps[j] < maxTimestamps[i])) {
+                    maxima[i] = other.maxima[j];
+                    maxTimestamps[i] = other.maxTimestamps[j];
+                }
+                firstTimestamps[i] = Math.min(firstTimestamps[i], other.firstTimestamps[j]);
+                lastTimestamps[i] = Math.max(lastTimestamps[i], other.lastTimestamps[j]);
+            }
+            samples[i] += other.samples[j];
+            for (int b = 0; b < bands; b++) {
+                bandCounts[i * bands + b] += other.bandCounts[j * bands + b];
+            }
+            sums[i] += other.sums[j];
+        }
+    }
+
+    public long getPatientId(int index) {
+        return patientIds[index];
+    }
+
+    public long getSamples(int index) {
+        return samples[index];
+    }
+
+    public long getBandSamples(int index, int band) {
+        return bandCounts[index * bands + band];
+    }
+
+    public double getMean(int index) {
+        return sums[index] / samples[index];
+    }
+
+    public double getMax(int index) {
+        return maxima[index];
+    }
+
+    public long getMaxTimestamp(int index) {
+        return maxTimestamps[index];
+    }
+
+    public long getFirstTimestamp(int index) {
+        return firstTimestamps[index];
+    }
+
+    public long getLastTimestamp(int index) {
+        return lastTimestamps[index];
+    }
+
+    /**
+     * One line per patient, in patient id order:
+     * patientId,samples,band0,...,bandN,mean,max,maxTimestamp,firstTimestamp,lastTimestamp
+     */
+    public void writeCsv(Path file) throws IOException {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(patientIds[a], patientIds[b]));
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("patientId,samples");
+            for (int b = 0; b < bands; b++) {
+                out.write(",band" + b);
+            }
+            out.write(",mean,max,maxTimestamp,firstTimestamp,lastTimestamp\n");
+            for (int i : order) {
+                out.write(patientIds[i] + "," + samples[i]);
+                for (int b = 0; b < bands; b++) {
+                    out.write("," + bandCounts[i * bands + b]);
+                }
+                out.write(String.format(Locale.ROOT, ",%.4f,%.4f,%d,%d,%d\n", getMean(i), maxima[i],
+                        maxTimestamps[i], firstTimestamps[i], lastTimestamps[i]));
+            }
+        }
+    }
+
+    /**
+     * Little-endian binary form read back by {@link #fromBytes}: magic,
+     * limit count, limits, patient count, then each column in turn.
+     */
+    byte[] toBytes() {
+        ByteBuffer out = ByteBuffer.allocate(3 * Integer.BYTES + 8 * bandLimits.length + 8 * size * (7 + bands))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(bandLimits.length);
+        out.asDoubleBuffer().put(bandLimits);
+        out.position(out.position() + 8 * bandLimits.length);
+        out.putInt(size);
+        putLongs(out, patientIds, size);
+        putLongs(out, samples, size);
+        putLongs(out, bandCounts, size * bands);
+        out.asDoubleBuffer().put(sums, 0, size).put(maxima, 0, size);
+        out.position(out.position() + 16 * size);
+        putLongs(out, maxTimestamps, size);
+        putLongs(out, firstTimestamps, size);
+        putLongs(out, lastTimestamps, size);
+        return out.array();
+    }
+
+    static AlertSummaries fromBytes(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an alert summary");
+            }
+            double[] limits = new double[in.getInt()];
+            in.asDoubleBuffer().get(limits);
+            in.position(in.position() + 8 * limits.length);
+            int n = in.getInt();
+            if (n < 0 || in.remaining() != 8L * n * (7 + limits.length + 1)) {
+                throw new IOException("Corrupt alert summary");
+            }
+            AlertSummaries s = new AlertSummaries(limits, n);
+            getLongs(in, s.patientIds, n);
+            getLongs(in, s.samples, n);
+            getLongs(in, s.bandCounts, n * s.bands);
+            in.asDoubleBuffer().get(s.sums, 0, n).get(s.maxima, 0, n);
+            in.position(in.position() + 16 * n);
+            getLongs(in, s.maxTimestamps, n);
+            getLongs(in, s.firstTimestamps, n);
+            getLongs(in, s.lastTimestamps, n);
+            for (int i = 0; i < n; i++) {
+                if (s.slots.put(s.patientIds[i], i) >= 0) {
+                    throw new IOException("Corrupt alert summary: patient " + s.patientIds[i] + " twice");
+                }
+            }
+            s.size = n;
+            return s;
+        } catch (BufferUnderflowException | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("Corrupt alert summary", e);
+        }
+    }
+
+    private static void putLongs(ByteBuffer out, long[] values, int n) {
+        out.asLongBuffer().put(values, 0, n);
+        out.position(out.position() + 8 * n);
+    }
+
+    private static void getLongs(ByteBuffer in, long[] values, int n) {
+        in.asLongBuffer().get(values, 0, n);
+        in.position(in.position() + 8 * n);
+    }
+
+    private int slot(long patientId) {
+        int i = slots.get(patientId);
+        if (i < 0) {
+            if (size == patientIds.length) {
+                allocate(size * 2);
+            }
+            i = size++;
+            slots.put(patientId, i);
+            patientIds[i] = patientId;
+        }
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        patientIds = patientIds == null ? new long[capacity] : Arrays.copyOf(patientIds, capacity);
+        samples = samples == null ? new long[capacity] : Arrays.copyOf(samples, capacity);
+        bandCounts = bandCounts == null ? new long[capacity * bands] : Arrays.copyOf(bandCounts, capacity * bands);
+        sums = sums == null ? new double[capacity] : Arrays.copyOf(sums, capacity);
+        maxima = maxima == null ? new double[capacity] : Arrays.copyOf(maxima, capacity);
+        maxTimestamps = maxTimestamps == null ? new long[capacity] : Arrays.copyOf(maxTimestamps, capacity);
+        firstTimestamps = firstTimestamps == null ? new long[capacity] : Arrays.copyOf(firstTimestamps, capacity);
+        lastTimestamps = lastTimestamps == null ? new long[capacity] : Arrays.copyOf(lastTimestamps, capacity);
+    }
+}
@@ -0,0 +1,372 @@
+package Fuzzy.concurrent;
+
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.store.VitalsStore;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Re-scores a recorded {@link VitalsStore} with a compiled model, e.g. after
+ * the rules were edited, into per-patient {@link AlertSummaries}.
+ *
+ * Every store segment is one unit of work. Workers on a fixed pool of
+ * platform threads take the next pending segment from a shared counter, scan
+ * it, and write its summary to the checkpoint directory through a temporary
+ * file, forced to disk, and a rename, so a summary file that exists is
+ * complete even after a crash. A run that is interrupted, cancelled or fails
+ * keeps the finished segments; the next run over the same directory skips
+ * them and merges all summaries at the end.
+ *
+ * The directory records the store, the bands and the model it belongs to, by
+ * its inputs and {@link CompiledModel#fingerprint()}, and a run refuses a
+ * directory of a different job. After editing the rules, use a new directory.
+ */
+public class BackfillJob {
+
+    private static final String MANIFEST = "backfill.properties";
+
+    private final CompiledModel model;
+    private final VitalsStore store;
+    private final Path checkpointDir;
+    private final double[] bandLimits;
+    private final int parallelism;
+
+    private volatile boolean cancelled;
+    private volatile Run run;
+
+    public BackfillJob(CompiledModel model, VitalsStore store, Path checkpointDir, double[] bandLimits,
+                       int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1. Got: " + parallelism);
+        }
+        this.model = model;
+        this.store = store;
+        this.checkpointDir = checkpointDir;
+        this.bandLimits = new AlertSummaries(bandLimits).getBandLimits();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * A job running on all cores.
+     */
+    public BackfillJob(CompiledModel model, VitalsStore store, Path checkpointDir, double... bandLimits) {
+        this(model, store, checkpointDir, bandLimits, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AlertSummaries run() throws IOException, InterruptedException {
+        return run(null, Duration.ZERO);
+    }
+
+    /**
+     * Score every segment without a checkpoint, then merge all checkpoints.
+     *
+     * @param listener Called with the progress at most once per interval from
+     *                 a worker thread, and once at the end; may be null
+     * @return Summaries of the whole store
+     * @throws CancellationException after {@link #cancel()}; finished segments are kept
+     * @throws InterruptedException  if the calling thread is interrupted; finished segments are kept
+     */
+    public AlertSummaries run(Consumer<Progress> listener, Duration interval)
+            throws IOException, InterruptedException {
+        Files.createDirectories(checkpointDir);
+        checkManifest();
+
+        List<Integer> pending = new ArrayList<>();
+        long resumedRows = 0;
+        for (int s = 0; s < store.getSegmentCount(); s++) {
+            if (Files.exists(checkpoint(s))) {
+                resumedRows += store.getSegment(s).getRowCount();
+            } else {
+                pending.add(s);
+            }
+        }
+
+        cancelled = false;
+        Run r = new Run(resumedRows, store.getSegmentCount() - pending.size(), listener, interval);
+        run = r;
+        if (!pending.isEmpty()) {
+            scanAll(r, pending);
+        }
+        if (listener != null) {
+            listener.accept(r.progress(System.nanoTime()));
+        }
+
+        AlertSummaries total = new AlertSummaries(bandLimits);
+        for (int s = 0; s < store.getSegmentCount(); s++) {
+            try {
+                total.merge(AlertSummaries.fromBytes(Files.readAllBytes(checkpoint(s))));
+            } catch (IOException e) {
+                throw new IOException("Unreadable checkpoint " + checkpoint(s) + "; delete it to redo the segment", e);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Stop a running job after the segments in progress; they are kept.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Progress of the current or last run, or null before the first one.
+     */
+    public Progress getProgress() {
+        Run r = run;
+        return r == null ? null : r.progress(System.nanoTime());
+    }
+
+    private void scanAll(Run r, List<Integer> pending) throws IOException, InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, pending.size()));
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int w = 0; w < Math.min(parallelism, pending.size()); w++) {
+                workers.add(executor.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < pending.size()) {
+                        if (cancelled || Thread.currentThread().isInterrupted()) {
+                            return null;
+                        }
+                        scanSegment(r, pending.get(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> f : workers) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            throw e;
+        } catch (ExecutionException e) {
+            // Let the other workers finish their segments before reporting
+            cancelled = true;
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Backfill failed", cause);
+        } finally {
+            executor.shutdown();
+        }
+        if (cancelled) {
+            throw new CancellationException("Backfill cancelled after " + r.segmentsDone.get() + " of "
+                    + store.getSegmentCount() + " segments");
+        }
+    }
+
+    private void scanSegment(Run r, int segment) {
+        AlertSummaries summary = new AlertSummaries(bandLimits);
+        store.scan(model, segment, segment + 1, (seg, from, len, results) -> {
+            for (int i = 0; i < len; i++) {
+                summary.add(seg.patientId(from + i), seg.timestamp(from + i), results[i]);
+            }
+            r.advance(len);
+        });
+
+        Path file = checkpoint(segment);
+        Path tmp = checkpointDir.resolve(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(summary.toBytes());
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                // Otherwise a crash can leave the renamed checkpoint empty or partial
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        r.segmentsDone.incrementAndGet();
+    }
+
+    private Path checkpoint(int segment) {
+        return checkpointDir.resolve(String.format(Locale.ROOT, "segment-%06d.sum", segment));
+    }
+
+    private void checkManifest() throws IOException {
+        Properties expected = new Properties();
+        expected.setProperty("store.file", String.valueOf(store.getFile().toAbsolutePath()));
+        expected.setProperty("store.rows", String.valueOf(store.getRowCount()));
+        expected.setProperty("store.segmentRows", String.valueOf(store.getSegmentRows()));
+        expected.setProperty("store.columns", String.join(",", store.getColumnNames()));
+        expected.setProperty("model.inputs", String.join(",", model.getInputNames()));
+        expected.setProperty("model.fingerprint", model.fingerprint());
+        expected.setProperty("bands", Arrays.toString(bandLimits));
+
+        Path file = checkpointDir.resolve(MANIFEST);
+        if (!Files.exists(file)) {
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                expected.store(out, "Backfill checkpoint");
+            }
+            return;
+        }
+        Properties found = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            found.load(in);
+        }
+        for (String key : expected.stringPropertyNames()) {
+            if (!expected.getProperty(key).equals(found.getProperty(key))) {
+                throw new IOException("Checkpoint directory " + checkpointDir + " belongs to another backfill: "
+                        + key + " is " + found.getProperty(key) + ", expected " + expected.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * Counters of one run, updated by the workers.
+     */
+    private final class Run {
+        final long resumedRows;
+        final int resumedSegments;
+        final long startNanos = System.nanoTime();
+        final AtomicLong rowsDone = new AtomicLong();
+        final AtomicInteger segmentsDone;
+        final Consumer<Progress> listener;
+        final long intervalNanos;
+        final AtomicLong nextReport;
+
+        Run(long resumedRows, int resumedSegments, Consumer<Progress> listener, Duration interval) {
+            this.resumedRows = resumedRows;
+            this.resumedSegments = resumedSegments;
+            this.segmentsDone = new AtomicInteger(resumedSegments);
+            this.listener = listener;
+            this.intervalNanos = interval.toNanos();
+            this.nextReport = new AtomicLong(startNanos + intervalNanos);
+        }
+
+        void advance(int rows) {
+            rowsDone.addAndGet(rows);
+            if (listener == null) return;
+            long now = System.nanoTime();
+            long due = nextReport.get();
+            // One worker per interval wins the report
+            if (now - due >= 0 && nextReport.compareAndSet(due, now + intervalNanos)) {
+                listener.accept(progress(now));
+            }
+        }
+
+        Progress progress(long now) {
+            return new Progress(resumedRows + rowsDone.get(), store.getRowCount(), rowsDone.get(),
+                    segmentsDone.get(), store.getSegmentCount(), Duration.ofNanos(now - startNanos));
+        }
+    }
+
+    /**
+     * Rows done and throughput of a run. Throughput and the estimates count
+     * only rows scored by this run, not the ones resumed from checkpoints.
+     */
+    public static final class Progress {
+        private final long rowsDone;
+        private final long totalRows;
+        private final long rowsThisRun;
+        private final int segmentsDone;
+        private final int segmentCount;
+        private final Duration elapsed;
+
+        Progress(long rowsDone, long totalRows, long rowsThisRun, int segmentsDone, int segmentCount,
+                 Duration elapsed) {
+            this.rowsDone = rowsDone;
+            this.totalRows = totalRows;
+            this.rowsThisRun = rowsThisRun;
+            this.segmentsDone = segmentsDone;
+            this.segmentCount = segmentCount;
+            this.elapsed = elapsed;
+        }
+
+        public long getRowsDone() {
+            return rowsDone;
+        }
+
+        public long getTotalRows() {
+            return totalRows;
+        }
+
+        public int getSegmentsDone() {
+            return segmentsDone;
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public double getFraction() {
+            return totalRows == 0 ? 1 : (double) rowsDone / totalRows;
+        }
+
+        public double getRowsPerSecond() {
+            long nanos = elapsed.toNanos();
+            return nanos == 0 ? 0 : rowsThisRun * 1e9 / nanos;
+        }
+
+        /**
+         * Time left at the current throughput, or null before any row was scored.
+         */
+        public Duration getRemaining() {
+            if (rowsDone >= totalRows) {
+                return Duration.ZERO;
+            }
+            double rate = getRowsPerSecond();
+            return rate == 0 ? null : Duration.ofNanos((long) ((totalRows - rowsDone) / rate * 1e9));
+        }
+
+        /**
+         * Projected completion time, or null before any row was scored.
+         */
+        public Instant getEstimatedCompletion() {
+            Duration remaining = getRemaining();
+            return remaining == null ? null : Instant.now().plus(remaining);
+        }
+
+        @Override
+        public String toString() {
+            Duration remaining = getRemaining();
+            return String.format(Locale.ROOT, "%d/%d rows (%.1f%%), %d/%d segments, %.0f rows/s, %s",
+                    rowsDone, totalRows, 100 * getFraction(), segmentsDone, segmentCount, getRowsPerSecond(),
+                    remaining == null ? "no estimate yet" : "done in " + remaining.toSeconds() + " s at "
+                            + getEstimatedCompletion());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package Fuzzy.concurrent;
+
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.InferenceEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Scores a whole patient cohort in parallel.
+ *
+ * Thread safety: one instance can be shared by any number of threads, and the
+ * rule base may be edited concurrently through RuleEditor. Each call evaluates
+ * an immutable {@link CompiledModel} compiled from one RuleSnapshot and
+ * recompiled when {@link RuleBase#getVersion()} moves, so a call never sees
+ * a half-applied edit. The linguistic variables must not change while the
+ * evaluator is in use.
+ *
+ * Rows are split into chunks that run on a ForkJoinPool or on virtual threads.
+ * At most {@code parallelism} chunks run at once, each with a batch workspace
+ * borrowed from a fixed pool, so scoring does not allocate per row or per chunk.
+ */
+public class CohortEvaluator implements AutoCloseable {
+
+    public enum Mode { FORK_JOIN, VIRTUAL_THREADS }
+
+    // Chunks per worker: enough to balance uneven chunks without much scheduling overhead
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final InferenceEngine engine;
+    private final RuleBase ruleBase;
+    private final String[] inputOrder;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    private volatile Snapshot snapshot;
+
+    public CohortEvaluator(InferenceEngine engine, RuleBase ruleBase, int parallelism, Mode mode,
+                           String... inputOrder) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1. Got: " + parallelism);
+        }
+        this.engine = engine;
+        this.ruleBase = ruleBase;
+        this.inputOrder = inputOrder.clone();
+        this.parallelism = parallelism;
+        this.executor = mode == Mode.FORK_JOIN
+                ? new ForkJoinPool(parallelism)
+                : Executors.newVirtualThreadPerTaskExecutor();
+        this.snapshot = compile();
+    }
+
+    public CohortEvaluator(InferenceEngine engine, RuleBase ruleBase, String... inputOrder) {
+        this(engine, ruleBase, Runtime.getRuntime().availableProcessors(), Mode.FORK_JOIN, inputOrder);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * The compiled model for the current rule base version.
+     */
+    public CompiledModel getModel() {
+        return current().model;
+    }
+
+    /**
+     * Score rows [0, rows) of column-wise inputs (columns[input][row], in
+     * {@link CompiledModel#getInputNames()} order) into results[row].
+     */
+    public void evaluate(double[][] columns, double[] results, int rows) {
+        Snapshot s = current();
+        if (rows <= CompiledModel.BATCH_BLOCK || parallelism == 1) {
+            runChunk(s, columns, results, 0, rows);
+            return;
+        }
+
+        int chunks = parallelism * CHUNKS_PER_WORKER;
+        int chunkSize = (rows + chunks - 1) / chunks;
+        // Keep chunk boundaries on whole batch blocks
+        chunkSize = (chunkSize + CompiledModel.BATCH_BLOCK - 1) / CompiledModel.BATCH_BLOCK * CompiledModel.BATCH_BLOCK;
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows; from += chunkSize) {
+            int start = from;
+            int end = Math.min(rows, from + chunkSize);
+            tasks.add(() -> {
+                runChunk(s, columns, results, start, end);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cohort evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Cohort evaluation failed", cause);
+        }
+    }
+
+    /**
+     * Score row-wise samples (samples[row][input]).
+     */
+    public double[] evaluate(double[][] samples) {
+        int inputs = current().model.getInputCount();
+        double[][] columns = new double[inputs][samples.length];
+        for (int row = 0; row < samples.length; row++) {
+            if (samples[row].length != inputs) {
+                throw new ValidationException("Row " + row + " has " + samples[row].length
+                        + " inputs, expected " + inputs);
+            }
+            for (int i = 0; i < inputs; i++) {
+                columns[i][row] = samples[row][i];
+            }
+        }
+        double[] results = new double[samples.length];
+        evaluate(columns, results, samples.length);
+        return results;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void runChunk(Snapshot s, double[][] columns, double[] results, int from, int to) {
+        double[] workspace;
+        try {
+            workspace = s.workspaces.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cohort evaluation interrupted", e);
+        }
+        try {
+            s.model.evaluateBatch(columns, results, from, to, workspace);
+        } finally {
+            s.workspaces.offer(workspace);
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s.version != ruleBase.getVersion()) {
+            synchronized (this) {
+                s = snapshot;
+                if (s.version != ruleBase.getVersion()) {
+                    s = compile();
+                    snapshot = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    private Snapshot compile() {
+        CompiledModel model = engine.compile(ruleBase, inputOrder);
+        return new Snapshot(model.getVersion(), model, parallelism);
+    }
+
+    private static final class Snapshot {
+        final int version;
+        final CompiledModel model;
+        final BlockingQueue<double[]> workspaces;
+
+        Snapshot(int version, CompiledModel model, int parallelism) {
+            this.version = version;
+            this.model = model;
+            // One extra for a caller thread that runs a small batch inline
+            this.workspaces = new ArrayBlockingQueue<>(parallelism + 1);
+            for (int i = 0; i <= parallelism; i++) {
+                workspaces.add(model.newBatchWorkspace());
+            }
+        }
+    }
+}
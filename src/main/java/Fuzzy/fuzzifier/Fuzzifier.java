@@ -35,7 +35,9 @@ public class Fuzzifier {
 
             Map<String, Double> memberships = new HashMap<>();
             for (FuzzySet fs : lv.getSets().values()) {
-                memberships.put(fs.getName(), fs.getMembership(clampedValue));
+                // Outside the support the membership is 0 without evaluating the MF
+                double μ = fs.getMF().inSupport(clampedValue) ? fs.getMembership(clampedValue) : 0.0;
+                memberships.put(fs.getName(), μ);
             }
 
             fuzzified.put(varName, memberships);
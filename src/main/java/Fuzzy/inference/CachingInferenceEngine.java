@@ -0,0 +1,297 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * Memoizing front for another engine, for inputs that come from discrete sensors.
+ *
+ * Each input is rounded to its resolution (e.g. 1 bpm, 0.1°F) and the output is
+ * evaluated at the rounded point and cached, so equal readings cost a hash
+ * lookup. A resolution of 0 keeps the input exact. Non-finite inputs and input
+ * maps that do not match the configured inputs bypass the cache.
+ *
+ * The cache is bounded: entries are spread over lock-striped segments, each
+ * evicting its least recently used entry when full. It is dropped as a whole
+ * when the RuleBase version changes (every RuleEditor mutation) or another
+ * RuleBase is evaluated. Misses are computed with a model compiled from the
+ * delegate, so cached and uncached results are identical for the rounded
+ * inputs. Safe to share between threads.
+ */
+public class CachingInferenceEngine implements InferenceEngine {
+
+    private static final int SEGMENTS = 16;
+
+    private final InferenceEngine delegate;
+    private final String[] inputNames;
+    private final double[] resolutions;
+    // 1 / resolution when that is a whole number (0.1 -> 10), else 0
+    private final double[] scales;
+    private final int segmentCapacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final ThreadLocal<Probe> probes;
+    private volatile Generation generation;
+    private volatile ToDoubleBiFunction<CompiledModel, double[]> missEvaluator;
+
+    /**
+     * @param resolutions rounding step per input variable; its iteration order is
+     *                    the order of the double[] inputs of {@link #evaluate(RuleBase, double[])}
+     * @param capacity    maximum number of cached results (at least one per segment)
+     */
+    public CachingInferenceEngine(InferenceEngine delegate, Map<String, Double> resolutions, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be >= 1. Got: " + capacity);
+        }
+        this.delegate = delegate;
+        this.inputNames = resolutions.keySet().toArray(new String[0]);
+        this.resolutions = new double[inputNames.length];
+        this.scales = new double[inputNames.length];
+        for (int i = 0; i < inputNames.length; i++) {
+            double res = resolutions.get(inputNames[i]);
+            if (!(res >= 0) || Double.isInfinite(res)) {
+                throw new IllegalArgumentException(
+                        "Resolution of " + inputNames[i] + " must be finite and >= 0. Got: " + res);
+            }
+            this.resolutions[i] = res;
+            double scale = Math.rint(1 / res);
+            if (res > 0 && scale >= 1 && Math.abs(1 / res - scale) < 1e-9 * scale) {
+                scales[i] = scale;
+            }
+        }
+        this.segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        this.probes = ThreadLocal.withInitial(() -> new Probe(inputNames.length));
+    }
+
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Compute cache misses with this function instead of
+     * {@link CompiledModel#evaluate(double[])}, e.g. to record them; null
+     * restores the default.
+     */
+    public void setMissEvaluator(ToDoubleBiFunction<CompiledModel, double[]> missEvaluator) {
+        this.missEvaluator = missEvaluator;
+    }
+
+    @Override
+    public double evaluate(Map<String, Double> inputs, RuleBase base) {
+        if (inputs.size() != inputNames.length) {
+            return delegate.evaluate(inputs, base);
+        }
+        Probe probe = probes.get();
+        for (int i = 0; i < inputNames.length; i++) {
+            Double x = inputs.get(inputNames[i]);
+            if (x == null) {
+                return delegate.evaluate(inputs, base);
+            }
+            probe.values[i] = x;
+        }
+        return lookup(base, probe, inputs);
+    }
+
+    /**
+     * Evaluate crisp inputs given in {@link #getInputNames()} order.
+     */
+    public double evaluate(RuleBase base, double[] inputs) {
+        if (inputs.length != inputNames.length) {
+            throw new ValidationException("Expected " + inputNames.length + " inputs, got " + inputs.length);
+        }
+        Probe probe = probes.get();
+        System.arraycopy(inputs, 0, probe.values, 0, inputs.length);
+        return lookup(base, probe, null);
+    }
+
+    @Override
+    public CompiledModel compile(RuleBase base, String... inputOrder) {
+        return delegate.compile(base, inputOrder);
+    }
+
+    @Override
+    public CompiledModel compile(RuleTable rules, String... inputOrder) {
+        return delegate.compile(rules, inputOrder);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int size() {
+        Generation g = generation;
+        if (g == null) return 0;
+        int size = 0;
+        for (Segment s : g.segments) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        generation = null;
+    }
+
+    private double lookup(RuleBase base, Probe probe, Map<String, Double> original) {
+        double[] values = probe.values;
+        for (double x : values) {
+            if (!Double.isFinite(x)) {
+                return original != null ? delegate.evaluate(original, base) : compute(current(base).model, values);
+            }
+        }
+
+        long[] key = probe.key;
+        int hash = 1;
+        for (int i = 0; i < values.length; i++) {
+            double x = values[i];
+            double res = resolutions[i];
+            if (scales[i] > 0) {
+                // Divide by the whole-number scale so 983 -> 98.3 exactly as parsed from a reading
+                long q = Math.round(x * scales[i]);
+                key[i] = q;
+                values[i] = q / scales[i];
+            } else if (res > 0) {
+                long q = Math.round(x / res);
+                key[i] = q;
+                values[i] = q * res;
+            } else {
+                key[i] = Double.doubleToLongBits(x);
+            }
+            hash = 31 * hash + Long.hashCode(key[i]);
+        }
+        probe.hash = hash ^ (hash >>> 16);
+
+        Generation g = current(base);
+        Segment segment = g.segments[probe.hash & (SEGMENTS - 1)];
+        Double cached;
+        synchronized (segment) {
+            cached = segment.get(probe);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        double result = compute(g.model, values);
+        synchronized (segment) {
+            segment.put(new Key(key.clone(), probe.hash), result);
+        }
+        return result;
+    }
+
+    private double compute(CompiledModel model, double[] values) {
+        ToDoubleBiFunction<CompiledModel, double[]> f = missEvaluator;
+        return f != null ? f.applyAsDouble(model, values) : model.evaluate(values);
+    }
+
+    private Generation current(RuleBase base) {
+        Generation g = generation;
+        if (g == null || g.base != base || g.version != base.getVersion()) {
+            synchronized (this) {
+                g = generation;
+                if (g == null || g.base != base || g.version != base.getVersion()) {
+                    CompiledModel model = delegate.compile(base, inputNames);
+                    g = new Generation(base, model.getVersion(), model);
+                    generation = g;
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Cache contents for one RuleBase version.
+     */
+    private final class Generation {
+        final RuleBase base;
+        final int version;
+        final CompiledModel model;
+        final Segment[] segments = new Segment[SEGMENTS];
+
+        Generation(RuleBase base, int version, CompiledModel model) {
+            this.base = base;
+            this.version = version;
+            this.model = model;
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment();
+            }
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Double> {
+        private static final long serialVersionUID = 1L;
+
+        Segment() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Quantized inputs. A Probe is a per-thread Key that is refilled for every
+     * lookup, so cache hits do not allocate.
+     */
+    private static class Key {
+        final long[] key;
+        int hash;
+
+        Key(long[] key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(key, ((Key) o).key);
+        }
+    }
+
+    private static final class Probe extends Key {
+        final double[] values;
+
+        Probe(int inputs) {
+            super(new long[inputs], 0);
+            this.values = new double[inputs];
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package Fuzzy.inference;
+
+/**
+ * How {@link MamdaniEngine} computes the centroid of the aggregated output.
+ */
+public enum CentroidMode {
+    /** Sum over an evenly sampled grid of the output domain. */
+    SAMPLED,
+    /**
+     * Integrate the exact piecewise-linear output. Used when the S-norm is max
+     * and every output set is a triangle or trapezoid; otherwise falls back to SAMPLED.
+     */
+    ANALYTIC
+}
@@ -0,0 +1,454 @@
+package Fuzzy.inference;
+
+import Fuzzy.Validation.ValidationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Just enough of the class file format for {@link KernelGenerator}: a
+ * constant pool, fields, and methods whose code only branches to points where
+ * the operand stack is empty and every local holds its declared type. Each
+ * branch target then gets the same full stack map frame, so no type inference
+ * is needed.
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Opcodes used by the generator
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int DALOAD = 0x31;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int DASTORE = 0x52;
+    static final int POP = 0x57;
+    static final int DUP_X2 = 0x5b;
+    static final int IADD = 0x60;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int IINC = 0x84;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPGE = 0xa2;
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+
+    // Verification types of stack map frames
+    static final int TYPE_INT = 1;
+    static final int TYPE_DOUBLE = 3;
+    static final int TYPE_OBJECT = 7;
+
+    private static final int CLASS_VERSION = 65; // Java 21
+    private static final int MAX_POOL = 0xffff;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    int getThisClass() {
+        return thisClass;
+    }
+
+    /**
+     * Constant pool entries used so far; the pool holds at most 65535.
+     */
+    int getPoolCount() {
+        return poolCount;
+    }
+
+    // ---- Constant pool ----
+
+    int utf8(String s) {
+        return constant("U" + s, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(s);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int intConstant(int v) {
+        return constant("I" + v, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(v);
+        });
+    }
+
+    int doubleConstant(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        return constant("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int cls = classRef(owner);
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        int nameAndType = constant("N" + name + ' ' + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+        return constant(tag + owner + '.' + name + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(cls);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, int slots, Entry entry) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (poolCount + slots > MAX_POOL) {
+            throw new ValidationException("Model too large to generate code for: constant pool is full");
+        }
+        try {
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        index = poolCount;
+        poolCount += slots;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    // ---- Members ----
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Start the code of a method; {@link Code#end()} adds it to the class.
+     *
+     * @param frameLocals verification types of all locals, as stack map frame
+     *                    entries (an object type is followed by its class index)
+     */
+    Code method(int access, String name, String descriptor, int maxLocals, int... frameLocals) {
+        return new Code(access, name, descriptor, maxLocals, frameLocals);
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int i : interfaces) {
+                out.writeShort(i);
+            }
+            out.writeShort(fields.size());
+            for (byte[] f : fields) {
+                out.write(f);
+            }
+            out.writeShort(methods.size());
+            for (byte[] m : methods) {
+                out.write(m);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Branch target. Branches to a label must leave the operand stack empty.
+     */
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    /**
+     * Bytecode of one method under construction.
+     */
+    final class Code {
+        // HotSpot leaves methods longer than 8000 bytes interpreted (DontCompileHugeMethods)
+        static final int MAX_LENGTH = 8000;
+        private static final int MAX_STACK = 16;
+
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final int maxLocals;
+        private final int[] frameLocals;
+        private byte[] code = new byte[1024];
+        private int length;
+        private final TreeSet<Integer> targets = new TreeSet<>();
+        private final List<Label> labels = new ArrayList<>();
+
+        private Code(int access, String name, String descriptor, int maxLocals, int[] frameLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+            this.frameLocals = frameLocals;
+        }
+
+        int length() {
+            return length;
+        }
+
+        Code op(int opcode) {
+            return u1(opcode);
+        }
+
+        Code op(int opcode, int u2) {
+            return u1(opcode).u2(u2);
+        }
+
+        Code local(int opcode, int index) {
+            return u1(opcode).u1(index);
+        }
+
+        Code iinc(int index, int delta) {
+            if (index <= 0xff && delta == (byte) delta) {
+                return u1(IINC).u1(index).u1(delta);
+            }
+            // Not wide iinc: HotSpot's interpreter reads 4 bytes for its 2-byte
+            // constant, past the end of a method that ends right after it
+            return local(ILOAD, index).pushInt(delta).op(IADD).local(ISTORE, index);
+        }
+
+        Code pushInt(int v) {
+            if (v >= -1 && v <= 5) {
+                return u1(ICONST_0 + v);
+            }
+            if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                return u1(BIPUSH).u1(v);
+            }
+            if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                return u1(SIPUSH).u2(v);
+            }
+            return op(LDC_W, intConstant(v));
+        }
+
+        Code pushDouble(double v) {
+            if (Double.doubleToRawLongBits(v) == 0L) {
+                return u1(DCONST_0);
+            }
+            if (v == 1.0) {
+                return u1(DCONST_1);
+            }
+            return op(LDC2_W, doubleConstant(v));
+        }
+
+        Code invokeInterface(int methodRef, int argSlots) {
+            return u1(INVOKEINTERFACE).u2(methodRef).u1(argSlots + 1).u1(0);
+        }
+
+        Code branch(int opcode, Label target) {
+            target.branches.add(length);
+            if (!labels.contains(target)) {
+                labels.add(target);
+            }
+            return u1(opcode).u2(0);
+        }
+
+        Code mark(Label label) {
+            label.position = length;
+            targets.add(length);
+            if (!labels.contains(label)) {
+                labels.add(label);
+            }
+            return this;
+        }
+
+        /**
+         * Resolve the branches and add the method to the class.
+         */
+        void end() {
+            if (length > MAX_LENGTH) {
+                throw new IllegalStateException("Method " + name + " is " + length + " bytes long");
+            }
+            for (Label label : labels) {
+                if (label.position < 0) {
+                    throw new IllegalStateException("Unplaced label in " + name);
+                }
+                for (int at : label.branches) {
+                    int offset = label.position - at;
+                    if (offset != (short) offset) {
+                        throw new IllegalStateException("Branch too long in " + name);
+                    }
+                    code[at + 1] = (byte) (offset >> 8);
+                    code[at + 2] = (byte) offset;
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                byte[] frames = stackMapTable();
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length + (frames == null ? 0 : 6 + frames.length));
+                out.writeShort(MAX_STACK);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(0);
+                if (frames == null) {
+                    out.writeShort(0);
+                } else {
+                    out.writeShort(1);
+                    out.writeShort(utf8("StackMapTable"));
+                    out.writeInt(frames.length);
+                    out.write(frames);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+
+        /**
+         * One full_frame per branch target, all with the declared locals and an empty stack.
+         */
+        private byte[] stackMapTable() throws IOException {
+            if (targets.isEmpty()) {
+                return null;
+            }
+            int localCount = 0;
+            for (int i = 0; i < frameLocals.length; i++) {
+                localCount++;
+                if (frameLocals[i] == TYPE_OBJECT) i++;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(targets.size());
+            int previous = -1;
+            for (int target : targets) {
+                out.writeByte(255);
+                out.writeShort(target - previous - 1);
+                out.writeShort(localCount);
+                for (int i = 0; i < frameLocals.length; i++) {
+                    out.writeByte(frameLocals[i]);
+                    if (frameLocals[i] == TYPE_OBJECT) {
+                        out.writeShort(frameLocals[++i]);
+                    }
+                }
+                out.writeShort(0);
+                previous = target;
+            }
+            return bytes.toByteArray();
+        }
+
+        private Code u1(int v) {
+            ensure(1);
+            code[length++] = (byte) v;
+            return this;
+        }
+
+        private Code u2(int v) {
+            ensure(2);
+            code[length++] = (byte) (v >> 8);
+            code[length++] = (byte) v;
+            return this;
+        }
+
+        private void ensure(int n) {
+            if (length + n > code.length) {
+                byte[] grown = new byte[Math.max(code.length * 2, length + n)];
+                System.arraycopy(code, 0, grown, 0, length);
+                code = grown;
+            }
+        }
+    }
+}
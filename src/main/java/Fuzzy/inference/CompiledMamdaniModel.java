@@ -0,0 +1,480 @@
+package Fuzzy.inference;
+
+import Fuzzy.Defuzzy.DefuzzificationMethod;
+import Fuzzy.Defuzzy.PiecewiseLinearCentroid;
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleSnapshot;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.SNorm;
+import Fuzzy.operator.TNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled counterpart of {@link MamdaniEngine}: clip each rule's output set at
+ * its firing strength, aggregate on a sampled grid and defuzzify it with the
+ * engine's {@link DefuzzificationMethod}, or integrate the exact centroid when
+ * the engine uses {@link CentroidMode#ANALYTIC}.
+ *
+ * A model compiled with {@link MamdaniEngine#compileOutputs} has several output
+ * variables. Its rules are grouped by output, each output aggregates only its
+ * own rules, and {@link #evaluateOutputs(double[], double[])} fuzzifies and
+ * fires the antecedents once for all of them. The single-output methods
+ * ({@link #evaluate(double[])}, incremental contexts, traces) report the first
+ * output.
+ */
+public final class CompiledMamdaniModel extends CompiledModel {
+
+    private final SNorm orOperator;
+    private final DefuzzificationMethod defuzzifier;
+    private final Output[] outputs;
+    private final int[] ruleOutputSet;
+    private final int scratchSize;
+
+    /**
+     * Grid, set tables and centroid calculator of one output variable, and the
+     * compiled rules [ruleStart, ruleEnd) that conclude on it.
+     */
+    private static final class Output {
+        final String name;
+        final double min;
+        final double max;
+        final double[] xs;
+        final FuzzySet[] sets;
+        final double[][] tables;
+        final int[] start;
+        final int[] end;
+        final PiecewiseLinearCentroid analytic;
+        final boolean byHeight;
+        final int ruleStart;
+        final int ruleEnd;
+
+        Output(OutputTable table, boolean analytic, boolean byHeight, int ruleStart, int ruleEnd) {
+            this.name = table.variable.getName();
+            this.min = table.variable.getMin();
+            this.max = table.variable.getMax();
+            this.xs = table.xs;
+            this.sets = table.sets;
+            this.tables = table.tables;
+            this.start = table.start;
+            this.end = table.end;
+            this.analytic = analytic ? table.analytic : null;
+            this.byHeight = byHeight;
+            this.ruleStart = ruleStart;
+            this.ruleEnd = ruleEnd;
+        }
+
+        /**
+         * [per-set heights | centroid workspace] when analytic, otherwise the
+         * grid followed by the per-set heights when aggregating by height.
+         */
+        int scratchSize() {
+            if (analytic != null) {
+                return tables.length + analytic.workspaceSize();
+            }
+            return xs.length + (byHeight ? tables.length : 0);
+        }
+    }
+
+    private CompiledMamdaniModel(Builder b, TNorm andOp, SNorm orOp, DefuzzificationMethod defuzzifier,
+                                 OutputTable[] tables, int[] outputRuleStart, int[] ruleOutputSet,
+                                 boolean analytic) {
+        super(b, andOp);
+        this.orOperator = orOp;
+        this.defuzzifier = defuzzifier;
+        this.outputs = new Output[tables.length];
+        int scratch = 0;
+        for (int o = 0; o < tables.length; o++) {
+            // analytic is only requested with max aggregation; the variable must also be piecewise linear
+            outputs[o] = new Output(tables[o], analytic && tables[o].analytic != null,
+                    orOp instanceof MaxSNorm, outputRuleStart[o], outputRuleStart[o + 1]);
+            scratch = Math.max(scratch, outputs[o].scratchSize());
+        }
+        this.ruleOutputSet = ruleOutputSet;
+        this.scratchSize = scratch;
+    }
+
+    /**
+     * Compile for the outputs of the given tables. With one table and
+     * byVariable false every rule concludes on it, as in single-output mode;
+     * otherwise each rule goes to the table of its consequent variable and
+     * rules concluding on no table are left out.
+     */
+    static CompiledMamdaniModel compile(RuleSnapshot snapshot, Map<String, LinguisticVariable> variables,
+                                        TNorm andOp, SNorm orOp, DefuzzificationMethod defuzzifier,
+                                        OutputTable[] tables, boolean byVariable,
+                                        boolean analytic, boolean generate, String... inputOrder) {
+        Builder b = new Builder(variables, inputOrder, false);
+        b.generate = generate;
+        List<Rule> rules = b.rules(snapshot);
+        int[] ruleOutput = new int[rules.size()];
+        for (int i = 0; i < ruleOutput.length; i++) {
+            ruleOutput[i] = byVariable ? indexOf(tables, rules.get(i).consequent.keySet().iterator().next()) : 0;
+        }
+
+        List<Integer> ruleOutputSet = new ArrayList<>();
+        int[] outputRuleStart = new int[tables.length + 1];
+        for (int o = 0; o < tables.length; o++) {
+            OutputTable table = tables[o];
+            for (int i = 0; i < ruleOutput.length; i++) {
+                Rule rule = rules.get(i);
+                if (ruleOutput[i] != o || !b.addRule(rule)) continue;
+
+                String setName = rule.consequent.values().iterator().next();
+                int s = table.indexOf(setName);
+                if (s < 0) {
+                    throw new ValidationException(
+                            "Variable " + table.variable.getName() + " missing fuzzy set " + setName);
+                }
+                ruleOutputSet.add(s);
+            }
+            outputRuleStart[o + 1] = ruleOutputSet.size();
+        }
+
+        return new CompiledMamdaniModel(b, andOp, orOp, defuzzifier, tables, outputRuleStart,
+                ruleOutputSet.stream().mapToInt(Integer::intValue).toArray(), analytic);
+    }
+
+    static CompiledMamdaniModel compile(RuleTable rules, Map<String, LinguisticVariable> variables,
+                                        TNorm andOp, SNorm orOp, DefuzzificationMethod defuzzifier,
+                                        OutputTable[] tables, boolean byVariable,
+                                        boolean analytic, boolean generate, String... inputOrder) {
+        Builder b = new Builder(variables, inputOrder, false);
+        b.generate = generate;
+        int[] pairSets = Builder.newPairSets(rules);
+        // Output of each consequent variable name and set of each consequent value, resolved once
+        int[] nameOutputs = new int[rules.getNameCount()];
+        int[] nameSets = new int[rules.getNameCount()];
+        Arrays.fill(nameOutputs, -2);
+
+        List<Integer> ruleOutputSet = new ArrayList<>();
+        int[] outputRuleStart = new int[tables.length + 1];
+        for (int o = 0; o < tables.length; o++) {
+            OutputTable table = tables[o];
+            Arrays.fill(nameSets, -2);
+            for (int r = 0; r < rules.getRuleCount(); r++) {
+                if (byVariable) {
+                    int var = rules.getConsequentVariable(r);
+                    if (nameOutputs[var] == -2) {
+                        nameOutputs[var] = indexOf(tables, rules.getName(var));
+                    }
+                    if (nameOutputs[var] != o) continue;
+                }
+                if (!b.addRule(rules, r, pairSets)) continue;
+
+                int name = rules.getConsequentValue(r);
+                if (nameSets[name] == -2) {
+                    nameSets[name] = table.indexOf(rules.getName(name));
+                }
+                if (nameSets[name] < 0) {
+                    throw new ValidationException(
+                            "Variable " + table.variable.getName() + " missing fuzzy set " + rules.getName(name));
+                }
+                ruleOutputSet.add(nameSets[name]);
+            }
+            outputRuleStart[o + 1] = ruleOutputSet.size();
+        }
+
+        return new CompiledMamdaniModel(b, andOp, orOp, defuzzifier, tables, outputRuleStart,
+                ruleOutputSet.stream().mapToInt(Integer::intValue).toArray(), analytic);
+    }
+
+    private static int indexOf(OutputTable[] tables, String varName) {
+        for (int o = 0; o < tables.length; o++) {
+            if (tables[o].variable.getName().equals(varName)) {
+                return o;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Name of the first output.
+     */
+    public String getOutputName() {
+        return outputs[0].name;
+    }
+
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Output variable names in the order of {@link #evaluateOutputs} results.
+     */
+    public String[] getOutputNames() {
+        String[] names = new String[outputs.length];
+        for (int o = 0; o < outputs.length; o++) {
+            names[o] = outputs[o].name;
+        }
+        return names;
+    }
+
+    /**
+     * Evaluate every output using a workspace owned by the calling thread.
+     */
+    public void evaluateOutputs(double[] inputs, double[] results) {
+        evaluateOutputs(inputs, results, workspace());
+    }
+
+    /**
+     * Evaluate every output: results[o] receives output o of
+     * {@link #getOutputNames()}. The antecedents are evaluated once for all outputs.
+     */
+    public void evaluateOutputs(double[] inputs, double[] results, double[] workspace) {
+        if (results.length != outputs.length) {
+            throw new ValidationException("Expected " + outputs.length + " results, got " + results.length);
+        }
+        computeFiringStrengths(inputs, workspace);
+        int firing = firingOffset();
+        for (int o = 0; o < outputs.length; o++) {
+            results[o] = defuzzify(outputs[o], workspace, firing, 1);
+        }
+    }
+
+    /**
+     * Column-wise {@link #evaluateOutputs(double[], double[], double[])}:
+     * results[o][row] receives output o for rows [from, to). The workspace comes
+     * from {@link #newBatchWorkspace()}.
+     */
+    public void evaluateOutputsBatch(double[][] columns, double[][] results, int from, int to,
+                                     double[] workspace) {
+        if (results.length != outputs.length) {
+            throw new ValidationException(
+                    "Expected " + outputs.length + " result columns, got " + results.length);
+        }
+        requireColumns(columns);
+        int firing = batchFiringOffset();
+        for (int start = from; start < to; start += BATCH_BLOCK) {
+            int len = Math.min(BATCH_BLOCK, to - start);
+            computeBatchFiringStrengths(columns, start, len, workspace);
+            for (int o = 0; o < outputs.length; o++) {
+                double[] column = results[o];
+                for (int row = 0; row < len; row++) {
+                    column[start + row] = defuzzify(outputs[o], workspace, firing + row, BATCH_BLOCK);
+                }
+            }
+        }
+    }
+
+    public void evaluateOutputsBatch(double[][] columns, double[][] results, int rows) {
+        evaluateOutputsBatch(columns, results, 0, rows, newBatchWorkspace());
+    }
+
+    @Override
+    void writeConsequents(DataOutput out) throws IOException {
+        out.writeUTF(orOperator.getClass().getName());
+        out.writeUTF(defuzzifier.getClass().getName());
+        writeInts(out, ruleOutputSet);
+        out.writeInt(outputs.length);
+        for (Output output : outputs) {
+            out.writeUTF(output.name);
+            out.writeDouble(output.min);
+            out.writeDouble(output.max);
+            out.writeInt(output.xs.length);
+            out.writeBoolean(output.analytic != null);
+            out.writeInt(output.ruleStart);
+            out.writeInt(output.ruleEnd);
+            out.writeInt(output.sets.length);
+            for (FuzzySet set : output.sets) {
+                out.writeUTF(set.getName());
+                writeFunction(out, set.getMF());
+            }
+        }
+    }
+
+    @Override
+    int scratchSize() {
+        return scratchSize;
+    }
+
+    @Override
+    void finishBatch(double[][] columns, int start, int len, double[] workspace, double[] results) {
+        int firing = batchFiringOffset();
+
+        for (int row = 0; row < len; row++) {
+            results[start + row] = defuzzify(outputs[0], workspace, firing + row, BATCH_BLOCK);
+        }
+    }
+
+    @Override
+    double finish(double[] inputs, double[] workspace) {
+        return defuzzify(outputs[0], workspace, firingOffset(), 1);
+    }
+
+    /**
+     * With max aggregation the output depends only on the highest firing
+     * strength per output set, so the state keeps those heights: when they are
+     * unchanged the previous result is returned, otherwise the grid is rebuilt
+     * from one clipped table per set instead of one per rule. State layout:
+     * [heights | previous heights | previous result].
+     */
+    @Override
+    double finishIncremental(double[] inputs, double[] workspace, double[] state) {
+        if (!aggregatesByHeight()) {
+            return finish(inputs, workspace);
+        }
+
+        Output out = outputs[0];
+        int k = out.tables.length;
+        int firing = firingOffset();
+        for (int s = 0; s < k; s++) {
+            state[s] = 0;
+        }
+        for (int r = out.ruleStart; r < out.ruleEnd; r++) {
+            int s = ruleOutputSet[r];
+            state[s] = Math.max(state[s], workspace[firing + r]);
+        }
+
+        boolean same = true;
+        for (int s = 0; s < k; s++) {
+            if (state[s] != state[k + s]) {
+                same = false;
+                state[k + s] = state[s];
+            }
+        }
+        if (same) {
+            return state[2 * k];
+        }
+
+        double result;
+        if (out.analytic != null) {
+            result = out.analytic.centroid(state, 0, workspace, k);
+        } else {
+            double[] xs = out.xs;
+            int n = xs.length;
+            for (int i = 0; i < n; i++) {
+                workspace[i] = 0;
+            }
+            for (int s = 0; s < k; s++) {
+                double height = state[s];
+                if (height == 0) continue;
+                double[] table = out.tables[s];
+                for (int i = out.start[s]; i < out.end[s]; i++) {
+                    workspace[i] = Math.max(workspace[i], Math.min(table[i], height));
+                }
+            }
+            result = defuzzifier.defuzzify(workspace, n, out.min, out.max);
+        }
+        state[2 * k] = result;
+        return result;
+    }
+
+    @Override
+    int incrementalStateSize() {
+        return aggregatesByHeight() ? 2 * outputs[0].tables.length + 1 : 0;
+    }
+
+    /**
+     * The aggregated output curve on the output grid. The sampled path leaves it
+     * in the scratch; with the analytic centroid it is rebuilt from the per-set
+     * heights, which the scratch holds instead.
+     */
+    @Override
+    void traceOutput(double[] inputs, double[] workspace, InferenceTrace trace) {
+        Output out = outputs[0];
+        double[] curve = trace.curve;
+        if (out.analytic == null) {
+            System.arraycopy(workspace, 0, curve, 0, out.xs.length);
+            return;
+        }
+        Arrays.fill(curve, 0);
+        for (int s = 0; s < out.tables.length; s++) {
+            double height = workspace[s];
+            double[] table = out.tables[s];
+            for (int i = out.start[s]; i < out.end[s]; i++) {
+                curve[i] = Math.max(curve[i], Math.min(table[i], height));
+            }
+        }
+    }
+
+    @Override
+    int traceCurveLength() {
+        return outputs[0].xs.length;
+    }
+
+    /**
+     * Output grid point i of the curve in an {@link InferenceTrace}.
+     */
+    public double getOutputX(int i) {
+        return outputs[0].xs[i];
+    }
+
+    private boolean aggregatesByHeight() {
+        return outputs[0].analytic != null || orOperator instanceof MaxSNorm;
+    }
+
+    /**
+     * Clip, aggregate and defuzzify one output for one sample whose firing
+     * strength for rule r is workspace[firing + r * stride]. The scratch at the
+     * start of the workspace holds the aggregated grid (or the per-set clip
+     * heights when analytic). Max aggregation of min-clipped sets equals
+     * clipping each set once at the max of its rules' strengths, so rules
+     * sharing a consequent cost one grid pass together.
+     */
+    private double defuzzify(Output out, double[] workspace, int firing, int stride) {
+        if (out.analytic != null) {
+            int k = out.tables.length;
+            for (int s = 0; s < k; s++) {
+                workspace[s] = 0;
+            }
+            for (int r = out.ruleStart; r < out.ruleEnd; r++) {
+                int s = ruleOutputSet[r];
+                workspace[s] = Math.max(workspace[s], workspace[firing + r * stride]);
+            }
+            return out.analytic.centroid(workspace, 0, workspace, k);
+        }
+
+        int n = out.xs.length;
+        double[][] tables = out.tables;
+        int[] start = out.start;
+        int[] end = out.end;
+
+        for (int i = 0; i < n; i++) {
+            workspace[i] = 0;
+        }
+
+        if (out.byHeight) {
+            // ---- Max aggregation: clip each output set once, at its highest firing strength ----
+            int k = tables.length;
+            for (int s = 0; s < k; s++) {
+                workspace[n + s] = 0;
+            }
+            for (int r = out.ruleStart; r < out.ruleEnd; r++) {
+                int h = n + ruleOutputSet[r];
+                workspace[h] = Math.max(workspace[h], workspace[firing + r * stride]);
+            }
+            for (int s = 0; s < k; s++) {
+                double height = workspace[n + s];
+                if (height == 0) continue;
+                double[] table = tables[s];
+                for (int i = start[s]; i < end[s]; i++) {
+                    workspace[i] = Math.max(workspace[i], Math.min(table[i], height));
+                }
+            }
+        } else {
+            // ---- Implication (clipping) and aggregation, inside each set's support ----
+            for (int r = out.ruleStart; r < out.ruleEnd; r++) {
+                double strength = workspace[firing + r * stride];
+                int s = ruleOutputSet[r];
+                double[] table = tables[s];
+                for (int i = start[s]; i < end[s]; i++) {
+                    double clipped = Math.min(table[i], strength);
+                    workspace[i] = orOperator.or(workspace[i], clipped);
+                }
+            }
+        }
+
+        // ---- Defuzzification ----
+        return defuzzifier.defuzzify(workspace, n, out.min, out.max);
+    }
+}
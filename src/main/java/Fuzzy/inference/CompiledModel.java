@@ -0,0 +1,671 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleSnapshot;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.operator.TNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, index-based form of a RuleBase and its variables.
+ *
+ * Input variables and the fuzzy sets referenced by antecedents are resolved to
+ * int indices once, rules are flattened into primitive clause arrays, and
+ * disabled rules are dropped. Evaluation works on a double[] of crisp inputs in
+ * {@link #getInputNames()} order and does not allocate.
+ *
+ * A model is a snapshot: later edits to the RuleBase or the variables are not
+ * seen until the model is compiled again. It is safe to share between threads
+ * as long as each thread uses its own workspace.
+ */
+public abstract class CompiledModel {
+
+    /** Rows fuzzified together by {@link #evaluateBatch}; sized to keep the block in cache. */
+    public static final int BATCH_BLOCK = 256;
+
+    final int version;
+    final String[] inputNames;
+
+    // ---- Antecedent sets (one entry per referenced variable/set pair) ----
+    final IMembershipFunction[] sets;
+    final String[] setNames;
+    final int[] setInput;
+    // Support and core of each set, copied out of the MFs
+    final double[] supportMin;
+    final double[] supportMax;
+    final double[] coreMin;
+    final double[] coreMax;
+
+    // ---- Rules ----
+    final int[] ruleIds;
+    final double[] ruleWeights;
+    final int[] clauseStart;
+    final int[] clauseSets;
+
+    // ---- Dependency index: sets of each input, rules of each set ----
+    final int[] inputSetStart;
+    final int[] inputSets;
+    final int[] setRuleStart;
+    final int[] setRules;
+
+    private final TNorm andOperator;
+    // Generated fuzzification and rule code, or null to interpret the tables
+    private final FiringKernel kernel;
+    private final ThreadLocal<double[]> workspaces = ThreadLocal.withInitial(this::newWorkspace);
+
+    CompiledModel(Builder b, TNorm andOperator) {
+        this.version = b.version;
+        this.inputNames = b.inputNames.toArray(new String[0]);
+        this.sets = b.sets.toArray(new IMembershipFunction[0]);
+        this.setNames = b.setNames.toArray(new String[0]);
+        this.setInput = b.setInput.stream().mapToInt(Integer::intValue).toArray();
+        this.supportMin = new double[sets.length];
+        this.supportMax = new double[sets.length];
+        this.coreMin = new double[sets.length];
+        this.coreMax = new double[sets.length];
+        for (int s = 0; s < sets.length; s++) {
+            supportMin[s] = sets[s].getSupportMin();
+            supportMax[s] = sets[s].getSupportMax();
+            coreMin[s] = sets[s].getCoreMin();
+            coreMax[s] = sets[s].getCoreMax();
+        }
+        this.ruleIds = b.ruleIds.stream().mapToInt(Integer::intValue).toArray();
+        this.ruleWeights = b.ruleWeights.stream().mapToDouble(Double::doubleValue).toArray();
+        this.clauseStart = b.clauseStart.stream().mapToInt(Integer::intValue).toArray();
+        this.clauseSets = b.clauseSets.stream().mapToInt(Integer::intValue).toArray();
+        this.andOperator = andOperator;
+
+        this.inputSetStart = new int[inputNames.length + 1];
+        this.inputSets = invert(setInput, inputNames.length, inputSetStart);
+
+        // Clause c belongs to rule r for clauseStart[r] <= c < clauseStart[r + 1]
+        int[] clauseRule = new int[clauseSets.length];
+        for (int r = 0; r < ruleIds.length; r++) {
+            for (int c = clauseStart[r]; c < clauseStart[r + 1]; c++) {
+                clauseRule[c] = r;
+            }
+        }
+        this.setRuleStart = new int[sets.length + 1];
+        int[] rules = invert(clauseSets, sets.length, setRuleStart);
+        for (int c = 0; c < rules.length; c++) {
+            rules[c] = clauseRule[rules[c]];
+        }
+        this.setRules = rules;
+
+        this.kernel = b.generate ? KernelGenerator.generate(this, andOperator) : null;
+    }
+
+    /**
+     * Group the indices of a by value: the indices holding value v end up in
+     * result[start[v]..start[v + 1]), in increasing order.
+     */
+    private static int[] invert(int[] a, int values, int[] start) {
+        for (int v : a) {
+            start[v + 1]++;
+        }
+        for (int v = 0; v < values; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] result = new int[a.length];
+        int[] next = Arrays.copyOf(start, values);
+        for (int i = 0; i < a.length; i++) {
+            result[next[a[i]]++] = i;
+        }
+        return result;
+    }
+
+    /**
+     * The {@link RuleSnapshot#getVersion()} of the rules this model was compiled from.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * SHA-256, in hex, of everything that decides the results: input order,
+     * antecedent sets, rules and weights, operators and consequents. Models
+     * compiled from the same rules and variables have the same fingerprint
+     * whatever the rule base version; any edit that can change a result
+     * changes it. Membership functions are identified by class and
+     * parameters, operators and defuzzifiers by class.
+     */
+    public String fingerprint() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeUTF(getClass().getName());
+            out.writeInt(inputNames.length);
+            for (String name : inputNames) {
+                out.writeUTF(name);
+            }
+            out.writeInt(sets.length);
+            for (int s = 0; s < sets.length; s++) {
+                out.writeInt(setInput[s]);
+                out.writeUTF(setNames[s]);
+                writeFunction(out, sets[s]);
+            }
+            writeInts(out, ruleIds);
+            writeDoubles(out, ruleWeights);
+            writeInts(out, clauseStart);
+            writeInts(out, clauseSets);
+            out.writeUTF(andOperator.getClass().getName());
+            writeConsequents(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Add what the subclass computes from the firing strengths to the fingerprint.
+     */
+    abstract void writeConsequents(DataOutput out) throws IOException;
+
+    /**
+     * A function's class and parameters, plus the support of a cut-off
+     * Gaussian, which its parameters leave out.
+     */
+    static void writeFunction(DataOutput out, IMembershipFunction mf) throws IOException {
+        out.writeUTF(mf.getClass().getName());
+        writeDoubles(out, mf.getParameters());
+        if (mf instanceof GaussianMF) {
+            out.writeDouble(((GaussianMF) mf).getHalfWidth());
+        }
+    }
+
+    static void writeInts(DataOutput out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) {
+            out.writeInt(v);
+        }
+    }
+
+    static void writeDoubles(DataOutput out, double[] a) throws IOException {
+        out.writeInt(a.length);
+        for (double v : a) {
+            out.writeDouble(v);
+        }
+    }
+
+    public int getInputCount() {
+        return inputNames.length;
+    }
+
+    public int getRuleCount() {
+        return ruleIds.length;
+    }
+
+    /**
+     * Rule.id of compiled rule r, for r in [0, getRuleCount()).
+     */
+    public int getRuleId(int r) {
+        return ruleIds[r];
+    }
+
+    /**
+     * Weighted firing strength of rule r left in the workspace by the last
+     * {@link #evaluate(double[], double[])} or {@link #fire}.
+     */
+    public double getFiringStrength(double[] workspace, int r) {
+        return workspace[firingOffset() + r];
+    }
+
+    /**
+     * Whether antecedents are evaluated by generated code; see {@link MamdaniEngine#generate}.
+     */
+    public boolean isGenerated() {
+        return kernel != null;
+    }
+
+    public int inputIndex(String varName) {
+        for (int i = 0; i < inputNames.length; i++) {
+            if (inputNames[i].equals(varName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Evaluate using a workspace owned by the calling thread.
+     */
+    public double evaluate(double[] inputs) {
+        return evaluate(inputs, workspace());
+    }
+
+    /**
+     * The calling thread's workspace.
+     */
+    final double[] workspace() {
+        return workspaces.get();
+    }
+
+    /**
+     * Evaluate using a caller-owned workspace from {@link #newWorkspace()}.
+     */
+    public double evaluate(double[] inputs, double[] workspace) {
+        computeFiringStrengths(inputs, workspace);
+        return finish(inputs, workspace);
+    }
+
+    /**
+     * First half of {@link #evaluate(double[], double[])}: fuzzify the inputs
+     * and leave the firing strength of every rule in the workspace, for
+     * {@link #getFiringStrength} and {@link #output}.
+     */
+    public void fire(double[] inputs, double[] workspace) {
+        computeFiringStrengths(inputs, workspace);
+    }
+
+    /**
+     * Second half of {@link #evaluate(double[], double[])}: the crisp output
+     * from the firing strengths left in the workspace by {@link #fire}.
+     */
+    public double output(double[] inputs, double[] workspace) {
+        return finish(inputs, workspace);
+    }
+
+    /**
+     * Evaluate and record the inputs, memberships, firing strengths and output
+     * curve into the trace's reusable buffers.
+     */
+    public double evaluate(double[] inputs, InferenceTrace trace) {
+        trace.bind(this);
+        double[] workspace = trace.workspace;
+        double output = evaluate(inputs, workspace);
+
+        System.arraycopy(inputs, 0, trace.inputs, 0, inputNames.length);
+        System.arraycopy(workspace, membershipOffset(), trace.memberships, 0, sets.length);
+        System.arraycopy(workspace, firingOffset(), trace.firingStrengths, 0, ruleIds.length);
+        traceOutput(inputs, workspace, trace);
+        trace.output = output;
+        trace.sequence++;
+        return output;
+    }
+
+    /**
+     * Fill the model-specific parts of a trace after {@link #evaluate(double[], double[])}.
+     */
+    abstract void traceOutput(double[] inputs, double[] workspace, InferenceTrace trace);
+
+    /**
+     * Length of {@link InferenceTrace#getCurveLength()} for this model.
+     */
+    int traceCurveLength() {
+        return 0;
+    }
+
+    /**
+     * Whether traces record a crisp output per rule.
+     */
+    boolean traceRuleOutputs() {
+        return false;
+    }
+
+    /**
+     * Evaluation context that remembers the previous sample, for a stream of
+     * readings from one patient. See {@link IncrementalContext}.
+     */
+    public IncrementalContext newIncrementalContext() {
+        return new IncrementalContext(this);
+    }
+
+    /**
+     * Turn the firing strengths at {@link #firingOffset()} into the crisp output.
+     */
+    abstract double finish(double[] inputs, double[] workspace);
+
+    /**
+     * {@link #finish} for an {@link IncrementalContext}, which keeps
+     * {@link #incrementalStateSize()} doubles of state between samples.
+     */
+    double finishIncremental(double[] inputs, double[] workspace, double[] state) {
+        return finish(inputs, workspace);
+    }
+
+    int incrementalStateSize() {
+        return 0;
+    }
+
+    /**
+     * Whether the output reads crisp inputs directly, not only through firing strengths.
+     */
+    boolean consequentReadsInputs() {
+        return false;
+    }
+
+    /**
+     * Workspace layout: [model scratch | memberships | firing strengths]. The
+     * scratch comes first so per-grid loops index it from 0 like the tables they
+     * read, which keeps them vectorizable.
+     */
+    public double[] newWorkspace() {
+        return new double[scratchSize() + sets.length + ruleIds.length];
+    }
+
+    /**
+     * Model-specific scratch at the start of both the single and batch workspaces.
+     */
+    abstract int scratchSize();
+
+    int membershipOffset() {
+        return scratchSize();
+    }
+
+    int firingOffset() {
+        return scratchSize() + sets.length;
+    }
+
+    /**
+     * Evaluate rows [from, to) of column-wise inputs: columns[input][row] in
+     * {@link #getInputNames()} order, results[row] receives the crisp output.
+     * The workspace comes from {@link #newBatchWorkspace()} and can be reused.
+     */
+    public void evaluateBatch(double[][] columns, double[] results, int from, int to, double[] workspace) {
+        requireColumns(columns);
+        for (int start = from; start < to; start += BATCH_BLOCK) {
+            int len = Math.min(BATCH_BLOCK, to - start);
+            computeBatchFiringStrengths(columns, start, len, workspace);
+            finishBatch(columns, start, len, workspace, results);
+        }
+    }
+
+    final void requireColumns(double[][] columns) {
+        if (columns.length != inputNames.length) {
+            throw new ValidationException(
+                    "Expected " + inputNames.length + " input columns, got " + columns.length);
+        }
+    }
+
+    public void evaluateBatch(double[][] columns, double[] results, int rows) {
+        evaluateBatch(columns, results, 0, rows, newBatchWorkspace());
+    }
+
+    /**
+     * Order named columns by {@link #getInputNames()}.
+     */
+    public double[][] columns(Map<String, double[]> columns) {
+        double[][] ordered = new double[inputNames.length][];
+        for (int i = 0; i < inputNames.length; i++) {
+            ordered[i] = columns.get(inputNames[i]);
+            if (ordered[i] == null) {
+                throw new ValidationException("Missing input column for variable " + inputNames[i]);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Batch workspace layout: [model scratch | membership block | firing block].
+     */
+    public double[] newBatchWorkspace() {
+        return new double[scratchSize() + (sets.length + ruleIds.length) * BATCH_BLOCK];
+    }
+
+    int batchFiringOffset() {
+        return scratchSize() + sets.length * BATCH_BLOCK;
+    }
+
+    /**
+     * Turn the firing strengths of one block (workspace[batchFiringOffset() + r * BATCH_BLOCK + i])
+     * into crisp outputs for rows [start, start + len).
+     */
+    abstract void finishBatch(double[][] columns, int start, int len, double[] workspace, double[] results);
+
+    /**
+     * Column-wise {@link #computeFiringStrengths}: memberships of set s for the block
+     * land at scratchSize() + s * BATCH_BLOCK, strengths of rule r at
+     * batchFiringOffset() + r * BATCH_BLOCK.
+     */
+    final void computeBatchFiringStrengths(double[][] columns, int start, int len, double[] workspace) {
+        if (kernel != null) {
+            kernel.fireBatch(columns, start, len, workspace, scratchSize(), batchFiringOffset());
+            return;
+        }
+        int membership = scratchSize();
+        for (int s = 0; s < sets.length; s++) {
+            IMembershipFunction mf = sets[s];
+            double[] column = columns[setInput[s]];
+            int off = membership + s * BATCH_BLOCK;
+            for (int i = 0; i < len; i++) {
+                workspace[off + i] = membership(s, mf, column[start + i]);
+            }
+        }
+
+        int firing = batchFiringOffset();
+        for (int r = 0; r < ruleIds.length; r++) {
+            int off = firing + r * BATCH_BLOCK;
+            for (int i = 0; i < len; i++) {
+                workspace[off + i] = 1.0;
+            }
+            for (int c = clauseStart[r]; c < clauseStart[r + 1]; c++) {
+                int mem = membership + clauseSets[c] * BATCH_BLOCK;
+                for (int i = 0; i < len; i++) {
+                    workspace[off + i] = andOperator.and(workspace[off + i], workspace[mem + i]);
+                }
+            }
+            double weight = ruleWeights[r];
+            for (int i = 0; i < len; i++) {
+                workspace[off + i] *= weight;
+            }
+        }
+    }
+
+    /**
+     * Fuzzify every referenced set and fill the firing strength of each rule,
+     * at {@link #membershipOffset()} and {@link #firingOffset()}.
+     */
+    final void computeFiringStrengths(double[] inputs, double[] workspace) {
+        if (kernel != null) {
+            kernel.fire(inputs, workspace, membershipOffset(), firingOffset());
+            return;
+        }
+        int membership = membershipOffset();
+        for (int s = 0; s < sets.length; s++) {
+            workspace[membership + s] = membership(s, sets[s], inputs[setInput[s]]);
+        }
+
+        int firing = firingOffset();
+        for (int r = 0; r < ruleIds.length; r++) {
+            workspace[firing + r] = ruleStrength(r, workspace, membership);
+        }
+    }
+
+    /**
+     * Membership of x in set s, evaluating the MF only between its support and core.
+     */
+    final double membership(int s, IMembershipFunction mf, double x) {
+        if (!(x > supportMin[s] && x < supportMax[s])) {
+            return 0;
+        }
+        if (x >= coreMin[s] && x <= coreMax[s]) {
+            return 1;
+        }
+        return mf.membership(x);
+    }
+
+    /**
+     * Weighted firing strength of rule r from memberships at workspace[membership + s].
+     */
+    final double ruleStrength(int r, double[] workspace, int membership) {
+        double strength = 1.0;
+        for (int c = clauseStart[r]; c < clauseStart[r + 1]; c++) {
+            strength = andOperator.and(strength, workspace[membership + clauseSets[c]]);
+        }
+        return strength * ruleWeights[r];
+    }
+
+    /**
+     * Collects the index tables shared by every compiled model.
+     */
+    static class Builder {
+        final Map<String, LinguisticVariable> variables;
+        final boolean skipUnknownClauses;
+
+        final List<String> inputNames = new ArrayList<>();
+        final List<IMembershipFunction> sets = new ArrayList<>();
+        final List<String> setNames = new ArrayList<>();
+        final List<Integer> setInput = new ArrayList<>();
+        final List<Integer> ruleIds = new ArrayList<>();
+        final List<Double> ruleWeights = new ArrayList<>();
+        final List<Integer> clauseStart = new ArrayList<>();
+        final List<Integer> clauseSets = new ArrayList<>();
+
+        // Generate a FiringKernel for the model
+        boolean generate;
+
+        private final Map<String, Integer> setIndex = new LinkedHashMap<>();
+        private final boolean fixedInputs;
+        private int version;
+
+        private static final int SKIPPED = -1;
+        private static final int UNRESOLVED = -2;
+
+        Builder(Map<String, LinguisticVariable> variables, String[] inputOrder, boolean skipUnknownClauses) {
+            this.variables = variables;
+            this.skipUnknownClauses = skipUnknownClauses;
+            this.fixedInputs = inputOrder.length > 0;
+            inputNames.addAll(Arrays.asList(inputOrder));
+            clauseStart.add(0);
+        }
+
+        int input(String varName) {
+            int idx = inputNames.indexOf(varName);
+            if (idx >= 0) {
+                return idx;
+            }
+            if (fixedInputs) {
+                throw new ValidationException("Variable " + varName + " is not in the compiled input order");
+            }
+            inputNames.add(varName);
+            return inputNames.size() - 1;
+        }
+
+        /**
+         * Add the antecedent of an enabled rule. Returns false if the rule was skipped.
+         */
+        boolean addRule(Rule rule) {
+            if (!rule.enabled) {
+                return false;
+            }
+            for (Map.Entry<String, String> clause : rule.antecedent.entrySet()) {
+                int s = set(clause.getKey(), clause.getValue());
+                if (s != SKIPPED) {
+                    clauseSets.add(s);
+                }
+            }
+            endRule(rule.id, rule.weight);
+            return true;
+        }
+
+        /**
+         * {@link #addRule(Rule)} for rule r of a table. pairSets, from
+         * {@link #newPairSets}, caches the compiled set of each clause pair.
+         */
+        boolean addRule(RuleTable table, int r, int[] pairSets) {
+            if (!table.isEnabled(r)) {
+                return false;
+            }
+            for (int c = table.getClauseStart(r); c < table.getClauseEnd(r); c++) {
+                int p = table.getClausePair(c);
+                int s = pairSets[p];
+                if (s == UNRESOLVED) {
+                    s = set(table.getName(table.getPairVariable(p)), table.getName(table.getPairSet(p)));
+                    pairSets[p] = s;
+                }
+                if (s != SKIPPED) {
+                    clauseSets.add(s);
+                }
+            }
+            endRule(table.getId(r), table.getWeight(r));
+            return true;
+        }
+
+        static int[] newPairSets(RuleTable table) {
+            int[] pairSets = new int[table.getPairCount()];
+            Arrays.fill(pairSets, UNRESOLVED);
+            return pairSets;
+        }
+
+        private void endRule(int id, double weight) {
+            ruleIds.add(id);
+            ruleWeights.add(weight);
+            clauseStart.add(clauseSets.size());
+        }
+
+        /**
+         * Index of the set of a clause, registering it on first use, or SKIPPED
+         * for an unknown variable or set when unknown clauses are skipped.
+         */
+        private int set(String varName, String setName) {
+            LinguisticVariable var = variables.get(varName);
+            FuzzySet fs = var == null ? null : var.getFuzzySet(setName);
+            if (fs == null) {
+                if (skipUnknownClauses) return SKIPPED;
+                if (var == null) {
+                    throw new ValidationException("Rule references unknown variable " + varName);
+                }
+                throw new ValidationException("Variable " + varName + " missing fuzzy set " + setName);
+            }
+
+            String key = varName + '\u0000' + setName;
+            Integer s = setIndex.get(key);
+            if (s == null) {
+                s = sets.size();
+                setIndex.put(key, s);
+                sets.add(fs.getMF());
+                setNames.add(setName);
+                setInput.add(input(varName));
+            }
+            return s;
+        }
+
+        static void requireRules(RuleTable table) {
+            if (table.getRuleCount() == 0) {
+                throw new ValidationException("Rule base is empty");
+            }
+        }
+
+        static List<Rule> requireRules(RuleSnapshot snapshot) {
+            if (snapshot.isEmpty()) {
+                throw new ValidationException("Rule base is empty");
+            }
+            return snapshot.getRules();
+        }
+
+        /**
+         * The rules of the snapshot, recording its version for the model.
+         */
+        List<Rule> rules(RuleSnapshot snapshot) {
+            version = snapshot.getVersion();
+            return requireRules(snapshot);
+        }
+    }
+}
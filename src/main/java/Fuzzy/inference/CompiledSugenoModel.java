@@ -0,0 +1,208 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleSnapshot;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Rules.SugenoExpression;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled counterpart of {@link SugenoEngine}. Consequents are parsed once into
+ * coefficient/input terms (see {@link SugenoExpression}).
+ */
+public final class CompiledSugenoModel extends CompiledModel {
+
+    // ---- Consequents: rule r has terms [termStart[r], termStart[r + 1]), term t is
+    // termCoeff[t] times the inputs factorInput[factorStart[t] .. factorStart[t + 1]) ----
+    private final int[] termStart;
+    private final double[] termCoeff;
+    private final int[] factorStart;
+    private final int[] factorInput;
+
+    private CompiledSugenoModel(Builder b, int[] termStart, double[] termCoeff,
+                                int[] factorStart, int[] factorInput) {
+        super(b, new MinTnorm());
+        this.termStart = termStart;
+        this.termCoeff = termCoeff;
+        this.factorStart = factorStart;
+        this.factorInput = factorInput;
+    }
+
+    static CompiledSugenoModel compile(RuleSnapshot snapshot, Map<String, LinguisticVariable> variables,
+                                       String... inputOrder) {
+        Builder b = new Builder(variables, inputOrder, true);
+        List<Rule> rules = b.rules(snapshot);
+
+        Consequents c = new Consequents();
+        for (Rule rule : rules) {
+            if (!b.addRule(rule)) continue;
+            c.add(b, rule.getSugenoExpression());
+        }
+        return c.build(b);
+    }
+
+    static CompiledSugenoModel compile(RuleTable rules, Map<String, LinguisticVariable> variables,
+                                       String... inputOrder) {
+        Builder.requireRules(rules);
+        Builder b = new Builder(variables, inputOrder, true);
+        int[] pairSets = Builder.newPairSets(rules);
+        // Equal expressions share a name, so each is parsed once
+        SugenoExpression[] parsed = new SugenoExpression[rules.getNameCount()];
+
+        Consequents c = new Consequents();
+        for (int r = 0; r < rules.getRuleCount(); r++) {
+            if (!b.addRule(rules, r, pairSets)) continue;
+
+            int name = rules.getConsequentValue(r);
+            if (parsed[name] == null) {
+                parsed[name] = SugenoExpression.parse(rules.getName(name));
+            }
+            c.add(b, parsed[name]);
+        }
+        return c.build(b);
+    }
+
+    /**
+     * Expanded consequents of the compiled rules, in rule order.
+     */
+    private static final class Consequents {
+        final List<Integer> termStart = new ArrayList<>();
+        final List<Double> termCoeff = new ArrayList<>();
+        final List<Integer> factorStart = new ArrayList<>();
+        final List<Integer> factorInput = new ArrayList<>();
+
+        Consequents() {
+            termStart.add(0);
+            factorStart.add(0);
+        }
+
+        void add(Builder b, SugenoExpression expression) {
+            for (int t = 0; t < expression.getTermCount(); t++) {
+                termCoeff.add(expression.getCoefficient(t));
+                for (String var : expression.getFactors(t)) {
+                    factorInput.add(b.input(var));
+                }
+                factorStart.add(factorInput.size());
+            }
+            termStart.add(termCoeff.size());
+        }
+
+        CompiledSugenoModel build(Builder b) {
+            return new CompiledSugenoModel(b,
+                    termStart.stream().mapToInt(Integer::intValue).toArray(),
+                    termCoeff.stream().mapToDouble(Double::doubleValue).toArray(),
+                    factorStart.stream().mapToInt(Integer::intValue).toArray(),
+                    factorInput.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    @Override
+    void writeConsequents(DataOutput out) throws IOException {
+        writeInts(out, termStart);
+        writeDoubles(out, termCoeff);
+        writeInts(out, factorStart);
+        writeInts(out, factorInput);
+    }
+
+    @Override
+    int scratchSize() {
+        return 2 * BATCH_BLOCK;
+    }
+
+    @Override
+    void finishBatch(double[][] columns, int start, int len, double[] workspace, double[] results) {
+        int firing = batchFiringOffset();
+        int weightedSum = 0;
+        int sumWeights = BATCH_BLOCK;
+
+        for (int i = 0; i < len; i++) {
+            workspace[weightedSum + i] = 0.0;
+            workspace[sumWeights + i] = 0.0;
+        }
+
+        for (int r = 0; r < ruleIds.length; r++) {
+            int fs = firing + r * BATCH_BLOCK;
+            for (int i = 0; i < len; i++) {
+                double fValue = 0;
+                for (int t = termStart[r]; t < termStart[r + 1]; t++) {
+                    double term = termCoeff[t];
+                    for (int f = factorStart[t]; f < factorStart[t + 1]; f++) {
+                        term *= columns[factorInput[f]][start + i];
+                    }
+                    fValue += term;
+                }
+
+                double firingStrength = workspace[fs + i];
+                workspace[weightedSum + i] += firingStrength * fValue;
+                workspace[sumWeights + i]  += firingStrength;
+            }
+        }
+
+        for (int i = 0; i < len; i++) {
+            double sum = workspace[sumWeights + i];
+            results[start + i] = sum == 0 ? 0 : workspace[weightedSum + i] / sum;
+        }
+    }
+
+    @Override
+    boolean consequentReadsInputs() {
+        return factorInput.length > 0;
+    }
+
+    /**
+     * Crisp output f(x) of each rule.
+     */
+    @Override
+    void traceOutput(double[] inputs, double[] workspace, InferenceTrace trace) {
+        for (int r = 0; r < ruleIds.length; r++) {
+            double fValue = 0;
+            for (int t = termStart[r]; t < termStart[r + 1]; t++) {
+                double term = termCoeff[t];
+                for (int f = factorStart[t]; f < factorStart[t + 1]; f++) {
+                    term *= inputs[factorInput[f]];
+                }
+                fValue += term;
+            }
+            trace.ruleOutputs[r] = fValue;
+        }
+    }
+
+    @Override
+    boolean traceRuleOutputs() {
+        return true;
+    }
+
+    @Override
+    double finish(double[] inputs, double[] workspace) {
+        int firing = firingOffset();
+        double weightedSum = 0.0;
+        double sumWeights  = 0.0;
+
+        for (int r = 0; r < ruleIds.length; r++) {
+            double fValue = 0;
+            for (int t = termStart[r]; t < termStart[r + 1]; t++) {
+                double term = termCoeff[t];
+                for (int f = factorStart[t]; f < factorStart[t + 1]; f++) {
+                    term *= inputs[factorInput[f]];
+                }
+                fValue += term;
+            }
+
+            double firingStrength = workspace[firing + r];
+            weightedSum += firingStrength * fValue;
+            sumWeights  += firingStrength;
+        }
+
+        if (sumWeights == 0)
+            return 0;
+
+        return weightedSum / sumWeights;
+    }
+}
@@ -0,0 +1,14 @@
+package Fuzzy.inference;
+
+/**
+ * Fuzzification and rule firing of one {@link CompiledModel}, generated as
+ * straight-line code by {@link KernelGenerator}. Fills the same workspace
+ * layout as {@link CompiledModel#computeFiringStrengths} and
+ * {@link CompiledModel#computeBatchFiringStrengths}, with identical results.
+ */
+interface FiringKernel {
+
+    void fire(double[] inputs, double[] workspace, int membership, int firing);
+
+    void fireBatch(double[][] columns, int start, int len, double[] workspace, int membership, int firing);
+}
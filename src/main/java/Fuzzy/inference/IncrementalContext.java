@@ -0,0 +1,140 @@
+package Fuzzy.inference;
+
+import Fuzzy.Validation.ValidationException;
+
+import java.util.Arrays;
+
+/**
+ * Evaluation state for a stream of samples from one source (typically one
+ * patient's monitor), bound to one {@link CompiledModel}.
+ *
+ * The context keeps the previous sample's inputs, memberships and firing
+ * strengths. On the next sample only the sets of inputs whose value changed are
+ * fuzzified again, only rules reading a set whose membership moved are
+ * recomputed, and when no firing strength moved the previous output is returned
+ * as is. Results are identical to {@link CompiledModel#evaluate(double[])}.
+ *
+ * A context is not thread-safe; keep one per patient.
+ */
+public final class IncrementalContext {
+
+    private CompiledModel model;
+    private double[] workspace;
+    private double[] state;
+    private double[] lastInputs;
+    private int[] dirtyRules;
+    private int[] ruleStamp;
+    private int stamp;
+    private boolean primed;
+    private double lastResult;
+    private int rulesRecomputed;
+
+    IncrementalContext(CompiledModel model) {
+        bind(model);
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Switch to another model (e.g. recompiled after a rule edit). The next
+     * sample is then evaluated from scratch.
+     */
+    public void bind(CompiledModel model) {
+        if (this.model == model) {
+            return;
+        }
+        this.model = model;
+        this.workspace = model.newWorkspace();
+        this.state = new double[model.incrementalStateSize()];
+        this.lastInputs = new double[model.getInputCount()];
+        this.dirtyRules = new int[model.getRuleCount()];
+        this.ruleStamp = new int[model.getRuleCount()];
+        reset();
+    }
+
+    /**
+     * Forget the previous sample.
+     */
+    public void reset() {
+        primed = false;
+        stamp = 0;
+        Arrays.fill(ruleStamp, 0);
+        // NaN never equals a computed height, so the first output is always computed
+        Arrays.fill(state, Double.NaN);
+    }
+
+    /**
+     * Rules recomputed by the last {@link #evaluate} call.
+     */
+    public int getRulesRecomputed() {
+        return rulesRecomputed;
+    }
+
+    public double evaluate(double[] inputs) {
+        CompiledModel m = model;
+        if (inputs.length != m.inputNames.length) {
+            throw new ValidationException(
+                    "Expected " + m.inputNames.length + " inputs, got " + inputs.length);
+        }
+
+        if (!primed) {
+            m.computeFiringStrengths(inputs, workspace);
+            System.arraycopy(inputs, 0, lastInputs, 0, inputs.length);
+            primed = true;
+            rulesRecomputed = m.ruleIds.length;
+            lastResult = m.finishIncremental(inputs, workspace, state);
+            return lastResult;
+        }
+
+        if (++stamp == 0) {
+            Arrays.fill(ruleStamp, 0);
+            stamp = 1;
+        }
+
+        // ---- Fuzzify changed inputs, collect rules of moved sets ----
+        int membership = m.membershipOffset();
+        int dirty = 0;
+        boolean inputsMoved = false;
+        for (int in = 0; in < inputs.length; in++) {
+            double x = inputs[in];
+            if (Double.compare(x, lastInputs[in]) == 0) continue;
+            lastInputs[in] = x;
+            inputsMoved = true;
+
+            for (int j = m.inputSetStart[in]; j < m.inputSetStart[in + 1]; j++) {
+                int s = m.inputSets[j];
+                double mu = m.membership(s, m.sets[s], x);
+                if (mu == workspace[membership + s]) continue;
+                workspace[membership + s] = mu;
+
+                for (int k = m.setRuleStart[s]; k < m.setRuleStart[s + 1]; k++) {
+                    int r = m.setRules[k];
+                    if (ruleStamp[r] != stamp) {
+                        ruleStamp[r] = stamp;
+                        dirtyRules[dirty++] = r;
+                    }
+                }
+            }
+        }
+
+        // ---- Recompute affected rules ----
+        int firing = m.firingOffset();
+        boolean firingMoved = false;
+        for (int i = 0; i < dirty; i++) {
+            int r = dirtyRules[i];
+            double strength = m.ruleStrength(r, workspace, membership);
+            if (strength != workspace[firing + r]) {
+                workspace[firing + r] = strength;
+                firingMoved = true;
+            }
+        }
+        rulesRecomputed = dirty;
+
+        if (firingMoved || (inputsMoved && m.consequentReadsInputs())) {
+            lastResult = m.finishIncremental(inputs, workspace, state);
+        }
+        return lastResult;
+    }
+}
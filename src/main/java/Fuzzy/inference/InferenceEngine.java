@@ -1,9 +1,34 @@
 package Fuzzy.inference;
 
 import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleTable;
 
 import java.util.Map;
 
 public interface InferenceEngine {
     double evaluate(Map<String, Double> inputs, RuleBase base);
+
+    /**
+     * Compile the rule base into an index-based model with the same semantics
+     * as {@link #evaluate}. If no input order is given, inputs are numbered in
+     * order of first use by the rule antecedents.
+     */
+    CompiledModel compile(RuleBase base, String... inputOrder);
+
+    /**
+     * {@link #compile(RuleBase, String...)} straight from flat rules, e.g. as
+     * loaded from a model file, without building Rule objects.
+     */
+    CompiledModel compile(RuleTable rules, String... inputOrder);
+
+    /**
+     * Evaluate a batch of samples stored column-wise: columns.get(varName)[row]
+     * holds the crisp input of each row and results[row] receives the output,
+     * for rows [0, rows). Memberships are computed a column at a time and
+     * firing strengths a rule at a time, without per-row allocation.
+     */
+    default void evaluateBatch(Map<String, double[]> columns, RuleBase base, double[] results, int rows) {
+        CompiledModel model = compile(base);
+        model.evaluateBatch(model.columns(columns), results, rows);
+    }
 }
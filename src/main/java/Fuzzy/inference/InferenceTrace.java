@@ -0,0 +1,124 @@
+package Fuzzy.inference;
+
+/**
+ * Record of one evaluation of a {@link CompiledModel}, filled by
+ * {@link CompiledModel#evaluate(double[], InferenceTrace)}.
+ *
+ * Buffers are allocated when the trace is first used with a model (or a
+ * recompiled one) and overwritten by every later evaluation, so tracing does
+ * not allocate in steady state. Read the values before the next traced call;
+ * a trace is not thread-safe.
+ */
+public final class InferenceTrace {
+
+    CompiledModel model;
+    double[] workspace;
+    double[] inputs;
+    double[] memberships;
+    double[] firingStrengths;
+    double[] ruleOutputs;
+    double[] curve;
+    double output;
+    long sequence;
+
+    void bind(CompiledModel model) {
+        if (this.model == model) {
+            return;
+        }
+        this.model = model;
+        this.workspace = model.newWorkspace();
+        this.inputs = new double[model.getInputCount()];
+        this.memberships = new double[model.sets.length];
+        this.firingStrengths = new double[model.getRuleCount()];
+        this.ruleOutputs = new double[model.traceRuleOutputs() ? model.getRuleCount() : 0];
+        this.curve = new double[model.traceCurveLength()];
+    }
+
+    /**
+     * The model of the last traced evaluation, or null before the first one.
+     */
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Number of traced evaluations recorded into this trace.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public double getOutput() {
+        return output;
+    }
+
+    // ---- Inputs, in model input order ----
+
+    public int getInputCount() {
+        return inputs == null ? 0 : inputs.length;
+    }
+
+    public String getInputName(int i) {
+        return model.inputNames[i];
+    }
+
+    public double getInput(int i) {
+        return inputs[i];
+    }
+
+    // ---- Fuzzified inputs: one entry per (variable, set) used by a rule ----
+
+    public int getSetCount() {
+        return memberships == null ? 0 : memberships.length;
+    }
+
+    public String getSetVariable(int s) {
+        return model.inputNames[model.setInput[s]];
+    }
+
+    public String getSetName(int s) {
+        return model.setNames[s];
+    }
+
+    public double getMembership(int s) {
+        return memberships[s];
+    }
+
+    // ---- Rules (enabled rules in rule base order) ----
+
+    public int getRuleCount() {
+        return firingStrengths == null ? 0 : firingStrengths.length;
+    }
+
+    public int getRuleId(int r) {
+        return model.ruleIds[r];
+    }
+
+    /**
+     * Weighted firing strength.
+     */
+    public double getFiringStrength(int r) {
+        return firingStrengths[r];
+    }
+
+    /**
+     * Crisp consequent value of a Sugeno rule; NaN for Mamdani models.
+     */
+    public double getRuleOutput(int r) {
+        return ruleOutputs.length == 0 ? Double.NaN : ruleOutputs[r];
+    }
+
+    // ---- Aggregated output curve (Mamdani only) ----
+
+    public int getCurveLength() {
+        return curve == null ? 0 : curve.length;
+    }
+
+    public double getCurveX(int i) {
+        return ((CompiledMamdaniModel) model).getOutputX(i);
+    }
+
+    public double getCurve(int i) {
+        return curve[i];
+    }
+}
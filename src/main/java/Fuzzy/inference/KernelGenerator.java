@@ -0,0 +1,438 @@
+package Fuzzy.inference;
+
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.ClassFileWriter.Code;
+import Fuzzy.inference.ClassFileWriter.Label;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.operator.TNorm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static Fuzzy.inference.ClassFileWriter.*;
+
+/**
+ * Generates a {@link FiringKernel} for one compiled model as a hidden class.
+ *
+ * The interpreted loops call every membership function and the t-norm
+ * through interfaces; with many models loaded those call sites see many
+ * receiver types and stop being inlined. The generated class has one
+ * straight-line block per set and per rule instead: triangle, trapezoid and
+ * Gaussian memberships are written out with their parameters as constants,
+ * min and product are plain instructions, and rule weights are constants.
+ * Other membership functions and t-norms are still called through their
+ * interfaces. The arithmetic is the same, operation for operation, so results
+ * are bit-identical to the interpreted model.
+ *
+ * Sets and rules are split over methods of at most {@link #CHUNK_LENGTH}
+ * bytes, small enough for the JIT to compile. A single set or rule longer than
+ * that gets a method to itself, which may not exceed HotSpot's 8000 bytes; a
+ * model with a longer one (a rule of hundreds of clauses) is rejected with a
+ * ValidationException, as is one that fills the constant pool. The class is
+ * defined without a strong link to its loader, so it is unloaded once its
+ * model is unreachable.
+ */
+final class KernelGenerator {
+
+    static final int CHUNK_LENGTH = 4000;
+    // Calls per dispatching method, each at most 20 bytes
+    private static final int MAX_CALLS = 200;
+    // More distinct weights than this are read from an array, to keep the constant pool small
+    static final int MAX_INLINED_WEIGHTS = 4096;
+
+    private static final String NAME = "Fuzzy/inference/GeneratedKernel";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String MATH = "java/lang/Math";
+    private static final String MF = "Fuzzy/memberShip/IMembershipFunction";
+    private static final String TNORM = "Fuzzy/operator/TNorm";
+    private static final int BLOCK = CompiledModel.BATCH_BLOCK;
+
+    private final CompiledModel model;
+    private final TNorm andOperator;
+    private final boolean inlineWeights;
+    private final ClassFileWriter cw;
+    private final int mfsField;
+    private final int andField;
+    private final int weightsField;
+
+    private KernelGenerator(CompiledModel model, TNorm andOperator) {
+        this.model = model;
+        this.andOperator = andOperator;
+        Set<Double> weights = new HashSet<>();
+        for (double w : model.ruleWeights) {
+            weights.add(w);
+        }
+        this.inlineWeights = weights.size() <= MAX_INLINED_WEIGHTS;
+
+        cw = new ClassFileWriter(NAME, OBJECT, "Fuzzy/inference/FiringKernel");
+        cw.field(ACC_PRIVATE | ACC_FINAL, "mfs", "[L" + MF + ";");
+        cw.field(ACC_PRIVATE | ACC_FINAL, "and", "L" + TNORM + ";");
+        cw.field(ACC_PRIVATE | ACC_FINAL, "weights", "[D");
+        mfsField = cw.fieldRef(NAME, "mfs", "[L" + MF + ";");
+        andField = cw.fieldRef(NAME, "and", "L" + TNORM + ";");
+        weightsField = cw.fieldRef(NAME, "weights", "[D");
+    }
+
+    /**
+     * Generate, define and instantiate the kernel of a model whose index
+     * tables are complete.
+     */
+    static FiringKernel generate(CompiledModel model, TNorm andOperator) {
+        byte[] bytes = new KernelGenerator(model, andOperator).emit();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, IMembershipFunction[].class, TNorm.class, double[].class));
+            return (FiringKernel) constructor.invoke(model.sets, andOperator, model.ruleWeights);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot load generated kernel", e);
+        }
+    }
+
+    private byte[] emit() {
+        constructor();
+        List<Integer> setChunks = fuzzifyChunks(false);
+        List<Integer> ruleChunks = ruleChunks(false);
+        List<Integer> batchSetChunks = fuzzifyChunks(true);
+        List<Integer> batchRuleChunks = ruleChunks(true);
+
+        List<Consumer<Code>> calls = new ArrayList<>();
+        for (int k = 0; k < setChunks.size(); k++) {
+            int method = cw.methodRef(NAME, "fuzzify" + k, "([D[DI)V");
+            calls.add(code -> code.local(ALOAD, 0).local(ALOAD, 1).local(ALOAD, 2).local(ILOAD, 3)
+                    .op(INVOKEVIRTUAL, method));
+        }
+        for (int k = 0; k < ruleChunks.size(); k++) {
+            int from = ruleChunks.get(k);
+            int method = cw.methodRef(NAME, "rules" + k, "([DIII)V");
+            calls.add(code -> code.local(ALOAD, 0).local(ALOAD, 2).local(ILOAD, 3)
+                    .local(ILOAD, 4).pushInt(from).op(IADD).pushInt(from)
+                    .op(INVOKEVIRTUAL, method));
+        }
+        dispatch("fire", "([D[DII)V", 5, calls, code -> code.local(ALOAD, 0).local(ALOAD, 1).local(ALOAD, 2)
+                .local(ILOAD, 3).local(ILOAD, 4));
+
+        calls = new ArrayList<>();
+        for (int k = 0; k < batchSetChunks.size(); k++) {
+            int method = cw.methodRef(NAME, "fuzzifyBatch" + k, "([[DII[DI)V");
+            calls.add(code -> code.local(ALOAD, 0).local(ALOAD, 1).local(ILOAD, 2).local(ILOAD, 3)
+                    .local(ALOAD, 4).local(ILOAD, 5).op(INVOKEVIRTUAL, method));
+        }
+        for (int k = 0; k < batchRuleChunks.size(); k++) {
+            int from = batchRuleChunks.get(k);
+            int method = cw.methodRef(NAME, "rulesBatch" + k, "([DIIII)V");
+            calls.add(code -> code.local(ALOAD, 0).local(ALOAD, 4).local(ILOAD, 5)
+                    .local(ILOAD, 6).pushInt(from * BLOCK).op(IADD).local(ILOAD, 3).pushInt(from)
+                    .op(INVOKEVIRTUAL, method));
+        }
+        dispatch("fireBatch", "([[DII[DII)V", 7, calls, code -> code.local(ALOAD, 0).local(ALOAD, 1)
+                .local(ILOAD, 2).local(ILOAD, 3).local(ALOAD, 4).local(ILOAD, 5).local(ILOAD, 6));
+
+        return cw.toByteArray();
+    }
+
+    /**
+     * Emit public method name making the given calls. When there are too many
+     * for one method they are spread over helpers with the same parameters,
+     * in as many levels as needed.
+     *
+     * @param loadParameters pushes this and the method's parameters, to call a helper
+     */
+    private void dispatch(String name, String descriptor, int maxLocals, List<Consumer<Code>> calls,
+                          Consumer<Code> loadParameters) {
+        int helpers = 0;
+        while (calls.size() > MAX_CALLS) {
+            List<Consumer<Code>> level = new ArrayList<>();
+            for (int i = 0; i < calls.size(); i += MAX_CALLS) {
+                String helper = name + "$" + helpers++;
+                Code body = cw.method(ACC_FINAL, helper, descriptor, maxLocals);
+                for (Consumer<Code> call : calls.subList(i, Math.min(i + MAX_CALLS, calls.size()))) {
+                    call.accept(body);
+                }
+                body.op(RETURN).end();
+                int method = cw.methodRef(NAME, helper, descriptor);
+                level.add(code -> {
+                    loadParameters.accept(code);
+                    code.op(INVOKEVIRTUAL, method);
+                });
+            }
+            calls = level;
+        }
+        Code code = cw.method(ACC_PUBLIC, name, descriptor, maxLocals);
+        for (Consumer<Code> call : calls) {
+            call.accept(code);
+        }
+        code.op(RETURN).end();
+    }
+
+    private void constructor() {
+        Code init = cw.method(ACC_PUBLIC, "<init>", "([L" + MF + ";L" + TNORM + ";[D)V", 4);
+        init.local(ALOAD, 0).op(INVOKESPECIAL, cw.methodRef(OBJECT, "<init>", "()V"));
+        init.local(ALOAD, 0).local(ALOAD, 1).op(PUTFIELD, mfsField);
+        init.local(ALOAD, 0).local(ALOAD, 2).op(PUTFIELD, andField);
+        init.local(ALOAD, 0).local(ALOAD, 3).op(PUTFIELD, weightsField);
+        init.op(RETURN).end();
+    }
+
+    /**
+     * Methods fuzzify0.. (or fuzzifyBatch0..), each covering a run of sets.
+     *
+     * @return first set of each method
+     */
+    private List<Integer> fuzzifyChunks(boolean batch) {
+        List<Integer> starts = new ArrayList<>();
+        int self = cw.getThisClass();
+        int doubles = cw.classRef("[D");
+        int columns = cw.classRef("[[D");
+        int s = 0;
+        do {
+            int k = starts.size();
+            starts.add(s);
+            Code code;
+            if (batch) {
+                // this, columns, start, len, workspace, membership, i, x, m, column
+                code = cw.method(ACC_FINAL, "fuzzifyBatch" + k, "([[DII[DI)V", 12,
+                        TYPE_OBJECT, self, TYPE_OBJECT, columns, TYPE_INT, TYPE_INT, TYPE_OBJECT, doubles,
+                        TYPE_INT, TYPE_INT, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_OBJECT, doubles);
+                code.op(ICONST_0).local(ISTORE, 6).op(DCONST_0).local(DSTORE, 7).op(DCONST_0).local(DSTORE, 9)
+                        .op(ACONST_NULL).local(ASTORE, 11);
+            } else {
+                // this, inputs, workspace, membership, x, m
+                code = cw.method(ACC_FINAL, "fuzzify" + k, "([D[DI)V", 8,
+                        TYPE_OBJECT, self, TYPE_OBJECT, doubles, TYPE_OBJECT, doubles, TYPE_INT,
+                        TYPE_DOUBLE, TYPE_DOUBLE);
+                code.op(DCONST_0).local(DSTORE, 4).op(DCONST_0).local(DSTORE, 6);
+            }
+            int first = s;
+            for (; s < model.sets.length; s++) {
+                int set = s;
+                if (!fits(code, s > first, item -> fuzzifySet(item, set, batch), "Set " + s)) {
+                    break;
+                }
+                fuzzifySet(code, s, batch);
+            }
+            code.op(RETURN).end();
+        } while (s < model.sets.length);
+        return starts;
+    }
+
+    private void fuzzifySet(Code code, int s, boolean batch) {
+        if (batch) {
+            fuzzifyBatch(code, s);
+        } else {
+            code.local(ALOAD, 1).pushInt(model.setInput[s]).op(DALOAD).local(DSTORE, 4);
+            membership(code, s, 4, 6);
+            code.local(ALOAD, 2).local(ILOAD, 3).pushInt(s).op(IADD).local(DLOAD, 6).op(DASTORE);
+        }
+    }
+
+    /**
+     * Whether an item goes into this method: it does while the method stays
+     * within CHUNK_LENGTH, and the first item of a method may take it up to
+     * Code.MAX_LENGTH. The item is measured by emitting it into a scratch
+     * method; its length does not depend on where it is placed.
+     *
+     * @param started whether the method already holds an item
+     */
+    private boolean fits(Code code, boolean started, Consumer<Code> item, String what) {
+        Code scratch = cw.method(0, "", "()V", 0);
+        item.accept(scratch);
+        // One byte left for the RETURN
+        int length = code.length() + scratch.length() + 1;
+        if (length <= CHUNK_LENGTH) {
+            return true;
+        }
+        if (started) {
+            return false;
+        }
+        if (length > Code.MAX_LENGTH) {
+            throw new ValidationException("Model too large to generate code for: " + what + " takes "
+                    + scratch.length() + " bytes");
+        }
+        return true;
+    }
+
+    /**
+     * workspace[membership + s * BLOCK + i] = membership of columns[input][start + i], i in [0, len).
+     */
+    private void fuzzifyBatch(Code code, int s) {
+        Label loop = new Label();
+        Label done = new Label();
+        code.local(ALOAD, 1).pushInt(model.setInput[s]).op(AALOAD).local(ASTORE, 11);
+        code.op(ICONST_0).local(ISTORE, 6);
+        code.mark(loop).local(ILOAD, 6).local(ILOAD, 3).branch(IF_ICMPGE, done);
+        code.local(ALOAD, 11).local(ILOAD, 2).local(ILOAD, 6).op(IADD).op(DALOAD).local(DSTORE, 7);
+        membership(code, s, 7, 9);
+        code.local(ALOAD, 4).local(ILOAD, 5).pushInt(s * BLOCK).op(IADD).local(ILOAD, 6).op(IADD)
+                .local(DLOAD, 9).op(DASTORE);
+        code.iinc(6, 1).branch(GOTO, loop);
+        code.mark(done);
+    }
+
+    /**
+     * Methods rules0.. (or rulesBatch0..), each covering a run of rules.
+     *
+     * @return first rule of each method
+     */
+    private List<Integer> ruleChunks(boolean batch) {
+        List<Integer> starts = new ArrayList<>();
+        int self = cw.getThisClass();
+        int doubles = cw.classRef("[D");
+        int rules = model.ruleIds.length;
+        int r = 0;
+        do {
+            int k = starts.size();
+            int from = r;
+            starts.add(from);
+            Code code;
+            if (batch) {
+                // this, workspace, membership, firing (of rule from), len, from, i, offset
+                code = cw.method(ACC_FINAL, "rulesBatch" + k, "([DIIII)V", 8,
+                        TYPE_OBJECT, self, TYPE_OBJECT, doubles, TYPE_INT, TYPE_INT, TYPE_INT, TYPE_INT,
+                        TYPE_INT, TYPE_INT);
+                code.op(ICONST_0).local(ISTORE, 6).local(ILOAD, 3).local(ISTORE, 7);
+            } else {
+                // this, workspace, membership, firing (of rule from), from
+                code = cw.method(ACC_FINAL, "rules" + k, "([DIII)V", 5);
+            }
+            for (; r < rules; r++) {
+                int rule = r;
+                if (!fits(code, r > from, item -> rule(item, rule, from, batch), "Rule " + model.ruleIds[r])) {
+                    break;
+                }
+                rule(code, r, from, batch);
+            }
+            code.op(RETURN).end();
+        } while (r < rules);
+        return starts;
+    }
+
+    private void rule(Code code, int r, int from, boolean batch) {
+        if (batch) {
+            Label loop = new Label();
+            Label done = new Label();
+            code.op(ICONST_0).local(ISTORE, 6);
+            code.mark(loop).local(ILOAD, 6).local(ILOAD, 4).branch(IF_ICMPGE, done);
+            code.local(ALOAD, 1).local(ILOAD, 7).local(ILOAD, 6).op(IADD);
+            strength(code, r, from, 5, set -> code.local(ALOAD, 1).local(ILOAD, 2).pushInt(set * BLOCK)
+                    .op(IADD).local(ILOAD, 6).op(IADD).op(DALOAD));
+            code.op(DASTORE).iinc(6, 1).branch(GOTO, loop);
+            code.mark(done).iinc(7, BLOCK);
+        } else {
+            code.local(ALOAD, 1).local(ILOAD, 3).pushInt(r - from).op(IADD);
+            strength(code, r, from, 4, set -> code.local(ALOAD, 1).local(ILOAD, 2).pushInt(set)
+                    .op(IADD).op(DALOAD));
+            code.op(DASTORE);
+        }
+    }
+
+    /**
+     * Push the weighted firing strength of rule r: 1.0 folded with the t-norm
+     * over its clauses, times the weight, as {@link CompiledModel#ruleStrength}.
+     *
+     * @param fromLocal local holding the first rule of the method, for weights read from the array
+     */
+    private void strength(Code code, int r, int from, int fromLocal, IntConsumer loadMembership) {
+        boolean min = andOperator.getClass() == MinTnorm.class;
+        boolean product = andOperator.getClass() == ProductTNorm.class;
+        code.op(DCONST_1);
+        for (int c = model.clauseStart[r]; c < model.clauseStart[r + 1]; c++) {
+            if (!min && !product) {
+                // Move the t-norm under the running strength
+                code.local(ALOAD, 0).op(GETFIELD, andField).op(DUP_X2).op(POP);
+            }
+            loadMembership.accept(model.clauseSets[c]);
+            if (min) {
+                code.op(INVOKESTATIC, cw.methodRef(MATH, "min", "(DD)D"));
+            } else if (product) {
+                code.op(DMUL);
+            } else {
+                code.invokeInterface(cw.interfaceMethodRef(TNORM, "and", "(DD)D"), 4);
+            }
+        }
+        double weight = model.ruleWeights[r];
+        if (weight == 1.0) {
+            return;
+        }
+        if (inlineWeights) {
+            code.pushDouble(weight);
+        } else {
+            code.local(ALOAD, 0).op(GETFIELD, weightsField).local(ILOAD, fromLocal).pushInt(r - from).op(IADD)
+                    .op(DALOAD);
+        }
+        code.op(DMUL);
+    }
+
+    /**
+     * Store the membership of the double in local x in set s into local m, as
+     * {@link CompiledModel#membership}: 0 outside the support, 1 in the core,
+     * the function in between.
+     */
+    private void membership(Code code, int s, int x, int m) {
+        Label zero = new Label();
+        Label end = new Label();
+        code.local(DLOAD, x).pushDouble(model.supportMin[s]).op(DCMPL).branch(IFLE, zero);
+        code.local(DLOAD, x).pushDouble(model.supportMax[s]).op(DCMPG).branch(IFGE, zero);
+        if (model.coreMin[s] <= model.coreMax[s]) {
+            Label outside = new Label();
+            code.local(DLOAD, x).pushDouble(model.coreMin[s]).op(DCMPL).branch(IFLT, outside);
+            code.local(DLOAD, x).pushDouble(model.coreMax[s]).op(DCMPG).branch(IFGT, outside);
+            code.op(DCONST_1).local(DSTORE, m).branch(GOTO, end);
+            code.mark(outside);
+        }
+
+        IMembershipFunction mf = model.sets[s];
+        double[] p = mf.getParameters();
+        if (mf.getClass() == TriangleMF.class) {
+            // Inside the support and off the peak b
+            slopes(code, x, m, end, p[0], p[1], p[1], p[2]);
+        } else if (mf.getClass() == TrapezoidMF.class) {
+            // Inside the support and off the plateau [b, c]
+            slopes(code, x, m, end, p[0], p[1], p[2], p[3]);
+        } else if (mf.getClass() == GaussianMF.class) {
+            double mean = p[0];
+            double halfWidth = ((GaussianMF) mf).getHalfWidth();
+            if (halfWidth != Double.POSITIVE_INFINITY) {
+                code.local(DLOAD, x).pushDouble(mean).op(DSUB).op(INVOKESTATIC, cw.methodRef(MATH, "abs", "(D)D"))
+                        .pushDouble(halfWidth).op(DCMPL).branch(IFGE, zero);
+            }
+            code.pushDouble(-0.5).local(DLOAD, x).pushDouble(mean).op(DSUB).pushDouble(p[1]).op(DDIV)
+                    .pushDouble(2).op(INVOKESTATIC, cw.methodRef(MATH, "pow", "(DD)D")).op(DMUL)
+                    .op(INVOKESTATIC, cw.methodRef(MATH, "exp", "(D)D"));
+            code.local(DSTORE, m).branch(GOTO, end);
+        } else {
+            code.local(ALOAD, 0).op(GETFIELD, mfsField).pushInt(s).op(AALOAD).local(DLOAD, x)
+                    .invokeInterface(cw.interfaceMethodRef(MF, "membership", "(D)D"), 2);
+            code.local(DSTORE, m).branch(GOTO, end);
+        }
+
+        code.mark(zero).op(DCONST_0).local(DSTORE, m);
+        code.mark(end);
+    }
+
+    /**
+     * x < b ? (x - a) / (b - a) : (d - x) / (d - c), the rising and falling
+     * edges of a triangle (b == c) or trapezoid.
+     */
+    private void slopes(Code code, int x, int m, Label end, double a, double b, double c, double d) {
+        Label falling = new Label();
+        code.local(DLOAD, x).pushDouble(b).op(DCMPL).branch(IFGE, falling);
+        code.local(DLOAD, x).pushDouble(a).op(DSUB).pushDouble(b - a).op(DDIV).local(DSTORE, m).branch(GOTO, end);
+        code.mark(falling);
+        code.pushDouble(d).local(DLOAD, x).op(DSUB).pushDouble(d - c).op(DDIV).local(DSTORE, m).branch(GOTO, end);
+    }
+}
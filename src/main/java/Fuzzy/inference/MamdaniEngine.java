@@ -1,93 +1,386 @@
 package Fuzzy.inference;
 
+import Fuzzy.Defuzzy.CentroidDefuzzifier;
+import Fuzzy.Defuzzy.DefuzzificationMethod;
+import Fuzzy.Defuzzy.MOMDefuzzifier;
 import Fuzzy.Rules.Rule;
 import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleIndex;
+import Fuzzy.Rules.RuleSnapshot;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.operator.MaxSNorm;
 import Fuzzy.variables.FuzzySet;
 import Fuzzy.variables.LinguisticVariable;
 import Fuzzy.operator.TNorm;
 import Fuzzy.operator.SNorm;
 
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Thread-safe for concurrent evaluate/compile calls: configuration is final and
+ * the output table cache is swapped atomically. Each call works on one
+ * {@link RuleSnapshot}, so rules may be edited while evaluating; the
+ * variables must not be.
+ */
 public class MamdaniEngine implements InferenceEngine {
 
-    private Map<String, LinguisticVariable> variables;
-    private TNorm andOperator;
-    private SNorm orOperator;
+    public static final int DEFAULT_SAMPLES = 200;
+
+    private final Map<String, LinguisticVariable> variables;
+    private final TNorm andOperator;
+    private final SNorm orOperator;
+    private final CentroidMode centroidMode;
+    private final int samples;
+    private final DefuzzificationMethod defuzzifier;
+
+    // Output grid and per-set membership tables, rebuilt when the output variable changes
+    private volatile OutputTable outputTable;
+
+    private final ThreadLocal<RuleIndex.Scratch> scratches = ThreadLocal.withInitial(RuleIndex.Scratch::new);
 
     public MamdaniEngine(Map<String, LinguisticVariable> variables,
                          TNorm andOp, SNorm orOp) {
+        this(variables, andOp, orOp, CentroidMode.SAMPLED, DEFAULT_SAMPLES);
+    }
+
+    public MamdaniEngine(Map<String, LinguisticVariable> variables,
+                         TNorm andOp, SNorm orOp, CentroidMode centroidMode) {
+        this(variables, andOp, orOp, centroidMode, DEFAULT_SAMPLES);
+    }
+
+    public MamdaniEngine(Map<String, LinguisticVariable> variables,
+                         TNorm andOp, SNorm orOp, int samples) {
+        this(variables, andOp, orOp, CentroidMode.SAMPLED, samples);
+    }
+
+    public MamdaniEngine(Map<String, LinguisticVariable> variables,
+                         TNorm andOp, SNorm orOp, CentroidMode centroidMode, int samples) {
+        this(variables, andOp, orOp, centroidMode, samples, new CentroidDefuzzifier());
+    }
+
+    /**
+     * Defuzzify the sampled output with another method, e.g. a {@link MOMDefuzzifier}.
+     */
+    public MamdaniEngine(Map<String, LinguisticVariable> variables,
+                         TNorm andOp, SNorm orOp, DefuzzificationMethod defuzzifier) {
+        this(variables, andOp, orOp, CentroidMode.SAMPLED, DEFAULT_SAMPLES, defuzzifier);
+    }
+
+    /**
+     * @param centroidMode {@link CentroidMode#ANALYTIC} only applies to a {@link CentroidDefuzzifier}
+     */
+    public MamdaniEngine(Map<String, LinguisticVariable> variables,
+                         TNorm andOp, SNorm orOp, CentroidMode centroidMode, int samples,
+                         DefuzzificationMethod defuzzifier) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Sample count must be >= 1. Got: " + samples);
+        }
         this.variables = variables;
         this.andOperator = andOp;
         this.orOperator = orOp;
+        this.centroidMode = centroidMode;
+        this.samples = samples;
+        this.defuzzifier = defuzzifier;
+    }
+
+    public DefuzzificationMethod getDefuzzifier() {
+        return defuzzifier;
+    }
+
+    Map<String, LinguisticVariable> getVariables() {
+        return variables;
+    }
+
+    TNorm getAndOperator() {
+        return andOperator;
+    }
+
+    SNorm getOrOperator() {
+        return orOperator;
+    }
+
+    int getSamples() {
+        return samples;
     }
 
     @Override
     public double evaluate(Map<String, Double> inputs, RuleBase base) {
 
-        String outputVarName = getOutputVariableName(base);
+        RuleSnapshot snapshot = base.snapshot();
+        String outputVarName = getOutputVariableName(snapshot);
         LinguisticVariable outputVar = variables.get(outputVarName);
+        OutputTable table = outputTable(outputVar);
 
-        int samples = 200;
-        double step = (outputVar.getMax() - outputVar.getMin()) / samples;
+        if (useAnalyticCentroid(table)) {
+            return evaluateAnalytic(inputs, snapshot, table);
+        }
 
-        double[] aggregated = new double[samples + 1];
+        double[] xs = table.xs;
+        int n = xs.length;
 
-        // ---- Rule Processing ----
-        for (Rule rule : base.getRules()) {
+        double[] aggregated = new double[n];
 
-            if (!rule.enabled) continue;
+        // ---- Rule Processing (only rules that can fire) ----
+        RuleIndex index = snapshot.getIndex();
+        double[] memberships = memberships(index, inputs);
+        RuleIndex.Scratch scratch = scratches.get();
+        int count = index.candidates(memberships, scratch);
+        int[] candidates = scratch.getCandidates();
 
-            double firingStrength = 1.0;
+        if (orOperator instanceof MaxSNorm) {
+            // Max aggregation: clip each output set once, at its highest firing strength
+            double[] heights = heights(index, memberships, count, candidates, table);
+            for (int s = 0; s < heights.length; s++) {
+                if (heights[s] == 0) continue;
+                double[] μ = table.tables[s];
+                for (int i = table.start[s]; i < table.end[s]; i++) {
+                    aggregated[i] = Math.max(aggregated[i], Math.min(μ[i], heights[s]));
+                }
+            }
+        } else {
+            for (int c = 0; c < count; c++) {
 
-            for (var e : rule.antecedent.entrySet()) {
+                Rule rule = index.getRule(candidates[c]);
+                double firingStrength = firingStrength(index, candidates[c], memberships);
 
-                String varName = e.getKey();
-                String setName = e.getValue();
+                int s = outputSet(table, rule);
+                double[] μ = table.tables[s];
 
-                LinguisticVariable var = variables.get(varName);
-                FuzzySet set = var.getFuzzySet(setName);
+                // Apply implication (clipping) inside the set's support; elsewhere
+                // the clipped set is 0 and leaves the aggregate unchanged
+                for (int i = table.start[s]; i < table.end[s]; i++) {
 
-                double crispValue = inputs.get(varName);
-                double μ = set.getMembership(crispValue);
+                    double clipped = Math.min(μ[i], firingStrength);
 
-                firingStrength = andOperator.and(firingStrength, μ);
+                    aggregated[i] = orOperator.or(aggregated[i], clipped);
+                }
             }
+        }
+
+        // ---- Defuzzification ----
+        return defuzzifier.defuzzify(aggregated, n, outputVar.getMin(), outputVar.getMax());
+    }
 
-            firingStrength *= rule.weight;
 
-            String outputSetName = rule.consequent.values().iterator().next();
-            FuzzySet outputSet = outputVar.getFuzzySet(outputSetName);
+    /**
+     * Max-aggregation of min-clipped sets only depends on the highest firing
+     * strength per output set, which is integrated exactly.
+     */
+    private double evaluateAnalytic(Map<String, Double> inputs, RuleSnapshot snapshot, OutputTable table) {
+        RuleIndex index = snapshot.getIndex();
+        double[] memberships = memberships(index, inputs);
+        RuleIndex.Scratch scratch = scratches.get();
+        int count = index.candidates(memberships, scratch);
+        double[] heights = heights(index, memberships, count, scratch.getCandidates(), table);
 
-            // Apply implication (clipping)
-            for (int i = 0; i <= samples; i++) {
+        return table.analytic.centroid(heights, 0, table.analytic.newWorkspace(), 0);
+    }
 
-                double x = outputVar.getMin() + i * step;
-                double μ = outputSet.getMembership(x);
+    /**
+     * Highest firing strength of the candidate rules concluding on each output set.
+     */
+    private double[] heights(RuleIndex index, double[] memberships, int count, int[] candidates,
+                             OutputTable table) {
+        double[] heights = new double[table.sets.length];
 
-                double clipped = Math.min(μ, firingStrength);
+        for (int c = 0; c < count; c++) {
 
-                aggregated[i] = orOperator.or(aggregated[i], clipped);
+            Rule rule = index.getRule(candidates[c]);
+            int s = outputSet(table, rule);
+            heights[s] = Math.max(heights[s], firingStrength(index, candidates[c], memberships));
+        }
+
+        return heights;
+    }
+
+    private static int outputSet(OutputTable table, Rule rule) {
+        String setName = rule.consequent.values().iterator().next();
+        int s = table.indexOf(setName);
+        if (s < 0) {
+            throw new ValidationException("Variable " + table.variable.getName() + " missing fuzzy set " + setName);
+        }
+        return s;
+    }
+
+    /**
+     * Membership of every (variable, set) entry of the index.
+     */
+    private double[] memberships(RuleIndex index, Map<String, Double> inputs) {
+        double[] memberships = new double[index.getEntryCount()];
+
+        for (int e = 0; e < memberships.length; e++) {
+
+            String varName = index.getVariable(e);
+            String setName = index.getSet(e);
+
+            LinguisticVariable var = variables.get(varName);
+            if (var == null) {
+                throw new ValidationException("Rule references unknown variable " + varName);
+            }
+            FuzzySet set = var.getFuzzySet(setName);
+            if (set == null) {
+                throw new ValidationException("Variable " + varName + " missing fuzzy set " + setName);
             }
+            Double crispValue = inputs.get(varName);
+            if (crispValue == null) {
+                throw new ValidationException("Missing crisp input for variable " + varName);
+            }
+
+            memberships[e] = set.getMF().inSupport(crispValue) ? set.getMembership(crispValue) : 0;
+        }
+
+        return memberships;
+    }
+
+    private double firingStrength(RuleIndex index, int rule, double[] memberships) {
+        double firingStrength = 1.0;
+
+        for (int c = index.getClauseStart(rule); c < index.getClauseEnd(rule); c++) {
+            firingStrength = andOperator.and(firingStrength, memberships[index.getClauseEntry(c)]);
         }
 
-        // ---- Defuzzification (Centroid) ----
-        double num = 0, den = 0;
-        for (int i = 0; i <= samples; i++) {
+        return firingStrength * index.getRule(rule).weight;
+    }
 
-            double x = outputVar.getMin() + i * step;
-            num += x * aggregated[i];
-            den +=     aggregated[i];
+    OutputTable outputTable(LinguisticVariable outputVar) {
+        OutputTable table = outputTable;
+        if (table == null || !table.isCurrent(outputVar)) {
+            table = new OutputTable(outputVar, samples);
+            outputTable = table;
         }
+        return table;
+    }
 
-        if (den == 0) return 0;
+    private boolean useAnalyticCentroid(OutputTable table) {
+        return useAnalyticCentroid() && table.analytic != null;
+    }
 
-        return num / den;
+    /**
+     * Whether outputs whose sets are all piecewise linear are integrated exactly.
+     */
+    private boolean useAnalyticCentroid() {
+        return centroidMode == CentroidMode.ANALYTIC
+                && orOperator instanceof MaxSNorm
+                && defuzzifier instanceof CentroidDefuzzifier;
     }
 
+    @Override
+    public CompiledMamdaniModel compile(RuleBase base, String... inputOrder) {
+        return compile(base, false, inputOrder);
+    }
+
+    @Override
+    public CompiledMamdaniModel compile(RuleTable rules, String... inputOrder) {
+        return compile(rules, false, inputOrder);
+    }
+
+    /**
+     * {@link #compile(RuleBase, String...)} with fuzzification and rule firing
+     * generated as a hidden class specialised to these rules, sets and
+     * t-norm, so no membership or t-norm call goes through an interface that
+     * other models share. Results are identical to the interpreted model;
+     * generation costs a few milliseconds, so it pays off for long-lived models.
+     */
+    public CompiledMamdaniModel generate(RuleBase base, String... inputOrder) {
+        return compile(base, true, inputOrder);
+    }
+
+    public CompiledMamdaniModel generate(RuleTable rules, String... inputOrder) {
+        return compile(rules, true, inputOrder);
+    }
+
+    private CompiledMamdaniModel compile(RuleBase base, boolean generate, String... inputOrder) {
+        RuleSnapshot snapshot = base.snapshot();
+        CompiledModel.Builder.requireRules(snapshot);
+
+        OutputTable table = outputTable(requireOutput(getOutputVariableName(snapshot)));
+
+        return CompiledMamdaniModel.compile(snapshot, variables, andOperator, orOperator, defuzzifier,
+                new OutputTable[]{table}, false, useAnalyticCentroid(), generate, inputOrder);
+    }
+
+    private CompiledMamdaniModel compile(RuleTable rules, boolean generate, String... inputOrder) {
+        CompiledModel.Builder.requireRules(rules);
+
+        OutputTable table = outputTable(requireOutput(rules.getName(rules.getConsequentVariable(0))));
+
+        return CompiledMamdaniModel.compile(rules, variables, andOperator, orOperator, defuzzifier,
+                new OutputTable[]{table}, false, useAnalyticCentroid(), generate, inputOrder);
+    }
+
+    /**
+     * Compile a model with several outputs, each aggregating the rules that
+     * conclude on it, evaluated together by
+     * {@link CompiledMamdaniModel#evaluateOutputs}. Rules concluding on other
+     * variables are left out.
+     *
+     * @param outputNames Output variables in result order; if empty, every
+     *                    consequent variable in order of first use
+     */
+    public CompiledMamdaniModel compileOutputs(RuleBase base, String[] outputNames, String... inputOrder) {
+        RuleSnapshot snapshot = base.snapshot();
+        List<Rule> rules = CompiledModel.Builder.requireRules(snapshot);
+
+        if (outputNames.length == 0) {
+            Set<String> used = new LinkedHashSet<>();
+            for (Rule rule : rules) {
+                used.add(rule.consequent.keySet().iterator().next());
+            }
+            outputNames = used.toArray(new String[0]);
+        }
+        return CompiledMamdaniModel.compile(snapshot, variables, andOperator, orOperator, defuzzifier,
+                outputTables(outputNames), true, useAnalyticCentroid(), false, inputOrder);
+    }
+
+    /**
+     * {@link #compileOutputs(RuleBase, String[], String...)} straight from flat rules.
+     */
+    public CompiledMamdaniModel compileOutputs(RuleTable rules, String[] outputNames, String... inputOrder) {
+        CompiledModel.Builder.requireRules(rules);
+
+        if (outputNames.length == 0) {
+            Set<String> used = new LinkedHashSet<>();
+            for (int r = 0; r < rules.getRuleCount(); r++) {
+                used.add(rules.getName(rules.getConsequentVariable(r)));
+            }
+            outputNames = used.toArray(new String[0]);
+        }
+        return CompiledMamdaniModel.compile(rules, variables, andOperator, orOperator, defuzzifier,
+                outputTables(outputNames), true, useAnalyticCentroid(), false, inputOrder);
+    }
+
+    private OutputTable[] outputTables(String[] outputNames) {
+        OutputTable[] tables = new OutputTable[outputNames.length];
+        for (int o = 0; o < outputNames.length; o++) {
+            LinguisticVariable outputVar = requireOutput(outputNames[o]);
+            for (int p = 0; p < o; p++) {
+                if (tables[p].variable == outputVar) {
+                    throw new ValidationException("Output variable " + outputNames[o] + " listed twice");
+                }
+            }
+            // The cached table serves single-output evaluation; others are built per compile
+            OutputTable cached = outputTable;
+            tables[o] = cached != null && cached.isCurrent(outputVar)
+                    ? cached
+                    : new OutputTable(outputVar, samples);
+        }
+        return tables;
+    }
+
+    private LinguisticVariable requireOutput(String outputVarName) {
+        LinguisticVariable outputVar = variables.get(outputVarName);
+        if (outputVar == null) {
+            throw new ValidationException("Unknown output variable " + outputVarName);
+        }
+        return outputVar;
+    }
 
-    private String getOutputVariableName(RuleBase base) {
-        Rule r = base.getRules().get(0);
+    private String getOutputVariableName(RuleSnapshot snapshot) {
+        Rule r = snapshot.getRules().get(0);
         return r.consequent.keySet().iterator().next();
     }
 }
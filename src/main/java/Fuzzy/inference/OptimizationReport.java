@@ -0,0 +1,145 @@
+package Fuzzy.inference;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a {@link RuleBaseOptimizer} pass: the redundant rules found, why
+ * each is redundant, the remaining rules grouped by consequent, and a static
+ * per-evaluation cost before and after removing them. Costs are worst cases,
+ * as if every rule fired: antecedent clauses evaluated, and output grid points
+ * clipped by the sampled path, which clips once per rule unless rules sharing
+ * a consequent are grouped (max aggregation).
+ */
+public final class OptimizationReport {
+
+    public enum Reason {
+        /** Same antecedent and consequent as a rule of at least the same weight */
+        DUPLICATE,
+        /** A rule with a subset of its clauses, the same consequent and at least its weight always fires as high */
+        SUBSUMED,
+        /** Zero weight, or an antecedent set that is 0 over the whole input range */
+        NEVER_FIRES
+    }
+
+    private final int version;
+    private final List<Integer> removedIds;
+    private final List<Reason> reasons;
+    private final List<Integer> coveringIds;
+    private final Map<String, List<Integer>> consequentGroups;
+    private final boolean redundancyChecked;
+    private final int rulesBefore;
+    private final int rulesAfter;
+    private final int clausesBefore;
+    private final int clausesAfter;
+    private final long clipPointsBefore;
+    private final long clipPointsAfter;
+
+    OptimizationReport(int version, List<Integer> removedIds, List<Reason> reasons, List<Integer> coveringIds,
+                       Map<String, List<Integer>> consequentGroups, boolean redundancyChecked,
+                       int rulesBefore, int rulesAfter, int clausesBefore, int clausesAfter,
+                       long clipPointsBefore, long clipPointsAfter) {
+        this.version = version;
+        this.removedIds = Collections.unmodifiableList(removedIds);
+        this.reasons = Collections.unmodifiableList(reasons);
+        this.coveringIds = Collections.unmodifiableList(coveringIds);
+        this.consequentGroups = Collections.unmodifiableMap(consequentGroups);
+        this.redundancyChecked = redundancyChecked;
+        this.rulesBefore = rulesBefore;
+        this.rulesAfter = rulesAfter;
+        this.clausesBefore = clausesBefore;
+        this.clausesAfter = clausesAfter;
+        this.clipPointsBefore = clipPointsBefore;
+        this.clipPointsAfter = clipPointsAfter;
+    }
+
+    /**
+     * Version of the analysed rule snapshot.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getRemovedCount() {
+        return removedIds.size();
+    }
+
+    /**
+     * Ids of the redundant rules, in rule order.
+     */
+    public List<Integer> getRemovedRuleIds() {
+        return removedIds;
+    }
+
+    public Reason getReason(int i) {
+        return reasons.get(i);
+    }
+
+    /**
+     * Id of the rule that makes removed rule i redundant, or -1 for {@link Reason#NEVER_FIRES}.
+     */
+    public int getCoveringRuleId(int i) {
+        return coveringIds.get(i);
+    }
+
+    /**
+     * Ids of the remaining enabled rules by consequent ("Variable IS Set").
+     */
+    public Map<String, List<Integer>> getConsequentGroups() {
+        return consequentGroups;
+    }
+
+    /**
+     * Whether duplicates and subsumed rules were looked for; that needs the min
+     * t-norm and max aggregation, under which removing them is exact.
+     */
+    public boolean isRedundancyChecked() {
+        return redundancyChecked;
+    }
+
+    public int getRulesBefore() {
+        return rulesBefore;
+    }
+
+    public int getRulesAfter() {
+        return rulesAfter;
+    }
+
+    public int getClausesBefore() {
+        return clausesBefore;
+    }
+
+    public int getClausesAfter() {
+        return clausesAfter;
+    }
+
+    public long getClipPointsBefore() {
+        return clipPointsBefore;
+    }
+
+    public long getClipPointsAfter() {
+        return clipPointsAfter;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Rules ").append(rulesBefore).append(" -> ").append(rulesAfter)
+                .append(", clauses ").append(clausesBefore).append(" -> ").append(clausesAfter)
+                .append(", clipped grid points ").append(clipPointsBefore).append(" -> ").append(clipPointsAfter);
+        if (!redundancyChecked) {
+            sb.append(" (duplicates and subsumption not checked: needs min/max operators)");
+        }
+        for (int i = 0; i < removedIds.size(); i++) {
+            sb.append("\n  rule ").append(removedIds.get(i)).append(": ").append(reasons.get(i));
+            if (coveringIds.get(i) >= 0) {
+                sb.append(" by rule ").append(coveringIds.get(i));
+            }
+        }
+        for (Map.Entry<String, List<Integer>> group : consequentGroups.entrySet()) {
+            sb.append("\n  ").append(group.getKey()).append(" <- rules ").append(group.getValue());
+        }
+        return sb.toString();
+    }
+}
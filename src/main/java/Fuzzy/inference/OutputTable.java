@@ -0,0 +1,76 @@
+package Fuzzy.inference;
+
+import Fuzzy.Defuzzy.PiecewiseLinearCentroid;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Output-side data that depends only on the output variable: the sampling grid,
+ * one membership table per output set and, when every set is piecewise linear,
+ * the exact centroid calculator. Built for a given {@link LinguisticVariable#getVersion()}.
+ */
+final class OutputTable {
+
+    final LinguisticVariable variable;
+    final int version;
+    final double[] xs;
+    final FuzzySet[] sets;
+    final double[][] tables;
+    // Grid points [start[s], end[s]) lie inside the support of set s; the table is 0 elsewhere
+    final int[] start;
+    final int[] end;
+    final PiecewiseLinearCentroid analytic;
+
+    private final Map<String, Integer> index = new HashMap<>();
+
+    OutputTable(LinguisticVariable variable, int samples) {
+        this.variable = variable;
+        this.version = variable.getVersion();
+
+        double step = (variable.getMax() - variable.getMin()) / samples;
+        xs = new double[samples + 1];
+        for (int i = 0; i <= samples; i++) {
+            xs[i] = variable.getMin() + i * step;
+        }
+
+        sets = variable.getSets().values().toArray(new FuzzySet[0]);
+        tables = new double[sets.length][];
+        start = new int[sets.length];
+        end = new int[sets.length];
+        boolean piecewiseLinear = true;
+        IMembershipFunction[] mfs = new IMembershipFunction[sets.length];
+        for (int s = 0; s < sets.length; s++) {
+            index.put(sets[s].getName(), s);
+            mfs[s] = sets[s].getMF();
+            piecewiseLinear &= PiecewiseLinearCentroid.supports(mfs[s]);
+
+            tables[s] = new double[xs.length];
+            start[s] = xs.length;
+            for (int i = 0; i < xs.length; i++) {
+                if (!mfs[s].inSupport(xs[i])) continue;
+                tables[s][i] = sets[s].getMembership(xs[i]);
+                start[s] = Math.min(start[s], i);
+                end[s] = i + 1;
+            }
+        }
+        analytic = piecewiseLinear
+                ? new PiecewiseLinearCentroid(variable.getMin(), variable.getMax(), mfs)
+                : null;
+    }
+
+    boolean isCurrent(LinguisticVariable var) {
+        return variable == var && version == var.getVersion();
+    }
+
+    /**
+     * @return index of the set, or -1 if the variable has no such set
+     */
+    int indexOf(String setName) {
+        Integer s = index.get(setName);
+        return s == null ? -1 : s;
+    }
+}
@@ -0,0 +1,298 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleSnapshot;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static analysis of the rules of a {@link MamdaniEngine} that finds rules
+ * whose removal cannot change any output:
+ * <ul>
+ * <li>rules that never fire: zero weight, or an antecedent set that is 0 at
+ * every input (empty support, or, for inputs known to be in range, support
+ * outside the variable's range); any t-norm gives 0 and any s-norm ignores it</li>
+ * <li>duplicates: the same antecedent and consequent as a rule of at least the
+ * same weight</li>
+ * <li>subsumed rules: a rule with a subset of the clauses, the same
+ * consequent and at least the same weight fires at least as strongly</li>
+ * </ul>
+ * The last two are exact only under min and max aggregation, so they are
+ * looked for only with {@link MinTnorm} and {@link MaxSNorm}. Disabled rules
+ * are left alone. With max aggregation the engine already clips each output
+ * set once with the strongest rule concluding on it; the report shows that
+ * grouping and its cost next to per-rule clipping.
+ */
+public class RuleBaseOptimizer {
+
+    // Subsumption enumerates every subset of a rule's clauses
+    static final int MAX_SUBSUMPTION_CLAUSES = 16;
+
+    private final MamdaniEngine engine;
+    private final boolean inputsInRange;
+
+    public RuleBaseOptimizer(MamdaniEngine engine) {
+        this(engine, false);
+    }
+
+    /**
+     * @param inputsInRange inputs always lie in their variable's [min, max], so
+     *                      sets with no support there never match
+     */
+    public RuleBaseOptimizer(MamdaniEngine engine, boolean inputsInRange) {
+        this.engine = engine;
+        this.inputsInRange = inputsInRange;
+    }
+
+    public OptimizationReport analyze(RuleBase base) {
+        return analyze(base.snapshot());
+    }
+
+    /**
+     * Find the redundant rules of a snapshot without changing anything.
+     */
+    public OptimizationReport analyze(RuleSnapshot snapshot) {
+        List<Rule> rules = snapshot.getRules();
+        int n = rules.size();
+        Map<String, LinguisticVariable> variables = engine.getVariables();
+        boolean grouped = engine.getOrOperator() instanceof MaxSNorm;
+        boolean redundancy = grouped && engine.getAndOperator() instanceof MinTnorm;
+
+        OptimizationReport.Reason[] reasons = new OptimizationReport.Reason[n];
+        int[] covering = new int[n];
+        Arrays.fill(covering, -1);
+
+        // Clauses and consequents as small ints, so antecedents compare as sorted int arrays
+        Map<String, Integer> clauseIds = new HashMap<>();
+        Map<String, Integer> consequentIds = new HashMap<>();
+        int[][] clauses = new int[n][];
+        int[] consequents = new int[n];
+        for (int r = 0; r < n; r++) {
+            Rule rule = rules.get(r);
+            if (!rule.enabled) continue;
+
+            clauses[r] = new int[rule.antecedent.size()];
+            int c = 0;
+            for (Map.Entry<String, String> clause : rule.antecedent.entrySet()) {
+                clauses[r][c++] = intern(clauseIds, clause.getKey() + '\0' + clause.getValue());
+            }
+            Arrays.sort(clauses[r]);
+            consequents[r] = intern(consequentIds, consequentKey(rule));
+
+            if (neverFires(rule, variables)) {
+                reasons[r] = OptimizationReport.Reason.NEVER_FIRES;
+            }
+        }
+
+        if (redundancy) {
+            // Strongest live rule per (consequent, antecedent); the first one on ties
+            Map<Key, Integer> best = new HashMap<>();
+            for (int r = 0; r < n; r++) {
+                if (clauses[r] == null || reasons[r] != null) continue;
+                Key key = new Key(consequents[r], clauses[r]);
+                Integer other = best.get(key);
+                if (other == null || rules.get(r).weight > rules.get(other).weight) {
+                    best.put(key, r);
+                }
+            }
+
+            for (int r = 0; r < n; r++) {
+                if (clauses[r] == null || reasons[r] != null) continue;
+                Integer b = best.get(new Key(consequents[r], clauses[r]));
+                if (b != r) {
+                    reasons[r] = OptimizationReport.Reason.DUPLICATE;
+                    covering[r] = rules.get(b).id;
+                    continue;
+                }
+                int cover = subsumingRule(rules, r, clauses[r], consequents[r], best);
+                if (cover >= 0) {
+                    reasons[r] = OptimizationReport.Reason.SUBSUMED;
+                    covering[r] = rules.get(cover).id;
+                }
+            }
+        }
+
+        keepOutputVariable(rules, reasons);
+
+        List<Integer> removedIds = new ArrayList<>();
+        List<OptimizationReport.Reason> removedReasons = new ArrayList<>();
+        List<Integer> coveringIds = new ArrayList<>();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        Map<String, OutputTable> tables = new HashMap<>();
+        int enabledRules = 0;
+        int clausesBefore = 0;
+        int clausesAfter = 0;
+        long clipBefore = 0;
+        long clipAfter = 0;
+        for (int r = 0; r < n; r++) {
+            Rule rule = rules.get(r);
+            if (!rule.enabled) continue;
+
+            int width = clipWidth(rule, variables, tables);
+            enabledRules++;
+            clausesBefore += rule.antecedent.size();
+            clipBefore += width;
+            if (reasons[r] != null) {
+                removedIds.add(rule.id);
+                removedReasons.add(reasons[r]);
+                coveringIds.add(covering[r]);
+                continue;
+            }
+            clausesAfter += rule.antecedent.size();
+            List<Integer> group = groups.computeIfAbsent(consequentKey(rule), k -> new ArrayList<>());
+            // Max aggregation clips each set once, with the strongest of its rules
+            if (group.isEmpty() || !grouped) {
+                clipAfter += width;
+            }
+            group.add(rule.id);
+        }
+
+        return new OptimizationReport(snapshot.getVersion(), removedIds, removedReasons, coveringIds, groups,
+                redundancy, enabledRules, enabledRules - removedIds.size(), clausesBefore, clausesAfter,
+                clipBefore, clipAfter);
+    }
+
+    /**
+     * Analyse the current rules and remove the redundant ones in one edit.
+     * Evaluation results of the rule base are unchanged.
+     */
+    public OptimizationReport optimize(RuleBase base) {
+        synchronized (base) {
+            OptimizationReport report = analyze(base.snapshot());
+            if (report.getRemovedCount() > 0) {
+                base.removeRules(report.getRemovedRuleIds());
+            }
+            return report;
+        }
+    }
+
+    private boolean neverFires(Rule rule, Map<String, LinguisticVariable> variables) {
+        if (rule.weight == 0 || (rule.weight < 0 && engine.getOrOperator() instanceof MaxSNorm)) {
+            return true;
+        }
+        for (Map.Entry<String, String> clause : rule.antecedent.entrySet()) {
+            LinguisticVariable var = variables.get(clause.getKey());
+            FuzzySet set = var == null ? null : var.getFuzzySet(clause.getValue());
+            if (set == null) {
+                // Not evaluable at all; leave it for validation to report
+                return false;
+            }
+            IMembershipFunction mf = set.getMF();
+            double lo = mf.getSupportMin();
+            double hi = mf.getSupportMax();
+            if (!(lo < hi)) {
+                return true;
+            }
+            // Open support (lo, hi) against the closed range [min, max]
+            if (inputsInRange && (hi <= var.getMin() || lo >= var.getMax())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Index of a live rule with the same consequent, a proper subset of the
+     * clauses and at least the weight of rule r, or -1.
+     */
+    private static int subsumingRule(List<Rule> rules, int r, int[] clauses, int consequent,
+                                     Map<Key, Integer> best) {
+        int c = clauses.length;
+        if (c == 0 || c > MAX_SUBSUMPTION_CLAUSES) {
+            return -1;
+        }
+        double weight = rules.get(r).weight;
+        int full = (1 << c) - 1;
+        for (int mask = 0; mask < full; mask++) {
+            int[] subset = new int[Integer.bitCount(mask)];
+            int k = 0;
+            for (int i = 0; i < c; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    subset[k++] = clauses[i];
+                }
+            }
+            Integer other = best.get(new Key(consequent, subset));
+            if (other != null && rules.get(other).weight >= weight) {
+                return other;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The engine takes its output variable from the first rule; if removals
+     * would change which variable that is, keep the first rule.
+     */
+    private static void keepOutputVariable(List<Rule> rules, OptimizationReport.Reason[] reasons) {
+        if (rules.isEmpty()) return;
+        String output = outputVariable(rules.get(0));
+        for (int r = 0; r < rules.size(); r++) {
+            if (reasons[r] == null) {
+                if (output.equals(outputVariable(rules.get(r)))) return;
+                break;
+            }
+        }
+        reasons[0] = null;
+    }
+
+    private int clipWidth(Rule rule, Map<String, LinguisticVariable> variables, Map<String, OutputTable> tables) {
+        LinguisticVariable var = variables.get(outputVariable(rule));
+        if (var == null) return 0;
+        OutputTable table = tables.computeIfAbsent(var.getName(), k -> new OutputTable(var, engine.getSamples()));
+        int s = table.indexOf(rule.consequent.get(var.getName()));
+        return s < 0 ? 0 : table.end[s] - table.start[s];
+    }
+
+    private static String outputVariable(Rule rule) {
+        return rule.consequent.keySet().iterator().next();
+    }
+
+    private static String consequentKey(Rule rule) {
+        String var = outputVariable(rule);
+        return var + " IS " + rule.consequent.get(var);
+    }
+
+    private static int intern(Map<String, Integer> ids, String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    private static final class Key {
+        final int consequent;
+        final int[] clauses;
+        final int hash;
+
+        Key(int consequent, int[] clauses) {
+            this.consequent = consequent;
+            this.clauses = clauses;
+            this.hash = 31 * consequent + Arrays.hashCode(clauses);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return consequent == k.consequent && Arrays.equals(clauses, k.clauses);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
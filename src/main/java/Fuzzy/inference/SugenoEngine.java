@@ -2,14 +2,21 @@ package Fuzzy.inference;
 
 import Fuzzy.Rules.Rule;
 import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleIndex;
+import Fuzzy.Rules.RuleTable;
 import Fuzzy.variables.FuzzySet;
 import Fuzzy.variables.LinguisticVariable;
 
 import java.util.Map;
 
+/**
+ * Stateless apart from the variable map; the same thread-safety rules as
+ * {@link MamdaniEngine} apply.
+ */
 public class SugenoEngine implements InferenceEngine {
 
-    private Map<String, LinguisticVariable> variables;
+    private final Map<String, LinguisticVariable> variables;
+    private final ThreadLocal<RuleIndex.Scratch> scratches = ThreadLocal.withInitial(RuleIndex.Scratch::new);
 
     public SugenoEngine(Map<String, LinguisticVariable> variables) {
         this.variables = variables;
@@ -21,35 +28,47 @@ public class SugenoEngine implements InferenceEngine {
         double weightedSum = 0.0;
         double sumWeights   = 0.0;
 
-        for (Rule rule : base.getRules()) {
+        // 1. Fuzzify each referenced set once; clauses on unknown variables or
+        // sets are ignored, i.e. count as membership 1
+        RuleIndex index = base.getIndex();
+        double[] memberships = new double[index.getEntryCount()];
 
-            if (!rule.enabled)
-                continue;
+        for (int e = 0; e < memberships.length; e++) {
 
-            double firingStrength = 1.0;
+            LinguisticVariable var = variables.get(index.getVariable(e));
+            FuzzySet fs = var == null ? null : var.getFuzzySet(index.getSet(e));
+
+            if (fs == null) {
+                memberships[e] = 1.0;
+                continue;
+            }
 
-            for (Map.Entry<String, String> ant : rule.antecedent.entrySet()) {
+            double crispInput = inputs.get(index.getVariable(e));
+            memberships[e] = fs.getMF().inSupport(crispInput) ? fs.getMembership(crispInput) : 0;
+        }
 
-                String varName = ant.getKey();
-                String setName = ant.getValue();
+        // 2. Visit only rules whose clauses all have nonzero membership
+        RuleIndex.Scratch scratch = scratches.get();
+        int count = index.candidates(memberships, scratch);
+        int[] candidates = scratch.getCandidates();
 
-                LinguisticVariable var = variables.get(varName);
-                if (var == null) continue;
+        for (int c = 0; c < count; c++) {
 
-                FuzzySet fs = var.getFuzzySet(setName);
-                if (fs == null) continue;
+            int r = candidates[c];
+            Rule rule = index.getRule(r);
 
-                double crispInput = inputs.get(varName);
-                double μ = fs.getMembership(crispInput);
+            double firingStrength = 1.0;
 
+            for (int k = index.getClauseStart(r); k < index.getClauseEnd(r); k++) {
+                double μ = memberships[index.getClauseEntry(k)];
                 firingStrength = Math.min(firingStrength, μ);
             }
 
             firingStrength *= rule.weight;  // scale by rule weight
 
-            // 2. Evaluate Sugeno f(x)
+            // 3. Evaluate Sugeno f(x)
 
-            double fValue = computeSugenoFunction(rule.consequent, inputs);
+            double fValue = rule.getSugenoExpression().evaluate(inputs);
 
             weightedSum += firingStrength * fValue;
             sumWeights  += firingStrength;
@@ -61,30 +80,13 @@ public class SugenoEngine implements InferenceEngine {
         return weightedSum / sumWeights;
     }
 
-    private double computeSugenoFunction(Map<String,String> cons, Map<String,Double> inputs) {
-
-        String expression = cons.values().iterator().next().trim();
-
-        // Case 1: constant output
-        if (!expression.contains("*"))
-            return Double.parseDouble(expression);
-
-        // Case 2: linear expression
-        double result = 0;
-
-        String[] terms = expression.split("\\+");
-        for (String t : terms) {
-            t = t.trim();
-            if (t.contains("*")) {
-                String[] parts = t.split("\\*");
-                double coeff = Double.parseDouble(parts[0].trim());
-                String var = parts[1].trim();
-                result += coeff * inputs.get(var);
-            } else {
-                result += Double.parseDouble(t.trim());
-            }
-        }
+    @Override
+    public CompiledSugenoModel compile(RuleBase base, String... inputOrder) {
+        return CompiledSugenoModel.compile(base.snapshot(), variables, inputOrder);
+    }
 
-        return result;
+    @Override
+    public CompiledSugenoModel compile(RuleTable rules, String... inputOrder) {
+        return CompiledSugenoModel.compile(rules, variables, inputOrder);
     }
 }
@@ -0,0 +1,321 @@
+package Fuzzy.io;
+
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned little-endian binary model file, read through a memory mapping.
+ *
+ * Every string (names, set names, consequents, MF types) is stored once in a
+ * string table and referenced by index; rules are stored column-wise exactly
+ * as a {@link RuleTable}, so reading bulk-copies primitive arrays and creates
+ * no per-rule objects. Layout, with every section padded to 8 bytes:
+ * <pre>
+ * header   magic "FZMD", version, type, nameCount, variableCount, pairCount,
+ *          ruleCount, clauseCount, name, andMethod, orMethod, centroidMode (ints)
+ * names    int offsets[nameCount + 1], UTF-8 bytes
+ * vars     per variable: name, setCount, min, max;
+ *          per set: name, mfType, paramCount, 0, double params[paramCount]
+ * pairs    int pairVariable[pairCount], int pairSet[pairCount]
+ * rules    double weight[], int id[], int flags[] (bit 0: enabled),
+ *          int clauseStart[ruleCount + 1], int consequentVariable[],
+ *          int consequentValue[], int clausePair[clauseCount]
+ * </pre>
+ */
+public final class BinaryModelFormat {
+
+    private static final int MAGIC = 0x444D5A46; // "FZMD"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 12 * Integer.BYTES;
+    private static final int ENABLED = 1;
+
+    private BinaryModelFormat() {
+    }
+
+    static boolean isBinary(byte[] head) {
+        return ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+    }
+
+    public static void write(FuzzyModel model, Path file) throws IOException {
+        RuleTable rules = model.getRules();
+
+        // Rule table names keep their indices; the others are appended
+        Names names = new Names(rules);
+        int modelName = names.intern(model.getName());
+        int andMethod = names.intern(model.getAndMethod());
+        int orMethod = names.intern(model.getOrMethod());
+        int centroidMode = names.intern(model.getCentroidMode().name());
+        long varSize = 0;
+        for (LinguisticVariable var : model.getVariables().values()) {
+            names.intern(var.getName());
+            varSize += 24;
+            for (FuzzySet set : var.getSets().values()) {
+                names.intern(set.getName());
+                names.intern(set.getMF().getType());
+                varSize += 16 + 8L * FuzzyModel.membershipParameters(set.getMF()).length;
+            }
+        }
+        byte[][] encoded = names.encode();
+        long nameBytes = 0;
+        for (byte[] b : encoded) {
+            nameBytes += b.length;
+        }
+
+        int r = rules.getRuleCount();
+        int p = rules.getPairCount();
+        int c = rules.getClauseCount();
+        long size = HEADER_SIZE
+                + pad(4L * (encoded.length + 1) + nameBytes)
+                + varSize
+                + pad(8L * p)
+                + pad(8L * r + 4L * r + 4L * r + 4L * (r + 1) + 4L * r + 4L * r + 4L * c);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Model too large for one file: " + size + " bytes");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(model.getType().ordinal())
+                .putInt(encoded.length).putInt(model.getVariables().size())
+                .putInt(p).putInt(r).putInt(c)
+                .putInt(modelName).putInt(andMethod).putInt(orMethod).putInt(centroidMode);
+
+        int offset = 0;
+        out.putInt(offset);
+        for (byte[] b : encoded) {
+            offset += b.length;
+            out.putInt(offset);
+        }
+        for (byte[] b : encoded) {
+            out.put(b);
+        }
+        align(out);
+
+        for (LinguisticVariable var : model.getVariables().values()) {
+            out.putInt(names.indexOf(var.getName())).putInt(var.getSets().size());
+            out.putDouble(var.getMin()).putDouble(var.getMax());
+            for (FuzzySet set : var.getSets().values()) {
+                double[] params = FuzzyModel.membershipParameters(set.getMF());
+                out.putInt(names.indexOf(set.getName())).putInt(names.indexOf(set.getMF().getType()))
+                        .putInt(params.length).putInt(0);
+                for (double v : params) {
+                    out.putDouble(v);
+                }
+            }
+        }
+
+        for (int i = 0; i < p; i++) out.putInt(rules.getPairVariable(i));
+        for (int i = 0; i < p; i++) out.putInt(rules.getPairSet(i));
+        align(out);
+
+        for (int i = 0; i < r; i++) out.putDouble(rules.getWeight(i));
+        for (int i = 0; i < r; i++) out.putInt(rules.getId(i));
+        for (int i = 0; i < r; i++) out.putInt(rules.isEnabled(i) ? ENABLED : 0);
+        for (int i = 0; i < r; i++) out.putInt(rules.getClauseStart(i));
+        out.putInt(c);
+        for (int i = 0; i < r; i++) out.putInt(rules.getConsequentVariable(i));
+        for (int i = 0; i < r; i++) out.putInt(rules.getConsequentValue(i));
+        for (int i = 0; i < c; i++) out.putInt(rules.getClausePair(i));
+        align(out);
+
+        out.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                ch.write(out);
+            }
+        }
+    }
+
+    /**
+     * Map and decode a file written by {@link #write}.
+     */
+    public static FuzzyModel read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            return read(in, file);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated model file: " + file, e);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt model file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static FuzzyModel read(ByteBuffer in, Path file) throws IOException {
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IOException("Not a model file: " + file);
+        }
+        int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported model file version " + version + " in " + file);
+        }
+        int typeOrdinal = in.getInt();
+        int nameCount = in.getInt();
+        int variableCount = in.getInt();
+        int p = in.getInt();
+        int r = in.getInt();
+        int c = in.getInt();
+        int modelName = in.getInt();
+        int andMethod = in.getInt();
+        int orMethod = in.getInt();
+        int centroidMode = in.getInt();
+        if (typeOrdinal < 0 || typeOrdinal >= FuzzyModel.Type.values().length
+                || nameCount < 0 || variableCount < 0 || p < 0 || r < 0 || c < 0) {
+            throw new IOException("Corrupt model file header: " + file);
+        }
+
+        int[] offsets = ints(in, nameCount + 1, file);
+        for (int i = 0; i < nameCount; i++) {
+            if (offsets[i] < 0 || offsets[i] > offsets[i + 1]) {
+                throw new IOException("Corrupt model file " + file + ": bad string table offsets");
+            }
+        }
+        byte[] bytes = new byte[count(in, offsets[nameCount], 1, file)];
+        in.get(bytes);
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+        align(in);
+
+        Map<String, LinguisticVariable> variables = new LinkedHashMap<>();
+        count(in, variableCount, 24, file);
+        for (int v = 0; v < variableCount; v++) {
+            String name = names[in.getInt()];
+            int sets = count(in, in.getInt(), 16, file);
+            LinguisticVariable var = new LinguisticVariable(name, in.getDouble(), in.getDouble());
+            for (int s = 0; s < sets; s++) {
+                String setName = names[in.getInt()];
+                String type = names[in.getInt()];
+                double[] params = new double[count(in, in.getInt(), 8, file)];
+                in.getInt();
+                for (int i = 0; i < params.length; i++) {
+                    params[i] = in.getDouble();
+                }
+                var.addFuzzySet(new FuzzySet(setName, FuzzyModel.membershipFunction(type, params)));
+            }
+            variables.put(name, var);
+        }
+
+        int[] pairVariable = ints(in, p, file);
+        int[] pairSet = ints(in, p, file);
+        align(in);
+
+        double[] weights = new double[count(in, r, 8, file)];
+        in.asDoubleBuffer().get(weights);
+        in.position(in.position() + 8 * r);
+        int[] ids = ints(in, r, file);
+        int[] flags = ints(in, r, file);
+        int[] clauseStart = ints(in, r + 1, file);
+        int[] consequentVariable = ints(in, r, file);
+        int[] consequentValue = ints(in, r, file);
+        int[] clausePair = ints(in, c, file);
+        align(in);
+        if (in.hasRemaining()) {
+            throw new IOException("Trailing data in model file: " + file);
+        }
+
+        boolean[] enabled = new boolean[r];
+        for (int i = 0; i < r; i++) {
+            enabled[i] = (flags[i] & ENABLED) != 0;
+        }
+        RuleTable rules = new RuleTable(names, pairVariable, pairSet, ids, enabled, weights,
+                clauseStart, clausePair, consequentVariable, consequentValue);
+
+        return new FuzzyModel(names[modelName], FuzzyModel.Type.values()[typeOrdinal],
+                names[andMethod], names[orMethod], CentroidMode.valueOf(names[centroidMode]),
+                variables, rules);
+    }
+
+    private static int[] ints(ByteBuffer in, int n, Path file) throws IOException {
+        int[] a = new int[count(in, n, Integer.BYTES, file)];
+        in.asIntBuffer().get(a);
+        in.position(in.position() + 4 * n);
+        return a;
+    }
+
+    /**
+     * Check a count read from the file against the bytes left before
+     * allocating for it, so a corrupt count is an IOException rather than a
+     * NegativeArraySizeException or an OutOfMemoryError.
+     */
+    private static int count(ByteBuffer in, int n, int bytesEach, Path file) throws IOException {
+        if (n < 0 || (long) n * bytesEach > in.remaining()) {
+            throw new IOException("Corrupt model file " + file + ": bad element count " + n);
+        }
+        return n;
+    }
+
+    private static long pad(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static void align(ByteBuffer buf) {
+        int pos = buf.position();
+        int aligned = (int) pad(pos);
+        if (buf.remaining() < aligned - pos) {
+            throw new BufferUnderflowException();
+        }
+        if (buf.isReadOnly()) {
+            buf.position(aligned);
+        } else {
+            while (buf.position() < aligned) {
+                buf.put((byte) 0);
+            }
+        }
+    }
+
+    /**
+     * String table that starts with the names of a rule table, in order.
+     */
+    private static final class Names {
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> index = new HashMap<>();
+
+        Names(RuleTable rules) {
+            for (int i = 0; i < rules.getNameCount(); i++) {
+                names.add(rules.getName(i));
+                index.putIfAbsent(rules.getName(i), i);
+            }
+        }
+
+        int intern(String name) {
+            Integer i = index.get(name);
+            if (i == null) {
+                i = names.size();
+                index.put(name, i);
+                names.add(name);
+            }
+            return i;
+        }
+
+        int indexOf(String name) {
+            return index.get(name);
+        }
+
+        byte[][] encode() {
+            byte[][] encoded = new byte[names.size()][];
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+            return encoded;
+        }
+    }
+}
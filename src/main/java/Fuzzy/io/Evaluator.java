@@ -2,79 +2,215 @@ package Fuzzy.io;
 
 import Fuzzy.Defuzzy.DefuzzificationMethod;
 import Fuzzy.Rules.RuleBase;
+import Fuzzy.Validation.ValidationException;
 import Fuzzy.fuzzifier.Fuzzifier;
+import Fuzzy.inference.CompiledModel;
 import Fuzzy.inference.InferenceEngine;
+import Fuzzy.inference.InferenceTrace;
 import Fuzzy.operator.SNorm;
 import Fuzzy.operator.TNorm;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Evaluates crisp inputs against a rule base, optionally tracing the inference.
+ *
+ * Every call evaluates a model compiled by the engine from the rule base
+ * (recompiled when the rule base changes), so traced and untraced calls run
+ * the same code and give the same output. Inputs are checked as the Fuzzifier
+ * did: an empty map or a missing input of a rule variable is a
+ * {@link ValidationException}. They are passed to the model unclamped, as
+ * they were to the engine.
+ *
+ * Tracing is off by default and then costs nothing: evaluate() dispatches
+ * through a strategy that is swapped by {@link #enableTracing(int)} and
+ * {@link #disableTracing()}, so the untraced path has no trace checks and
+ * allocates nothing. Traced calls record into a reusable
+ * {@link InferenceTrace}; the map views below are built from the last trace
+ * only when asked for, and are null until a call has been traced. Untraced
+ * calls no longer fuzzify into a map, so {@link #getFuzzifiedInputs()} only
+ * reflects traced calls, and its memberships are those of the inputs as given
+ * rather than clamped to the variable range. With a sample rate of N, one
+ * call in N is traced.
+ *
+ * An Evaluator keeps per-call state and is not thread-safe.
+ */
 public class Evaluator {
-    private Fuzzifier fuzzifier;
     private InferenceEngine engine;
     private RuleBase ruleBase;
 
-    private DefuzzificationMethod defuzzifier;
-    private TNorm tnorm;
-    private SNorm snorm;
-
 
     private Map<String, Map<String, Double>> fuzzifiedInputs;
     private List<Map<String, Double>> ruleOutputs;
     private Map<Double, Double> aggregatedOutput;
 
+    // ---- Compiled model, per RuleBase version ----
+    private CompiledModel model;
+    private int modelVersion;
+    private String[] inputNames;
+    private double[] inputs;
+    private double[] workspace;
+
+    // ---- Tracing ----
+    private EvaluationPath path = this::evaluateUntraced;
+    private final InferenceTrace trace = new InferenceTrace();
+    private int sampleEvery;
+    private int untilNextTrace;
+    private boolean traced;
+
+
+    public Evaluator(InferenceEngine engine, RuleBase ruleBase) {
+        this.engine = engine;
+        this.ruleBase = ruleBase;
+    }
 
+    /**
+     * @deprecated Fuzzification, operators and defuzzification are those of
+     * the engine; the other arguments are ignored. Use
+     * {@link #Evaluator(InferenceEngine, RuleBase)}.
+     */
+    @Deprecated
     public Evaluator(Fuzzifier fuzzifier,
                      InferenceEngine engine,
                      RuleBase ruleBase,
                      DefuzzificationMethod defuzzifier,
                      TNorm tnorm,
                      SNorm snorm) {
-        this.fuzzifier = fuzzifier;
-        this.engine = engine;
-        this.ruleBase = ruleBase;
-        this.defuzzifier = defuzzifier;
-        this.tnorm = tnorm;
-        this.snorm = snorm;
+        this(engine, ruleBase);
     }
 
 
     public double evaluate(Map<String, Double> crispInputs) {
-        fuzzifiedInputs = fuzzifier.fuzzifyWithErrorHandling(crispInputs);
-        return engine.evaluate(crispInputs, ruleBase);
+        return path.evaluate(crispInputs);
     }
 
-    private Map<Double, Double> aggregateOutputs(List<Map<String, Double>> ruleOutputs) {
-        Map<Double, Double> aggregated = new HashMap<>();
+    /**
+     * Trace one evaluation in every sampleEvery (1 traces every call).
+     */
+    public void enableTracing(int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("Sample rate must be >= 1. Got: " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+        this.untilNextTrace = 1;
+        this.path = sampleEvery == 1 ? this::evaluateTraced : this::evaluateSampled;
+    }
 
-        for (Map<String, Double> ruleOutput : ruleOutputs) {
-            for (Map.Entry<String, Double> entry : ruleOutput.entrySet()) {
+    public void disableTracing() {
+        this.path = this::evaluateUntraced;
+    }
 
-                double x = Double.parseDouble(entry.getKey());
-                double m = entry.getValue();
+    /**
+     * Buffers of the last traced evaluation; see {@link InferenceTrace#getSequence()}.
+     */
+    public InferenceTrace getTrace() {
+        return trace;
+    }
 
-                aggregated.putIfAbsent(x, 0.0);
+    private double evaluateUntraced(Map<String, Double> crispInputs) {
+        bind(crispInputs);
+        return model.evaluate(inputs, workspace);
+    }
 
-                double oldValue = aggregated.get(x);
-                double newValue = snorm.or(oldValue, m);
+    private double evaluateSampled(Map<String, Double> crispInputs) {
+        if (--untilNextTrace > 0) {
+            return evaluateUntraced(crispInputs);
+        }
+        untilNextTrace = sampleEvery;
+        return evaluateTraced(crispInputs);
+    }
+
+    private double evaluateTraced(Map<String, Double> crispInputs) {
+        bind(crispInputs);
+        double output = model.evaluate(inputs, trace);
+
+        // Map views are rebuilt from the new trace on demand
+        traced = true;
+        fuzzifiedInputs = null;
+        ruleOutputs = null;
+        aggregatedOutput = null;
+        return output;
+    }
 
-                aggregated.put(x, newValue);
+    /**
+     * Recompile if the rule base changed and copy the crisp inputs into the
+     * model's input order.
+     */
+    private void bind(Map<String, Double> crispInputs) {
+        if (crispInputs == null || crispInputs.isEmpty()) {
+            throw new ValidationException("Crisp input map is empty");
+        }
+        if (model == null || modelVersion != ruleBase.getVersion()) {
+            model = engine.compile(ruleBase);
+            modelVersion = model.getVersion();
+            inputNames = model.getInputNames();
+            inputs = new double[inputNames.length];
+            workspace = model.newWorkspace();
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            Double value = crispInputs.get(inputNames[i]);
+            if (value == null) {
+                throw new ValidationException("Missing crisp input for variable " + inputNames[i]);
             }
+            inputs[i] = value;
         }
-        return aggregated;
     }
 
+    /**
+     * One strategy per tracing mode, so the untraced path carries no trace checks.
+     */
+    @FunctionalInterface
+    private interface EvaluationPath {
+        double evaluate(Map<String, Double> crispInputs);
+    }
+
+    /**
+     * Memberships of the last traced evaluation: variable -> set -> membership.
+     */
     public Map<String, Map<String, Double>> getFuzzifiedInputs() {
+        if (fuzzifiedInputs == null && traced) {
+            fuzzifiedInputs = new LinkedHashMap<>();
+            for (int s = 0; s < trace.getSetCount(); s++) {
+                fuzzifiedInputs.computeIfAbsent(trace.getSetVariable(s), k -> new LinkedHashMap<>())
+                        .put(trace.getSetName(s), trace.getMembership(s));
+            }
+        }
         return fuzzifiedInputs;
     }
 
+    /**
+     * Per-rule results of the last traced evaluation: "id", "firingStrength"
+     * and, for Sugeno rules, "output".
+     */
     public List<Map<String, Double>> getRuleOutputs() {
+        if (ruleOutputs == null && traced) {
+            ruleOutputs = new ArrayList<>();
+            for (int r = 0; r < trace.getRuleCount(); r++) {
+                Map<String, Double> rule = new LinkedHashMap<>();
+                rule.put("id", (double) trace.getRuleId(r));
+                rule.put("firingStrength", trace.getFiringStrength(r));
+                if (!Double.isNaN(trace.getRuleOutput(r))) {
+                    rule.put("output", trace.getRuleOutput(r));
+                }
+                ruleOutputs.add(rule);
+            }
+        }
         return ruleOutputs;
     }
 
+    /**
+     * Aggregated Mamdani output curve of the last traced evaluation: x -> membership.
+     */
     public Map<Double, Double> getAggregatedOutput() {
+        if (aggregatedOutput == null && traced) {
+            aggregatedOutput = new LinkedHashMap<>();
+            for (int i = 0; i < trace.getCurveLength(); i++) {
+                aggregatedOutput.put(trace.getCurveX(i), trace.getCurve(i));
+            }
+        }
         return aggregatedOutput;
     }
 
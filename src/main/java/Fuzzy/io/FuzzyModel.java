@@ -0,0 +1,229 @@
+package Fuzzy.io;
+
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.InferenceEngine;
+import Fuzzy.inference.MamdaniEngine;
+import Fuzzy.inference.SugenoEngine;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.operator.SNorm;
+import Fuzzy.operator.SumSNorm;
+import Fuzzy.operator.TNorm;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A complete model: variables, rules and the operators to evaluate them with,
+ * as stored by {@link BinaryModelFormat} and {@link TextModelFormat}.
+ *
+ * Rules are kept as a flat {@link RuleTable}, so a loaded model compiles
+ * without building Rule objects; {@link #newRuleBase()} creates them only when
+ * the rules are to be edited. Immutable apart from the variables, which are
+ * shared with the engines built from the model.
+ */
+public class FuzzyModel {
+
+    public enum Type { MAMDANI, SUGENO }
+
+    /** T-norm names in model files. */
+    public static final String AND_MIN = "min";
+    public static final String AND_PRODUCT = "product";
+    /** S-norm names in model files. */
+    public static final String OR_MAX = "max";
+    public static final String OR_SUM = "sum";
+
+    private final String name;
+    private final Type type;
+    private final String andMethod;
+    private final String orMethod;
+    private final CentroidMode centroidMode;
+    private final Map<String, LinguisticVariable> variables;
+    private final RuleTable rules;
+
+    public FuzzyModel(String name, Type type, String andMethod, String orMethod, CentroidMode centroidMode,
+                      Map<String, LinguisticVariable> variables, RuleTable rules) {
+        tnorm(andMethod);
+        snorm(orMethod);
+        this.name = name;
+        this.type = type;
+        this.andMethod = andMethod;
+        this.orMethod = orMethod;
+        this.centroidMode = centroidMode;
+        this.variables = Collections.unmodifiableMap(new LinkedHashMap<>(variables));
+        this.rules = rules;
+    }
+
+    /**
+     * Model of the current rules of a rule base.
+     */
+    public FuzzyModel(String name, Type type, String andMethod, String orMethod, CentroidMode centroidMode,
+                      Map<String, LinguisticVariable> variables, RuleBase ruleBase) {
+        this(name, type, andMethod, orMethod, centroidMode, variables,
+                RuleTable.of(ruleBase.snapshot().getRules()));
+    }
+
+    /**
+     * Read a model in either format, told apart by the binary file's magic number.
+     */
+    public static FuzzyModel load(Path file) throws IOException {
+        byte[] head = new byte[4];
+        int n;
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(head, 0, 4);
+        }
+        if (n == 4 && BinaryModelFormat.isBinary(head)) {
+            return BinaryModelFormat.read(file);
+        }
+        return TextModelFormat.read(file);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * {@link #AND_MIN} or {@link #AND_PRODUCT}; Sugeno models always use min.
+     */
+    public String getAndMethod() {
+        return andMethod;
+    }
+
+    /**
+     * {@link #OR_MAX} or {@link #OR_SUM}: aggregation of Mamdani rule outputs.
+     */
+    public String getOrMethod() {
+        return orMethod;
+    }
+
+    public CentroidMode getCentroidMode() {
+        return centroidMode;
+    }
+
+    /**
+     * Variables in file order.
+     */
+    public Map<String, LinguisticVariable> getVariables() {
+        return variables;
+    }
+
+    public RuleTable getRules() {
+        return rules;
+    }
+
+    /**
+     * A new editable rule base holding the model's rules.
+     */
+    public RuleBase newRuleBase() {
+        RuleBase base = new RuleBase();
+        base.createRules(rules.toRules());
+        return base;
+    }
+
+    /**
+     * An engine configured as the model specifies.
+     */
+    public InferenceEngine newEngine() {
+        if (type == Type.SUGENO) {
+            return new SugenoEngine(variables);
+        }
+        return new MamdaniEngine(variables, tnorm(andMethod), snorm(orMethod), centroidMode);
+    }
+
+    /**
+     * Compile the rules directly from the rule table.
+     */
+    public CompiledModel compile(String... inputOrder) {
+        return newEngine().compile(rules, inputOrder);
+    }
+
+    static TNorm tnorm(String method) {
+        switch (method) {
+            case AND_MIN: return new MinTnorm();
+            case AND_PRODUCT: return new ProductTNorm();
+            default: throw new ValidationException("Unknown AND method " + method);
+        }
+    }
+
+    static SNorm snorm(String method) {
+        switch (method) {
+            case OR_MAX: return new MaxSNorm();
+            case OR_SUM: return new SumSNorm();
+            default: throw new ValidationException("Unknown OR method " + method);
+        }
+    }
+
+    /**
+     * Function of a saved type name and parameters: triangle a b c,
+     * trapezoid a b c d, gaussian mean sigma [cutoff].
+     */
+    static IMembershipFunction membershipFunction(String type, double[] p) {
+        IMembershipFunction mf;
+        switch (type) {
+            case "triangle":
+                requireParameters(type, p, 3, 3);
+                mf = new TriangleMF(p[0], p[1], p[2]);
+                break;
+            case "trapezoid":
+                requireParameters(type, p, 4, 4);
+                mf = new TrapezoidMF(p[0], p[1], p[2], p[3]);
+                break;
+            case "gaussian":
+                requireParameters(type, p, 2, 3);
+                try {
+                    mf = p.length == 3 ? new GaussianMF(p[0], p[1], p[2]) : new GaussianMF(p[0], p[1]);
+                } catch (IllegalArgumentException e) {
+                    throw new ValidationException("Invalid " + type + " parameters " + Arrays.toString(p));
+                }
+                break;
+            default:
+                throw new ValidationException("Unknown membership function type " + type);
+        }
+        if (!mf.isValid()) {
+            throw new ValidationException("Invalid " + type + " parameters " + Arrays.toString(p));
+        }
+        return mf;
+    }
+
+    private static void requireParameters(String type, double[] p, int min, int max) {
+        if (p.length < min || p.length > max) {
+            throw new ValidationException(type + " takes " + (min == max ? "" + min : min + " to " + max)
+                    + " parameters, got " + p.length);
+        }
+    }
+
+    /**
+     * Saved parameters of a function, the inverse of {@link #membershipFunction}.
+     */
+    static double[] membershipParameters(IMembershipFunction mf) {
+        if (mf instanceof GaussianMF) {
+            GaussianMF g = (GaussianMF) mf;
+            double[] p = g.getParameters();
+            return g.getCutoff() > 0 ? new double[]{p[0], p[1], g.getCutoff()} : p;
+        }
+        if (mf instanceof TriangleMF || mf instanceof TrapezoidMF) {
+            return mf.getParameters();
+        }
+        throw new ValidationException("Membership function " + mf.getClass().getName() + " cannot be saved");
+    }
+}
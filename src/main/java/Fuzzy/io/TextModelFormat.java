@@ -0,0 +1,369 @@
+package Fuzzy.io;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Human-readable model file, similar to a FIS file:
+ * <pre>
+ * [System]
+ * Name=MedicalTrigger
+ * Type=mamdani
+ * And=min
+ * Or=max
+ * Centroid=ANALYTIC
+ * Version=1
+ *
+ * [Variable HeartRate]
+ * Range=[40.0 120.0]
+ * MF Low=trapezoid 40.0 40.0 50.0 60.0
+ *
+ * [Rules]
+ * 1, 1.0: IF HeartRate IS High AND Temperature IS High THEN AlertLevel IS High
+ * 2, 0.5, disabled: IF HeartRate IS Low THEN Output = 0.5*HeartRate + 10
+ * </pre>
+ * Mamdani consequents name a set ({@code IS}), Sugeno consequents give an
+ * expression ({@code =}). Numbers are written so they read back exactly.
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public final class TextModelFormat {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private TextModelFormat() {
+    }
+
+    public static void write(FuzzyModel model, Path file) throws IOException {
+        boolean sugeno = model.getType() == FuzzyModel.Type.SUGENO;
+        RuleTable rules = model.getRules();
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("[System]\n");
+            out.write("Name=" + model.getName() + "\n");
+            out.write("Type=" + model.getType().name().toLowerCase(Locale.ROOT) + "\n");
+            out.write("And=" + model.getAndMethod() + "\n");
+            out.write("Or=" + model.getOrMethod() + "\n");
+            out.write("Centroid=" + model.getCentroidMode().name() + "\n");
+            out.write("Version=" + FORMAT_VERSION + "\n");
+
+            for (LinguisticVariable var : model.getVariables().values()) {
+                out.write("\n[Variable " + requireName(var.getName()) + "]\n");
+                out.write("Range=[" + var.getMin() + " " + var.getMax() + "]\n");
+                for (FuzzySet set : var.getSets().values()) {
+                    StringBuilder line = new StringBuilder("MF ").append(requireName(set.getName()))
+                            .append('=').append(set.getMF().getType());
+                    for (double p : FuzzyModel.membershipParameters(set.getMF())) {
+                        line.append(' ').append(p);
+                    }
+                    out.write(line.append('\n').toString());
+                }
+            }
+
+            out.write("\n[Rules]\n");
+            StringBuilder line = new StringBuilder();
+            for (int r = 0; r < rules.getRuleCount(); r++) {
+                line.setLength(0);
+                line.append(rules.getId(r)).append(", ").append(rules.getWeight(r));
+                if (!rules.isEnabled(r)) {
+                    line.append(", disabled");
+                }
+                line.append(": ");
+                for (int c = rules.getClauseStart(r); c < rules.getClauseEnd(r); c++) {
+                    int pair = rules.getClausePair(c);
+                    line.append(c == rules.getClauseStart(r) ? "IF " : "AND ")
+                            .append(requireName(rules.getName(rules.getPairVariable(pair))))
+                            .append(" IS ")
+                            .append(requireName(rules.getName(rules.getPairSet(pair))))
+                            .append(' ');
+                }
+                line.append("THEN ").append(requireName(rules.getName(rules.getConsequentVariable(r))));
+                String value = rules.getName(rules.getConsequentValue(r));
+                if (sugeno) {
+                    if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                        throw new ValidationException("Rule " + rules.getId(r) + " expression spans lines");
+                    }
+                    // Written verbatim: whitespace around it would not read back
+                    if (value.isEmpty() || !value.equals(value.trim())) {
+                        throw new ValidationException("Rule " + rules.getId(r) + " expression '" + value
+                                + "' cannot be saved: empty or padded with whitespace");
+                    }
+                    line.append(" = ").append(value);
+                } else {
+                    line.append(" IS ").append(requireName(value));
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Names are written bare, so they must be single tokens free of the format's punctuation.
+     */
+    private static String requireName(String name) {
+        if (name.isEmpty()) {
+            throw new ValidationException("Empty name cannot be saved");
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (Character.isWhitespace(ch) || "=:,[]#".indexOf(ch) >= 0) {
+                throw new ValidationException("Name '" + name + "' cannot be saved: contains '" + ch + "'");
+            }
+        }
+        return name;
+    }
+
+    public static FuzzyModel read(Path file) throws IOException {
+        Parser parser = new Parser(file);
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                parser.line(line);
+            }
+        }
+        return parser.finish();
+    }
+
+    private static final class Parser {
+        private final Path file;
+        private int lineNumber;
+        private String section;
+
+        private final Map<String, String> system = new LinkedHashMap<>();
+        private final Map<String, LinguisticVariable> variables = new LinkedHashMap<>();
+        private LinguisticVariable variable;
+        private String pendingVariable;
+        private final List<Rule> rules = new ArrayList<>();
+
+        Parser(Path file) {
+            this.file = file;
+        }
+
+        void line(String raw) throws IOException {
+            lineNumber++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) return;
+            try {
+                if (line.startsWith("[")) {
+                    section(line);
+                } else if (section == null) {
+                    throw error("Expected a [System] section");
+                } else if (section.equals("Rules")) {
+                    rule(line);
+                } else if (section.equals("Variable")) {
+                    if (line.startsWith("Range")) {
+                        range(line);
+                    } else if (variable == null) {
+                        throw error("Range must come first in a variable section");
+                    } else {
+                        variableLine(line);
+                    }
+                } else {
+                    int eq = line.indexOf('=');
+                    if (eq < 0) throw error("Expected key=value");
+                    system.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+                }
+            } catch (ValidationException | IllegalArgumentException e) {
+                throw error(e.getMessage(), e);
+            }
+        }
+
+        private void section(String line) throws IOException {
+            if (!line.endsWith("]")) throw error("Unterminated section header");
+            String name = line.substring(1, line.length() - 1).trim();
+            variable = null;
+            if (name.equals("System") || name.equals("Rules")) {
+                section = name;
+            } else if (name.startsWith("Variable ")) {
+                String varName = name.substring("Variable ".length()).trim();
+                if (variables.containsKey(varName)) throw error("Duplicate variable " + varName);
+                section = "Variable";
+                // Created on its Range line, which must come first
+                variables.put(varName, null);
+                pendingVariable = varName;
+            } else {
+                throw error("Unknown section [" + name + "]");
+            }
+        }
+
+        private void variableLine(String line) throws IOException {
+            if (!line.startsWith("MF ")) throw error("Expected 'MF <set>=<type> <parameters>'");
+            int eq = line.indexOf('=');
+            if (eq < 0) throw error("Expected 'MF <set>=<type> <parameters>'");
+            String setName = line.substring(3, eq).trim();
+            String[] tokens = line.substring(eq + 1).trim().split("\\s+");
+            double[] params = new double[tokens.length - 1];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = number(tokens[i + 1]);
+            }
+            if (variable.hasFuzzySet(setName)) throw error("Duplicate set " + setName);
+            variable.addFuzzySet(new FuzzySet(setName, FuzzyModel.membershipFunction(tokens[0], params)));
+        }
+
+        private void range(String line) throws IOException {
+            int open = line.indexOf('[');
+            int close = line.lastIndexOf(']');
+            String[] bounds = open < 0 || close < open ? new String[0]
+                    : line.substring(open + 1, close).trim().split("\\s+");
+            if (bounds.length != 2) throw error("Expected Range=[min max]");
+            if (variable != null) throw error("Duplicate Range");
+            variable = new LinguisticVariable(pendingVariable, number(bounds[0]), number(bounds[1]));
+            variables.put(pendingVariable, variable);
+        }
+
+        private void rule(String line) throws IOException {
+            int colon = line.indexOf(':');
+            if (colon < 0) throw error("Expected '<id>, <weight>: [IF ...] THEN ...'");
+            String[] head = line.substring(0, colon).split(",");
+            if (head.length < 2 || head.length > 3) throw error("Expected '<id>, <weight>[, disabled]'");
+            int id;
+            try {
+                id = Integer.parseInt(head[0].trim());
+            } catch (NumberFormatException e) {
+                throw error("Bad rule id " + head[0].trim());
+            }
+            double weight = number(head[1].trim());
+            boolean enabled = true;
+            if (head.length == 3) {
+                if (!head[2].trim().equals("disabled")) throw error("Unknown rule flag " + head[2].trim());
+                enabled = false;
+            }
+
+            Tokens body = new Tokens(line, colon + 1);
+            Map<String, String> antecedent = new LinkedHashMap<>();
+            String token = body.next();
+            if ("IF".equals(token)) {
+                do {
+                    String var = body.next();
+                    body.expect("IS");
+                    String set = body.next();
+                    if (var == null || set == null) throw error("Incomplete clause");
+                    if (antecedent.put(var, set) != null) throw error("Variable " + var + " appears twice");
+                    token = body.next();
+                } while ("AND".equals(token));
+            }
+            if (!"THEN".equals(token)) throw error("Expected THEN");
+            String output = body.next();
+            String value;
+            if (sugeno()) {
+                body.expect("=");
+                value = body.rest();
+            } else {
+                body.expect("IS");
+                value = body.next();
+                if (body.next() != null) throw error("Unexpected text after consequent");
+            }
+            if (output == null || value == null || value.isEmpty()) throw error("Incomplete consequent");
+
+            Map<String, String> consequent = new LinkedHashMap<>();
+            consequent.put(output, value);
+            Rule rule = new Rule(id, antecedent, consequent);
+            rule.weight = weight;
+            rule.enabled = enabled;
+            rules.add(rule);
+        }
+
+        private boolean sugeno() throws IOException {
+            return type() == FuzzyModel.Type.SUGENO;
+        }
+
+        private FuzzyModel.Type type() throws IOException {
+            String type = system.get("Type");
+            if (type == null) throw error("Type must be set in [System]");
+            try {
+                return FuzzyModel.Type.valueOf(type.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw error("Unknown model type " + type);
+            }
+        }
+
+        FuzzyModel finish() throws IOException {
+            String version = system.getOrDefault("Version", "" + FORMAT_VERSION);
+            if (!version.equals("" + FORMAT_VERSION)) {
+                throw new IOException("Unsupported model file version " + version + " in " + file);
+            }
+            for (Map.Entry<String, LinguisticVariable> e : variables.entrySet()) {
+                if (e.getValue() == null) {
+                    throw new IOException("Variable " + e.getKey() + " has no Range in " + file);
+                }
+            }
+            CentroidMode mode;
+            try {
+                mode = CentroidMode.valueOf(system.getOrDefault("Centroid", CentroidMode.ANALYTIC.name()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown centroid mode " + system.get("Centroid") + " in " + file);
+            }
+            try {
+                return new FuzzyModel(system.getOrDefault("Name", ""), type(),
+                        system.getOrDefault("And", FuzzyModel.AND_MIN),
+                        system.getOrDefault("Or", FuzzyModel.OR_MAX),
+                        mode, variables, RuleTable.of(rules));
+            } catch (ValidationException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            }
+        }
+
+        private double number(String s) throws IOException {
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                throw error("Bad number " + s);
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(file + ":" + lineNumber + ": " + message);
+        }
+
+        private IOException error(String message, Throwable cause) {
+            return new IOException(file + ":" + lineNumber + ": " + message, cause);
+        }
+
+        /**
+         * Whitespace-separated words of a rule, with the raw remainder for Sugeno expressions.
+         */
+        private final class Tokens {
+            private final String line;
+            private int pos;
+
+            Tokens(String line, int pos) {
+                this.line = line;
+                this.pos = pos;
+            }
+
+            String next() {
+                while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+                if (pos == line.length()) return null;
+                int start = pos;
+                while (pos < line.length() && !Character.isWhitespace(line.charAt(pos))) pos++;
+                return line.substring(start, pos);
+            }
+
+            void expect(String word) throws IOException {
+                String token = next();
+                if (!word.equals(token)) throw error("Expected " + word + ", got " + token);
+            }
+
+            String rest() {
+                String rest = line.substring(pos).trim();
+                pos = line.length();
+                return rest;
+            }
+        }
+    }
+}
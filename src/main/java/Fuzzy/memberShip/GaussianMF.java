@@ -1,15 +1,35 @@
 package Fuzzy.memberShip;
 
+/**
+ * With a cutoff in (0, 1), memberships below the cutoff are reported as 0, which
+ * gives the function a finite support of mean +/- sigma * sqrt(-2 ln cutoff).
+ * The default cutoff of 0 keeps the exact, everywhere-positive Gaussian.
+ */
 public class GaussianMF implements IMembershipFunction{
     private double mean, stdv;
+    private double cutoff;
+    private double halfWidth = Double.POSITIVE_INFINITY;
 
 
     public GaussianMF(double mean, double stdv) {
+        validateParameters(mean, stdv);
         this.mean = mean;
         this.stdv = stdv;
     }
+
+    public GaussianMF(double mean, double stdv, double cutoff) {
+        this(mean, stdv);
+        if (!(cutoff >= 0 && cutoff < 1)) {
+            throw new IllegalArgumentException(
+                    "Gaussian MF Must: 0 <= cutoff < 1. Got: cutoff=" + cutoff);
+        }
+        this.cutoff = cutoff;
+        if (cutoff > 0) {
+            this.halfWidth = stdv * Math.sqrt(-2 * Math.log(cutoff));
+        }
+    }
     private void validateParameters(double mean, double stdv) {
-        if (stdv <= 0) {
+        if (!(stdv > 0)) {
             throw new IllegalArgumentException(
                     "Gaussian MF Must: sigma > 0. Got: sigma=" + stdv);
         }
@@ -21,6 +41,9 @@ public class GaussianMF implements IMembershipFunction{
 
 
     public double membership(double x) {
+        if (Math.abs(x - mean) >= halfWidth) {
+            return 0;
+        }
         return Math.exp(-0.5 * Math.pow((x - mean) / stdv, 2));
     }
 
@@ -28,6 +51,38 @@ public class GaussianMF implements IMembershipFunction{
     public double[] getParameters() {
         return new double[]{mean, stdv};
     }
+
+    public double getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Distance from the mean at which membership drops to 0; infinite without a cutoff.
+     */
+    public double getHalfWidth() {
+        return halfWidth;
+    }
+
+    @Override
+    public double getSupportMin() {
+        return mean - halfWidth;
+    }
+
+    @Override
+    public double getSupportMax() {
+        return mean + halfWidth;
+    }
+
+    @Override
+    public double getCoreMin() {
+        return mean;
+    }
+
+    @Override
+    public double getCoreMax() {
+        return mean;
+    }
+
     public String getType() {
         return "gaussian";
     }
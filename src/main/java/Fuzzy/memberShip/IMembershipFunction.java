@@ -1,8 +1,39 @@
 package Fuzzy.memberShip;
 
+/**
+ * Besides membership(x), a function reports its support and core so callers can
+ * skip evaluating it: membership is exactly 0 outside the open support interval
+ * (getSupportMin(), getSupportMax()), and exactly 1 on the closed core interval
+ * [getCoreMin(), getCoreMax()] where that lies inside the support. Check the
+ * support first; an empty core has getCoreMin() > getCoreMax().
+ */
 public interface IMembershipFunction {
     double membership(double x);
     double[] getParameters();
     String getType();
     boolean isValid();
+
+    default double getSupportMin() {
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    default double getSupportMax() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    default double getCoreMin() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    default double getCoreMax() {
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    default boolean inSupport(double x) {
+        return x > getSupportMin() && x < getSupportMax();
+    }
+
+    default boolean inCore(double x) {
+        return x >= getCoreMin() && x <= getCoreMax();
+    }
 }
@@ -47,6 +47,26 @@ public class TrapezoidMF implements IMembershipFunction {
         return "trapezoid";
     }
 
+    @Override
+    public double getSupportMin() {
+        return a;
+    }
+
+    @Override
+    public double getSupportMax() {
+        return d;
+    }
+
+    @Override
+    public double getCoreMin() {
+        return b;
+    }
+
+    @Override
+    public double getCoreMax() {
+        return c;
+    }
+
     @Override
     public boolean isValid() {
         return a <= b && b <= c && c <= d && a < d;
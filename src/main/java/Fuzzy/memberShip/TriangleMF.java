@@ -37,6 +37,26 @@ public class TriangleMF implements IMembershipFunction{
     public double[] getParameters() {
         return new double[]{a,b,c};
     }
+
+    @Override
+    public double getSupportMin() {
+        return a;
+    }
+
+    @Override
+    public double getSupportMax() {
+        return c;
+    }
+
+    @Override
+    public double getCoreMin() {
+        return b;
+    }
+
+    @Override
+    public double getCoreMax() {
+        return b;
+    }
     public String getType() {
         return "triangle";
     }
@@ -0,0 +1,344 @@
+package Fuzzy.metrics;
+
+import Fuzzy.inference.CompiledModel;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for one inference service, exported as a
+ * platform MBean by {@link #register(String)}.
+ *
+ * Everything is recorded into LongAdders, so threads evaluating concurrently
+ * do not contend on shared counters. Evaluations are recorded by
+ * {@link InstrumentedInferenceEngine} or {@link #evaluate(CompiledModel, double[])}
+ * (as MedicalTrigger.enableMetrics does), fuzzifications by the latter or by
+ * {@link InstrumentedFuzzifier}.
+ *
+ * A rule fires when its weighted firing strength is nonzero, and dominates
+ * when its strength is the highest of the evaluation (the first such rule on
+ * ties): with max aggregation it sets the height of the aggregated output.
+ */
+public class EngineMetrics implements EngineMetricsMXBean {
+
+    private final LatencyHistogram evaluations = new LatencyHistogram();
+    private final LatencyHistogram fuzzifications = new LatencyHistogram();
+    private final LongAdder evaluationErrors = new LongAdder();
+    private final LongAdder fuzzificationErrors = new LongAdder();
+    private final LongAdder noRuleFired = new LongAdder();
+
+    private final Map<Integer, RuleCounters> rules = new ConcurrentHashMap<>();
+    // Counters of the last model seen, indexed like its compiled rules
+    private volatile ModelCounters modelCounters;
+
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<>();
+
+    private volatile long startNanos = System.nanoTime();
+    private ObjectName objectName;
+
+    /**
+     * Evaluate with a compiled model, recording latency, errors and rule
+     * activity. The fuzzification latency covers fuzzifying the inputs and
+     * firing the rules, which generated kernels do in one pass.
+     */
+    public double evaluate(CompiledModel model, double[] inputs) {
+        long start = System.nanoTime();
+        double output;
+        try {
+            double[] workspace = fire(model, inputs, start);
+            output = model.output(inputs, workspace);
+        } catch (RuntimeException e) {
+            evaluationErrors.increment();
+            throw e;
+        }
+        evaluations.record(System.nanoTime() - start);
+        return output;
+    }
+
+    /**
+     * {@link #evaluate(CompiledModel, double[])} for a caller that records the
+     * latency and errors of the whole call itself, e.g. around a result cache
+     * whose misses come here.
+     */
+    public double evaluateUntimed(CompiledModel model, double[] inputs) {
+        return model.output(inputs, fire(model, inputs, System.nanoTime()));
+    }
+
+    /**
+     * Fuzzify and fire the rules of a model for the rule activity counters
+     * only, e.g. alongside an engine that computes the output itself.
+     */
+    public void fire(CompiledModel model, double[] inputs) {
+        fire(model, inputs, System.nanoTime());
+    }
+
+    private double[] fire(CompiledModel model, double[] inputs, long start) {
+        Workspace w = workspaces.get();
+        if (w == null || w.model != model) {
+            w = new Workspace(model);
+            workspaces.set(w);
+        }
+        try {
+            model.fire(inputs, w.workspace);
+        } catch (RuntimeException e) {
+            fuzzificationErrors.increment();
+            throw e;
+        }
+        fuzzifications.record(System.nanoTime() - start);
+
+        recordFiring(model, w.workspace);
+        return w.workspace;
+    }
+
+    public void recordEvaluation(long nanos) {
+        evaluations.record(nanos);
+    }
+
+    public void recordEvaluationError() {
+        evaluationErrors.increment();
+    }
+
+    public void recordFuzzification(long nanos) {
+        fuzzifications.record(nanos);
+    }
+
+    public void recordFuzzificationError() {
+        fuzzificationErrors.increment();
+    }
+
+    /**
+     * Count the rules that fired in the last evaluation of model into workspace.
+     */
+    public void recordFiring(CompiledModel model, double[] workspace) {
+        RuleCounters[] counters = counters(model);
+
+        int dominant = -1;
+        double best = 0;
+        for (int r = 0; r < counters.length; r++) {
+            double strength = model.getFiringStrength(workspace, r);
+            if (strength > 0) {
+                counters[r].fired.increment();
+                if (strength > best) {
+                    best = strength;
+                    dominant = r;
+                }
+            }
+        }
+
+        if (dominant < 0) {
+            noRuleFired.increment();
+        } else {
+            counters[dominant].dominant.increment();
+        }
+    }
+
+    private RuleCounters[] counters(CompiledModel model) {
+        ModelCounters mc = modelCounters;
+        if (mc == null || mc.model != model) {
+            RuleCounters[] counters = new RuleCounters[model.getRuleCount()];
+            for (int r = 0; r < counters.length; r++) {
+                counters[r] = rules.computeIfAbsent(model.getRuleId(r), id -> new RuleCounters());
+            }
+            mc = new ModelCounters(model, counters);
+            modelCounters = mc;
+        }
+        return mc.counters;
+    }
+
+    public LatencyHistogram getEvaluationLatency() {
+        return evaluations;
+    }
+
+    public LatencyHistogram getFuzzificationLatency() {
+        return fuzzifications;
+    }
+
+    // ---- MXBean attributes ----
+
+    @Override
+    public long getEvaluationCount() {
+        return evaluations.getCount();
+    }
+
+    @Override
+    public long getEvaluationErrorCount() {
+        return evaluationErrors.sum();
+    }
+
+    @Override
+    public double getEvaluationRate() {
+        return rate(evaluations.getCount());
+    }
+
+    @Override
+    public double getEvaluationMeanMicros() {
+        return evaluations.getMean() / 1e3;
+    }
+
+    @Override
+    public double getEvaluationP50Micros() {
+        return evaluations.getPercentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getEvaluationP99Micros() {
+        return evaluations.getPercentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getEvaluationP999Micros() {
+        return evaluations.getPercentile(0.999) / 1e3;
+    }
+
+    @Override
+    public double getEvaluationMaxMicros() {
+        return evaluations.getMax() / 1e3;
+    }
+
+    @Override
+    public long getFuzzificationCount() {
+        return fuzzifications.getCount();
+    }
+
+    @Override
+    public long getFuzzificationErrorCount() {
+        return fuzzificationErrors.sum();
+    }
+
+    @Override
+    public double getFuzzificationRate() {
+        return rate(fuzzifications.getCount());
+    }
+
+    @Override
+    public double getFuzzificationMeanMicros() {
+        return fuzzifications.getMean() / 1e3;
+    }
+
+    @Override
+    public double getFuzzificationP50Micros() {
+        return fuzzifications.getPercentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getFuzzificationP99Micros() {
+        return fuzzifications.getPercentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getFuzzificationP999Micros() {
+        return fuzzifications.getPercentile(0.999) / 1e3;
+    }
+
+    @Override
+    public double getFuzzificationMaxMicros() {
+        return fuzzifications.getMax() / 1e3;
+    }
+
+    @Override
+    public long getNoRuleFiredCount() {
+        return noRuleFired.sum();
+    }
+
+    @Override
+    public Map<Integer, Long> getRuleFireCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        rules.forEach((id, c) -> counts.put(id, c.fired.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<Integer, Long> getRuleDominanceCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        rules.forEach((id, c) -> counts.put(id, c.dominant.sum()));
+        return counts;
+    }
+
+    /**
+     * Zero every counter. Values recorded concurrently may survive the reset.
+     */
+    @Override
+    public void reset() {
+        evaluations.reset();
+        fuzzifications.reset();
+        evaluationErrors.reset();
+        fuzzificationErrors.reset();
+        noRuleFired.reset();
+        for (RuleCounters c : rules.values()) {
+            c.fired.reset();
+            c.dominant.reset();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    private double rate(long count) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+    // ---- JMX registration ----
+
+    /**
+     * Register with the platform MBean server as Fuzzy:type=EngineMetrics,name=&lt;name&gt;.
+     */
+    public synchronized ObjectName register(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        try {
+            ObjectName on = new ObjectName("Fuzzy:type=EngineMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+            return on;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register engine metrics " + name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    private static final class RuleCounters {
+        final LongAdder fired = new LongAdder();
+        final LongAdder dominant = new LongAdder();
+    }
+
+    private static final class ModelCounters {
+        final CompiledModel model;
+        final RuleCounters[] counters;
+
+        ModelCounters(CompiledModel model, RuleCounters[] counters) {
+            this.model = model;
+            this.counters = counters;
+        }
+    }
+
+    private static final class Workspace {
+        final CompiledModel model;
+        final double[] workspace;
+
+        Workspace(CompiledModel model) {
+            this.model = model;
+            this.workspace = model.newWorkspace();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package Fuzzy.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of an {@link EngineMetrics}. Latencies are in microseconds, rates
+ * in calls per second since the metrics were created or last reset.
+ */
+public interface EngineMetricsMXBean {
+
+    long getEvaluationCount();
+
+    long getEvaluationErrorCount();
+
+    double getEvaluationRate();
+
+    double getEvaluationMeanMicros();
+
+    double getEvaluationP50Micros();
+
+    double getEvaluationP99Micros();
+
+    double getEvaluationP999Micros();
+
+    double getEvaluationMaxMicros();
+
+    long getFuzzificationCount();
+
+    long getFuzzificationErrorCount();
+
+    double getFuzzificationRate();
+
+    double getFuzzificationMeanMicros();
+
+    double getFuzzificationP50Micros();
+
+    double getFuzzificationP99Micros();
+
+    double getFuzzificationP999Micros();
+
+    double getFuzzificationMaxMicros();
+
+    /**
+     * Evaluations in which no rule had a nonzero firing strength; the engines
+     * then return 0, which is indistinguishable from a genuine output of 0.
+     */
+    long getNoRuleFiredCount();
+
+    /**
+     * Rule.id -> number of evaluations in which the rule fired.
+     */
+    Map<Integer, Long> getRuleFireCounts();
+
+    /**
+     * Rule.id -> number of evaluations in which the rule had the highest firing strength.
+     */
+    Map<Integer, Long> getRuleDominanceCounts();
+
+    void reset();
+}
@@ -0,0 +1,34 @@
+package Fuzzy.metrics;
+
+import Fuzzy.fuzzifier.Fuzzifier;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.util.Map;
+
+/**
+ * Fuzzifier that records the latency and failures of every
+ * {@link #fuzzifyWithErrorHandling} call into an {@link EngineMetrics}.
+ */
+public class InstrumentedFuzzifier extends Fuzzifier {
+
+    private final EngineMetrics metrics;
+
+    public InstrumentedFuzzifier(Map<String, LinguisticVariable> variables, EngineMetrics metrics) {
+        super(variables);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> fuzzifyWithErrorHandling(Map<String, Double> crispInputs) {
+        long start = System.nanoTime();
+        Map<String, Map<String, Double>> result;
+        try {
+            result = super.fuzzifyWithErrorHandling(crispInputs);
+        } catch (RuntimeException e) {
+            metrics.recordFuzzificationError();
+            throw e;
+        }
+        metrics.recordFuzzification(System.nanoTime() - start);
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package Fuzzy.metrics;
+
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.inference.CachingInferenceEngine;
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.InferenceEngine;
+
+import java.util.Map;
+
+/**
+ * Records every evaluate() of another engine into an {@link EngineMetrics}.
+ *
+ * Outputs are computed once, with {@link EngineMetrics#evaluate(CompiledModel, double[])}
+ * on a model compiled from the delegate (recompiled when the RuleBase version
+ * changes), so the fuzzification latency and rule counters come from the pass
+ * that produced the output. A {@link CachingInferenceEngine} delegate keeps
+ * answering every call: its misses are computed through the metrics instead,
+ * so only they are fuzzified and counted, as with MedicalTrigger.enableMetrics.
+ * Input maps that lack a rule variable are passed to the delegate and only
+ * their latency and failures are recorded. Safe to share between threads.
+ */
+public class InstrumentedInferenceEngine implements InferenceEngine {
+
+    private final InferenceEngine delegate;
+    private final CachingInferenceEngine cache;
+    private final EngineMetrics metrics;
+    private final ThreadLocal<double[]> inputBuffers = new ThreadLocal<>();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * A CachingInferenceEngine delegate has its miss evaluator replaced.
+     */
+    public InstrumentedInferenceEngine(InferenceEngine delegate, EngineMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        if (delegate instanceof CachingInferenceEngine) {
+            cache = (CachingInferenceEngine) delegate;
+            cache.setMissEvaluator(metrics::evaluateUntimed);
+        } else {
+            cache = null;
+        }
+    }
+
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public double evaluate(Map<String, Double> inputs, RuleBase base) {
+        if (cache != null) {
+            return timed(inputs, base);
+        }
+        Snapshot s = current(base);
+        double[] values = inputBuffers.get();
+        if (values == null || values.length != s.inputNames.length) {
+            values = new double[s.inputNames.length];
+            inputBuffers.set(values);
+        }
+        for (int i = 0; i < values.length; i++) {
+            Double x = inputs.get(s.inputNames[i]);
+            if (x == null) {
+                return timed(inputs, base);
+            }
+            values[i] = x;
+        }
+        return metrics.evaluate(s.model, values);
+    }
+
+    /**
+     * Delegated as is; batches are not recorded.
+     */
+    @Override
+    public void evaluateBatch(Map<String, double[]> columns, RuleBase base, double[] results, int rows) {
+        delegate.evaluateBatch(columns, base, results, rows);
+    }
+
+    @Override
+    public CompiledModel compile(RuleBase base, String... inputOrder) {
+        return delegate.compile(base, inputOrder);
+    }
+
+    @Override
+    public CompiledModel compile(RuleTable rules, String... inputOrder) {
+        return delegate.compile(rules, inputOrder);
+    }
+
+    private double timed(Map<String, Double> inputs, RuleBase base) {
+        long start = System.nanoTime();
+        double output;
+        try {
+            output = delegate.evaluate(inputs, base);
+        } catch (RuntimeException e) {
+            metrics.recordEvaluationError();
+            throw e;
+        }
+        metrics.recordEvaluation(System.nanoTime() - start);
+        return output;
+    }
+
+    private Snapshot current(RuleBase base) {
+        Snapshot s = snapshot;
+        if (s == null || s.base != base || s.version != base.getVersion()) {
+            CompiledModel model = delegate.compile(base);
+            s = new Snapshot(base, model.getVersion(), model);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    private static final class Snapshot {
+        final RuleBase base;
+        final int version;
+        final CompiledModel model;
+        final String[] inputNames;
+
+        Snapshot(RuleBase base, int version, CompiledModel model) {
+            this.base = base;
+            this.version = version;
+            this.model = model;
+            this.inputNames = model.getInputNames();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package Fuzzy.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.
+ *
+ * Buckets are log-linear: every power of two is split into 32 equal buckets,
+ * so a reported percentile is within about 3% of the recorded value. Values
+ * up to 2^41 ns (about 36 minutes) are kept apart; longer ones share the last
+ * bucket. Every bucket is a LongAdder, so concurrent recording does not
+ * contend on a shared counter.
+ *
+ * Reads are not atomic with respect to concurrent writes: a percentile taken
+ * while recording may miss the latest values.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long v = Math.max(0, Math.min(nanos, MAX_VALUE));
+        buckets[bucket(v)].increment();
+        count.increment();
+        total.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Value at quantile q in [0, 1] (0.5 = median, 0.999 = p999), or 0 when
+     * nothing was recorded.
+     */
+    public long getPercentile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]. Got: " + q);
+        }
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // Middle of the bucket, never above the largest recorded value
+                long lower = lowerBound(i);
+                long mid = lower + (width(i) - 1) / 2;
+                return Math.min(mid, Math.max(lower, max.get()));
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (LongAdder b : buckets) {
+            b.reset();
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int mantissa = (int) (v >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + mantissa;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return mantissa << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static long width(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return 1L << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,286 @@
+package Fuzzy.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams a CSV recording into a {@link VitalsStoreWriter}. The format is the
+ * one {@link Fuzzy.stream.VitalSampleFileSource} replays:
+ * patientId,timestamp,value1,...,valueN. Blank lines and lines starting with
+ * '#' are skipped. A first line starting with a letter is a header: its value
+ * fields are matched to the store columns by name and may come in any order;
+ * without a header the values are in column order.
+ *
+ * The file is read in large chunks and parsed in place as bytes: no line or
+ * field Strings are created, and numbers are converted directly from their
+ * digits. Doubles that the exact fast path cannot handle (more than 18
+ * significant digits, large exponents, NaN and the like) fall back to
+ * {@link Double#parseDouble}, so values are always identical to it.
+ */
+public final class VitalsCsvImporter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Every power of ten up to 1e22 is exact as a double
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final VitalsStoreWriter writer;
+    private final double[] row;
+    // Store column of each CSV value field
+    private int[] fieldColumns;
+    private long lineNumber;
+    private boolean firstLine;
+
+    public VitalsCsvImporter(VitalsStoreWriter writer) {
+        this.writer = writer;
+        this.row = new double[writer.getColumnNames().length];
+    }
+
+    /**
+     * @return Number of rows imported
+     */
+    public long importFile(Path csv) throws IOException {
+        try (FileChannel in = FileChannel.open(csv, StandardOpenOption.READ)) {
+            return importFrom(in);
+        }
+    }
+
+    /**
+     * Import everything up to the end of the channel.
+     *
+     * @return Number of rows imported
+     */
+    public long importFrom(ReadableByteChannel in) throws IOException {
+        long before = writer.getRowCount();
+        fieldColumns = new int[row.length];
+        for (int i = 0; i < fieldColumns.length; i++) {
+            fieldColumns[i] = i;
+        }
+        lineNumber = 0;
+        firstLine = true;
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        ByteBuffer wrapped = ByteBuffer.wrap(buf);
+        int start = 0;
+        int scan = 0;
+        int end = 0;
+        boolean eof = false;
+        while (true) {
+            int newline = scan;
+            while (newline < end && buf[newline] != '\n') {
+                newline++;
+            }
+            if (newline < end) {
+                line(buf, start, newline);
+                start = scan = newline + 1;
+                continue;
+            }
+            if (eof) {
+                if (start < end) {
+                    line(buf, start, end);
+                }
+                break;
+            }
+            // Keep the partial line and read more after it
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buf.length) {
+                throw new IOException("Line " + (lineNumber + 1) + " is longer than " + buf.length + " bytes");
+            }
+            scan = end;
+            wrapped.limit(buf.length).position(end);
+            int n = in.read(wrapped);
+            if (n < 0) {
+                eof = true;
+            } else {
+                end += n;
+            }
+        }
+        return writer.getRowCount() - before;
+    }
+
+    private void line(byte[] b, int from, int to) throws IOException {
+        lineNumber++;
+        while (from < to && isBlank(b[from])) from++;
+        while (to > from && isBlank(b[to - 1])) to--;
+        if (from == to || b[from] == '#') return;
+        boolean first = firstLine;
+        firstLine = false;
+        if (first && isLetter(b[from])) {
+            header(new String(b, from, to - from, StandardCharsets.UTF_8));
+            return;
+        }
+
+        long patientId = 0;
+        long timestamp = 0;
+        int field = 0;
+        int p = from;
+        try {
+            while (true) {
+                int comma = p;
+                while (comma < to && b[comma] != ',') comma++;
+                int s = p;
+                int e = comma;
+                while (s < e && isBlank(b[s])) s++;
+                while (e > s && isBlank(b[e - 1])) e--;
+
+                if (field == 0) {
+                    patientId = parseLong(b, s, e);
+                } else if (field == 1) {
+                    timestamp = parseLong(b, s, e);
+                } else if (field - 2 < fieldColumns.length) {
+                    row[fieldColumns[field - 2]] = parseDouble(b, s, e);
+                }
+                field++;
+                if (comma == to) break;
+                p = comma + 1;
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + lineNumber + ", field " + (field + 1) + ": " + e.getMessage(), e);
+        }
+        if (field != 2 + fieldColumns.length) {
+            throw new IOException("Line " + lineNumber + ": expected " + (2 + fieldColumns.length)
+                    + " fields, got " + field);
+        }
+        writer.append(patientId, timestamp, row);
+    }
+
+    private void header(String line) throws IOException {
+        String[] names = line.split(",");
+        if (names.length < 2) {
+            throw new IOException("Header needs patientId and timestamp fields: " + line);
+        }
+        int[] columns = new int[names.length - 2];
+        boolean[] seen = new boolean[row.length];
+        for (int i = 0; i < columns.length; i++) {
+            String name = names[i + 2].trim();
+            columns[i] = writer.columnIndex(name);
+            if (columns[i] < 0) {
+                throw new IOException("Unknown column in header: " + name);
+            }
+            if (seen[columns[i]]) {
+                throw new IOException("Duplicate column in header: " + name);
+            }
+            seen[columns[i]] = true;
+        }
+        if (columns.length != row.length) {
+            throw new IOException("Header has " + columns.length + " value columns, the store "
+                    + Arrays.toString(writer.getColumnNames()));
+        }
+        fieldColumns = columns;
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private static boolean isLetter(byte c) {
+        int lower = c | 0x20;
+        return lower >= 'a' && lower <= 'z';
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static long parseLong(byte[] b, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        if (i == to || to - i > 18) {
+            // Empty, or long enough to overflow: let Long report it
+            return Long.parseLong(new String(b, from, to - from, StandardCharsets.ISO_8859_1));
+        }
+        long v = 0;
+        for (; i < to; i++) {
+            if (!isDigit(b[i])) {
+                throw new NumberFormatException("For input string: \""
+                        + new String(b, from, to - from, StandardCharsets.ISO_8859_1) + "\"");
+            }
+            v = v * 10 + (b[i] - '0');
+        }
+        return negative ? -v : v;
+    }
+
+    /**
+     * Same result as Double.parseDouble. Up to 18 significant digits with a
+     * decimal exponent within +-22 are converted exactly with one multiply or
+     * divide of two exact doubles (Clinger's fast path); anything else falls back.
+     */
+    static double parseDouble(byte[] b, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean digits = false;
+        for (; i < to && isDigit(b[i]); i++) {
+            digits = true;
+            if (mantissa != 0 || b[i] != '0') {
+                significant++;
+            }
+            mantissa = mantissa * 10 + (b[i] - '0');
+            if (significant > 18) break;
+        }
+        if (i < to && b[i] == '.' && significant <= 18) {
+            for (i++; i < to && isDigit(b[i]); i++) {
+                digits = true;
+                if (mantissa != 0 || b[i] != '0') {
+                    significant++;
+                }
+                mantissa = mantissa * 10 + (b[i] - '0');
+                exponent--;
+                if (significant > 18) break;
+            }
+        }
+        if (digits && significant <= 18 && i < to && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (b[i] == '-' || b[i] == '+')) {
+                negativeExponent = b[i] == '-';
+                i++;
+            }
+            int e = 0;
+            int start = i;
+            for (; i < to && isDigit(b[i]); i++) {
+                if (e < 100_000) {
+                    e = e * 10 + (b[i] - '0');
+                }
+            }
+            if (i == start) {
+                digits = false;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (digits && i == to && significant <= 18 && mantissa < (1L << 53)
+                && exponent >= -22 && exponent <= 22) {
+            double v = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -v : v;
+        }
+        return Double.parseDouble(new String(b, from, to - from, StandardCharsets.ISO_8859_1));
+    }
+}
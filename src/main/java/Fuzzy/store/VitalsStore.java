@@ -0,0 +1,292 @@
+package Fuzzy.store;
+
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.CompiledModel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Recorded vitals in a little-endian columnar file, read through memory
+ * mappings: one column of patient ids, one of timestamps and one double column
+ * per variable, split into segments of a fixed number of rows so that a file
+ * of any size maps as many buffers under 2 GB. Layout:
+ * <pre>
+ * header   magic "FZVS", version, columnCount, segmentRows (ints), rowCount (long),
+ *          int nameOffsets[columnCount + 1], UTF-8 names, padded to 8 bytes
+ * segment  long patientId[segmentRows], long timestamp[segmentRows],
+ *          double value[columnCount][segmentRows]
+ * </pre>
+ * Only the last segment may be partly filled. Files are written with
+ * {@link VitalsStoreWriter} or imported with {@link VitalsCsvImporter}.
+ *
+ * A store is immutable and can be scanned from any number of threads, e.g.
+ * one range of segments each.
+ */
+public final class VitalsStore {
+
+    static final int MAGIC = 0x53565A46; // "FZVS"
+    static final int FORMAT_VERSION = 1;
+    static final int FIXED_HEADER_SIZE = 4 * Integer.BYTES + Long.BYTES;
+    static final int ROW_COUNT_OFFSET = 4 * Integer.BYTES;
+
+    private final Path file;
+    private final String[] columns;
+    private final int segmentRows;
+    private final long rowCount;
+    private final Segment[] segments;
+
+    private VitalsStore(Path file, String[] columns, int segmentRows, long rowCount, Segment[] segments) {
+        this.file = file;
+        this.columns = columns;
+        this.segmentRows = segmentRows;
+        this.rowCount = rowCount;
+        this.segments = segments;
+    }
+
+    /**
+     * Map a file written by {@link VitalsStoreWriter}. Nothing is read into the
+     * heap except the header.
+     */
+    public static VitalsStore open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < FIXED_HEADER_SIZE) {
+                throw new IOException("Not a vitals store: " + file);
+            }
+            ByteBuffer head = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            read(ch, head, 0);
+            if (head.getInt() != MAGIC) {
+                throw new IOException("Not a vitals store: " + file);
+            }
+            int version = head.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported vitals store version " + version + " in " + file);
+            }
+            int columnCount = head.getInt();
+            int segmentRows = head.getInt();
+            long rowCount = head.getLong();
+            if (columnCount < 0 || segmentRows < 1 || rowCount < 0
+                    || segmentBytes(segmentRows, columnCount) > Integer.MAX_VALUE
+                    || FIXED_HEADER_SIZE + 4L * (columnCount + 1) > size) {
+                throw new IOException("Corrupt vitals store header: " + file);
+            }
+
+            ByteBuffer offsets = ByteBuffer.allocate(4 * (columnCount + 1)).order(ByteOrder.LITTLE_ENDIAN);
+            read(ch, offsets, FIXED_HEADER_SIZE);
+            int nameBytes = offsets.getInt(4 * columnCount);
+            long headerSize = pad(FIXED_HEADER_SIZE + 4L * (columnCount + 1) + nameBytes);
+            if (nameBytes < 0 || headerSize > size) {
+                throw new IOException("Corrupt vitals store header: " + file);
+            }
+            ByteBuffer names = ByteBuffer.allocate(nameBytes);
+            read(ch, names, FIXED_HEADER_SIZE + 4L * (columnCount + 1));
+            String[] columns = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                int from = offsets.getInt(4 * i);
+                int to = offsets.getInt(4 * (i + 1));
+                if (from < 0 || to < from || to > nameBytes) {
+                    throw new IOException("Corrupt vitals store header: " + file);
+                }
+                columns[i] = new String(names.array(), from, to - from, StandardCharsets.UTF_8);
+            }
+
+            long segmentBytes = segmentBytes(segmentRows, columnCount);
+            int segmentCount = (int) ((rowCount + segmentRows - 1) / segmentRows);
+            if (headerSize + segmentBytes * segmentCount > size) {
+                throw new IOException("Truncated vitals store: " + file);
+            }
+            Segment[] segments = new Segment[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, headerSize + segmentBytes * s,
+                        segmentBytes);
+                long first = (long) s * segmentRows;
+                int rows = (int) Math.min(segmentRows, rowCount - first);
+                segments[s] = new Segment(s, first, rows, segmentRows, columnCount, map);
+            }
+            return new VitalsStore(file, columns, segmentRows, rowCount, segments);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String[] getColumnNames() {
+        return columns.clone();
+    }
+
+    public int columnIndex(String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getSegmentRows() {
+        return segmentRows;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public Segment getSegment(int index) {
+        return segments[index];
+    }
+
+    /**
+     * Evaluate every row with a compiled model; see {@link #scan(CompiledModel, int, int, BlockConsumer)}.
+     */
+    public void scan(CompiledModel model, BlockConsumer consumer) {
+        scan(model, 0, segments.length, consumer);
+    }
+
+    /**
+     * Evaluate the rows of segments [fromSegment, toSegment) block by block.
+     * The model's inputs are matched to columns by name. Each block of
+     * {@link CompiledModel#BATCH_BLOCK} rows is bulk-copied from the mapping
+     * into a small array block that stays in cache, evaluated with
+     * {@link CompiledModel#evaluateBatch}, and handed to the consumer.
+     * Nothing is allocated per block.
+     */
+    public void scan(CompiledModel model, int fromSegment, int toSegment, BlockConsumer consumer) {
+        Objects.checkFromToIndex(fromSegment, toSegment, segments.length);
+        String[] inputs = model.getInputNames();
+        int[] inputColumns = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            inputColumns[i] = columnIndex(inputs[i]);
+            if (inputColumns[i] < 0) {
+                throw new ValidationException("Vitals store has no column for input variable " + inputs[i]);
+            }
+        }
+
+        double[][] block = new double[inputs.length][CompiledModel.BATCH_BLOCK];
+        double[] results = new double[CompiledModel.BATCH_BLOCK];
+        double[] workspace = model.newBatchWorkspace();
+        for (int s = fromSegment; s < toSegment; s++) {
+            Segment segment = segments[s];
+            for (int row = 0; row < segment.rows; row += CompiledModel.BATCH_BLOCK) {
+                int len = Math.min(CompiledModel.BATCH_BLOCK, segment.rows - row);
+                for (int i = 0; i < inputColumns.length; i++) {
+                    segment.values[inputColumns[i]].get(row, block[i], 0, len);
+                }
+                model.evaluateBatch(block, results, 0, len, workspace);
+                consumer.accept(segment, row, len, results);
+            }
+        }
+    }
+
+    static long segmentBytes(int segmentRows, int columnCount) {
+        return 8L * segmentRows * (2 + columnCount);
+    }
+
+    static long pad(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static void read(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of vitals store");
+            }
+            position += n;
+        }
+        buf.flip();
+    }
+
+    /**
+     * Results of one block of a scan.
+     */
+    @FunctionalInterface
+    public interface BlockConsumer {
+        /**
+         * @param results results[i] belongs to row from + i of the segment, for
+         *                i in [0, len); the array is reused for the next block
+         */
+        void accept(Segment segment, int from, int len, double[] results);
+    }
+
+    /**
+     * Read-only views of one segment's columns over the mapping.
+     */
+    public static final class Segment {
+        private final int index;
+        private final long firstRow;
+        private final int rows;
+        private final LongBuffer patientIds;
+        private final LongBuffer timestamps;
+        private final DoubleBuffer[] values;
+
+        Segment(int index, long firstRow, int rows, int segmentRows, int columnCount, ByteBuffer map) {
+            this.index = index;
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.patientIds = column(map, 0, segmentRows, rows).asLongBuffer();
+            this.timestamps = column(map, 1, segmentRows, rows).asLongBuffer();
+            this.values = new DoubleBuffer[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                values[c] = column(map, 2 + c, segmentRows, rows).asDoubleBuffer();
+            }
+        }
+
+        private static ByteBuffer column(ByteBuffer map, int part, int segmentRows, int rows) {
+            return map.slice(8 * part * segmentRows, 8 * rows).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Row number in the whole store of this segment's row 0.
+         */
+        public long getFirstRow() {
+            return firstRow;
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        public long patientId(int row) {
+            return patientIds.get(row);
+        }
+
+        public long timestamp(int row) {
+            return timestamps.get(row);
+        }
+
+        public double value(int column, int row) {
+            return values[column].get(row);
+        }
+
+        public LongBuffer getPatientIds() {
+            return patientIds.duplicate();
+        }
+
+        public LongBuffer getTimestamps() {
+            return timestamps.duplicate();
+        }
+
+        public DoubleBuffer getColumn(int column) {
+            return values[column].duplicate();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package Fuzzy.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Appends rows to a new {@link VitalsStore} file.
+ *
+ * Rows are buffered column-wise for one segment and written when the segment
+ * is full; the row count in the header is updated after every segment, so a
+ * file whose import was interrupted still opens with its complete segments.
+ * {@link #close()} writes the last, partly filled segment.
+ */
+public final class VitalsStoreWriter implements AutoCloseable {
+
+    /** 64K rows: 3 MB per segment with four vitals */
+    public static final int DEFAULT_SEGMENT_ROWS = 1 << 16;
+
+    private final FileChannel channel;
+    private final String[] columns;
+    private final int segmentRows;
+    private final long headerSize;
+    private final long[] patientIds;
+    private final long[] timestamps;
+    private final double[][] values;
+    private final ByteBuffer segment;
+    private long rowCount;
+    private int row;
+    private boolean closed;
+
+    public VitalsStoreWriter(Path file, String... columns) throws IOException {
+        this(file, DEFAULT_SEGMENT_ROWS, columns);
+    }
+
+    /**
+     * @param segmentRows Rows per segment; a segment must fit in one 2 GB mapping
+     * @param columns     Value columns, normally the input variable names
+     */
+    public VitalsStoreWriter(Path file, int segmentRows, String... columns) throws IOException {
+        if (segmentRows < 1) {
+            throw new IllegalArgumentException("Segment rows must be >= 1. Got: " + segmentRows);
+        }
+        if (VitalsStore.segmentBytes(segmentRows, columns.length) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment of " + segmentRows + " rows and " + columns.length
+                    + " columns does not fit in one mapping");
+        }
+        Set<String> names = new HashSet<>();
+        for (String column : columns) {
+            if (!names.add(column)) {
+                throw new IllegalArgumentException("Duplicate column: " + column);
+            }
+        }
+        this.columns = columns.clone();
+        this.segmentRows = segmentRows;
+        this.patientIds = new long[segmentRows];
+        this.timestamps = new long[segmentRows];
+        this.values = new double[columns.length][segmentRows];
+        this.segment = ByteBuffer.allocate((int) VitalsStore.segmentBytes(segmentRows, columns.length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer header = header(this.columns, segmentRows);
+        this.headerSize = header.remaining();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            write(header, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String[] getColumnNames() {
+        return columns.clone();
+    }
+
+    public int columnIndex(String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rows appended so far, including the ones not yet written.
+     */
+    public long getRowCount() {
+        return rowCount + row;
+    }
+
+    /**
+     * @param values One value per column, in {@link #getColumnNames()} order
+     */
+    public void append(long patientId, long timestamp, double... values) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        }
+        patientIds[row] = patientId;
+        timestamps[row] = timestamp;
+        for (int c = 0; c < values.length; c++) {
+            this.values[c][row] = values[c];
+        }
+        if (++row == segmentRows) {
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (row > 0) {
+                flush();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write the buffered segment, zero-padded to full size, then its rows to the header.
+     */
+    private void flush() throws IOException {
+        segment.clear();
+        segment.asLongBuffer().put(patientIds, 0, row);
+        segment.position(8 * segmentRows);
+        segment.asLongBuffer().put(timestamps, 0, row);
+        for (int c = 0; c < values.length; c++) {
+            segment.position(8 * segmentRows * (2 + c));
+            segment.asDoubleBuffer().put(values[c], 0, row);
+        }
+        // The buffer is reused: clear what the previous segment left past the last row
+        if (row < segmentRows) {
+            for (int part = 0; part < 2 + values.length; part++) {
+                for (int i = row; i < segmentRows; i++) {
+                    segment.putLong(8 * (part * segmentRows + i), 0);
+                }
+            }
+        }
+        segment.clear();
+        write(segment, headerSize + VitalsStore.segmentBytes(segmentRows, columns.length) * (rowCount / segmentRows));
+
+        rowCount += row;
+        row = 0;
+        ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(rowCount);
+        count.flip();
+        write(count, VitalsStore.ROW_COUNT_OFFSET);
+    }
+
+    private void write(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private static ByteBuffer header(String[] columns, int segmentRows) {
+        byte[][] encoded = new byte[columns.length][];
+        int nameBytes = 0;
+        for (int i = 0; i < columns.length; i++) {
+            encoded[i] = columns[i].getBytes(StandardCharsets.UTF_8);
+            nameBytes += encoded[i].length;
+        }
+        int size = (int) VitalsStore.pad(VitalsStore.FIXED_HEADER_SIZE + 4L * (columns.length + 1) + nameBytes);
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(VitalsStore.MAGIC).putInt(VitalsStore.FORMAT_VERSION).putInt(columns.length).putInt(segmentRows)
+                .putLong(0);
+        int offset = 0;
+        out.putInt(offset);
+        for (byte[] b : encoded) {
+            offset += b.length;
+            out.putInt(offset);
+        }
+        for (byte[] b : encoded) {
+            out.put(b);
+        }
+        out.clear();
+        return out;
+    }
+}
@@ -0,0 +1,33 @@
+package Fuzzy.stream;
+
+/**
+ * Crisp alert level computed for one {@link VitalSample}.
+ */
+public final class AlertEvent {
+    private final long patientId;
+    private final long timestamp;
+    private final double level;
+
+    public AlertEvent(long patientId, long timestamp, double level) {
+        this.patientId = patientId;
+        this.timestamp = timestamp;
+        this.level = level;
+    }
+
+    public long getPatientId() {
+        return patientId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        return "AlertEvent{patient=" + patientId + ", t=" + timestamp + ", level=" + level + "}";
+    }
+}
@@ -0,0 +1,262 @@
+package Fuzzy.stream;
+
+import Fuzzy.util.LongIntHashMap;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Per-patient alert level over a stream of crisp outputs, which stays put
+ * while the output wobbles around a limit instead of paging on every
+ * crossing. Levels are split by ascending limits like
+ * {@link Fuzzy.concurrent.AlertSummaries} (33 and 66 give MedicalTrigger's
+ * None, Moderate and High), and a patient starts at level 0.
+ *
+ * <ul>
+ * <li>Hysteresis: level i + 1 is entered at limits[i] or above, but only left
+ * for a lower level below limits[i] - hysteresis[i].</li>
+ * <li>Escalation: the output must stay above the current level for
+ * escalateAfter, then the level goes straight to the one of the latest
+ * output. Levels from immediateLevel up are entered without waiting.</li>
+ * <li>De-escalation: the output must stay below the current level for
+ * deescalateAfter and the patient must have been at the level for minDwell;
+ * the level then drops one step, and the next step waits again.</li>
+ * </ul>
+ *
+ * Times are the sample timestamps, so replaying a recording gives the same
+ * transitions as the live stream; they must not go backwards per patient.
+ * A patient's state is a few primitives in columns found through a
+ * {@link LongIntHashMap} (about 50 bytes per patient), updated in O(1) per
+ * sample without allocation. Not thread-safe: use one instance per partition
+ * of the patients.
+ */
+public final class AlertStateMachine {
+
+    @FunctionalInterface
+    public interface TransitionListener {
+        void onTransition(long patientId, long timestamp, int from, int to, double value);
+    }
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final double[] limits;
+    private final double[] hysteresis;
+    private final long escalateAfter;
+    private final long deescalateAfter;
+    private final long minDwell;
+    private final int immediateLevel;
+
+    private final LongIntHashMap slots = new LongIntHashMap(INITIAL_SLOTS, -1);
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int slotCount;
+    private TransitionListener listener;
+
+    // ---- Per slot ----
+    private byte[] levels;
+    // Level of the transition in progress, or the current level
+    private byte[] pending;
+    private long[] levelSince;
+    private long[] pendingSince;
+    private long[] lastTimestamps;
+
+    /**
+     * @param hysteresis     Margin below each limit before its level is left
+     * @param immediateLevel Lowest level entered without escalateAfter, or the
+     *                       level count for none
+     */
+    public AlertStateMachine(double[] limits, double[] hysteresis, Duration escalateAfter,
+                             Duration deescalateAfter, Duration minDwell, int immediateLevel) {
+        if (hysteresis.length != limits.length) {
+            throw new IllegalArgumentException("Expected " + limits.length + " hysteresis margins, got "
+                    + hysteresis.length);
+        }
+        if (limits.length > Byte.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("Too many alert limits: " + limits.length);
+        }
+        for (int i = 0; i < limits.length; i++) {
+            if (!(hysteresis[i] >= 0) || (i > 0 && !(limits[i] - hysteresis[i] >= limits[i - 1]))) {
+                throw new IllegalArgumentException("Limits must ascend with each limit minus its hysteresis "
+                        + "above the previous limit: " + Arrays.toString(limits) + ", " + Arrays.toString(hysteresis));
+            }
+        }
+        if (escalateAfter.isNegative() || deescalateAfter.isNegative() || minDwell.isNegative()) {
+            throw new IllegalArgumentException("Alert delays must be >= 0");
+        }
+        if (immediateLevel < 1 || immediateLevel > limits.length + 1) {
+            throw new IllegalArgumentException("Immediate level must be in [1, " + (limits.length + 1)
+                    + "]. Got: " + immediateLevel);
+        }
+        this.limits = limits.clone();
+        this.hysteresis = hysteresis.clone();
+        this.escalateAfter = escalateAfter.toMillis();
+        this.deescalateAfter = deescalateAfter.toMillis();
+        this.minDwell = minDwell.toMillis();
+        this.immediateLevel = immediateLevel;
+        allocate(INITIAL_SLOTS);
+    }
+
+    /**
+     * The same margin below every limit, no minimum dwell and no immediate level.
+     */
+    public AlertStateMachine(double[] limits, double hysteresis, Duration escalateAfter, Duration deescalateAfter) {
+        this(limits, filled(limits.length, hysteresis), escalateAfter, deescalateAfter, Duration.ZERO,
+                limits.length + 1);
+    }
+
+    private static double[] filled(int n, double value) {
+        double[] a = new double[n];
+        Arrays.fill(a, value);
+        return a;
+    }
+
+    /**
+     * Called from {@link #update} on every level change; null for none.
+     */
+    public void setListener(TransitionListener listener) {
+        this.listener = listener;
+    }
+
+    public int getLevelCount() {
+        return limits.length + 1;
+    }
+
+    /**
+     * Number of tracked patients.
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Current level of a patient, or -1 if not tracked.
+     */
+    public int getLevel(long patientId) {
+        int s = slots.get(patientId);
+        return s < 0 ? -1 : levels[s];
+    }
+
+    /**
+     * Timestamp of the sample that set the current level, or -1 if not tracked.
+     */
+    public long getLevelSince(long patientId) {
+        int s = slots.get(patientId);
+        return s < 0 ? -1 : levelSince[s];
+    }
+
+    public int update(AlertEvent event) {
+        return update(event.getPatientId(), event.getTimestamp(), event.getLevel());
+    }
+
+    /**
+     * Feed one crisp output of a patient.
+     *
+     * @return The patient's level after the sample
+     */
+    public int update(long patientId, long timestamp, double value) {
+        int s = slots.get(patientId);
+        if (s < 0) {
+            s = add(patientId, timestamp);
+        } else if (timestamp < lastTimestamps[s]) {
+            throw new IllegalArgumentException("Alert time of patient " + patientId + " goes backwards: "
+                    + timestamp);
+        }
+        lastTimestamps[s] = timestamp;
+
+        int level = levels[s];
+        int target = target(level, value);
+        if (target == level) {
+            pending[s] = (byte) level;
+            return level;
+        }
+        boolean up = target > level;
+        int p = pending[s];
+        if (p == level || (p > level) != up) {
+            pendingSince[s] = timestamp;
+        }
+        pending[s] = (byte) target;
+
+        long waited = timestamp - pendingSince[s];
+        if (up) {
+            if (target >= immediateLevel || waited >= escalateAfter) {
+                return transition(s, patientId, timestamp, level, target, value);
+            }
+        } else if (waited >= deescalateAfter && timestamp - levelSince[s] >= minDwell) {
+            int to = transition(s, patientId, timestamp, level, level - 1, value);
+            if (to != target) {
+                // Next step down waits again
+                pendingSince[s] = timestamp;
+            }
+            return to;
+        }
+        return level;
+    }
+
+    /**
+     * Stop tracking a patient, e.g. after discharge; the slot is reused.
+     */
+    public boolean remove(long patientId) {
+        int s = slots.remove(patientId);
+        if (s < 0) {
+            return false;
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        }
+        freeSlots[freeCount++] = s;
+        return true;
+    }
+
+    /**
+     * Level of a value seen from the current level: higher levels are
+     * entered at their limit, lower ones below the limit minus hysteresis.
+     */
+    private int target(int level, double value) {
+        int target = level;
+        while (target < limits.length && value >= limits[target]) {
+            target++;
+        }
+        if (target == level) {
+            while (target > 0 && value < limits[target - 1] - hysteresis[target - 1]) {
+                target--;
+            }
+        }
+        return target;
+    }
+
+    private int transition(int s, long patientId, long timestamp, int from, int to, double value) {
+        levels[s] = (byte) to;
+        levelSince[s] = timestamp;
+        TransitionListener l = listener;
+        if (l != null) {
+            l.onTransition(patientId, timestamp, from, to, value);
+        }
+        return to;
+    }
+
+    private int add(long patientId, long timestamp) {
+        int s;
+        if (freeCount > 0) {
+            s = freeSlots[--freeCount];
+        } else {
+            if (slotCount == levels.length) {
+                allocate(slotCount * 2);
+            }
+            s = slotCount++;
+        }
+        slots.put(patientId, s);
+        levels[s] = 0;
+        pending[s] = 0;
+        levelSince[s] = timestamp;
+        pendingSince[s] = timestamp;
+        return s;
+    }
+
+    private void allocate(int capacity) {
+        levels = levels == null ? new byte[capacity] : Arrays.copyOf(levels, capacity);
+        pending = pending == null ? new byte[capacity] : Arrays.copyOf(pending, capacity);
+        levelSince = levelSince == null ? new long[capacity] : Arrays.copyOf(levelSince, capacity);
+        pendingSince = pendingSince == null ? new long[capacity] : Arrays.copyOf(pendingSince, capacity);
+        lastTimestamps = lastTimestamps == null ? new long[capacity] : Arrays.copyOf(lastTimestamps, capacity);
+    }
+}
@@ -0,0 +1,305 @@
+package Fuzzy.stream;
+
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.concurrent.CohortEvaluator;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pipeline stage that batches {@link VitalSample}s, scores each batch with a
+ * {@link CohortEvaluator} and emits one {@link AlertEvent} per sample.
+ *
+ * Memory is bounded at both ends. Upstream never has more than batchSize
+ * samples requested: the stage asks for more only after a batch has been
+ * scored and handed downstream. Downstream, events go through a
+ * SubmissionPublisher with a bounded per-subscriber buffer, and emitting blocks
+ * while a subscriber's buffer is full, which in turn stops the stage from
+ * requesting more input. A burst from one source is therefore held back at the
+ * source instead of piling up on the heap.
+ *
+ * The stage lock only guards appending samples and handing over full batches.
+ * Batches are scored and emitted after it is released, in order, by one thread
+ * at a time: whichever thread hands over a batch while no other is emitting.
+ * A thread blocked on a slow subscriber therefore never holds up onNext or the
+ * flush timer, whatever executor they run on. The downstream executor must be
+ * able to deliver while an upstream thread is blocked emitting: use a
+ * ForkJoinPool (the default) or threads that the source does not use.
+ *
+ * A partial batch is flushed when the upstream completes or when its oldest
+ * sample has waited maxLatencyMillis. Subscribe downstream before connecting
+ * upstream: events submitted with no subscriber are dropped.
+ */
+public class EvaluationProcessor implements Flow.Processor<VitalSample, AlertEvent>, AutoCloseable {
+
+    public static final int DEFAULT_BUFFER = Flow.defaultBufferSize();
+
+    private final CohortEvaluator evaluator;
+    private final int batchSize;
+    private final long maxLatencyMillis;
+    private final SubmissionPublisher<AlertEvent> publisher;
+    private final ScheduledExecutorService timer;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // ---- Guarded by lock ----
+    private Batch current;
+    // Full or flushed batches waiting to be emitted, oldest first
+    private final ArrayDeque<Batch> ready = new ArrayDeque<>();
+    private final ArrayDeque<Batch> spare = new ArrayDeque<>();
+    private boolean emitting;
+    private boolean completing;
+    private Flow.Subscription upstream;
+    private boolean done;
+
+    public EvaluationProcessor(CohortEvaluator evaluator, int batchSize, long maxLatencyMillis,
+                               Executor executor, int downstreamBuffer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be >= 1. Got: " + batchSize);
+        }
+        this.evaluator = evaluator;
+        this.batchSize = batchSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.publisher = new SubmissionPublisher<>(executor, downstreamBuffer);
+        this.current = new Batch(evaluator.getModel().getInputCount(), batchSize);
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "evaluation-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, maxLatencyMillis / 2);
+        timer.scheduleAtFixedRate(this::flushIfStale, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public EvaluationProcessor(CohortEvaluator evaluator, int batchSize, long maxLatencyMillis) {
+        this(evaluator, batchSize, maxLatencyMillis, ForkJoinPool.commonPool(), DEFAULT_BUFFER);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super AlertEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        lock.lock();
+        try {
+            if (upstream != null || done) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        } finally {
+            lock.unlock();
+        }
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(VitalSample sample) {
+        boolean full;
+        lock.lock();
+        try {
+            if (done) return;
+            Batch b = current;
+            if (sample.getValueCount() != b.columns.length) {
+                fail(new ValidationException("Sample for patient " + sample.getPatientId() + " has "
+                        + sample.getValueCount() + " values, expected " + b.columns.length));
+                return;
+            }
+            if (b.size == 0) {
+                b.oldestArrival = System.currentTimeMillis();
+            }
+            b.patientIds[b.size] = sample.getPatientId();
+            b.timestamps[b.size] = sample.getTimestamp();
+            for (int i = 0; i < b.columns.length; i++) {
+                b.columns[i][b.size] = sample.getValue(i);
+            }
+            b.size++;
+            full = b.size == batchSize;
+            if (full) {
+                handOver();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full) {
+            drain();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        lock.lock();
+        try {
+            if (done) return;
+            done = true;
+            ready.clear();
+            publisher.closeExceptionally(throwable);
+        } finally {
+            lock.unlock();
+            timer.shutdown();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        lock.lock();
+        try {
+            if (done || completing) return;
+            completing = true;
+            if (current.size > 0) {
+                handOver();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Completes downstream once the batches handed over are emitted
+        drain();
+    }
+
+    /**
+     * Stop the stage: cancel upstream and complete downstream without flushing.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (!done) {
+                done = true;
+                ready.clear();
+                if (upstream != null) upstream.cancel();
+                publisher.close();
+            }
+        } finally {
+            lock.unlock();
+            timer.shutdown();
+        }
+    }
+
+    private void flushIfStale() {
+        lock.lock();
+        try {
+            // A batch in flight still holds demand; the next tick flushes after it
+            if (done || emitting || !ready.isEmpty() || current.size == 0
+                    || System.currentTimeMillis() - current.oldestArrival < maxLatencyMillis) {
+                return;
+            }
+            handOver();
+        } finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    /**
+     * Queue the current batch for emission and start a new one. Called with the lock held.
+     */
+    private void handOver() {
+        ready.add(current);
+        Batch next = spare.poll();
+        current = next != null ? next : new Batch(current.columns.length, batchSize);
+    }
+
+    /**
+     * Score and emit the queued batches unless another thread already does,
+     * asking upstream to refill each one. Called without the lock.
+     */
+    private void drain() {
+        lock.lock();
+        try {
+            if (emitting) return;
+            emitting = true;
+        } finally {
+            lock.unlock();
+        }
+
+        while (true) {
+            Batch batch;
+            lock.lock();
+            try {
+                batch = done ? null : ready.poll();
+                if (batch == null) {
+                    emitting = false;
+                    if (completing && !done) {
+                        done = true;
+                        publisher.close();
+                        timer.shutdown();
+                    }
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            int n = batch.size;
+            try {
+                evaluator.evaluate(batch.columns, batch.results, n);
+                for (int i = 0; i < n; i++) {
+                    // Blocks while a subscriber's buffer is full
+                    publisher.submit(new AlertEvent(batch.patientIds[i], batch.timestamps[i], batch.results[i]));
+                }
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    emitting = false;
+                    fail(e);
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            Flow.Subscription subscription;
+            lock.lock();
+            try {
+                batch.size = 0;
+                spare.add(batch);
+                subscription = done ? null : upstream;
+            } finally {
+                lock.unlock();
+            }
+            if (subscription != null) {
+                subscription.request(n);
+            }
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void fail(Throwable t) {
+        if (done) return;
+        done = true;
+        ready.clear();
+        if (upstream != null) upstream.cancel();
+        publisher.closeExceptionally(t);
+        timer.shutdown();
+    }
+
+    /**
+     * Column-wise samples of one batch and their scores.
+     */
+    private static final class Batch {
+        final long[] patientIds;
+        final long[] timestamps;
+        final double[][] columns;
+        final double[] results;
+        int size;
+        long oldestArrival;
+
+        Batch(int inputs, int capacity) {
+            patientIds = new long[capacity];
+            timestamps = new long[capacity];
+            columns = new double[inputs][capacity];
+            results = new double[capacity];
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package Fuzzy.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Collects everything a publisher emits, requesting prefetch items at a time.
+ * Meant for tests and offline replays.
+ */
+public class InMemorySink<T> implements Flow.Subscriber<T> {
+
+    private final int prefetch;
+    private final List<T> items = Collections.synchronizedList(new ArrayList<>());
+    private final CompletableFuture<List<T>> completion = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private int received;
+
+    public InMemorySink(int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be >= 1. Got: " + prefetch);
+        }
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(T item) {
+        items.add(item);
+        if (++received == prefetch) {
+            received = 0;
+            subscription.request(prefetch);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        completion.complete(getItems());
+    }
+
+    public List<T> getItems() {
+        synchronized (items) {
+            return new ArrayList<>(items);
+        }
+    }
+
+    /**
+     * Completes with all items once the publisher completes.
+     */
+    public CompletableFuture<List<T>> getCompletion() {
+        return completion;
+    }
+}
@@ -0,0 +1,33 @@
+package Fuzzy.stream;
+
+/**
+ * One monitor reading. Values are in the input order of the compiled model
+ * (for MedicalTrigger: HeartRate, Temperature, BloodPressure, OxygenLevel).
+ */
+public final class VitalSample {
+    private final long patientId;
+    private final long timestamp;
+    private final double[] values;
+
+    public VitalSample(long patientId, long timestamp, double... values) {
+        this.patientId = patientId;
+        this.timestamp = timestamp;
+        this.values = values;
+    }
+
+    public long getPatientId() {
+        return patientId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue(int input) {
+        return values[input];
+    }
+
+    public int getValueCount() {
+        return values.length;
+    }
+}
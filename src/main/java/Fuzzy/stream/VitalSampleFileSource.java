@@ -0,0 +1,148 @@
+package Fuzzy.stream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays recorded samples from a CSV file: patientId,timestamp,value1,...,valueN.
+ * Blank lines, lines starting with '#' and a header line are skipped.
+ *
+ * Each subscriber gets its own pass over the file, so a recording can be
+ * replayed any number of times. Lines are read only as the subscriber requests
+ * them, so a slow consumer holds the file position instead of buffering it.
+ */
+public class VitalSampleFileSource implements Flow.Publisher<VitalSample> {
+
+    private final Path file;
+    private final Executor executor;
+
+    public VitalSampleFileSource(Path file, Executor executor) {
+        this.file = file;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super VitalSample> subscriber) {
+        FileSubscription subscription = new FileSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    static VitalSample parse(String line) {
+        String[] fields = line.split(",");
+        double[] values = new double[fields.length - 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.parseDouble(fields[i + 2].trim());
+        }
+        return new VitalSample(Long.parseLong(fields[0].trim()), Long.parseLong(fields[1].trim()), values);
+    }
+
+    private final class FileSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super VitalSample> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        // Protocol error from request(), signalled by the emitting thread
+        private volatile Throwable error;
+        // ---- Emitting thread only ----
+        private BufferedReader reader;
+        private boolean firstLine = true;
+        private boolean terminated;
+
+        FileSubscription(Flow.Subscriber<? super VitalSample> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // Signals go out serially from the emitting thread, which may be in onNext now
+                error = new IllegalArgumentException("Request must be positive. Got: " + n);
+                cancelled = true;
+                drain();
+                return;
+            }
+            demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            executor.execute(() -> {
+                int missed = 1;
+                do {
+                    emit();
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            });
+        }
+
+        /**
+         * Runs on at most one thread at a time (guarded by wip).
+         */
+        private void emit() {
+            if (terminated) return;
+            try {
+                if (cancelled) {
+                    close();
+                    Throwable e = error;
+                    if (e != null) {
+                        terminated = true;
+                        subscriber.onError(e);
+                    }
+                    return;
+                }
+                if (reader == null) {
+                    reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                }
+                while (demand.get() > 0 && !cancelled) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        cancelled = true;
+                        terminated = true;
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    line = line.trim();
+                    boolean header = firstLine && !line.isEmpty() && Character.isLetter(line.charAt(0));
+                    firstLine = false;
+                    if (line.isEmpty() || line.startsWith("#") || header) continue;
+
+                    demand.decrementAndGet();
+                    subscriber.onNext(parse(line));
+                }
+            } catch (IOException | RuntimeException e) {
+                cancelled = true;
+                close();
+                if (terminated) return;
+                terminated = true;
+                subscriber.onError(e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+            }
+        }
+
+        private void close() {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // nothing left to read
+                }
+                reader = null;
+            }
+        }
+    }
+}
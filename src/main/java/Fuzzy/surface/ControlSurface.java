@@ -0,0 +1,283 @@
+package Fuzzy.surface;
+
+import Fuzzy.Validation.ValidationException;
+
+import Fuzzy.inference.CompiledModel;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A model's output sampled on a regular grid over its input box, answered by
+ * multilinear interpolation. Built by {@link SurfaceCompiler}.
+ *
+ * Values are stored row-major with the last input varying fastest. Inputs
+ * outside the box are clamped to it. A surface is immutable and can be shared
+ * between threads; {@link #map(Path)} serves it straight from a memory-mapped
+ * file without reading it onto the heap.
+ *
+ * A surface records the {@link CompiledModel#fingerprint()} of the model it
+ * was sampled from, so {@link #map(Path, CompiledModel)} can refuse a file
+ * built from other rules.
+ */
+public final class ControlSurface {
+
+    private static final int MAGIC = 0x46535246; // "FSRF"
+    private static final int FORMAT_VERSION = 2;
+    // Corners summed per query are 2^d
+    private static final int MAX_INPUTS = 30;
+
+    private final String fingerprint;
+    private final String[] inputNames;
+    private final double[] min;
+    private final double[] max;
+    private final int[] points;
+    private final double[] cellsPerUnit;
+    private final int[] strides;
+    private final double maxError;
+    private final double meanError;
+    private final DoubleBuffer values;
+    private final ThreadLocal<double[]> fractions;
+
+    ControlSurface(String fingerprint, String[] inputNames, double[] min, double[] max, int[] points,
+                   double maxError, double meanError, DoubleBuffer values) {
+        this.fingerprint = fingerprint;
+        this.inputNames = inputNames;
+        this.min = min;
+        this.max = max;
+        this.points = points;
+        this.maxError = maxError;
+        this.meanError = meanError;
+        this.values = values;
+
+        int d = points.length;
+        this.fractions = ThreadLocal.withInitial(() -> new double[d]);
+        this.cellsPerUnit = new double[d];
+        this.strides = new int[d];
+        int stride = 1;
+        for (int i = d - 1; i >= 0; i--) {
+            cellsPerUnit[i] = (points[i] - 1) / (max[i] - min[i]);
+            strides[i] = stride;
+            stride *= points[i];
+        }
+    }
+
+    /**
+     * {@link CompiledModel#fingerprint()} of the model the surface was sampled from.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    public int getPoints(int input) {
+        return points[input];
+    }
+
+    public int size() {
+        return values.capacity();
+    }
+
+    /**
+     * Largest |surface - model| measured when the surface was built.
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Mean |surface - model| over the same check points as {@link #getMaxError()}.
+     */
+    public double getMeanError() {
+        return meanError;
+    }
+
+    /**
+     * Interpolated output for inputs in {@link #getInputNames()} order.
+     */
+    public double evaluate(double[] inputs) {
+        int d = points.length;
+        if (inputs.length != d) {
+            throw new ValidationException("Expected " + d + " inputs, got " + inputs.length);
+        }
+
+        // Base corner of the enclosing cell and the position inside it, per input
+        int base = 0;
+        long fractionBits = 0;
+        double[] frac = fractions.get();
+        for (int i = 0; i < d; i++) {
+            double t = (inputs[i] - min[i]) * cellsPerUnit[i];
+            if (!(t > 0)) t = 0;
+            int cell = (int) t;
+            if (cell >= points[i] - 1) {
+                cell = points[i] - 2;
+            }
+            frac[i] = Math.min(1, t - cell);
+            if (frac[i] > 0) fractionBits |= 1L << i;
+            base += cell * strides[i];
+        }
+
+        // Sum the 2^d corners weighted by the product of their 1-D weights,
+        // skipping corners whose weight is zero
+        double result = 0;
+        for (int corner = 0; corner < 1 << d; corner++) {
+            if ((corner & ~fractionBits) != 0) continue;
+            double weight = 1;
+            int index = base;
+            for (int i = 0; i < d; i++) {
+                if ((corner & (1 << i)) != 0) {
+                    weight *= frac[i];
+                    index += strides[i];
+                } else {
+                    weight *= 1 - frac[i];
+                }
+            }
+            result += weight * values.get(index);
+        }
+        return result;
+    }
+
+    /**
+     * Grid value at a flat index (last input fastest).
+     */
+    public double valueAt(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Write the surface in a little-endian binary format that {@link #map(Path)} reads back.
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer header = header();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ)) {
+            long size = header.remaining() + (long) values.capacity() * Double.BYTES;
+            MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.put(header);
+            DoubleBuffer data = out.asDoubleBuffer();
+            data.put(values.duplicate().clear());
+            out.force();
+        }
+    }
+
+    /**
+     * Map a file written by {@link #save(Path)}. Only the header is parsed; grid
+     * values are paged in by the OS as queries touch them.
+     */
+    public static ControlSurface map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            return read(in, ch.size(), file);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated control surface file: " + file, e);
+        }
+    }
+
+    /**
+     * Map a file written by {@link #save(Path)} and check that it was sampled
+     * from {@code model}.
+     */
+    public static ControlSurface map(Path file, CompiledModel model) throws IOException {
+        ControlSurface surface = map(file);
+        String expected = model.fingerprint();
+        if (!surface.fingerprint.equals(expected)) {
+            throw new IOException("Control surface " + file + " was sampled from another model: fingerprint is "
+                    + surface.fingerprint + ", expected " + expected);
+        }
+        return surface;
+    }
+
+    private static ControlSurface read(ByteBuffer in, long fileSize, Path file) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a control surface file: " + file);
+        }
+        int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported control surface version " + version + " in " + file);
+        }
+        int d = in.getInt();
+        int headerSize = in.getInt();
+        if (d < 1 || d > MAX_INPUTS || headerSize < 0 || headerSize > fileSize) {
+            throw new IOException("Corrupt control surface header: " + file);
+        }
+        double maxError = in.getDouble();
+        double meanError = in.getDouble();
+        String fingerprint = string(in, file);
+
+        String[] names = new String[d];
+        double[] min = new double[d];
+        double[] max = new double[d];
+        int[] points = new int[d];
+        long count = 1;
+        for (int i = 0; i < d; i++) {
+            min[i] = in.getDouble();
+            max[i] = in.getDouble();
+            points[i] = in.getInt();
+            names[i] = string(in, file);
+            // Also rejects NaN and infinite bounds
+            if (!(min[i] < max[i]) || max[i] - min[i] == Double.POSITIVE_INFINITY || points[i] < 2) {
+                throw new IOException("Corrupt control surface " + file + ": bad grid for " + names[i]);
+            }
+            count *= points[i];
+            if (count > Integer.MAX_VALUE / Double.BYTES) {
+                throw new IOException("Corrupt control surface " + file + ": grid too large");
+            }
+        }
+        if (in.position() > headerSize || headerSize + count * Double.BYTES != fileSize) {
+            throw new IOException("Truncated control surface file: " + file);
+        }
+
+        in.position(headerSize);
+        DoubleBuffer values = in.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        return new ControlSurface(fingerprint, names, min, max, points, maxError, meanError, values);
+    }
+
+    private static String string(ByteBuffer in, Path file) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Corrupt control surface " + file + ": bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * magic, version, dims, header size, max and mean error, model fingerprint,
+     * then per input min, max, points, name; padded to a multiple of 8 bytes.
+     */
+    private ByteBuffer header() {
+        byte[] model = fingerprint.getBytes(StandardCharsets.UTF_8);
+        byte[][] names = new byte[inputNames.length][];
+        int size = 4 * 4 + 8 + 8 + 4 + model.length;
+        for (int i = 0; i < inputNames.length; i++) {
+            names[i] = inputNames[i].getBytes(StandardCharsets.UTF_8);
+            size += 8 + 8 + 4 + 4 + names[i].length;
+        }
+        size = (size + 7) & ~7;
+
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(inputNames.length).putInt(size);
+        header.putDouble(maxError).putDouble(meanError);
+        header.putInt(model.length).put(model);
+        for (int i = 0; i < inputNames.length; i++) {
+            header.putDouble(min[i]).putDouble(max[i]).putInt(points[i]);
+            header.putInt(names[i].length).put(names[i]);
+        }
+        header.clear();
+        return header;
+    }
+}
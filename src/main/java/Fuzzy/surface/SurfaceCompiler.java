@@ -0,0 +1,151 @@
+package Fuzzy.surface;
+
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.nio.DoubleBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Samples a compiled model over the box spanned by its input variables'
+ * [min, max] ranges and packs the result into a {@link ControlSurface}.
+ *
+ * The grid is evaluated in parallel with {@link CompiledModel#evaluateBatch}.
+ * Afterwards the surface is checked against the model at random points and at
+ * the centre of random cells, where interpolation error peaks; the largest
+ * difference seen is reported by {@link ControlSurface#getMaxError()}. This is a
+ * measured bound, not a proven one: features narrower than a cell can still hide
+ * between sample points. Where no rule fires the model outputs 0, so its output
+ * jumps at the edge of that region and cells straddling the edge show a large
+ * maximum error however fine the grid; {@link ControlSurface#getMeanError()}
+ * shows how much of the box is affected.
+ */
+public class SurfaceCompiler {
+
+    public static final int DEFAULT_ERROR_SAMPLES = 100_000;
+
+    // Grid rows evaluated per task
+    private static final int CHUNK = 16 * CompiledModel.BATCH_BLOCK;
+
+    private final CompiledModel model;
+    private final String[] inputNames;
+    private final double[] min;
+    private final double[] max;
+
+    public SurfaceCompiler(CompiledModel model, Map<String, LinguisticVariable> variables) {
+        this.model = model;
+        this.inputNames = model.getInputNames();
+        this.min = new double[inputNames.length];
+        this.max = new double[inputNames.length];
+        for (int i = 0; i < inputNames.length; i++) {
+            LinguisticVariable var = variables.get(inputNames[i]);
+            if (var == null) {
+                throw new IllegalArgumentException("No variable for model input " + inputNames[i]);
+            }
+            min[i] = var.getMin();
+            max[i] = var.getMax();
+        }
+    }
+
+    public ControlSurface compile(int[] points) {
+        return compile(points, DEFAULT_ERROR_SAMPLES);
+    }
+
+    /**
+     * @param points       grid points per input in model input order, each >= 2
+     * @param errorSamples points at which the surface is compared with the model
+     */
+    public ControlSurface compile(int[] points, int errorSamples) {
+        int d = inputNames.length;
+        if (points.length != d) {
+            throw new IllegalArgumentException("Expected " + d + " grid sizes, got " + points.length);
+        }
+        long total = 1;
+        for (int i = 0; i < d; i++) {
+            if (points[i] < 2) {
+                throw new IllegalArgumentException(
+                        "Grid of " + inputNames[i] + " needs at least 2 points. Got: " + points[i]);
+            }
+            total *= points[i];
+        }
+        if (total > Integer.MAX_VALUE / Double.BYTES) {
+            throw new IllegalArgumentException("Grid of " + total + " points is too large");
+        }
+
+        int size = (int) total;
+        double[] values = new double[size];
+        int[] grid = points.clone();
+
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int from = c * CHUNK;
+            int len = Math.min(CHUNK, size - from);
+            double[][] columns = new double[d][len];
+            for (int row = 0; row < len; row++) {
+                // Decode the flat index, last input fastest
+                int index = from + row;
+                for (int i = d - 1; i >= 0; i--) {
+                    int k = index % grid[i];
+                    index /= grid[i];
+                    columns[i][row] = gridValue(i, k, grid[i]);
+                }
+            }
+            double[] results = new double[len];
+            model.evaluateBatch(columns, results, 0, len, model.newBatchWorkspace());
+            System.arraycopy(results, 0, values, from, len);
+        });
+
+        String fingerprint = model.fingerprint();
+        ControlSurface surface = new ControlSurface(fingerprint, inputNames.clone(), min.clone(), max.clone(), grid,
+                0, 0, DoubleBuffer.wrap(values));
+        double[] error = measureError(surface, grid, errorSamples);
+        return new ControlSurface(fingerprint, inputNames.clone(), min.clone(), max.clone(), grid,
+                error[0], error[1], DoubleBuffer.wrap(values));
+    }
+
+    /**
+     * Grid point k of n on input i; the last point is exactly max.
+     */
+    private double gridValue(int i, int k, int n) {
+        return k == n - 1 ? max[i] : min[i] + k * (max[i] - min[i]) / (n - 1);
+    }
+
+    /**
+     * @return {max error, mean error}
+     */
+    private double[] measureError(ControlSurface surface, int[] grid, int samples) {
+        int d = inputNames.length;
+        Random rnd = new Random(42);
+        double[][] columns = new double[d][samples];
+        for (int row = 0; row < samples; row++) {
+            boolean cellCentre = (row & 1) == 0;
+            for (int i = 0; i < d; i++) {
+                double x;
+                if (cellCentre) {
+                    int cell = rnd.nextInt(grid[i] - 1);
+                    x = min[i] + (cell + 0.5) * (max[i] - min[i]) / (grid[i] - 1);
+                } else {
+                    x = min[i] + rnd.nextDouble() * (max[i] - min[i]);
+                }
+                columns[i][row] = x;
+            }
+        }
+
+        double[] exact = new double[samples];
+        model.evaluateBatch(columns, exact, samples);
+
+        double maxError = 0, sumError = 0;
+        double[] inputs = new double[d];
+        for (int row = 0; row < samples; row++) {
+            for (int i = 0; i < d; i++) {
+                inputs[i] = columns[i][row];
+            }
+            double error = Math.abs(surface.evaluate(inputs) - exact[row]);
+            maxError = Math.max(maxError, error);
+            sumError += error;
+        }
+        return new double[]{maxError, samples == 0 ? 0 : sumError / samples};
+    }
+}
@@ -0,0 +1,99 @@
+package Fuzzy.trend;
+
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.time.Duration;
+
+/**
+ * A derived input computed by {@link TrendTracker} from the recent samples of
+ * one vital: the samples whose timestamp lies within the window before the
+ * newest one. The feature's name is the name of the linguistic variable the
+ * rules use for it, e.g. SpO2Trend with Falling/Stable/Rising sets.
+ */
+public final class TrendFeature {
+
+    public enum Kind {
+        /** Newest value minus the oldest value in the window */
+        DELTA,
+        /** Least-squares slope over the window, in units per second */
+        SLOPE,
+        MIN,
+        MAX,
+        MEAN
+    }
+
+    private final String name;
+    private final String input;
+    private final Kind kind;
+    private final long windowMillis;
+
+    private TrendFeature(String name, String input, Kind kind, Duration window) {
+        if (window.toMillis() <= 0) {
+            throw new IllegalArgumentException("Trend window must be at least 1 ms. Got: " + window);
+        }
+        this.name = name;
+        this.input = input;
+        this.kind = kind;
+        this.windowMillis = window.toMillis();
+    }
+
+    public static TrendFeature delta(String name, String input, Duration window) {
+        return new TrendFeature(name, input, Kind.DELTA, window);
+    }
+
+    public static TrendFeature slope(String name, String input, Duration window) {
+        return new TrendFeature(name, input, Kind.SLOPE, window);
+    }
+
+    public static TrendFeature min(String name, String input, Duration window) {
+        return new TrendFeature(name, input, Kind.MIN, window);
+    }
+
+    public static TrendFeature max(String name, String input, Duration window) {
+        return new TrendFeature(name, input, Kind.MAX, window);
+    }
+
+    public static TrendFeature mean(String name, String input, Duration window) {
+        return new TrendFeature(name, input, Kind.MEAN, window);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Name of the vital the feature is computed from.
+     */
+    public String getInput() {
+        return input;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Falling/Stable/Rising variable on [-range, range] for a DELTA or SLOPE
+     * feature: Stable peaks at 0 and ends at +-stable, Falling is full below
+     * -stable and Rising above stable. The tracker clamps values to the range,
+     * and the outer sets stay full at its ends.
+     */
+    public static LinguisticVariable directionVariable(String name, double stable, double range) {
+        if (!(stable > 0 && stable < range)) {
+            throw new IllegalArgumentException("Direction variable needs 0 < stable < range. Got: stable="
+                    + stable + ", range=" + range);
+        }
+        LinguisticVariable var = new LinguisticVariable(name, -range, range);
+        var.addFuzzySet(new FuzzySet("Falling", new TrapezoidMF(-range - stable, -range, -stable, 0)));
+        var.addFuzzySet(new FuzzySet("Stable", new TriangleMF(-stable, 0, stable)));
+        var.addFuzzySet(new FuzzySet("Rising", new TrapezoidMF(0, stable, range, range + stable)));
+        return var;
+    }
+}
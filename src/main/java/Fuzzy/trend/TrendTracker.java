@@ -0,0 +1,387 @@
+package Fuzzy.trend;
+
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.stream.VitalSample;
+import Fuzzy.util.LongIntHashMap;
+import Fuzzy.variables.LinguisticVariable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-patient {@link TrendFeature}s of streamed vitals, fed to a model as
+ * ordinary inputs. Compile the model with {@link #getInputNames()} as its
+ * input order (the vitals, then the features) and evaluate the row that
+ * {@link #update} fills.
+ *
+ * Every patient has a slot in flat primitive arrays: a ring of the last
+ * {@code capacity} sample times, one ring of values per vital that a feature
+ * uses, running sums for SLOPE and MEAN features and a monotonic deque of
+ * sample numbers for MIN and MAX features. An update adds the sample to every
+ * feature and evicts the samples that left its window, each sample being
+ * evicted once, so updates are amortised O(1). Running sums are taken
+ * relative to the time and value of the window's oldest sample, and rebuilt
+ * from the window once every sample in it came after the last rebuild: that
+ * bounds cancellation and rounding drift when samples leave the window, and
+ * costs no more than the additions since the last rebuild. Nothing is
+ * allocated per sample. A window holds at most {@code capacity} samples:
+ * faster sampling shortens it to the last {@code capacity} samples.
+ *
+ * Features are clamped to the range of their variable. Sample times of a
+ * patient must not go backwards. Not thread-safe: use one tracker per
+ * partition of the patients.
+ */
+public final class TrendTracker {
+
+    private static final int INITIAL_SLOTS = 1024;
+    // Sums per feature: x, y, x*x, x*y with x in seconds since the feature's origin, y less its value origin
+    private static final int SUMS = 4;
+
+    private final String[] vitals;
+    private final String[] inputNames;
+    private final TrendFeature.Kind[] kinds;
+    private final long[] windows;
+    private final double[] lower;
+    private final double[] upper;
+    private final int[] featureRing;
+    // Deque of each MIN/MAX feature, -1 for other kinds
+    private final int[] featureDeque;
+    private final int[] ringVital;
+    private final int capacity;
+    private final int features;
+    private final int rings;
+    private final int deques;
+
+    private final LongIntHashMap slots = new LongIntHashMap(INITIAL_SLOTS, -1);
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int slotCount;
+    private int allocated;
+
+    // ---- Per slot ----
+    private long[] samples;
+    private long[] times;
+    private double[] values;
+    // ---- Per slot and feature ----
+    private long[] start;
+    private long[] origins;
+    private double[] valueOrigins;
+    // Sample count at the last rebuild of the sums
+    private long[] rebuilt;
+    private double[] sums;
+    // ---- Per slot and MIN/MAX feature ----
+    private long[] dequeSamples;
+    private int[] dequeHead;
+    private int[] dequeSize;
+
+    /**
+     * @param variables Variables of the model; every feature needs one of its name
+     * @param vitals    Raw inputs in {@link #update} order
+     * @param capacity  Most samples in any window
+     */
+    public TrendTracker(Map<String, LinguisticVariable> variables, String[] vitals, int capacity,
+                        TrendFeature... features) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Trend capacity must be >= 2. Got: " + capacity);
+        }
+        this.vitals = vitals.clone();
+        this.capacity = capacity;
+        this.features = features.length;
+        this.inputNames = Arrays.copyOf(this.vitals, vitals.length + features.length);
+        this.kinds = new TrendFeature.Kind[features.length];
+        this.windows = new long[features.length];
+        this.lower = new double[features.length];
+        this.upper = new double[features.length];
+        this.featureRing = new int[features.length];
+        this.featureDeque = new int[features.length];
+
+        Set<String> names = new HashSet<>(Arrays.asList(vitals));
+        List<Integer> ringVitals = new ArrayList<>();
+        int minMax = 0;
+        for (int f = 0; f < features.length; f++) {
+            TrendFeature feature = features[f];
+            if (!names.add(feature.getName())) {
+                throw new ValidationException("Duplicate trend input name: " + feature.getName());
+            }
+            LinguisticVariable var = variables.get(feature.getName());
+            if (var == null) {
+                throw new ValidationException("No variable for trend feature " + feature.getName());
+            }
+            int vital = Arrays.asList(vitals).indexOf(feature.getInput());
+            if (vital < 0) {
+                throw new ValidationException("Trend feature " + feature.getName() + " reads unknown vital "
+                        + feature.getInput());
+            }
+            inputNames[vitals.length + f] = feature.getName();
+            kinds[f] = feature.getKind();
+            windows[f] = feature.getWindowMillis();
+            lower[f] = var.getMin();
+            upper[f] = var.getMax();
+            if (!ringVitals.contains(vital)) {
+                ringVitals.add(vital);
+            }
+            featureRing[f] = ringVitals.indexOf(vital);
+            boolean deque = kinds[f] == TrendFeature.Kind.MIN || kinds[f] == TrendFeature.Kind.MAX;
+            featureDeque[f] = deque ? minMax++ : -1;
+        }
+        this.rings = ringVitals.size();
+        this.ringVital = new int[rings];
+        for (int r = 0; r < rings; r++) {
+            ringVital[r] = ringVitals.get(r);
+        }
+        this.deques = minMax;
+        grow(INITIAL_SLOTS);
+    }
+
+    /**
+     * Input order of the model: the vitals, then the features.
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    public int getPatientCount() {
+        return slots.size();
+    }
+
+    public void update(VitalSample sample, double[] inputs) {
+        if (sample.getValueCount() != vitals.length) {
+            throw new ValidationException("Expected " + vitals.length + " vitals, got " + sample.getValueCount());
+        }
+        long patientId = sample.getPatientId();
+        int s = slot(patientId);
+        long t = sample.getTimestamp();
+        checkTime(s, t, patientId);
+        for (int i = 0; i < vitals.length; i++) {
+            inputs[i] = sample.getValue(i);
+        }
+        add(s, t, inputs);
+    }
+
+    /**
+     * Add a patient's sample and fill a model input row.
+     *
+     * @param vitals Values in the tracker's vital order
+     * @param inputs Receives the vitals and the features, in {@link #getInputNames()} order
+     */
+    public void update(long patientId, long timestamp, double[] vitals, double[] inputs) {
+        if (vitals.length != this.vitals.length) {
+            throw new ValidationException("Expected " + this.vitals.length + " vitals, got " + vitals.length);
+        }
+        int s = slot(patientId);
+        checkTime(s, timestamp, patientId);
+        System.arraycopy(vitals, 0, inputs, 0, vitals.length);
+        add(s, timestamp, inputs);
+    }
+
+    /**
+     * Forget a patient, e.g. after discharge; the slot is reused.
+     */
+    public boolean remove(long patientId) {
+        int s = slots.remove(patientId);
+        if (s < 0) {
+            return false;
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        }
+        freeSlots[freeCount++] = s;
+        return true;
+    }
+
+    private void checkTime(int s, long t, long patientId) {
+        long n = samples[s];
+        if (n > 0 && t < times[s * capacity + (int) ((n - 1) % capacity)]) {
+            throw new IllegalArgumentException("Sample time of patient " + patientId + " goes backwards: " + t);
+        }
+    }
+
+    /**
+     * Push one sample (vitals at the start of the row) and write the features after them.
+     */
+    private void add(int s, long t, double[] row) {
+        long n = samples[s];
+        int pos = (int) (n % capacity);
+
+        // The ring slot about to be reused must have left every window
+        for (int f = 0; f < features; f++) {
+            int sf = s * features + f;
+            while (start[sf] <= n - capacity) {
+                evict(s, f, start[sf]++);
+            }
+        }
+        times[s * capacity + pos] = t;
+        for (int r = 0; r < rings; r++) {
+            values[(s * rings + r) * capacity + pos] = row[ringVital[r]];
+        }
+        samples[s] = n + 1;
+
+        for (int f = 0; f < features; f++) {
+            int sf = s * features + f;
+            push(s, f, n);
+            long from = t - windows[f];
+            while (times[s * capacity + (int) (start[sf] % capacity)] < from) {
+                evict(s, f, start[sf]++);
+            }
+            // Every sample of the window came after the last rebuild (always so for the first)
+            if (start[sf] >= rebuilt[sf]) {
+                rebuildSums(s, f, n);
+            }
+            row[vitals.length + f] = Math.max(lower[f], Math.min(upper[f], feature(s, f, n)));
+        }
+    }
+
+    private double value(int s, int f, long sample) {
+        return values[(s * rings + featureRing[f]) * capacity + (int) (sample % capacity)];
+    }
+
+    private double seconds(int s, int f, long sample) {
+        return (times[s * capacity + (int) (sample % capacity)] - origins[s * features + f]) / 1000.0;
+    }
+
+    private void push(int s, int f, long sample) {
+        double v = value(s, f, sample);
+        switch (kinds[f]) {
+            case SLOPE -> {
+                double x = seconds(s, f, sample);
+                v -= valueOrigins[s * features + f];
+                int k = (s * features + f) * SUMS;
+                sums[k] += x;
+                sums[k + 1] += v;
+                sums[k + 2] += x * x;
+                sums[k + 3] += x * v;
+            }
+            case MEAN -> sums[(s * features + f) * SUMS + 1] += v;
+            case MIN, MAX -> {
+                int d = s * deques + featureDeque[f];
+                boolean min = kinds[f] == TrendFeature.Kind.MIN;
+                // Drop samples that can no longer be the extreme
+                while (dequeSize[d] > 0) {
+                    int back = d * capacity + (dequeHead[d] + dequeSize[d] - 1) % capacity;
+                    double b = value(s, f, dequeSamples[back]);
+                    if (min ? b < v : b > v) break;
+                    dequeSize[d]--;
+                }
+                dequeSamples[d * capacity + (dequeHead[d] + dequeSize[d]) % capacity] = sample;
+                dequeSize[d]++;
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void evict(int s, int f, long sample) {
+        switch (kinds[f]) {
+            case SLOPE -> {
+                double x = seconds(s, f, sample);
+                double v = value(s, f, sample) - valueOrigins[s * features + f];
+                int k = (s * features + f) * SUMS;
+                sums[k] -= x;
+                sums[k + 1] -= v;
+                sums[k + 2] -= x * x;
+                sums[k + 3] -= x * v;
+            }
+            case MEAN -> sums[(s * features + f) * SUMS + 1] -= value(s, f, sample);
+            case MIN, MAX -> {
+                int d = s * deques + featureDeque[f];
+                if (dequeSize[d] > 0 && dequeSamples[d * capacity + dequeHead[d]] == sample) {
+                    dequeHead[d] = (dequeHead[d] + 1) % capacity;
+                    dequeSize[d]--;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Recompute the sums of the window with x and y measured from its oldest sample.
+     */
+    private void rebuildSums(int s, int f, long newest) {
+        if (kinds[f] != TrendFeature.Kind.SLOPE && kinds[f] != TrendFeature.Kind.MEAN) {
+            return;
+        }
+        int sf = s * features + f;
+        int k = sf * SUMS;
+        rebuilt[sf] = newest + 1;
+        origins[sf] = times[s * capacity + (int) (start[sf] % capacity)];
+        valueOrigins[sf] = value(s, f, start[sf]);
+        Arrays.fill(sums, k, k + SUMS, 0);
+        for (long i = start[sf]; i <= newest; i++) {
+            push(s, f, i);
+        }
+    }
+
+    private double feature(int s, int f, long newest) {
+        int sf = s * features + f;
+        long count = newest - start[sf] + 1;
+        int k = sf * SUMS;
+        switch (kinds[f]) {
+            case DELTA:
+                return value(s, f, newest) - value(s, f, start[sf]);
+            case SLOPE: {
+                double sx = sums[k];
+                double denominator = count * sums[k + 2] - sx * sx;
+                // One sample, or all at the same time: no trend
+                return denominator > 1e-12 * count * sums[k + 2] ? (count * sums[k + 3] - sx * sums[k + 1]) / denominator : 0;
+            }
+            case MEAN:
+                return sums[k + 1] / count;
+            default: {
+                int d = s * deques + featureDeque[f];
+                return value(s, f, dequeSamples[d * capacity + dequeHead[d]]);
+            }
+        }
+    }
+
+    private int slot(long patientId) {
+        int s = slots.get(patientId);
+        if (s >= 0) {
+            return s;
+        }
+        if (freeCount > 0) {
+            s = freeSlots[--freeCount];
+        } else {
+            if (slotCount == allocated) {
+                grow(allocated * 2);
+            }
+            s = slotCount++;
+        }
+        slots.put(patientId, s);
+
+        samples[s] = 0;
+        Arrays.fill(start, s * features, (s + 1) * features, 0);
+        Arrays.fill(rebuilt, s * features, (s + 1) * features, 0);
+        Arrays.fill(sums, s * features * SUMS, (s + 1) * features * SUMS, 0);
+        Arrays.fill(dequeHead, s * deques, (s + 1) * deques, 0);
+        Arrays.fill(dequeSize, s * deques, (s + 1) * deques, 0);
+        return s;
+    }
+
+    private void grow(int slotsWanted) {
+        long perSlot = (long) capacity * Math.max(1, Math.max(rings, deques));
+        if ((long) slotsWanted * perSlot > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Trend tracker cannot hold more than " + allocated + " patients");
+        }
+        allocated = slotsWanted;
+        samples = samples == null ? new long[allocated] : Arrays.copyOf(samples, allocated);
+        times = times == null ? new long[allocated * capacity] : Arrays.copyOf(times, allocated * capacity);
+        values = values == null ? new double[allocated * rings * capacity]
+                : Arrays.copyOf(values, allocated * rings * capacity);
+        start = start == null ? new long[allocated * features] : Arrays.copyOf(start, allocated * features);
+        origins = origins == null ? new long[allocated * features] : Arrays.copyOf(origins, allocated * features);
+        rebuilt = rebuilt == null ? new long[allocated * features] : Arrays.copyOf(rebuilt, allocated * features);
+        valueOrigins = valueOrigins == null ? new double[allocated * features]
+                : Arrays.copyOf(valueOrigins, allocated * features);
+        sums = sums == null ? new double[allocated * features * SUMS]
+                : Arrays.copyOf(sums, allocated * features * SUMS);
+        dequeSamples = dequeSamples == null ? new long[allocated * deques * capacity]
+                : Arrays.copyOf(dequeSamples, allocated * deques * capacity);
+        dequeHead = dequeHead == null ? new int[allocated * deques] : Arrays.copyOf(dequeHead, allocated * deques);
+        dequeSize = dequeSize == null ? new int[allocated * deques] : Arrays.copyOf(dequeSize, allocated * deques);
+    }
+}
@@ -0,0 +1,208 @@
+package Fuzzy.util;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to int values in two primitive arrays, with open
+ * addressing and linear probing: no boxing and no per-entry objects, about
+ * 24 bytes per entry at the worst load. Typically maps patient ids to dense
+ * slots of per-patient primitive columns.
+ *
+ * Key 0 is kept outside the table, whose empty slots hold key 0. Removal
+ * shifts the following entries back instead of leaving tombstones, so lookups
+ * never slow down with churn. Not thread-safe.
+ */
+public final class LongIntHashMap {
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int shift;
+    private int size;
+    private int resizeAt;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16, -1);
+    }
+
+    /**
+     * @param expectedSize Entries to hold without resizing
+     * @param missingValue Returned by get, put and remove for absent keys
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be >= 0. Got: " + expectedSize);
+        }
+        this.missingValue = missingValue;
+        // Load factor 1/2 keeps probe sequences short
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, 2L * expectedSize - 1)) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        }
+        allocate((int) capacity);
+    }
+
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return The previous value, or the missing value if the key was absent
+     */
+    public int put(long key, int value) {
+        if (key == 0) {
+            int previous = hasZeroKey ? zeroValue : missingValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return The removed value, or the missing value if the key was absent
+     */
+    public int remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return missingValue;
+            }
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        size--;
+
+        // Move back every following entry of the run whose home slot is not between the hole and it
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = 0;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        return (int) ((key * GOLDEN) >>> shift);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = capacity >> 1;
+    }
+
+    private void rehash(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalStateException("LongIntHashMap cannot grow past " + size + " entries");
+        }
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != 0) {
+                int i = slot(key);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
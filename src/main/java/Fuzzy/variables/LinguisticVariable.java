@@ -7,6 +7,7 @@ public class LinguisticVariable {
     private String name;
     private double mn, mx;
     private Map<String, FuzzySet> Fuzzysets = new HashMap<>();
+    private int version;
 
 
     public LinguisticVariable(String name, double mn, double mx) {
@@ -26,6 +27,14 @@ public class LinguisticVariable {
 
     public void addFuzzySet(FuzzySet set) {
         Fuzzysets.put(set.getName(), set);
+        version++;
+    }
+
+    /**
+     * Incremented whenever the fuzzy sets change, so cached tables can be rebuilt.
+     */
+    public int getVersion() {
+        return version;
     }
 
 
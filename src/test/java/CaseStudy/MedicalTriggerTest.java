@@ -0,0 +1,109 @@
+package CaseStudy;
+
+import Fuzzy.trend.TrendTracker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MedicalTriggerTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void fallingOxygenRaisesTheAlertBeforeItIsLow() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        TrendTracker tracker = trigger.newTrendTracker();
+        double[] steady = {80, 98.2, 115, 96};
+
+        // A steady patient scores as without trends
+        for (int minute = 0; minute <= 10; minute++) {
+            assertEquals(trigger.evaluate(steady), trigger.evaluate(tracker, 1, minute * MINUTE, steady), 1e-9);
+        }
+
+        // Still Normal at 92%, but 4 points down in 10 minutes
+        double alert = 0;
+        for (int minute = 0; minute <= 10; minute++) {
+            double[] vitals = {80, 98.2, 115, 96 - 0.4 * minute};
+            alert = trigger.evaluate(tracker, 2, minute * MINUTE, vitals);
+        }
+        double[] last = {80, 98.2, 115, 92};
+        assertTrue(trigger.evaluate(last) < MedicalTrigger.ALERT_LIMITS[0]);
+        assertTrue(alert > trigger.evaluate(last) + 5, "Alert " + alert);
+
+        // Once it is low and still falling, the alert is higher again
+        double lowAlert = 0;
+        for (int minute = 11; minute <= 20; minute++) {
+            double[] vitals = {80, 98.2, 115, 92 - 0.6 * (minute - 10)};
+            lowAlert = trigger.evaluate(tracker, 2, minute * MINUTE, vitals);
+        }
+        assertTrue(lowAlert > trigger.evaluate(new double[]{80, 98.2, 115, 86}), "Alert " + lowAlert);
+    }
+
+    @Test
+    void trendRuleEditsApplyToTheNextReading() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        TrendTracker tracker = trigger.newTrendTracker();
+        double before = 0;
+        for (int minute = 0; minute <= 10; minute++) {
+            before = trigger.evaluate(tracker, 1, minute * MINUTE, new double[]{80, 98.2, 115, 96 - 0.4 * minute});
+        }
+        trigger.getTrendRuleBase().removeRule(13);
+        double after = trigger.evaluate(tracker, 1, 10 * MINUTE, new double[]{80, 98.2, 115, 92});
+        assertTrue(after < before, before + " -> " + after);
+        assertEquals(trigger.evaluate(new double[]{80, 98.2, 115, 92}), after, 1e-9);
+    }
+
+    @Test
+    void evaluationsRacingRuleEditsSeeOneVersionOrTheOther() throws Exception {
+        MedicalTrigger trigger = new MedicalTrigger();
+        double[] vitals = {105, 98.2, 115, 96};
+        double moderate = trigger.evaluate(vitals);
+        trigger.getRuleBase().editRule(5, rule -> rule.consequent.put("AlertLevel", "High"));
+        double high = trigger.evaluate(vitals);
+        assertTrue(high > moderate);
+
+        AtomicBoolean editing = new AtomicBoolean(true);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(threads.submit(() -> {
+                    while (editing.get()) {
+                        double alert = trigger.evaluate(vitals.clone());
+                        assertTrue(alert == moderate || alert == high, "Alert " + alert);
+                    }
+                }));
+            }
+            Future<?> editor = threads.submit(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        String level = i % 2 == 0 ? "Moderate" : "High";
+                        trigger.getRuleBase().editRule(5, rule -> rule.consequent.put("AlertLevel", level));
+                        Thread.yield();
+                    }
+                } finally {
+                    editing.set(false);
+                }
+            });
+            editor.get();
+            for (Future<?> f : readers) {
+                f.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        // The last edit (500 edits end on "High") is what later calls see
+        assertEquals(high, trigger.evaluate(vitals), 0.0);
+        trigger.getRuleBase().editRule(5, rule -> rule.consequent.put("AlertLevel", "Moderate"));
+        assertEquals(moderate, trigger.evaluate(vitals), 0.0);
+    }
+}
@@ -0,0 +1,87 @@
+package Fuzzy.Defuzzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("deprecation")
+class DefuzzificationMethodTest {
+
+    /**
+     * Triangle (0, 2, 10) at points crowded on its left flank.
+     */
+    private static Map<Double, Double> unevenTriangle() {
+        Map<Double, Double> points = new HashMap<>();
+        for (double x = 0; x < 2; x += 0.01) {
+            points.put(x, x / 2);
+        }
+        points.put(2.0, 1.0);
+        points.put(6.0, 0.5);
+        points.put(10.0, 0.0);
+        return points;
+    }
+
+    @Test
+    void centroidIntegratesUnevenPoints() {
+        // Exact for a piecewise-linear curve: the triangle's centroid is (0 + 2 + 10) / 3
+        assertEquals(4.0, new CentroidDefuzzifier().defuzzify(unevenTriangle()), 1e-9);
+    }
+
+    @Test
+    void bisectorSplitsUnevenPoints() {
+        // Area 5; the right flank 1 - (x - 2) / 8 leaves area 2.5 above b where (10 - b)^2 / 16 = 2.5
+        double expected = 10 - Math.sqrt(40);
+        assertEquals(expected, new BisectorDefuzzifier().defuzzify(unevenTriangle()), 1e-9);
+    }
+
+    @Test
+    void maximaUseRealPositions() {
+        Map<Double, Double> plateau = Map.of(0.0, 0.0, 1.0, 1.0, 5.0, 1.0, 6.0, 1.0, 10.0, 0.0);
+        assertEquals(1.0, new SOMDefuzzifier().defuzzify(plateau), 0.0);
+        assertEquals(6.0, new LOMDefuzzifier().defuzzify(plateau), 0.0);
+        assertEquals(4.0, new MOMDefuzzifier().defuzzify(plateau), 0.0);
+        assertEquals(0.0, new MOMDefuzzifier().defuzzify(Map.of(1.0, 0.0, 2.0, 0.0)), 0.0);
+    }
+
+    @Test
+    void evenPointsMatchTheGridMethods() {
+        int n = 101;
+        double[] grid = new double[n];
+        Map<Double, Double> points = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            double x = 20 + i * 0.5;
+            grid[i] = Math.max(0, 1 - Math.abs(x - 40) / 15);
+            points.put(x, grid[i]);
+        }
+        DefuzzificationMethod[] methods = {new BisectorDefuzzifier(), new SOMDefuzzifier(),
+                new LOMDefuzzifier(), new MOMDefuzzifier()};
+        for (DefuzzificationMethod method : methods) {
+            assertEquals(method.defuzzify(grid, n, 20, 70), method.defuzzify(points), 1e-9);
+        }
+        // The grid centroid sums the points; both see the symmetric triangle centred on 40
+        assertEquals(new CentroidDefuzzifier().defuzzify(grid, n, 20, 70),
+                new CentroidDefuzzifier().defuzzify(points), 1e-9);
+    }
+
+    @Test
+    void defaultRejectsUnevenPoints() {
+        DefuzzificationMethod gridOnly = new DefuzzificationMethod() {
+            @Override
+            public double defuzzify(double[] membership, int n, double min, double max) {
+                return min + (max - min) * membership[n - 1];
+            }
+
+            @Override
+            public double defuzzify(double[] ruleOutputs, double[] firingStrengths, int n) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        assertEquals(5.0, gridOnly.defuzzify(Map.of(0.0, 0.0, 5.0, 0.0, 10.0, 0.5)), 0.0);
+        assertThrows(UnsupportedOperationException.class,
+                () -> gridOnly.defuzzify(Map.of(0.0, 0.0, 1.0, 0.0, 10.0, 0.5)));
+    }
+}
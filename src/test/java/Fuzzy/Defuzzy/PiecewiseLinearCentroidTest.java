@@ -0,0 +1,80 @@
+package Fuzzy.Defuzzy;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.inference.MamdaniEngine;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PiecewiseLinearCentroidTest {
+
+    private static final int REFERENCE_SAMPLES = 200_000;
+
+    @Test
+    void matchesHighResolutionSampledCentroid() {
+        IMembershipFunction[] sets = {
+                new TrapezoidMF(-10, 0, 15, 35),
+                new TriangleMF(25, 50, 75),
+                new TrapezoidMF(60, 80, 100, 110),
+                new TriangleMF(40, 45, 90)
+        };
+        PiecewiseLinearCentroid centroid = new PiecewiseLinearCentroid(0, 100, sets);
+        double[] work = centroid.newWorkspace();
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            double[] heights = new double[sets.length];
+            for (int s = 0; s < sets.length; s++) {
+                heights[s] = random.nextInt(4) == 0 ? 0 : random.nextDouble();
+            }
+            double expected = sampledCentroid(sets, heights, 0, 100);
+            assertEquals(expected, centroid.centroid(heights, 0, work, 0), 1e-3);
+        }
+    }
+
+    @Test
+    void medicalTriggerAgreesWithSampledEngine() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        RuleBase rules = trigger.getRuleBase();
+        MamdaniEngine sampled = new MamdaniEngine(trigger.getVariables(), new MinTnorm(), new MaxSNorm(),
+                CentroidMode.SAMPLED, REFERENCE_SAMPLES);
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            double hr = 40 + 80 * random.nextDouble();
+            double temp = 95 + 10 * random.nextDouble();
+            double bp = 60 + 120 * random.nextDouble();
+            double spo2 = 70 + 30 * random.nextDouble();
+            Map<String, Double> inputs = new HashMap<>();
+            inputs.put("HeartRate", hr);
+            inputs.put("Temperature", temp);
+            inputs.put("BloodPressure", bp);
+            inputs.put("OxygenLevel", spo2);
+            assertEquals(sampled.evaluate(inputs, rules), trigger.evaluate(hr, temp, bp, spo2), 0.01);
+        }
+    }
+
+    private static double sampledCentroid(IMembershipFunction[] sets, double[] heights, double min, double max) {
+        double num = 0;
+        double den = 0;
+        for (int i = 0; i < REFERENCE_SAMPLES; i++) {
+            double x = min + (max - min) * i / (REFERENCE_SAMPLES - 1);
+            double mu = 0;
+            for (int s = 0; s < sets.length; s++) {
+                mu = Math.max(mu, Math.min(heights[s], sets[s].membership(x)));
+            }
+            num += x * mu;
+            den += mu;
+        }
+        return den == 0 ? 0 : num / den;
+    }
+}
@@ -0,0 +1,118 @@
+package Fuzzy.Rules;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Validation.RuleValidator;
+import Fuzzy.Validation.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleBaseTest {
+
+    private static Rule rule(String hr, String alert) {
+        return new Rule(0, new HashMap<>(Map.of("HeartRate", hr)), new HashMap<>(Map.of("AlertLevel", alert)));
+    }
+
+    private static RuleBase base() {
+        RuleBase base = new RuleBase();
+        base.createRule(rule("Low", "High"));
+        base.createRule(rule("Normal", "None"));
+        base.createRule(rule("High", "High"));
+        return base;
+    }
+
+    @Test
+    void handedOutRulesAreDetached() {
+        RuleBase base = base();
+        int version = base.getVersion();
+
+        base.findRule(1).orElseThrow().weight = 0.1;
+        base.listRules().get(1).enabled = false;
+        base.getRules().get(2).antecedent.put("Temperature", "High");
+
+        assertEquals(version, base.getVersion());
+        for (Rule rule : base.snapshot().getRules()) {
+            assertEquals(1.0, rule.weight);
+            assertTrue(rule.enabled);
+            assertEquals(1, rule.antecedent.size());
+        }
+
+        Rule created = rule("Low", "None");
+        base.createRule(created);
+        created.weight = 0.2;
+        assertEquals(1.0, base.findRule(created.id).orElseThrow().weight);
+    }
+
+    @Test
+    void editsArePublished() {
+        RuleBase base = base();
+        int version = base.getVersion();
+
+        Rule edited = base.editRule(2, r -> r.weight = 0.5).orElseThrow();
+        assertEquals(0.5, edited.weight);
+        assertEquals(0.5, base.snapshot().getRules().get(1).weight);
+        assertEquals(version + 1, base.getVersion());
+        assertFalse(base.editRule(99, r -> r.weight = 0.5).isPresent());
+
+        // A failing edit publishes nothing
+        assertThrows(IllegalStateException.class, () -> base.editRule(1, r -> {
+            r.weight = 0.3;
+            throw new IllegalStateException();
+        }));
+        assertEquals(1.0, base.findRule(1).orElseThrow().weight);
+        assertEquals(version + 1, base.getVersion());
+    }
+
+    @Test
+    void ruleListWritesThrough() {
+        RuleBase base = base();
+        List<Rule> rules = base.getRules();
+
+        Rule first = rules.get(0);
+        first.enabled = false;
+        rules.set(0, first);
+        assertFalse(base.snapshot().getRules().get(0).enabled);
+
+        rules.add(rule("Normal", "High"));
+        assertEquals(4, base.snapshot().getRules().size());
+        assertEquals(4, base.snapshot().getRules().get(3).id);
+
+        rules.removeIf(r -> r.consequent.containsValue("None"));
+        assertEquals(3, rules.size());
+        assertFalse(base.findRule(2).isPresent());
+
+        rules.remove(0);
+        assertEquals(List.of(3, 4), base.snapshot().getRules().stream().map(r -> r.id).toList());
+        assertEquals(2, base.getIndex().getRuleCount());
+    }
+
+    @Test
+    void editorEditsReachTheEngine() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        RuleBase base = trigger.getRuleBase();
+        RuleEditor editor = new RuleEditor(base, new RuleValidator(trigger.getVariables()));
+        double[] vitals = {115, 102, 130, 85};
+        double before = trigger.evaluate(vitals);
+        assertTrue(before > MedicalTrigger.ALERT_LIMITS[1]);
+
+        int enabled = base.getIndex().getRuleCount();
+        int disabled = 0;
+        for (Rule rule : base.listRules()) {
+            if (rule.consequent.containsValue("High")) {
+                editor.enable(rule.id, false);
+                disabled++;
+            }
+        }
+        assertEquals(enabled - disabled, base.getIndex().getRuleCount());
+        assertTrue(trigger.evaluate(vitals) < before);
+
+        assertThrows(ValidationException.class, () -> editor.setWeight(-1, 0.5));
+    }
+}
@@ -0,0 +1,94 @@
+package Fuzzy.Rules;
+
+import Fuzzy.Validation.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SugenoExpressionTest {
+
+    private static final Map<String, Double> INPUTS = Map.of("HR", 80.0, "Temp", 99.0, "x", 3.0, "y", -2.0);
+
+    private static double eval(String source) {
+        return SugenoExpression.parse(source).evaluate(INPUTS);
+    }
+
+    @Test
+    void multiplicationBindsTighterThanAddition() {
+        assertEquals(1 + 2 * 3, eval("1 + 2 * 3"), 0.0);
+        assertEquals(2 * 3 - 4 * 5, eval("2*3 - 4*5"), 0.0);
+        assertEquals(10 - 2 - 3, eval("10 - 2 - 3"), 0.0);
+        assertEquals(0.5 * 80 + 99 - 98, eval("0.5*HR + Temp - 98"), 0.0);
+    }
+
+    @Test
+    void parenthesesAreExpandedIntoTerms() {
+        assertEquals((1 + 2) * 3, eval("(1 + 2) * 3"), 0.0);
+        assertEquals(-2 * (99 - 98) + 10, eval("-2*(Temp - 98) + 10"), 0.0);
+        assertEquals((3 + -2) * (3 - -2), eval("(x + y) * (x - y)"), 0.0);
+
+        SugenoExpression e = SugenoExpression.parse("(x + 1) * (y + 2)");
+        // x*y + 2x + y + 2
+        assertEquals(4, e.getTermCount());
+        assertArrayEquals(new String[]{"x", "y"}, e.getFactors(0));
+        assertEquals(List.of("x", "y"), List.copyOf(e.getVariables()));
+    }
+
+    @Test
+    void unaryMinusAndPlus() {
+        assertEquals(-3, eval("-x"), 0.0);
+        assertEquals(3, eval("--x"), 0.0);
+        assertEquals(-3 * -(-2), eval("-x * -y"), 0.0);
+        assertEquals(-(3 + -2), eval("-(x + y)"), 0.0);
+        assertEquals(5, eval("+5"), 0.0);
+        assertEquals(1.5e-3, eval("1.5e-3"), 0.0);
+        assertTrue(SugenoExpression.parse("-(4 - 4)").isConstant());
+    }
+
+    @Test
+    void malformedExpressionsAreValidationErrors() {
+        for (String source : new String[]{"", "   ", "1 +", "(x + 1", "x + 1)", "2 ** x", "x y", "1.2.3",
+                "3 / x", "x + $", "*2"}) {
+            assertThrows(ValidationException.class, () -> SugenoExpression.parse(source), source);
+        }
+        assertThrows(ValidationException.class, () -> SugenoExpression.parse(null));
+        ValidationException e = assertThrows(ValidationException.class, () -> SugenoExpression.parse("(x + 1"));
+        assertEquals("Expected ')' at position 6 in Sugeno expression \"(x + 1\"", e.getMessage());
+    }
+
+    @Test
+    void unknownVariablesFailOnEvaluation() {
+        SugenoExpression e = SugenoExpression.parse("2*SpO2 + 1");
+        ValidationException error = assertThrows(ValidationException.class, () -> e.evaluate(INPUTS));
+        assertEquals("Missing crisp input for variable SpO2", error.getMessage());
+        // Constant terms need no inputs
+        assertEquals(7, SugenoExpression.parse("3 + 4").evaluate(Map.of()), 0.0);
+    }
+
+    @Test
+    void snapshotRulesAreParsedOnceWhenAdded() {
+        RuleBase base = new RuleBase();
+        base.createRule(new Rule(1, Map.of("HR", "High"), Map.of("Out", "0.5*HR + 10")));
+        base.createRule(new Rule(2, Map.of("HR", "Low"), Map.of("Out", "Very Low")));
+
+        Rule sugeno = base.snapshot().getRules().get(0);
+        SugenoExpression parsed = sugeno.getSugenoExpression();
+        assertSame(parsed, sugeno.getSugenoExpression());
+        assertEquals(50, sugeno.evaluateConsequent(INPUTS), 0.0);
+
+        // Not an expression: still reported when asked for
+        Rule mamdani = base.snapshot().getRules().get(1);
+        assertThrows(ValidationException.class, mamdani::getSugenoExpression);
+
+        // An edited consequent is parsed again
+        base.editRule(1, rule -> rule.consequent.put("Out", "HR - 1"));
+        assertEquals(79, base.snapshot().getRules().get(0).evaluateConsequent(INPUTS), 0.0);
+    }
+}
@@ -0,0 +1,97 @@
+package Fuzzy.concurrent;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.io.FuzzyModel;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.store.VitalsStore;
+import Fuzzy.store.VitalsStoreWriter;
+import Fuzzy.variables.FuzzySet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackfillJobTest {
+
+    private static VitalsStore store(Path dir) throws IOException {
+        Path file = dir.resolve("vitals.store");
+        Random random = new Random(5);
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(file, 100, MedicalTrigger.INPUTS)) {
+            for (int row = 0; row < 450; row++) {
+                writer.append(random.nextInt(20), row, 50 + 80 * random.nextDouble(), 96 + 8 * random.nextDouble(),
+                        70 + 100 * random.nextDouble(), 75 + 25 * random.nextDouble());
+            }
+        }
+        return VitalsStore.open(file);
+    }
+
+    private static String fingerprint(MedicalTrigger trigger) {
+        return trigger.getInferenceEngine().compile(trigger.getRuleBase(), MedicalTrigger.INPUTS).fingerprint();
+    }
+
+    @Test
+    void resumesWithTheSameRulesAndRefusesEditedOnes(@TempDir Path dir) throws Exception {
+        MedicalTrigger trigger = new MedicalTrigger();
+        Path checkpoints = dir.resolve("checkpoints");
+        VitalsStore store = store(dir);
+        AlertSummaries first = trigger.newBackfillJob(store, checkpoints).run();
+        try (Stream<Path> files = Files.list(checkpoints)) {
+            assertTrue(files.noneMatch(f -> f.toString().endsWith(".tmp")));
+        }
+
+        // Recompiled from unchanged rules: every segment is resumed, not redone
+        Path segment = checkpoints.resolve("segment-000000.sum");
+        FileTime written = Files.getLastModifiedTime(segment);
+        AlertSummaries resumed = trigger.newBackfillJob(store, checkpoints).run();
+        assertEquals(written, Files.getLastModifiedTime(segment));
+        assertEquals(first.size(), resumed.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.getMean(i), resumed.getMean(i), 0.0);
+        }
+
+        String before = fingerprint(trigger);
+        int id = trigger.getRuleBase().listRules().get(0).id;
+        trigger.getRuleBase().editRule(id, rule -> rule.weight /= 2);
+        assertNotEquals(before, fingerprint(trigger));
+
+        BackfillJob edited = trigger.newBackfillJob(store, checkpoints);
+        IOException e = assertThrows(IOException.class, edited::run);
+        assertTrue(e.getMessage().contains("model.fingerprint"), e.getMessage());
+    }
+
+    /**
+     * The built-in trigger with a Gaussian "Normal" heart rate cut off at cutoff.
+     */
+    private static MedicalTrigger gaussianTrigger(double cutoff) {
+        FuzzyModel model = new MedicalTrigger().toModel();
+        model.getVariables().get("HeartRate").addFuzzySet(new FuzzySet("Normal", new GaussianMF(80, 12, cutoff)));
+        return new MedicalTrigger(model);
+    }
+
+    @Test
+    void refusesAnotherGaussianCutoff(@TempDir Path dir) throws Exception {
+        Path checkpoints = dir.resolve("checkpoints");
+        VitalsStore store = store(dir);
+        gaussianTrigger(0.05).newBackfillJob(store, checkpoints).run();
+
+        // Same parameters: resumed
+        assertEquals(fingerprint(gaussianTrigger(0.05)), fingerprint(gaussianTrigger(0.05)));
+        gaussianTrigger(0.05).newBackfillJob(store, checkpoints).run();
+
+        // Only the cutoff differs, which narrows the set's support
+        MedicalTrigger narrower = gaussianTrigger(0.2);
+        assertNotEquals(fingerprint(gaussianTrigger(0.05)), fingerprint(narrower));
+        IOException e = assertThrows(IOException.class, narrower.newBackfillJob(store, checkpoints)::run);
+        assertTrue(e.getMessage().contains("model.fingerprint"), e.getMessage());
+    }
+}
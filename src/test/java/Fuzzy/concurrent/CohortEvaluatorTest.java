@@ -0,0 +1,162 @@
+package Fuzzy.concurrent;
+
+import CaseStudy.MedicalTrigger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CohortEvaluatorTest {
+
+    private static final double[] MEAN = {80, 98.6, 120, 95};
+    private static final double[] SD = {15, 1.2, 20, 4};
+    private static final double[] MIN = {40, 95, 60, 70};
+    private static final double[] MAX = {120, 105, 180, 100};
+
+    private static double[][] cohort(int rows, long seed) {
+        Random random = new Random(seed);
+        double[][] columns = new double[4][rows];
+        for (int v = 0; v < 4; v++) {
+            for (int i = 0; i < rows; i++) {
+                double x = MEAN[v] + SD[v] * random.nextGaussian();
+                columns[v][i] = Math.max(MIN[v], Math.min(MAX[v], x));
+            }
+        }
+        return columns;
+    }
+
+    private static double[] perPatient(MedicalTrigger trigger, double[][] columns, int rows) {
+        double[] expected = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            expected[i] = trigger.evaluate(columns[0][i], columns[1][i], columns[2][i], columns[3][i]);
+        }
+        return expected;
+    }
+
+    @Test
+    void matchesPerPatientEvaluation() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        int rows = 10_007;
+        double[][] columns = cohort(rows, 3);
+        double[] expected = perPatient(trigger, columns, rows);
+        for (CohortEvaluator.Mode mode : CohortEvaluator.Mode.values()) {
+            for (int parallelism : new int[]{1, 3, 8}) {
+                try (CohortEvaluator evaluator = new CohortEvaluator(trigger.getInferenceEngine(),
+                        trigger.getRuleBase(), parallelism, mode, MedicalTrigger.INPUTS)) {
+                    double[] results = new double[rows];
+                    evaluator.evaluate(columns, results, rows);
+                    assertArrayEquals(expected, results, 0.0, mode + " x" + parallelism);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rowWiseSamplesMatchColumns() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        int rows = 1000;
+        double[][] columns = cohort(rows, 5);
+        double[][] samples = new double[rows][4];
+        for (int i = 0; i < rows; i++) {
+            for (int v = 0; v < 4; v++) {
+                samples[i][v] = columns[v][i];
+            }
+        }
+        try (CohortEvaluator evaluator = new CohortEvaluator(trigger.getInferenceEngine(), trigger.getRuleBase(),
+                MedicalTrigger.INPUTS)) {
+            assertArrayEquals(perPatient(trigger, columns, rows), evaluator.evaluate(samples), 0.0);
+        }
+    }
+
+    @Test
+    void followsRuleEdits() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        int rows = 5000;
+        double[][] columns = cohort(rows, 7);
+        try (CohortEvaluator evaluator = new CohortEvaluator(trigger.getInferenceEngine(), trigger.getRuleBase(),
+                4, CohortEvaluator.Mode.FORK_JOIN, MedicalTrigger.INPUTS)) {
+            double[] before = new double[rows];
+            evaluator.evaluate(columns, before, rows);
+            assertArrayEquals(perPatient(trigger, columns, rows), before, 0.0);
+            // Rule 9 is covered by rule 10 (same output, fewer clauses); removing 10 changes results
+            trigger.getRuleBase().removeRule(10);
+            double[] after = new double[rows];
+            evaluator.evaluate(columns, after, rows);
+            assertArrayEquals(perPatient(trigger, columns, rows), after, 0.0);
+            assertFalse(Arrays.equals(before, after));
+        }
+    }
+
+    @Test
+    void sharedByConcurrentCallers() throws Exception {
+        MedicalTrigger trigger = new MedicalTrigger();
+        int rows = 20_000;
+        double[][] columns = cohort(rows, 9);
+        double[] expected = perPatient(trigger, columns, rows);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try (CohortEvaluator evaluator = new CohortEvaluator(trigger.getInferenceEngine(), trigger.getRuleBase(),
+                2, CohortEvaluator.Mode.VIRTUAL_THREADS, MedicalTrigger.INPUTS)) {
+            List<Future<double[]>> futures = new ArrayList<>();
+            for (int c = 0; c < 8; c++) {
+                futures.add(callers.submit(() -> {
+                    double[] results = new double[rows];
+                    evaluator.evaluate(columns, results, rows);
+                    return results;
+                }));
+            }
+            for (Future<double[]> f : futures) {
+                assertArrayEquals(expected, f.get(), 0.0);
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    /**
+     * Throughput on all cores against one worker. Needs at least two cores;
+     * the bound is loose so that a busy machine does not fail the build.
+     */
+    @Test
+    void scalesWithCores() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores >= 2, "Scaling needs at least 2 cores, found " + cores);
+
+        MedicalTrigger trigger = new MedicalTrigger();
+        int rows = 1 << 18;
+        double[][] columns = cohort(rows, 11);
+        double single = rowsPerSecond(trigger, 1, columns, rows);
+        double all = rowsPerSecond(trigger, cores, columns, rows);
+        double required = 1 + 0.25 * (Math.min(cores, 4) - 1);
+        assertTrue(all / single >= required, String.format("Speedup on %d cores was %.2fx (%.0f vs %.0f rows/s), "
+                + "expected >= %.2fx", cores, all / single, all, single, required));
+    }
+
+    private static double rowsPerSecond(MedicalTrigger trigger, int parallelism, double[][] columns, int rows) {
+        try (CohortEvaluator evaluator = new CohortEvaluator(trigger.getInferenceEngine(), trigger.getRuleBase(),
+                parallelism, CohortEvaluator.Mode.FORK_JOIN, MedicalTrigger.INPUTS)) {
+            double[] results = new double[rows];
+            for (int warmup = 0; warmup < 5; warmup++) {
+                evaluator.evaluate(columns, results, rows);
+            }
+            double best = 0;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                evaluator.evaluate(columns, results, rows);
+                best = Math.max(best, rows * 1e9 / (System.nanoTime() - start));
+            }
+            assertEquals(rows, results.length);
+            return best;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package Fuzzy.inference;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Validation.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingInferenceEngineTest {
+
+    private static CachingInferenceEngine cache(MedicalTrigger trigger, int capacity) {
+        Map<String, Double> resolutions = new LinkedHashMap<>();
+        for (int i = 0; i < MedicalTrigger.INPUTS.length; i++) {
+            resolutions.put(MedicalTrigger.INPUTS[i], MedicalTrigger.RESOLUTIONS[i]);
+        }
+        return new CachingInferenceEngine(trigger.getInferenceEngine(), resolutions, capacity);
+    }
+
+    private static CompiledModel uncached(MedicalTrigger trigger) {
+        return trigger.getInferenceEngine().compile(trigger.getRuleBase(), MedicalTrigger.INPUTS);
+    }
+
+    @Test
+    void dropsResultsAfterARuleEdit() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CachingInferenceEngine cache = cache(trigger, 1000);
+        RuleBase base = trigger.getRuleBase();
+        double[] vitals = {105, 98.2, 115, 96};
+
+        double before = cache.evaluate(base, vitals);
+        assertEquals(before, cache.evaluate(base, vitals), 0.0);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+
+        base.editRule(5, rule -> rule.consequent.put("AlertLevel", "High"));
+        double after = cache.evaluate(base, vitals);
+        assertNotEquals(before, after);
+        assertEquals(uncached(trigger).evaluate(vitals), after, 0.0);
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntryOfASegment() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        RuleBase base = trigger.getRuleBase();
+        // One entry per segment: a second heart rate evicts the first exactly when they share a segment
+        CachingInferenceEngine probe = cache(trigger, 1);
+        List<Integer> sameSegment = new ArrayList<>();
+        sameSegment.add(40);
+        for (int hr = 41; hr <= 120 && sameSegment.size() < 3; hr++) {
+            probe.clear();
+            long evictions = probe.getEvictions();
+            probe.evaluate(base, new double[]{40, 98.2, 115, 96});
+            probe.evaluate(base, new double[]{hr, 98.2, 115, 96});
+            if (probe.getEvictions() > evictions) {
+                sameSegment.add(hr);
+            }
+        }
+        assertEquals(3, sameSegment.size());
+
+        // Two entries per segment
+        CachingInferenceEngine cache = cache(trigger, 32);
+        double[] a = {sameSegment.get(0), 98.2, 115, 96};
+        double[] b = {sameSegment.get(1), 98.2, 115, 96};
+        double[] c = {sameSegment.get(2), 98.2, 115, 96};
+        cache.evaluate(base, a);
+        cache.evaluate(base, b);
+        cache.evaluate(base, a);
+        cache.evaluate(base, c);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+
+        long misses = cache.getMisses();
+        cache.evaluate(base, a);
+        cache.evaluate(base, c);
+        assertEquals(misses, cache.getMisses());
+        cache.evaluate(base, b);
+        assertEquals(misses + 1, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void evaluatesAtTheRoundedPoint() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CachingInferenceEngine cache = cache(trigger, 1000);
+        CompiledModel model = uncached(trigger);
+        RuleBase base = trigger.getRuleBase();
+
+        // 0.1°F is a scale of 10: 98.34 -> 983 / 10.0, the double 98.3 as parsed
+        double rounded = model.evaluate(new double[]{81, 98.3, 115, 94});
+        assertEquals(rounded, cache.evaluate(base, new double[]{80.6, 98.34, 115.2, 93.5}), 0.0);
+        assertEquals(rounded, cache.evaluate(base, new double[]{81.4, 98.26, 114.9, 94.4}), 0.0);
+        assertEquals(1, cache.getHits());
+
+        Random random = new Random(4);
+        for (int i = 0; i < 2000; i++) {
+            double t = 95 + 10 * random.nextDouble();
+            double expected = model.evaluate(new double[]{80, Math.round(t * 10) / 10.0, 115, 94});
+            assertEquals(expected, cache.evaluate(base, new double[]{80, t, 115, 94}), 0.0);
+        }
+    }
+
+    @Test
+    void bypassesNonFiniteInputsAndOtherInputMaps() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CachingInferenceEngine cache = cache(trigger, 1000);
+        CompiledModel model = uncached(trigger);
+        RuleBase base = trigger.getRuleBase();
+
+        double[] infinite = {Double.POSITIVE_INFINITY, 98.2, 115, 96};
+        assertEquals(model.evaluate(infinite), cache.evaluate(base, infinite), 0.0);
+
+        Map<String, Double> inputs = new HashMap<>();
+        inputs.put("HeartRate", 80.4);
+        inputs.put("Temperature", 98.2);
+        inputs.put("BloodPressure", 115.0);
+        inputs.put("OxygenLevel", 96.0);
+        inputs.put("Extra", 1.0);
+        assertEquals(trigger.getInferenceEngine().evaluate(inputs, base), cache.evaluate(inputs, base), 0.0);
+        inputs.remove("Extra");
+        inputs.remove("OxygenLevel");
+        inputs.put("SpO2", 96.0);
+        // Passed to the delegate, which reports the missing input itself
+        ValidationException e = assertThrows(ValidationException.class, () -> cache.evaluate(inputs, base));
+        assertEquals("Missing crisp input for variable OxygenLevel", e.getMessage());
+
+        assertEquals(0, cache.getHits() + cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void concurrentHitsAndMissesGiveUncachedResults() throws Exception {
+        MedicalTrigger trigger = new MedicalTrigger();
+        // Smaller than the distinct inputs, so threads also race evictions
+        CachingInferenceEngine cache = cache(trigger, 64);
+        CompiledModel model = uncached(trigger);
+        RuleBase base = trigger.getRuleBase();
+        int calls = 20_000;
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                long seed = t;
+                futures.add(threads.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < calls; i++) {
+                        double[] vitals = {40 + random.nextInt(80), 97 + random.nextInt(30) / 10.0, 115,
+                                85 + random.nextInt(15)};
+                        assertEquals(model.evaluate(vitals.clone()), cache.evaluate(base, vitals), 0.0);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(4L * calls, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getHits() > 0);
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.size() <= 64);
+    }
+}
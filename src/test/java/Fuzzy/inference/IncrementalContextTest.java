@@ -0,0 +1,162 @@
+package Fuzzy.inference;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * An incremental context fuzzifies the first sample with the model's kernel
+ * (when generated) and later changes with the interpreted membership, so
+ * every result must equal a full evaluation bit for bit.
+ */
+class IncrementalContextTest {
+
+    private static final String[] INPUTS = {"A", "B", "C", "D"};
+    private static final String[] SETS = {"Low", "Mid", "High", "Cut", "Bell"};
+
+    private static final class BellMF implements IMembershipFunction {
+        @Override
+        public double membership(double x) {
+            double d = (x - 50) / 30;
+            return 1 / (1 + d * d);
+        }
+
+        @Override
+        public double[] getParameters() {
+            return new double[]{50, 30};
+        }
+
+        @Override
+        public String getType() {
+            return "Bell";
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+    }
+
+    private static Map<String, LinguisticVariable> variables() {
+        Map<String, LinguisticVariable> variables = new HashMap<>();
+        for (String name : INPUTS) {
+            LinguisticVariable var = new LinguisticVariable(name, 0, 100);
+            var.addFuzzySet(new FuzzySet("Low", new TrapezoidMF(-1, 0, 20, 45)));
+            var.addFuzzySet(new FuzzySet("Mid", new TriangleMF(25, 50, 75)));
+            var.addFuzzySet(new FuzzySet("High", new GaussianMF(85, 12)));
+            var.addFuzzySet(new FuzzySet("Cut", new GaussianMF(40, 15, 0.05)));
+            var.addFuzzySet(new FuzzySet("Bell", new BellMF()));
+            variables.put(name, var);
+        }
+        LinguisticVariable out = new LinguisticVariable("Out", 0, 100);
+        out.addFuzzySet(new FuzzySet("Low", new TriangleMF(0, 15, 40)));
+        out.addFuzzySet(new FuzzySet("Mid", new TrapezoidMF(25, 45, 55, 75)));
+        out.addFuzzySet(new FuzzySet("High", new TriangleMF(60, 85, 100)));
+        variables.put("Out", out);
+        return variables;
+    }
+
+    private static RuleBase randomRules(Random random, boolean sugeno) {
+        RuleBase base = new RuleBase();
+        for (int r = 1, count = 5 + random.nextInt(30); r <= count; r++) {
+            Map<String, String> antecedent = new LinkedHashMap<>();
+            for (int c = 1 + random.nextInt(3); antecedent.size() < c; ) {
+                antecedent.put(INPUTS[random.nextInt(INPUTS.length)], SETS[random.nextInt(SETS.length)]);
+            }
+            String consequent = sugeno
+                    ? random.nextInt(50) + " + " + (random.nextInt(5) / 10.0) + "*B"
+                    : SETS[random.nextInt(3)];
+            Rule rule = new Rule(r, antecedent, Map.of("Out", consequent));
+            rule.weight = random.nextBoolean() ? 1.0 : 0.5 + random.nextDouble() / 2;
+            base.createRule(rule);
+        }
+        return base;
+    }
+
+    /**
+     * Walk one input at a time, sometimes to a whole number (set corners and
+     * peaks) and sometimes to the value it already has.
+     */
+    private static void assertMatchesFullEvaluation(CompiledModel model, Random random) {
+        IncrementalContext context = model.newIncrementalContext();
+        double[] workspace = model.newWorkspace();
+        double[] inputs = new double[INPUTS.length];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = 100 * random.nextDouble();
+        }
+        for (int step = 0; step < 300; step++) {
+            int in = random.nextInt(inputs.length);
+            int move = random.nextInt(4);
+            if (move == 0) {
+                inputs[in] = random.nextInt(101);
+            } else if (move < 3) {
+                inputs[in] = -5 + 110 * random.nextDouble();
+            }
+            assertEquals(model.evaluate(inputs.clone(), workspace), context.evaluate(inputs), 0.0,
+                    "step " + step);
+        }
+    }
+
+    @Test
+    void matchesFullEvaluationOneInputAtATime() {
+        Map<String, LinguisticVariable> variables = variables();
+        Random random = new Random(17);
+        for (CentroidMode mode : CentroidMode.values()) {
+            for (boolean product : new boolean[]{false, true}) {
+                MamdaniEngine engine = new MamdaniEngine(variables, product ? new ProductTNorm() : new MinTnorm(),
+                        new MaxSNorm(), mode);
+                for (int trial = 0; trial < 10; trial++) {
+                    RuleBase base = randomRules(random, false);
+                    assertMatchesFullEvaluation(engine.compile(base, INPUTS), random);
+                    assertMatchesFullEvaluation(engine.generate(base, INPUTS), random);
+                }
+            }
+        }
+        SugenoEngine sugeno = new SugenoEngine(variables);
+        for (int trial = 0; trial < 10; trial++) {
+            assertMatchesFullEvaluation(sugeno.compile(randomRules(random, true), INPUTS), random);
+        }
+    }
+
+    @Test
+    void rebindsAfterARuleEdit() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        IncrementalContext context = trigger.newPatientContext();
+        double[] vitals = {105, 100.2, 120, 88};
+        assertEquals(trigger.evaluate(vitals), trigger.evaluate(context, vitals), 0.0);
+        CompiledModel bound = context.getModel();
+
+        trigger.getRuleBase().removeRule(5);
+        // Same vitals: nothing changed for the context, but its model did
+        double edited = trigger.evaluate(context, vitals);
+        assertNotSame(bound, context.getModel());
+        assertEquals(trigger.evaluate(vitals), edited, 0.0);
+
+        Random random = new Random(3);
+        for (int step = 0; step < 200; step++) {
+            int in = random.nextInt(vitals.length);
+            vitals[in] += random.nextGaussian() * (in == 1 ? 0.5 : 4);
+            assertEquals(trigger.evaluate(vitals), trigger.evaluate(context, vitals), 0.0, "step " + step);
+        }
+        assertSame(context.getModel(), trigger.newPatientContext().getModel());
+    }
+}
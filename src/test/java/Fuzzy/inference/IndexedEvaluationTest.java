@@ -0,0 +1,161 @@
+package Fuzzy.inference;
+
+import Fuzzy.Defuzzy.CentroidDefuzzifier;
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.operator.SNorm;
+import Fuzzy.operator.SumSNorm;
+import Fuzzy.operator.TNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The indexed engines visit only rules that can fire; skipped rules have zero
+ * firing strength, so results must equal, bit for bit, those of visiting
+ * every rule as the original engines did.
+ */
+class IndexedEvaluationTest {
+
+    private static final String[] INPUTS = {"A", "B", "C"};
+    private static final String[] SETS = {"Low", "Mid", "High"};
+
+    private static Map<String, LinguisticVariable> variables() {
+        Map<String, LinguisticVariable> variables = new HashMap<>();
+        for (String name : INPUTS) {
+            LinguisticVariable var = new LinguisticVariable(name, 0, 100);
+            var.addFuzzySet(new FuzzySet("Low", new TrapezoidMF(-1, 0, 20, 40)));
+            var.addFuzzySet(new FuzzySet("Mid", new TriangleMF(30, 50, 70)));
+            var.addFuzzySet(new FuzzySet("High", new TrapezoidMF(60, 80, 100, 101)));
+            variables.put(name, var);
+        }
+        LinguisticVariable out = new LinguisticVariable("Out", 0, 100);
+        out.addFuzzySet(new FuzzySet("Low", new TriangleMF(0, 15, 40)));
+        out.addFuzzySet(new FuzzySet("Mid", new TrapezoidMF(25, 45, 55, 75)));
+        out.addFuzzySet(new FuzzySet("High", new TriangleMF(60, 85, 100)));
+        variables.put("Out", out);
+        return variables;
+    }
+
+    private static RuleBase randomRules(Random random, int count, boolean sugeno) {
+        RuleBase base = new RuleBase();
+        for (int r = 0; r < count; r++) {
+            Map<String, String> antecedent = new LinkedHashMap<>();
+            for (String input : INPUTS) {
+                if (antecedent.isEmpty() || random.nextBoolean()) {
+                    antecedent.put(input, SETS[random.nextInt(SETS.length)]);
+                }
+            }
+            String consequent = sugeno
+                    ? random.nextInt(50) + " + " + (random.nextInt(5) / 10.0) + "*A"
+                    : SETS[random.nextInt(SETS.length)];
+            Rule rule = new Rule(r + 1, antecedent, Map.of("Out", consequent));
+            rule.weight = 0.5 + random.nextDouble() / 2;
+            rule.enabled = random.nextInt(10) != 0;
+            base.createRule(rule);
+        }
+        return base;
+    }
+
+    private static Map<String, Double> randomInputs(Random random) {
+        Map<String, Double> inputs = new HashMap<>();
+        for (String input : INPUTS) {
+            inputs.put(input, 100 * random.nextDouble());
+        }
+        return inputs;
+    }
+
+    /**
+     * Every enabled rule clipped over the sampled grid, as before the index.
+     */
+    private static double referenceMamdani(Map<String, LinguisticVariable> variables, RuleBase base,
+                                           Map<String, Double> inputs, TNorm and, SNorm or) {
+        LinguisticVariable out = variables.get("Out");
+        int samples = MamdaniEngine.DEFAULT_SAMPLES;
+        double step = (out.getMax() - out.getMin()) / samples;
+        double[] aggregated = new double[samples + 1];
+        for (Rule rule : base.listRules()) {
+            if (!rule.enabled) continue;
+            double strength = 1.0;
+            for (Map.Entry<String, String> e : rule.antecedent.entrySet()) {
+                strength = and.and(strength,
+                        variables.get(e.getKey()).getFuzzySet(e.getValue()).getMembership(inputs.get(e.getKey())));
+            }
+            strength *= rule.weight;
+            FuzzySet set = out.getFuzzySet(rule.consequent.get("Out"));
+            for (int i = 0; i <= samples; i++) {
+                double mu = set.getMembership(out.getMin() + i * step);
+                aggregated[i] = or.or(aggregated[i], Math.min(mu, strength));
+            }
+        }
+        return new CentroidDefuzzifier().defuzzify(aggregated, samples + 1, out.getMin(), out.getMax());
+    }
+
+    private static double referenceSugeno(Map<String, LinguisticVariable> variables, RuleBase base,
+                                          Map<String, Double> inputs) {
+        double weightedSum = 0;
+        double sumWeights = 0;
+        for (Rule rule : base.listRules()) {
+            if (!rule.enabled) continue;
+            double strength = 1.0;
+            for (Map.Entry<String, String> e : rule.antecedent.entrySet()) {
+                strength = Math.min(strength,
+                        variables.get(e.getKey()).getFuzzySet(e.getValue()).getMembership(inputs.get(e.getKey())));
+            }
+            strength *= rule.weight;
+            weightedSum += strength * rule.evaluateConsequent(inputs);
+            sumWeights += strength;
+        }
+        return sumWeights == 0 ? 0 : weightedSum / sumWeights;
+    }
+
+    @Test
+    void mamdaniMatchesEveryRuleEvaluationBitForBit() {
+        Map<String, LinguisticVariable> variables = variables();
+        Random random = new Random(12);
+        TNorm[] ands = {new MinTnorm(), new ProductTNorm()};
+        SNorm[] ors = {new MaxSNorm(), new SumSNorm()};
+        for (TNorm and : ands) {
+            for (SNorm or : ors) {
+                MamdaniEngine engine = new MamdaniEngine(variables, and, or, CentroidMode.SAMPLED);
+                for (int trial = 0; trial < 20; trial++) {
+                    RuleBase base = randomRules(random, 1 + random.nextInt(60), false);
+                    CompiledModel compiled = engine.compile(base, INPUTS);
+                    for (int i = 0; i < 20; i++) {
+                        Map<String, Double> inputs = randomInputs(random);
+                        double expected = referenceMamdani(variables, base, inputs, and, or);
+                        assertEquals(expected, engine.evaluate(inputs, base), 0.0);
+                        assertEquals(expected, compiled.evaluate(
+                                new double[]{inputs.get("A"), inputs.get("B"), inputs.get("C")}), 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void sugenoMatchesEveryRuleEvaluationBitForBit() {
+        Map<String, LinguisticVariable> variables = variables();
+        SugenoEngine engine = new SugenoEngine(variables);
+        Random random = new Random(21);
+        for (int trial = 0; trial < 20; trial++) {
+            RuleBase base = randomRules(random, 1 + random.nextInt(60), true);
+            for (int i = 0; i < 20; i++) {
+                Map<String, Double> inputs = randomInputs(random);
+                assertEquals(referenceSugeno(variables, base, inputs), engine.evaluate(inputs, base), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.memberShip.GaussianMF;
+import Fuzzy.memberShip.IMembershipFunction;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.operator.SNorm;
+import Fuzzy.operator.SumSNorm;
+import Fuzzy.operator.TNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Generated kernels must give, bit for bit, the results of the interpreted
+ * compiled model and of the engine, one row at a time and in batches.
+ */
+class KernelGeneratorTest {
+
+    private static final String[] SETS = {"Low", "Mid", "High", "Cut", "Bell"};
+    // Lukasiewicz: neither min nor product, so the kernel calls it through TNorm
+    private static final TNorm BOUNDED = (a, b) -> Math.max(0, a + b - 1);
+
+    /**
+     * Not one of the membership functions the generator writes out.
+     */
+    private static final class BellMF implements IMembershipFunction {
+        @Override
+        public double membership(double x) {
+            double d = (x - 50) / 30;
+            return 1 / (1 + d * d);
+        }
+
+        @Override
+        public double[] getParameters() {
+            return new double[]{50, 30};
+        }
+
+        @Override
+        public String getType() {
+            return "Bell";
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+    }
+
+    private static String[] inputs(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "In" + i;
+        }
+        return names;
+    }
+
+    private static Map<String, LinguisticVariable> variables(String[] inputs) {
+        Map<String, LinguisticVariable> variables = new HashMap<>();
+        for (String name : inputs) {
+            LinguisticVariable var = new LinguisticVariable(name, 0, 100);
+            var.addFuzzySet(new FuzzySet("Low", new TrapezoidMF(-1, 0, 20, 45)));
+            var.addFuzzySet(new FuzzySet("Mid", new TriangleMF(25, 50, 75)));
+            var.addFuzzySet(new FuzzySet("High", new GaussianMF(85, 12)));
+            var.addFuzzySet(new FuzzySet("Cut", new GaussianMF(40, 15, 0.05)));
+            var.addFuzzySet(new FuzzySet("Bell", new BellMF()));
+            variables.put(name, var);
+        }
+        LinguisticVariable out = new LinguisticVariable("Out", 0, 100);
+        out.addFuzzySet(new FuzzySet("Low", new TriangleMF(0, 15, 40)));
+        out.addFuzzySet(new FuzzySet("Mid", new TrapezoidMF(25, 45, 55, 75)));
+        out.addFuzzySet(new FuzzySet("High", new TriangleMF(60, 85, 100)));
+        variables.put("Out", out);
+        return variables;
+    }
+
+    private static Rule randomRule(Random random, String[] inputs, int id, int clauses) {
+        Map<String, String> antecedent = new LinkedHashMap<>();
+        while (antecedent.size() < clauses) {
+            antecedent.put(inputs[random.nextInt(inputs.length)], SETS[random.nextInt(SETS.length)]);
+        }
+        Rule rule = new Rule(id, antecedent, Map.of("Out", SETS[random.nextInt(3)]));
+        rule.weight = random.nextBoolean() ? 1.0 : 0.5 + random.nextDouble() / 2;
+        return rule;
+    }
+
+    private static double[][] randomColumns(Random random, int inputs, int rows) {
+        double[][] columns = new double[inputs][rows];
+        for (double[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                // Whole numbers hit set corners and peaks exactly
+                column[row] = random.nextInt(4) == 0 ? random.nextInt(101) : -5 + 110 * random.nextDouble();
+            }
+        }
+        return columns;
+    }
+
+    private static void assertSameResults(MamdaniEngine engine, RuleBase base, String[] inputs,
+                                          double[][] columns, int rows) {
+        CompiledModel generated = engine.generate(base, inputs);
+        CompiledModel interpreted = engine.compile(base, inputs);
+        assertTrue(generated.isGenerated());
+        assertFalse(interpreted.isGenerated());
+
+        double[] batch = new double[rows];
+        generated.evaluateBatch(columns, batch, rows);
+        double[] interpretedBatch = new double[rows];
+        interpreted.evaluateBatch(columns, interpretedBatch, rows);
+
+        double[] row = new double[inputs.length];
+        Map<String, Double> named = new HashMap<>();
+        for (int r = 0; r < rows; r++) {
+            for (int i = 0; i < inputs.length; i++) {
+                row[i] = columns[i][r];
+                named.put(inputs[i], columns[i][r]);
+            }
+            double expected = interpreted.evaluate(row);
+            assertEquals(expected, engine.evaluate(named, base), 0.0);
+            assertEquals(expected, generated.evaluate(row), 0.0);
+            assertEquals(expected, interpretedBatch[r], 0.0);
+            assertEquals(expected, batch[r], 0.0);
+        }
+    }
+
+    @Test
+    void generatedMatchesInterpretedForEveryModeAndOperator() {
+        String[] inputs = inputs(3);
+        Map<String, LinguisticVariable> variables = variables(inputs);
+        Random random = new Random(7);
+        for (CentroidMode mode : CentroidMode.values()) {
+            for (TNorm and : new TNorm[]{new MinTnorm(), new ProductTNorm(), BOUNDED}) {
+                for (SNorm or : new SNorm[]{new MaxSNorm(), new SumSNorm()}) {
+                    MamdaniEngine engine = new MamdaniEngine(variables, and, or, mode);
+                    for (int trial = 0; trial < 5; trial++) {
+                        RuleBase base = new RuleBase();
+                        for (int r = 1, count = 1 + random.nextInt(40); r <= count; r++) {
+                            base.createRule(randomRule(random, inputs, r, 1 + random.nextInt(3)));
+                        }
+                        // Rows spanning more than one batch block, the last one partial
+                        int rows = CompiledModel.BATCH_BLOCK + 1 + random.nextInt(50);
+                        assertSameResults(engine, base, inputs, randomColumns(random, 3, rows), rows);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rulesLongerThanAChunkGetAMethodToThemselves() {
+        // Rules of 250 clauses through the TNorm interface take over 4000 bytes
+        // each, mixed with short rules that fill the methods around them
+        String[] inputs = inputs(250);
+        Map<String, LinguisticVariable> variables = variables(inputs);
+        Random random = new Random(11);
+        RuleBase base = new RuleBase();
+        for (int r = 1; r <= 600; r++) {
+            boolean large = r % 150 == 0;
+            base.createRule(randomRule(random, inputs, r, large ? inputs.length : 1 + random.nextInt(3)));
+        }
+        for (TNorm and : new TNorm[]{new MinTnorm(), BOUNDED}) {
+            MamdaniEngine engine = new MamdaniEngine(variables, and, new MaxSNorm());
+            assertSameResults(engine, base, inputs, randomColumns(random, inputs.length, 40), 40);
+        }
+    }
+
+    @Test
+    void ruleTooLongForOneMethodIsRejected() {
+        String[] inputs = inputs(500);
+        Map<String, LinguisticVariable> variables = variables(inputs);
+        RuleBase base = new RuleBase();
+        base.createRule(randomRule(new Random(3), inputs, 1, inputs.length));
+        MamdaniEngine engine = new MamdaniEngine(variables, BOUNDED, new MaxSNorm());
+
+        ValidationException e = assertThrows(ValidationException.class, () -> engine.generate(base, inputs));
+        assertTrue(e.getMessage().startsWith("Model too large to generate code for: Rule 1 takes "),
+                e.getMessage());
+        // The interpreted model is unaffected
+        engine.compile(base, inputs);
+    }
+}
@@ -0,0 +1,153 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.SNorm;
+import Fuzzy.operator.SumSNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MamdaniEngineTest {
+
+    private static Map<String, LinguisticVariable> variables() {
+        Map<String, LinguisticVariable> variables = new HashMap<>();
+        LinguisticVariable x = new LinguisticVariable("X", 0, 100);
+        x.addFuzzySet(new FuzzySet("Low", new TrapezoidMF(-1, 0, 20, 50)));
+        x.addFuzzySet(new FuzzySet("High", new TrapezoidMF(50, 80, 100, 101)));
+        variables.put("X", x);
+        LinguisticVariable out = new LinguisticVariable("Out", 0, 100);
+        out.addFuzzySet(new FuzzySet("Low", new TriangleMF(0, 20, 50)));
+        out.addFuzzySet(new FuzzySet("High", new TriangleMF(50, 80, 100)));
+        variables.put("Out", out);
+        return variables;
+    }
+
+    private static RuleBase ruleTo(String outputSet) {
+        RuleBase base = new RuleBase();
+        base.createRule(new Rule(1, Map.of("X", "Low"), Map.of("Out", "Low")));
+        base.createRule(new Rule(2, Map.of("X", "Low"), Map.of("Out", outputSet)));
+        return base;
+    }
+
+    @Test
+    void unknownConsequentSetIsAValidationError() {
+        Map<String, Double> inputs = Map.of("X", 10.0);
+        for (CentroidMode mode : CentroidMode.values()) {
+            for (SNorm or : new SNorm[]{new MaxSNorm(), new SumSNorm()}) {
+                MamdaniEngine engine = new MamdaniEngine(variables(), new MinTnorm(), or, mode);
+                ValidationException e = assertThrows(ValidationException.class,
+                        () -> engine.evaluate(inputs, ruleTo("Medium")));
+                assertEquals("Variable Out missing fuzzy set Medium", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void compiledModelRejectsUnknownConsequentSetTheSameWay() {
+        MamdaniEngine engine = new MamdaniEngine(variables(), new MinTnorm(), new MaxSNorm());
+        ValidationException e = assertThrows(ValidationException.class,
+                () -> engine.compile(ruleTo("Medium"), "X"));
+        assertEquals("Variable Out missing fuzzy set Medium", e.getMessage());
+    }
+
+    /**
+     * X and Y in, Out and Risk out; rules alternate between the outputs.
+     */
+    private static Map<String, LinguisticVariable> twoOutputVariables() {
+        Map<String, LinguisticVariable> variables = variables();
+        LinguisticVariable y = new LinguisticVariable("Y", 0, 10);
+        y.addFuzzySet(new FuzzySet("Low", new TriangleMF(-5, 0, 6)));
+        y.addFuzzySet(new FuzzySet("High", new TrapezoidMF(4, 7, 10, 11)));
+        variables.put("Y", y);
+        LinguisticVariable risk = new LinguisticVariable("Risk", -1, 1);
+        risk.addFuzzySet(new FuzzySet("Low", new TriangleMF(-1, -0.6, 0)));
+        risk.addFuzzySet(new FuzzySet("Mid", new TrapezoidMF(-0.5, -0.1, 0.1, 0.5)));
+        risk.addFuzzySet(new FuzzySet("High", new TriangleMF(0, 0.7, 1)));
+        variables.put("Risk", risk);
+        return variables;
+    }
+
+    private static Rule[] twoOutputRules() {
+        Rule weighted = new Rule(4, Map.of("X", "High", "Y", "High"), Map.of("Risk", "High"));
+        weighted.weight = 0.6;
+        return new Rule[]{
+                new Rule(1, Map.of("X", "Low"), Map.of("Risk", "Low")),
+                new Rule(2, Map.of("X", "Low", "Y", "High"), Map.of("Out", "High")),
+                new Rule(3, Map.of("Y", "Low"), Map.of("Out", "Low")),
+                weighted,
+                new Rule(5, Map.of("X", "High"), Map.of("Out", "High")),
+                new Rule(6, Map.of("Y", "High"), Map.of("Risk", "Mid")),
+        };
+    }
+
+    private static RuleBase rulesFor(String output) {
+        RuleBase base = new RuleBase();
+        for (Rule rule : twoOutputRules()) {
+            if (output == null || rule.consequent.containsKey(output)) {
+                base.createRule(rule);
+            }
+        }
+        return base;
+    }
+
+    @Test
+    void eachOutputMatchesASingleOutputModelOfItsRules() {
+        Map<String, LinguisticVariable> variables = twoOutputVariables();
+        RuleBase all = rulesFor(null);
+        Random random = new Random(8);
+        for (CentroidMode mode : CentroidMode.values()) {
+            for (SNorm or : new SNorm[]{new MaxSNorm(), new SumSNorm()}) {
+                MamdaniEngine engine = new MamdaniEngine(variables, new MinTnorm(), or, mode);
+                CompiledModel out = engine.compile(rulesFor("Out"), "X", "Y");
+                CompiledModel risk = engine.compile(rulesFor("Risk"), "X", "Y");
+
+                CompiledMamdaniModel named = engine.compileOutputs(all, new String[]{"Out", "Risk"}, "X", "Y");
+                // In order of first use: rule 1 concludes on Risk
+                CompiledMamdaniModel unnamed = engine.compileOutputs(all, new String[0], "X", "Y");
+                assertArrayEquals(new String[]{"Out", "Risk"}, named.getOutputNames());
+                assertArrayEquals(new String[]{"Risk", "Out"}, unnamed.getOutputNames());
+
+                double[] results = new double[2];
+                for (int i = 0; i < 500; i++) {
+                    // Whole numbers land on set corners and peaks
+                    double[] inputs = i % 5 == 0
+                            ? new double[]{random.nextInt(101), random.nextInt(11)}
+                            : new double[]{100 * random.nextDouble(), 10 * random.nextDouble()};
+                    double expectedOut = out.evaluate(inputs.clone());
+                    double expectedRisk = risk.evaluate(inputs.clone());
+                    named.evaluateOutputs(inputs.clone(), results);
+                    assertEquals(expectedOut, results[0], 0.0);
+                    assertEquals(expectedRisk, results[1], 0.0);
+                    unnamed.evaluateOutputs(inputs.clone(), results);
+                    assertEquals(expectedRisk, results[0], 0.0);
+                    assertEquals(expectedOut, results[1], 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    void evaluateOutputsChecksTheResultLength() {
+        MamdaniEngine engine = new MamdaniEngine(twoOutputVariables(), new MinTnorm(), new MaxSNorm());
+        CompiledMamdaniModel model = engine.compileOutputs(rulesFor(null), new String[0], "X", "Y");
+        for (int length : new int[]{1, 3}) {
+            ValidationException e = assertThrows(ValidationException.class,
+                    () -> model.evaluateOutputs(new double[]{10, 5}, new double[length]));
+            assertEquals("Expected 2 results, got " + length, e.getMessage());
+        }
+    }
+}
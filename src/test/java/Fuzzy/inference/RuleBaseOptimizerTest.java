@@ -0,0 +1,191 @@
+package Fuzzy.inference;
+
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.memberShip.TrapezoidMF;
+import Fuzzy.memberShip.TriangleMF;
+import Fuzzy.operator.MaxSNorm;
+import Fuzzy.operator.MinTnorm;
+import Fuzzy.operator.ProductTNorm;
+import Fuzzy.operator.SumSNorm;
+import Fuzzy.variables.FuzzySet;
+import Fuzzy.variables.LinguisticVariable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleBaseOptimizerTest {
+
+    private static Map<String, LinguisticVariable> variables() {
+        Map<String, LinguisticVariable> variables = new HashMap<>();
+        LinguisticVariable x = new LinguisticVariable("X", 0, 100);
+        x.addFuzzySet(new FuzzySet("Low", new TrapezoidMF(-1, 0, 20, 50)));
+        x.addFuzzySet(new FuzzySet("Mid", new TriangleMF(25, 50, 75)));
+        x.addFuzzySet(new FuzzySet("High", new TrapezoidMF(50, 80, 100, 101)));
+        // Support entirely above the range
+        x.addFuzzySet(new FuzzySet("Away", new TriangleMF(120, 130, 140)));
+        variables.put("X", x);
+        LinguisticVariable y = new LinguisticVariable("Y", 0, 10);
+        y.addFuzzySet(new FuzzySet("Low", new TriangleMF(-5, 0, 6)));
+        y.addFuzzySet(new FuzzySet("High", new TrapezoidMF(4, 7, 10, 11)));
+        variables.put("Y", y);
+        for (String name : new String[]{"Out", "Risk"}) {
+            LinguisticVariable out = new LinguisticVariable(name, 0, 100);
+            out.addFuzzySet(new FuzzySet("Low", new TriangleMF(0, 20, 50)));
+            out.addFuzzySet(new FuzzySet("Mid", new TrapezoidMF(25, 45, 55, 75)));
+            out.addFuzzySet(new FuzzySet("High", new TriangleMF(50, 80, 100)));
+            variables.put(name, out);
+        }
+        return variables;
+    }
+
+    private static Rule rule(int id, String x, String y, String output, String set, double weight) {
+        Map<String, String> antecedent = new LinkedHashMap<>();
+        if (x != null) antecedent.put("X", x);
+        if (y != null) antecedent.put("Y", y);
+        Rule rule = new Rule(id, antecedent, Map.of(output, set));
+        rule.weight = weight;
+        return rule;
+    }
+
+    /**
+     * 2 is subsumed by 1, 4 and 11 duplicate 3 and 8, 5 has zero weight and 6
+     * needs X above its range. 10 has a subset rule (9) of lower weight and stays.
+     */
+    private static RuleBase rules() {
+        RuleBase base = new RuleBase();
+        base.createRule(rule(1, "Low", null, "Out", "Low", 1));
+        base.createRule(rule(2, "Low", "High", "Out", "Low", 1));
+        base.createRule(rule(3, "Mid", "Low", "Out", "Mid", 1));
+        base.createRule(rule(4, "Mid", "Low", "Out", "Mid", 0.7));
+        base.createRule(rule(5, "High", null, "Out", "High", 0));
+        base.createRule(rule(6, "Away", null, "Out", "Mid", 1));
+        base.createRule(rule(7, "High", "High", "Out", "High", 0.8));
+        base.createRule(rule(8, null, "High", "Out", "Mid", 0.5));
+        base.createRule(rule(9, "Mid", null, "Out", "High", 0.6));
+        base.createRule(rule(10, "Mid", "High", "Out", "High", 0.9));
+        base.createRule(rule(11, null, "High", "Out", "Mid", 0.5));
+        return base;
+    }
+
+    private static List<Integer> ids(RuleBase base) {
+        List<Integer> ids = new ArrayList<>();
+        for (Rule rule : base.listRules()) {
+            ids.add(rule.id);
+        }
+        return ids;
+    }
+
+    private static double[][] randomInputs() {
+        Random random = new Random(12);
+        double[][] inputs = new double[2_000][];
+        for (int i = 0; i < inputs.length; i++) {
+            // Whole numbers land on set corners and peaks
+            inputs[i] = i % 4 == 0
+                    ? new double[]{random.nextInt(101), random.nextInt(11)}
+                    : new double[]{100 * random.nextDouble(), 10 * random.nextDouble()};
+        }
+        return inputs;
+    }
+
+    private static void assertSameOutputs(double[][] inputs, double[] before, CompiledModel after) {
+        for (int i = 0; i < inputs.length; i++) {
+            assertEquals(before[i], after.evaluate(inputs[i].clone()), 0.0, "row " + i);
+        }
+    }
+
+    private static double[] outputs(double[][] inputs, CompiledModel model) {
+        double[] outputs = new double[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            outputs[i] = model.evaluate(inputs[i].clone());
+        }
+        return outputs;
+    }
+
+    @Test
+    void removesExactlyTheRedundantRulesWithoutChangingOutputs() {
+        double[][] inputs = randomInputs();
+        for (CentroidMode mode : CentroidMode.values()) {
+            MamdaniEngine engine = new MamdaniEngine(variables(), new MinTnorm(), new MaxSNorm(), mode);
+            RuleBase base = rules();
+            double[] before = outputs(inputs, engine.compile(base, "X", "Y"));
+
+            OptimizationReport report = new RuleBaseOptimizer(engine, true).optimize(base);
+            assertTrue(report.isRedundancyChecked());
+            assertEquals(List.of(2, 4, 5, 6, 11), report.getRemovedRuleIds());
+            assertEquals(List.of(OptimizationReport.Reason.SUBSUMED, OptimizationReport.Reason.DUPLICATE,
+                    OptimizationReport.Reason.NEVER_FIRES, OptimizationReport.Reason.NEVER_FIRES,
+                    OptimizationReport.Reason.DUPLICATE),
+                    List.of(report.getReason(0), report.getReason(1), report.getReason(2), report.getReason(3),
+                            report.getReason(4)));
+            assertEquals(1, report.getCoveringRuleId(0));
+            assertEquals(3, report.getCoveringRuleId(1));
+            assertEquals(8, report.getCoveringRuleId(4));
+            assertEquals(11, report.getRulesBefore());
+            assertEquals(6, report.getRulesAfter());
+            assertEquals(List.of(1, 3, 7, 8, 9, 10), ids(base));
+
+            assertSameOutputs(inputs, before, engine.compile(base, "X", "Y"));
+            // Nothing left to remove
+            assertEquals(0, new RuleBaseOptimizer(engine, true).optimize(base).getRemovedCount());
+        }
+    }
+
+    @Test
+    void keepsSupportOutsideTheRangeUnlessInputsStayInIt() {
+        MamdaniEngine engine = new MamdaniEngine(variables(), new MinTnorm(), new MaxSNorm());
+        OptimizationReport report = new RuleBaseOptimizer(engine).analyze(rules());
+        assertEquals(List.of(2, 4, 5, 11), report.getRemovedRuleIds());
+    }
+
+    @Test
+    void keepsTheFirstRuleWhenItFixesTheOutputVariable() {
+        MamdaniEngine engine = new MamdaniEngine(variables(), new MinTnorm(), new MaxSNorm());
+        RuleBase base = new RuleBase();
+        base.createRule(rule(1, "Low", null, "Risk", "Low", 0));
+        base.createRule(rule(2, "High", null, "Out", "High", 1));
+        // Removing rule 1 would make Out the output
+        OptimizationReport report = new RuleBaseOptimizer(engine).optimize(base);
+        assertEquals(0, report.getRemovedCount());
+        assertEquals(List.of(1, 2), ids(base));
+
+        // Another live Risk rule comes first once rule 1 is gone
+        base.removeRule(2);
+        base.createRule(rule(3, "Mid", null, "Risk", "High", 1));
+        base.createRule(rule(2, "High", null, "Out", "High", 1));
+        double[][] inputs = randomInputs();
+        double[] before = outputs(inputs, engine.compile(base, "X", "Y"));
+        report = new RuleBaseOptimizer(engine).optimize(base);
+        assertEquals(List.of(1), report.getRemovedRuleIds());
+        assertSameOutputs(inputs, before, engine.compile(base, "X", "Y"));
+    }
+
+    @Test
+    void onlyNeverFiringRulesGoUnderOtherOperators() {
+        double[][] inputs = randomInputs();
+        MamdaniEngine[] engines = {
+                new MamdaniEngine(variables(), new ProductTNorm(), new MaxSNorm()),
+                new MamdaniEngine(variables(), new MinTnorm(), new SumSNorm()),
+        };
+        for (MamdaniEngine engine : engines) {
+            RuleBase base = rules();
+            double[] before = outputs(inputs, engine.compile(base, "X", "Y"));
+            OptimizationReport report = new RuleBaseOptimizer(engine, true).optimize(base);
+            assertFalse(report.isRedundancyChecked());
+            assertEquals(List.of(5, 6), report.getRemovedRuleIds());
+            for (int i = 0; i < report.getRemovedCount(); i++) {
+                assertEquals(OptimizationReport.Reason.NEVER_FIRES, report.getReason(i));
+            }
+            assertSameOutputs(inputs, before, engine.compile(base, "X", "Y"));
+        }
+    }
+}
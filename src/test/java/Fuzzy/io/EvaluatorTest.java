@@ -0,0 +1,109 @@
+package Fuzzy.io;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.InferenceEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EvaluatorTest {
+
+    private static final double[] LOW = {40, 95, 60, 70};
+    private static final double[] HIGH = {120, 105, 180, 100};
+
+    private static Map<String, Double> randomInputs(Random random) {
+        Map<String, Double> inputs = new HashMap<>();
+        for (int i = 0; i < MedicalTrigger.INPUTS.length; i++) {
+            inputs.put(MedicalTrigger.INPUTS[i], LOW[i] + random.nextDouble() * (HIGH[i] - LOW[i]));
+        }
+        return inputs;
+    }
+
+    @Test
+    void tracedAndUntracedMatchTheEngine() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        InferenceEngine engine = trigger.getInferenceEngine();
+        Evaluator evaluator = new Evaluator(engine, trigger.getRuleBase());
+        Random random = new Random(14);
+
+        for (int i = 0; i < 2_000; i++) {
+            Map<String, Double> inputs = randomInputs(random);
+            double expected = engine.evaluate(inputs, trigger.getRuleBase());
+            switch (i % 3) {
+                case 0 -> evaluator.disableTracing();
+                case 1 -> evaluator.enableTracing(1);
+                default -> evaluator.enableTracing(4);
+            }
+            assertEquals(expected, evaluator.evaluate(inputs), 0.0);
+        }
+    }
+
+    @Test
+    void recompilesWhenTheRuleBaseChanges() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        Evaluator evaluator = new Evaluator(trigger.getInferenceEngine(), trigger.getRuleBase());
+        Map<String, Double> inputs = Map.of("HeartRate", 115.0, "Temperature", 99.0,
+                "BloodPressure", 120.0, "OxygenLevel", 97.0);
+
+        evaluator.evaluate(inputs);
+        int id = trigger.getRuleBase().listRules().get(0).id;
+        trigger.getRuleBase().removeRule(id);
+
+        double after = evaluator.evaluate(inputs);
+        assertEquals(trigger.getInferenceEngine().evaluate(inputs, trigger.getRuleBase()), after, 0.0);
+        evaluator.enableTracing(1);
+        assertEquals(after, evaluator.evaluate(inputs), 0.0);
+    }
+
+    @Test
+    void rejectsEmptyAndMissingInputs() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        Evaluator evaluator = new Evaluator(trigger.getInferenceEngine(), trigger.getRuleBase());
+
+        ValidationException empty = assertThrows(ValidationException.class, () -> evaluator.evaluate(Map.of()));
+        assertEquals("Crisp input map is empty", empty.getMessage());
+
+        Map<String, Double> inputs = new HashMap<>(Map.of("HeartRate", 80.0, "Temperature", 98.6,
+                "BloodPressure", 120.0, "OxygenLevel", 97.0));
+        inputs.remove("OxygenLevel");
+        evaluator.enableTracing(1);
+        ValidationException missing = assertThrows(ValidationException.class, () -> evaluator.evaluate(inputs));
+        assertEquals("Missing crisp input for variable OxygenLevel", missing.getMessage());
+        evaluator.disableTracing();
+        missing = assertThrows(ValidationException.class, () -> evaluator.evaluate(inputs));
+        assertEquals("Missing crisp input for variable OxygenLevel", missing.getMessage());
+    }
+
+    @Test
+    void viewsOnlyReflectTracedCalls() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        Evaluator evaluator = new Evaluator(trigger.getInferenceEngine(), trigger.getRuleBase());
+        Random random = new Random(7);
+
+        evaluator.evaluate(randomInputs(random));
+        assertNull(evaluator.getFuzzifiedInputs());
+        assertNull(evaluator.getRuleOutputs());
+        assertEquals(0, evaluator.getTrace().getSequence());
+
+        evaluator.enableTracing(3);
+        for (int i = 0; i < 9; i++) {
+            evaluator.evaluate(randomInputs(random));
+        }
+        assertEquals(3, evaluator.getTrace().getSequence());
+
+        Map<String, Double> inputs = randomInputs(random);
+        evaluator.enableTracing(1);
+        double output = evaluator.evaluate(inputs);
+        assertEquals(output, evaluator.getTrace().getOutput(), 0.0);
+        assertNotNull(evaluator.getFuzzifiedInputs().get("HeartRate"));
+        assertEquals(trigger.getRuleBase().getRules().size(), evaluator.getRuleOutputs().size());
+    }
+}
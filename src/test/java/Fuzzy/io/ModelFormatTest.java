@@ -0,0 +1,135 @@
+package Fuzzy.io;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Rules.Rule;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.CentroidMode;
+import Fuzzy.inference.CompiledModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelFormatTest {
+
+    @TempDir
+    Path dir;
+
+    private static FuzzyModel sugenoModel() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        RuleBase base = new RuleBase();
+        base.createRule(new Rule(1, Map.of("HeartRate", "High"),
+                Map.of("AlertLevel", "0.5*HeartRate + Temperature - 98")));
+        Rule disabled = new Rule(2, Map.of("HeartRate", "Low", "OxygenLevel", "Low"),
+                Map.of("AlertLevel", "100 - OxygenLevel"));
+        disabled.enabled = false;
+        base.createRule(disabled);
+        Rule weighted = new Rule(3, Map.of("Temperature", "High"), Map.of("AlertLevel", "2 * (Temperature - 95)"));
+        weighted.weight = 0.3;
+        base.createRule(weighted);
+        base.createRule(new Rule(4, Map.of("BloodPressure", "Normal"), Map.of("AlertLevel", "10")));
+        return new FuzzyModel("Sugeno", FuzzyModel.Type.SUGENO, FuzzyModel.AND_MIN, FuzzyModel.OR_MAX,
+                CentroidMode.SAMPLED, trigger.getVariables(), base);
+    }
+
+    private static void assertSameRules(RuleTable expected, RuleTable actual) {
+        assertEquals(expected.getRuleCount(), actual.getRuleCount());
+        for (int r = 0; r < expected.getRuleCount(); r++) {
+            assertEquals(expected.getId(r), actual.getId(r));
+            assertEquals(expected.isEnabled(r), actual.isEnabled(r));
+            assertEquals(expected.getWeight(r), actual.getWeight(r), 0.0);
+            assertEquals(expected.getName(expected.getConsequentValue(r)),
+                    actual.getName(actual.getConsequentValue(r)));
+            assertEquals(expected.getClauseEnd(r) - expected.getClauseStart(r),
+                    actual.getClauseEnd(r) - actual.getClauseStart(r));
+        }
+    }
+
+    private static void assertSameOutputs(FuzzyModel expected, FuzzyModel actual) {
+        CompiledModel a = expected.compile(MedicalTrigger.INPUTS);
+        CompiledModel b = actual.compile(MedicalTrigger.INPUTS);
+        Random random = new Random(17);
+        for (int i = 0; i < 1_000; i++) {
+            double[] vitals = {40 + 80 * random.nextDouble(), 95 + 10 * random.nextDouble(),
+                    60 + 120 * random.nextDouble(), 70 + 30 * random.nextDouble()};
+            assertEquals(a.evaluate(vitals), b.evaluate(vitals), 0.0);
+        }
+    }
+
+    @Test
+    void roundTripsInBothFormats() throws IOException {
+        for (FuzzyModel model : new FuzzyModel[]{new MedicalTrigger().toModel(), sugenoModel()}) {
+            Path binary = dir.resolve("model.fzm");
+            Path text = dir.resolve("model.fis");
+            BinaryModelFormat.write(model, binary);
+            TextModelFormat.write(model, text);
+
+            for (FuzzyModel loaded : new FuzzyModel[]{FuzzyModel.load(binary), FuzzyModel.load(text)}) {
+                assertEquals(model.getType(), loaded.getType());
+                assertEquals(model.getVariables().keySet(), loaded.getVariables().keySet());
+                assertSameRules(model.getRules(), loaded.getRules());
+                assertSameOutputs(model, loaded);
+            }
+        }
+    }
+
+    @Test
+    void paddedExpressionIsRejectedNotTrimmed() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        RuleBase base = new RuleBase();
+        base.createRule(new Rule(1, Map.of("HeartRate", "High"), Map.of("AlertLevel", " HeartRate - 40 ")));
+        FuzzyModel model = new FuzzyModel("Padded", FuzzyModel.Type.SUGENO, FuzzyModel.AND_MIN, FuzzyModel.OR_MAX,
+                CentroidMode.SAMPLED, trigger.getVariables(), base);
+
+        assertThrows(ValidationException.class, () -> TextModelFormat.write(model, dir.resolve("padded.fis")));
+    }
+
+    /**
+     * Overwrite the int at a byte offset of a written binary model.
+     */
+    private Path corrupt(FuzzyModel model, int offset, int value) throws IOException {
+        Path file = dir.resolve("corrupt-" + offset + "-" + value + ".fzm");
+        BinaryModelFormat.write(model, file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+        Files.write(file, bytes);
+        return file;
+    }
+
+    @Test
+    void corruptCountsAreIOExceptions() throws IOException {
+        FuzzyModel model = new MedicalTrigger().toModel();
+        Path file = dir.resolve("model.fzm");
+        BinaryModelFormat.write(model, file);
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        int nameCount = in.getInt(12);
+        int headerSize = 12 * Integer.BYTES;
+
+        // Last string offset, then the first variable's set count and first parameter count
+        int namesEnd = headerSize + 4 * nameCount;
+        int stringBytes = in.getInt(namesEnd);
+        int variables = headerSize + (int) ((4L * (nameCount + 1) + stringBytes + 7) & ~7L);
+        int[][] patches = {
+                {12, -1}, {12, Integer.MAX_VALUE}, {16, -5}, {20, -1}, {24, -2}, {28, -3},
+                {namesEnd, -8}, {namesEnd, Integer.MAX_VALUE},
+                {variables + 4, -1}, {variables + 4, 1 << 30},
+                {variables + 24 + 8, -2}, {variables + 24 + 8, 1 << 29},
+        };
+        for (int[] patch : patches) {
+            Path bad = corrupt(model, patch[0], patch[1]);
+            assertThrows(IOException.class, () -> BinaryModelFormat.read(bad),
+                    "offset " + patch[0] + " = " + patch[1]);
+        }
+    }
+}
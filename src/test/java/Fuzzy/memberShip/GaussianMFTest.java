@@ -0,0 +1,30 @@
+package Fuzzy.memberShip;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GaussianMFTest {
+
+    @Test
+    void rejectsNonPositiveSigma() {
+        for (double sigma : new double[]{0, -1, Double.NaN}) {
+            assertThrows(IllegalArgumentException.class, () -> new GaussianMF(50, sigma));
+            assertThrows(IllegalArgumentException.class, () -> new GaussianMF(50, sigma, 0.01));
+        }
+    }
+
+    @Test
+    void rejectsNonFiniteMean() {
+        assertThrows(IllegalArgumentException.class, () -> new GaussianMF(Double.NaN, 1));
+        assertThrows(IllegalArgumentException.class, () -> new GaussianMF(Double.POSITIVE_INFINITY, 1));
+    }
+
+    @Test
+    void validFunctionPeaksAtMean() {
+        GaussianMF mf = new GaussianMF(50, 10);
+        assertEquals(1.0, mf.membership(50), 0.0);
+        assertEquals(Math.exp(-0.5), mf.membership(60), 1e-15);
+    }
+}
@@ -0,0 +1,186 @@
+package Fuzzy.metrics;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.Rules.RuleBase;
+import Fuzzy.Rules.RuleTable;
+import Fuzzy.Validation.ValidationException;
+import Fuzzy.inference.CachingInferenceEngine;
+import Fuzzy.inference.CompiledModel;
+import Fuzzy.inference.IncrementalContext;
+import Fuzzy.inference.InferenceEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineMetricsTest {
+
+    private static final double[][] VITALS = {
+            {110, 102, 130, 95},
+            {75, 98.5, 120, 98},
+            {85, 98, 110, 88},
+            {50, 97.5, 100, 85},
+    };
+
+    private static long sum(Map<Integer, Long> counts) {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static Map<String, Double> inputs(double[] vitals) {
+        Map<String, Double> inputs = new HashMap<>();
+        for (int i = 0; i < vitals.length; i++) {
+            inputs.put(MedicalTrigger.INPUTS[i], vitals[i]);
+        }
+        return inputs;
+    }
+
+    @Test
+    void triggerEvaluationsMoveEveryCounter() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        double[] expected = new double[VITALS.length];
+        for (int i = 0; i < VITALS.length; i++) {
+            expected[i] = trigger.evaluate(VITALS[i]);
+        }
+
+        EngineMetrics metrics = trigger.enableMetrics("EngineMetricsTest-direct");
+        try {
+            for (int i = 0; i < VITALS.length; i++) {
+                assertEquals(expected[i], trigger.evaluate(VITALS[i]), 0.0);
+            }
+            assertEquals(VITALS.length, metrics.getEvaluationCount());
+            assertEquals(VITALS.length, metrics.getFuzzificationCount());
+            assertTrue(sum(metrics.getRuleFireCounts()) >= VITALS.length - metrics.getNoRuleFiredCount());
+            assertEquals(VITALS.length, sum(metrics.getRuleDominanceCounts()) + metrics.getNoRuleFiredCount());
+
+            IncrementalContext context = trigger.newPatientContext();
+            trigger.evaluate(context, VITALS[0]);
+            assertEquals(VITALS.length + 1, metrics.getEvaluationCount());
+
+            assertThrows(ValidationException.class, () -> trigger.evaluate(context, new double[]{80}));
+            assertEquals(1, metrics.getEvaluationErrorCount());
+        } finally {
+            trigger.disableMetrics();
+        }
+    }
+
+    @Test
+    void cachedEvaluationsRecordMissesOnly() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CachingInferenceEngine cache = trigger.enableResultCache(1024);
+        EngineMetrics metrics = trigger.enableMetrics("EngineMetricsTest-cached");
+        try {
+            for (int round = 0; round < 3; round++) {
+                for (double[] vitals : VITALS) {
+                    trigger.evaluate(vitals);
+                }
+            }
+            assertEquals(3 * VITALS.length, metrics.getEvaluationCount());
+            assertEquals(VITALS.length, cache.getMisses());
+            assertEquals(VITALS.length, metrics.getFuzzificationCount());
+            assertEquals(VITALS.length, sum(metrics.getRuleDominanceCounts()) + metrics.getNoRuleFiredCount());
+        } finally {
+            trigger.disableMetrics();
+        }
+
+        // Misses after disabling are no longer recorded
+        trigger.evaluate(new double[]{60, 99, 90, 93});
+        assertEquals(VITALS.length, metrics.getFuzzificationCount());
+    }
+
+    @Test
+    void instrumentedEngineFiresOncePerEvaluation() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        RuleBase base = trigger.getRuleBase();
+        InferenceEngine engine = trigger.getInferenceEngine();
+        AtomicInteger evaluations = new AtomicInteger();
+        AtomicInteger compiles = new AtomicInteger();
+        InferenceEngine counting = new InferenceEngine() {
+            @Override
+            public double evaluate(Map<String, Double> inputs, RuleBase rules) {
+                evaluations.incrementAndGet();
+                return engine.evaluate(inputs, rules);
+            }
+
+            @Override
+            public CompiledModel compile(RuleBase rules, String... inputOrder) {
+                compiles.incrementAndGet();
+                return engine.compile(rules, inputOrder);
+            }
+
+            @Override
+            public CompiledModel compile(RuleTable rules, String... inputOrder) {
+                return engine.compile(rules, inputOrder);
+            }
+        };
+        EngineMetrics metrics = new EngineMetrics();
+        InstrumentedInferenceEngine instrumented = new InstrumentedInferenceEngine(counting, metrics);
+
+        // The same calls recorded directly on a model, for the counters one pass leaves
+        CompiledModel model = engine.compile(base, MedicalTrigger.INPUTS);
+        EngineMetrics direct = new EngineMetrics();
+        for (int round = 0; round < 2; round++) {
+            for (double[] vitals : VITALS) {
+                double expected = direct.evaluate(model, vitals.clone());
+                assertEquals(expected, instrumented.evaluate(inputs(vitals), base), 0.0);
+            }
+        }
+        assertEquals(0, evaluations.get());
+        assertEquals(1, compiles.get());
+        assertEquals(2L * VITALS.length, metrics.getEvaluationCount());
+        assertEquals(2L * VITALS.length, metrics.getFuzzificationCount());
+        assertEquals(direct.getRuleFireCounts(), metrics.getRuleFireCounts());
+        assertEquals(direct.getRuleDominanceCounts(), metrics.getRuleDominanceCounts());
+        assertEquals(direct.getNoRuleFiredCount(), metrics.getNoRuleFiredCount());
+
+        base.removeRule(5);
+        assertEquals(engine.compile(base, MedicalTrigger.INPUTS).evaluate(VITALS[0].clone()),
+                instrumented.evaluate(inputs(VITALS[0]), base), 0.0);
+        assertEquals(2, compiles.get());
+        // Fired with the edited rules, which no longer have rule 5
+        assertEquals(direct.getRuleFireCounts().get(5), metrics.getRuleFireCounts().get(5));
+
+        // Without every rule variable the delegate answers, and reports the failure
+        Map<String, Double> missing = inputs(VITALS[0]);
+        missing.remove("OxygenLevel");
+        assertThrows(ValidationException.class, () -> instrumented.evaluate(missing, base));
+        assertEquals(1, evaluations.get());
+        assertEquals(1, metrics.getEvaluationErrorCount());
+        assertEquals(2L * VITALS.length + 1, metrics.getFuzzificationCount());
+    }
+
+    @Test
+    void instrumentedCacheRecordsMissesOnly() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        Map<String, Double> resolutions = new HashMap<>();
+        for (int i = 0; i < MedicalTrigger.INPUTS.length; i++) {
+            resolutions.put(MedicalTrigger.INPUTS[i], MedicalTrigger.RESOLUTIONS[i]);
+        }
+        CachingInferenceEngine cache = new CachingInferenceEngine(trigger.getInferenceEngine(), resolutions, 1024);
+        EngineMetrics metrics = new EngineMetrics();
+        InstrumentedInferenceEngine engine = new InstrumentedInferenceEngine(cache, metrics);
+
+        for (int round = 0; round < 3; round++) {
+            for (double[] vitals : VITALS) {
+                // VITALS are on the cache's grid, so cached results are exact
+                assertEquals(trigger.evaluate(vitals), engine.evaluate(inputs(vitals), trigger.getRuleBase()), 0.0);
+            }
+        }
+        // The decorator ran
+        assertEquals(VITALS.length, cache.getMisses());
+        assertEquals(2L * VITALS.length, cache.getHits());
+
+        assertEquals(3L * VITALS.length, metrics.getEvaluationCount());
+        assertEquals(VITALS.length, metrics.getFuzzificationCount());
+        assertEquals(VITALS.length, sum(metrics.getRuleDominanceCounts()) + metrics.getNoRuleFiredCount());
+
+        Map<String, Double> missing = inputs(VITALS[0]);
+        missing.remove("OxygenLevel");
+        assertThrows(ValidationException.class, () -> engine.evaluate(missing, trigger.getRuleBase()));
+        assertEquals(1, metrics.getEvaluationErrorCount());
+    }
+}
@@ -0,0 +1,259 @@
+package Fuzzy.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VitalsCsvImporterTest {
+
+    private static final String[] COLUMNS = {"HeartRate", "Temperature", "BloodPressure", "OxygenLevel"};
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    @TempDir
+    Path dir;
+
+    private static double parseDouble(String s) {
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        return VitalsCsvImporter.parseDouble(b, 0, b.length);
+    }
+
+    private static long parseLong(String s) {
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        return VitalsCsvImporter.parseLong(b, 0, b.length);
+    }
+
+    private static void assertParsesLikeDouble(String s) {
+        double expected;
+        try {
+            expected = Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            assertThrows(NumberFormatException.class, () -> parseDouble(s), s);
+            return;
+        }
+        // Bits, so -0.0 and 0.0 differ
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(parseDouble(s)), s);
+    }
+
+    /**
+     * A channel that hands out a few bytes per read, so lines end anywhere in a read.
+     */
+    private static ReadableByteChannel trickle(byte[] data, long seed) {
+        Random random = new Random(seed);
+        return new ReadableByteChannel() {
+            int position;
+
+            @Override
+            public int read(ByteBuffer dst) {
+                if (position == data.length) return -1;
+                int n = Math.min(Math.min(dst.remaining(), data.length - position), 1 + random.nextInt(70_000));
+                dst.put(data, position, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static final class Row {
+        final long patientId;
+        final long timestamp;
+        final double[] values;
+
+        Row(long patientId, long timestamp, double[] values) {
+            this.patientId = patientId;
+            this.timestamp = timestamp;
+            this.values = values;
+        }
+    }
+
+    private static void assertStored(List<Row> expected, VitalsStore store) {
+        assertEquals(expected.size(), store.getRowCount());
+        for (int i = 0; i < expected.size(); i++) {
+            VitalsStore.Segment segment = store.getSegment(i / store.getSegmentRows());
+            int row = i % store.getSegmentRows();
+            Row r = expected.get(i);
+            assertEquals(r.patientId, segment.patientId(row), "row " + i);
+            assertEquals(r.timestamp, segment.timestamp(row), "row " + i);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                assertEquals(Double.doubleToLongBits(r.values[c]), Double.doubleToLongBits(segment.value(c, row)),
+                        "row " + i + ", column " + c);
+            }
+        }
+    }
+
+    @Test
+    void parsesDoublesExactlyLikeDoubleParseDouble() {
+        String[] edges = {
+                "0", "-0", "+0", "0.0", "-0.0", "00012.5000", ".5", "5.", "-.5", "1e0", "1E5", "1e+5", "1e-5",
+                // Fast path limits: 18 and 19 significant digits, 2^53 and beyond, exponents of 22 and 23
+                "123456789012345678", "1234567890123456789", "12345678901234567890123", "0.000000000000000000123",
+                "9007199254740992", "9007199254740993", "90071992547409921", "1.2345678901234567891",
+                "1e22", "1e23", "1e-22", "1e-23", "123456789e22", "4.35e-22", "9.999999999999999e22",
+                "1e400", "-1e400", "1e-400", "4.9e-324", "2.2250738585072014E-308", "1.7976931348623157e308",
+                "NaN", "-NaN", "Infinity", "-Infinity", "0x1p3", "1d", "2f",
+                "98.6", "0.1", "0.3", "100", "72.00000000000001",
+                "", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "--1", "1-", "1 2", "abc", "1e5x",
+        };
+        for (String s : edges) {
+            assertParsesLikeDouble(s);
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder s = new StringBuilder();
+            int sign = random.nextInt(4);
+            if (sign == 0) s.append('-');
+            if (sign == 1) s.append('+');
+            int digits = 1 + random.nextInt(22);
+            int point = random.nextInt(digits + 2) - 1;
+            for (int d = 0; d < digits; d++) {
+                if (d == point) s.append('.');
+                s.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(3) == 0) {
+                s.append(random.nextBoolean() ? 'e' : 'E');
+                int e = random.nextInt(61) - 30;
+                if (e >= 0 && random.nextBoolean()) s.append('+');
+                s.append(e);
+            }
+            assertParsesLikeDouble(s.toString());
+        }
+        for (int i = 0; i < 100_000; i++) {
+            double x = random.nextInt(4) == 0 ? Double.longBitsToDouble(random.nextLong()) : 200 * random.nextDouble();
+            assertParsesLikeDouble(Double.toString(x));
+            assertParsesLikeDouble(String.format(Locale.ROOT, "%.4f", x));
+        }
+    }
+
+    @Test
+    void parsesLongsLikeLongParseLong() {
+        for (String s : new String[]{"0", "-0", "+7", "42", "-42", "123456789012345678", "999999999999999999",
+                "9223372036854775807", "-9223372036854775808", "9223372036854775808", "12345678901234567890",
+                "", "-", "+", "1.0", "1e3", "12a", " 1"}) {
+            long expected;
+            try {
+                expected = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                assertThrows(NumberFormatException.class, () -> parseLong(s), s);
+                continue;
+            }
+            assertEquals(expected, parseLong(s), s);
+        }
+    }
+
+    @Test
+    void importsLinesAcrossBufferBoundariesAndLineEndings() throws IOException {
+        Random random = new Random(2);
+        List<Row> expected = new ArrayList<>();
+        StringBuilder csv = new StringBuilder("# recorded by the ward monitors\r\n");
+        // Over 3 MB, so lines straddle the ends of the 1 MB buffer
+        while (csv.length() < 3 * BUFFER_SIZE + 12_345) {
+            if (random.nextInt(50) == 0) {
+                csv.append(random.nextBoolean() ? "\n" : "  \r\n");
+                continue;
+            }
+            long patientId = random.nextInt(1000);
+            long timestamp = 1_700_000_000_000L + random.nextInt(1_000_000_000);
+            double[] values = new double[COLUMNS.length];
+            csv.append(patientId).append(',').append(timestamp);
+            for (int c = 0; c < values.length; c++) {
+                String value;
+                switch (random.nextInt(4)) {
+                    case 0 -> value = Integer.toString(40 + random.nextInt(100));
+                    case 1 -> value = String.format(Locale.ROOT, "%.1f", 95 + 10 * random.nextDouble());
+                    case 2 -> value = Double.toString(100 * random.nextDouble());
+                    default -> value = " " + (random.nextInt(9000) / 100.0) + "e0 ";
+                }
+                values[c] = Double.parseDouble(value.trim());
+                csv.append(',').append(value);
+            }
+            csv.append(random.nextBoolean() ? "\r\n" : "\n");
+            expected.add(new Row(patientId, timestamp, values));
+        }
+        // No newline after the last line
+        csv.append("7,1,80,98.6,120,97\r");
+        expected.add(new Row(7, 1, new double[]{80, 98.6, 120, 97}));
+        byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        Path file = dir.resolve("vitals.csv");
+        Files.write(file, data);
+        Path fromFile = dir.resolve("file.store");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(fromFile, 10_000, COLUMNS)) {
+            assertEquals(expected.size(), new VitalsCsvImporter(writer).importFile(file));
+        }
+        assertStored(expected, VitalsStore.open(fromFile));
+
+        Path fromChannel = dir.resolve("channel.store");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(fromChannel, 10_000, COLUMNS)) {
+            assertEquals(expected.size(), new VitalsCsvImporter(writer).importFrom(trickle(data, 3)));
+        }
+        assertStored(expected, VitalsStore.open(fromChannel));
+    }
+
+    @Test
+    void matchesHeaderColumnsByName() throws IOException {
+        Path file = dir.resolve("vitals.csv");
+        Files.writeString(file, "patientId,timestamp, OxygenLevel,HeartRate,BloodPressure ,Temperature\r\n"
+                + "1,1000,97,72,118,98.6\r\n"
+                + "2,2000,88,110,150,101.2\r\n");
+        Path store = dir.resolve("vitals.store");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(store, COLUMNS)) {
+            assertEquals(2, new VitalsCsvImporter(writer).importFile(file));
+        }
+        assertStored(List.of(new Row(1, 1000, new double[]{72, 98.6, 118, 97}),
+                new Row(2, 2000, new double[]{110, 101.2, 150, 88})), VitalsStore.open(store));
+
+        Files.writeString(file, "patientId,timestamp,OxygenLevel,HeartRate,SpO2,Temperature\n1,1,2,3,4,5\n");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(store, COLUMNS)) {
+            IOException e = assertThrows(IOException.class, () -> new VitalsCsvImporter(writer).importFile(file));
+            assertEquals("Unknown column in header: SpO2", e.getMessage());
+        }
+    }
+
+    @Test
+    void reportsBadLines() throws IOException {
+        Path file = dir.resolve("vitals.csv");
+        Path store = dir.resolve("vitals.store");
+
+        Files.writeString(file, "1,1000,72,98.6,118,97\n2,2000,72,98.6,118\n");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(store, COLUMNS)) {
+            IOException e = assertThrows(IOException.class, () -> new VitalsCsvImporter(writer).importFile(file));
+            assertEquals("Line 2: expected 6 fields, got 5", e.getMessage());
+        }
+
+        Files.writeString(file, "1,1000,72,98.6,118,97\r\n2,2000,72,9x8,118,97\r\n");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(store, COLUMNS)) {
+            IOException e = assertThrows(IOException.class, () -> new VitalsCsvImporter(writer).importFile(file));
+            assertTrue(e.getMessage().startsWith("Line 2, field 4: "), e.getMessage());
+        }
+
+        // One line longer than the buffer
+        Files.writeString(file, "1,1000,72,98.6,118,97\n" + "1".repeat(BUFFER_SIZE + 1) + "\n");
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(store, COLUMNS)) {
+            IOException e = assertThrows(IOException.class, () -> new VitalsCsvImporter(writer).importFile(file));
+            assertEquals("Line 2 is longer than " + BUFFER_SIZE + " bytes", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package Fuzzy.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VitalsStoreTest {
+
+    private static final String[] COLUMNS = {"HeartRate", "Temperature", "BloodPressure", "OxygenLevel"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsRowsWithAPartialLastSegment() throws IOException {
+        Path file = dir.resolve("vitals.store");
+        int rows = 1_037;
+        long[] patientIds = new long[rows];
+        long[] timestamps = new long[rows];
+        double[][] values = new double[rows][];
+        Random random = new Random(6);
+        try (VitalsStoreWriter writer = new VitalsStoreWriter(file, 100, COLUMNS)) {
+            for (int row = 0; row < rows; row++) {
+                patientIds[row] = random.nextLong();
+                timestamps[row] = random.nextLong();
+                values[row] = new double[]{random.nextGaussian(), -0.0, Double.NaN, 100 * random.nextDouble()};
+                writer.append(patientIds[row], timestamps[row], values[row]);
+            }
+            assertEquals(rows, writer.getRowCount());
+        }
+
+        VitalsStore store = VitalsStore.open(file);
+        assertArrayEquals(COLUMNS, store.getColumnNames());
+        assertEquals(2, store.columnIndex("BloodPressure"));
+        assertEquals(-1, store.columnIndex("SpO2"));
+        assertEquals(rows, store.getRowCount());
+        assertEquals(100, store.getSegmentRows());
+        assertEquals(11, store.getSegmentCount());
+        for (int s = 0; s < store.getSegmentCount(); s++) {
+            VitalsStore.Segment segment = store.getSegment(s);
+            assertEquals(s, segment.getIndex());
+            assertEquals(100L * s, segment.getFirstRow());
+            assertEquals(s < 10 ? 100 : 37, segment.getRowCount());
+            for (int c = 0; c < COLUMNS.length; c++) {
+                DoubleBuffer column = segment.getColumn(c);
+                assertEquals(segment.getRowCount(), column.remaining());
+            }
+            for (int row = 0; row < segment.getRowCount(); row++) {
+                int i = 100 * s + row;
+                assertEquals(patientIds[i], segment.patientId(row));
+                assertEquals(timestamps[i], segment.timestamp(row));
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    assertEquals(Double.doubleToRawLongBits(values[i][c]),
+                            Double.doubleToRawLongBits(segment.value(c, row)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void opensAnEmptyStore() throws IOException {
+        Path file = dir.resolve("empty.store");
+        new VitalsStoreWriter(file, 100, COLUMNS).close();
+        VitalsStore store = VitalsStore.open(file);
+        assertEquals(0, store.getRowCount());
+        assertEquals(0, store.getSegmentCount());
+        assertArrayEquals(COLUMNS, store.getColumnNames());
+    }
+}
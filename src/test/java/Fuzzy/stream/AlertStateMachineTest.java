@@ -0,0 +1,155 @@
+package Fuzzy.stream;
+
+import CaseStudy.MedicalTrigger;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlertStateMachineTest {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+
+    /**
+     * Transitions as "from->to@timestamp".
+     */
+    private static List<String> record(AlertStateMachine machine) {
+        List<String> transitions = new ArrayList<>();
+        machine.setListener((patientId, timestamp, from, to, value) ->
+                transitions.add(from + "->" + to + "@" + timestamp));
+        return transitions;
+    }
+
+    @Test
+    void oscillationAroundTheLimitsDoesNotFlap() {
+        // No delays: only the hysteresis holds the level
+        AlertStateMachine machine = new AlertStateMachine(MedicalTrigger.ALERT_LIMITS, 3, Duration.ZERO,
+                Duration.ZERO);
+        List<String> transitions = record(machine);
+        Random random = new Random(8);
+        long t = 0;
+        assertEquals(0, machine.update(1, t, 20));
+        for (int i = 0; i < 1000; i++) {
+            // Within 3 points of 33, entered on the first sample at 33 or above
+            machine.update(1, t += SECOND, 30 + 6 * random.nextDouble());
+        }
+        assertEquals(1, machine.getLevel(1));
+        assertEquals(1, transitions.size());
+        for (int i = 0; i < 1000; i++) {
+            machine.update(1, t += SECOND, 63 + 6 * random.nextDouble());
+        }
+        assertEquals(2, machine.getLevel(1));
+        assertEquals(2, transitions.size());
+
+        // Below the margin, one step per sample
+        assertEquals(1, machine.update(1, t += SECOND, 29.9));
+        assertEquals(0, machine.update(1, t += SECOND, 29.9));
+        assertEquals(4, transitions.size());
+
+        // Without hysteresis the same noise flaps
+        AlertStateMachine flapping = new AlertStateMachine(MedicalTrigger.ALERT_LIMITS, 0, Duration.ZERO,
+                Duration.ZERO);
+        List<String> flaps = record(flapping);
+        for (int i = 0; i < 1000; i++) {
+            flapping.update(1, i * SECOND, 30 + 6 * random.nextDouble());
+        }
+        assertTrue(flaps.size() > 100, "Transitions " + flaps.size());
+    }
+
+    @Test
+    void escalatesOnceTheOutputStaysHighForTheDelay() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        AlertStateMachine machine = trigger.newAlertStateMachine();
+        List<String> transitions = record(machine);
+
+        // Moderate after 30 s at 33 or above
+        machine.update(1, 0, 10);
+        for (long t = SECOND; t <= 30 * SECOND; t += SECOND) {
+            assertEquals(0, machine.update(1, t, 40), "t " + t);
+        }
+        assertEquals(1, machine.update(1, 31 * SECOND, 40));
+        assertEquals(31 * SECOND, machine.getLevelSince(1));
+
+        // A sample back inside the margin restarts the delay
+        machine.update(2, 0, 40);
+        machine.update(2, 20 * SECOND, 31);
+        for (long t = 25 * SECOND; t < 55 * SECOND; t += SECOND) {
+            assertEquals(0, machine.update(2, t, 40), "t " + t);
+        }
+        assertEquals(1, machine.update(2, 55 * SECOND, 40));
+        assertEquals(List.of("0->1@31000", "0->1@55000"), transitions);
+
+        // With no immediate level, the delay ends at the level of the latest output
+        AlertStateMachine delayed = new AlertStateMachine(MedicalTrigger.ALERT_LIMITS, 3, Duration.ofSeconds(30),
+                Duration.ofMinutes(5));
+        delayed.update(1, 0, 40);
+        assertEquals(0, delayed.update(1, 29 * SECOND, 70));
+        assertEquals(2, delayed.update(1, 30 * SECOND, 70));
+    }
+
+    @Test
+    void entersTheImmediateLevelAtOnce() {
+        AlertStateMachine machine = new MedicalTrigger().newAlertStateMachine();
+        List<String> transitions = record(machine);
+        assertEquals(2, machine.update(1, 0, 70));
+        assertEquals(0, machine.update(2, 0, 10));
+        assertEquals(2, machine.update(2, SECOND, 66));
+        machine.update(3, 0, 40);
+        assertEquals(1, machine.update(3, 30 * SECOND, 40));
+        assertEquals(2, machine.update(3, 31 * SECOND, 90));
+        assertEquals(List.of("0->2@0", "0->2@1000", "0->1@30000", "1->2@31000"), transitions);
+    }
+
+    @Test
+    void deescalatesOneStepAtATimeAfterTheDelayAndDwell() {
+        AlertStateMachine machine = new MedicalTrigger().newAlertStateMachine();
+        List<String> transitions = record(machine);
+        assertEquals(2, machine.update(1, 0, 70));
+
+        // Low from minute 1: 5 minutes waited by minute 6, but High lasts 10 minutes
+        for (long t = MINUTE; t < 10 * MINUTE; t += MINUTE) {
+            assertEquals(2, machine.update(1, t, 10), "t " + t);
+        }
+        assertEquals(1, machine.update(1, 10 * MINUTE, 10));
+        // The next step waits 5 more minutes of low outputs and 10 at Moderate
+        for (long t = 11 * MINUTE; t < 20 * MINUTE; t += MINUTE) {
+            assertEquals(1, machine.update(1, t, 10), "t " + t);
+        }
+        assertEquals(0, machine.update(1, 20 * MINUTE, 10));
+        assertEquals(List.of("0->2@0", "2->1@600000", "1->0@1200000"), transitions);
+
+        // A sample inside the margin restarts the delay but not the dwell
+        machine.update(2, 0, 70);
+        machine.update(2, 20 * MINUTE, 10);
+        machine.update(2, 24 * MINUTE, 64);
+        for (long t = 25 * MINUTE; t < 30 * MINUTE; t += MINUTE) {
+            assertEquals(2, machine.update(2, t, 10), "t " + t);
+        }
+        assertEquals(1, machine.update(2, 30 * MINUTE, 10));
+        assertEquals(30 * MINUTE, machine.getLevelSince(2));
+    }
+
+    @Test
+    void rejectsTimeGoingBackwardsPerPatient() {
+        AlertStateMachine machine = new MedicalTrigger().newAlertStateMachine();
+        machine.update(1, 2000, 70);
+        machine.update(1, 2000, 70);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> machine.update(1, 1999, 10));
+        assertEquals("Alert time of patient 1 goes backwards: 1999", e.getMessage());
+        assertEquals(2, machine.getLevel(1));
+
+        // Other patients keep their own clocks, and a removed patient starts over
+        assertEquals(0, machine.update(2, 0, 10));
+        assertTrue(machine.remove(1));
+        assertEquals(-1, machine.getLevel(1));
+        assertEquals(0, machine.update(1, 1000, 40));
+        assertEquals(2, machine.size());
+    }
+}
@@ -0,0 +1,266 @@
+package Fuzzy.stream;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.concurrent.CohortEvaluator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluationProcessorTest {
+
+    @TempDir
+    Path dir;
+
+    private static CohortEvaluator evaluator(MedicalTrigger trigger) {
+        return new CohortEvaluator(trigger.getInferenceEngine(), trigger.getRuleBase(), 1,
+                CohortEvaluator.Mode.FORK_JOIN, MedicalTrigger.INPUTS);
+    }
+
+    private Path recording(int rows) throws IOException {
+        Random random = new Random(5);
+        StringBuilder csv = new StringBuilder("patientId,timestamp,hr,temp,bp,spo2\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(String.format(Locale.ROOT, "%d,%d,%.1f,%.1f,%.1f,%.1f%n", i % 97, i,
+                    40 + 80 * random.nextDouble(), 95 + 10 * random.nextDouble(),
+                    60 + 120 * random.nextDouble(), 70 + 30 * random.nextDouble()));
+        }
+        Path file = dir.resolve("vitals.csv");
+        Files.writeString(file, csv);
+        return file;
+    }
+
+    /**
+     * Slow subscriber on a one-thread pool shared with the source, with partial
+     * batches flushed by the timer while full ones are emitted.
+     */
+    @Test
+    void replaysEverySampleInOrderUnderBackpressure() throws Exception {
+        MedicalTrigger trigger = new MedicalTrigger();
+        int rows = 3000;
+        Path file = recording(rows);
+        List<VitalSample> samples = new ArrayList<>();
+        for (String line : Files.readAllLines(file).subList(1, rows + 1)) {
+            samples.add(VitalSampleFileSource.parse(line));
+        }
+
+        for (int run = 0; run < 5; run++) {
+            ForkJoinPool pool = new ForkJoinPool(1);
+            try (CohortEvaluator cohort = evaluator(trigger);
+                 EvaluationProcessor stage = new EvaluationProcessor(cohort, 50, 1, pool, 4)) {
+                InMemorySink<AlertEvent> sink = new InMemorySink<>(3) {
+                    @Override
+                    public void onNext(AlertEvent item) {
+                        if (item.getTimestamp() % 100 == 0) {
+                            sleep(2);
+                        }
+                        super.onNext(item);
+                    }
+                };
+                stage.subscribe(sink);
+                new VitalSampleFileSource(file, pool).subscribe(stage);
+
+                List<AlertEvent> events = sink.getCompletion().get(60, TimeUnit.SECONDS);
+                assertEquals(rows, events.size());
+                for (int i = 0; i < rows; i++) {
+                    VitalSample s = samples.get(i);
+                    AlertEvent e = events.get(i);
+                    assertEquals(s.getTimestamp(), e.getTimestamp());
+                    assertEquals(s.getPatientId(), e.getPatientId());
+                    assertEquals(trigger.evaluate(s.getValue(0), s.getValue(1), s.getValue(2), s.getValue(3)),
+                            e.getLevel(), 0.0);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * A thread blocked emitting to a full subscriber must not hold the stage:
+     * onNext from another thread returns, and the events follow once the
+     * subscriber catches up.
+     */
+    @Test
+    void blockedEmissionDoesNotHoldOnNext() throws Exception {
+        MedicalTrigger trigger = new MedicalTrigger();
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try (CohortEvaluator cohort = evaluator(trigger);
+             EvaluationProcessor stage = new EvaluationProcessor(cohort, 4, 60_000, delivery, 1)) {
+            GatedSink sink = new GatedSink();
+            stage.subscribe(sink);
+            stage.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            sink.subscribed.await();
+
+            // Fills a batch; its emitter blocks once the one-slot buffer is full
+            producer.submit(() -> {
+                for (int i = 0; i < 4; i++) {
+                    stage.onNext(new VitalSample(1, i, 80, 98.6, 120, 95));
+                }
+            });
+            sleep(200);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for (int i = 4; i < 8; i++) {
+                    stage.onNext(new VitalSample(1, i, 80, 98.6, 120, 95));
+                }
+                stage.onComplete();
+            });
+
+            sink.open();
+            List<AlertEvent> events = sink.getCompletion().get(30, TimeUnit.SECONDS);
+            assertEquals(8, events.size());
+            for (int i = 0; i < 8; i++) {
+                assertEquals(i, events.get(i).getTimestamp());
+            }
+        } finally {
+            producer.shutdownNow();
+            delivery.shutdownNow();
+        }
+    }
+
+    /**
+     * request(0) while onNext is running: onError must follow onNext on the
+     * emitting thread instead of overlapping it on the caller's thread.
+     */
+    @Test
+    void invalidRequestIsSignalledSerially() throws Exception {
+        Path file = recording(100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch inOnNext = new CountDownLatch(1);
+            CountDownLatch terminated = new CountDownLatch(1);
+            List<String> signals = new ArrayList<>();
+            Flow.Subscription[] subscription = new Flow.Subscription[1];
+            Thread[] emitter = new Thread[1];
+            Thread[] errorThread = new Thread[1];
+            boolean[] overlap = new boolean[1];
+            boolean[] busy = new boolean[1];
+
+            new VitalSampleFileSource(file, executor).subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription[0] = s;
+                    s.request(1);
+                }
+
+                @Override
+                public void onNext(VitalSample item) {
+                    synchronized (signals) {
+                        overlap[0] |= busy[0];
+                        busy[0] = true;
+                        signals.add("next");
+                    }
+                    emitter[0] = Thread.currentThread();
+                    inOnNext.countDown();
+                    sleep(300);
+                    synchronized (signals) {
+                        busy[0] = false;
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    synchronized (signals) {
+                        overlap[0] |= busy[0];
+                        signals.add("error");
+                    }
+                    errorThread[0] = Thread.currentThread();
+                    terminated.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    signals.add("complete");
+                    terminated.countDown();
+                }
+            });
+
+            assertTrue(inOnNext.await(10, TimeUnit.SECONDS));
+            subscription[0].request(0);
+            assertTrue(terminated.await(10, TimeUnit.SECONDS));
+            synchronized (signals) {
+                assertEquals(List.of("next", "error"), signals);
+                assertTrue(!overlap[0], "onError overlapped onNext");
+            }
+            assertEquals(emitter[0], errorThread[0]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes one event, then nothing until opened.
+     */
+    private static final class GatedSink implements Flow.Subscriber<AlertEvent> {
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        private final List<AlertEvent> items = new ArrayList<>();
+        private final CompletableFuture<List<AlertEvent>> completion = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(AlertEvent item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(items);
+        }
+
+        void open() {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        CompletableFuture<List<AlertEvent>> getCompletion() {
+            return completion;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package Fuzzy.surface;
+
+import CaseStudy.MedicalTrigger;
+import Fuzzy.inference.CompiledModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControlSurfaceTest {
+
+    // Grid steps of 10, 1, 10 and 5 are exact in binary, so grid points are hit exactly
+    private static final int[] GRID = {9, 11, 13, 7};
+    private static final double[] MIN = {40, 95, 60, 70};
+    private static final double[] MAX = {120, 105, 180, 100};
+
+    // Header offsets: magic, version, dims, header size, two errors, fingerprint, then the first input
+    private static final int DIMS = 8;
+    private static final int FIRST_INPUT = 4 * 4 + 8 + 8 + 4 + 64;
+
+    @TempDir
+    Path dir;
+
+    private static CompiledModel model(MedicalTrigger trigger) {
+        return trigger.getInferenceEngine().compile(trigger.getRuleBase(), MedicalTrigger.INPUTS);
+    }
+
+    private static ControlSurface surface(MedicalTrigger trigger) {
+        return new SurfaceCompiler(model(trigger), trigger.getVariables()).compile(GRID);
+    }
+
+    private static double[] randomVitals(Random random) {
+        double[] vitals = new double[MIN.length];
+        for (int i = 0; i < vitals.length; i++) {
+            vitals[i] = MIN[i] + random.nextDouble() * (MAX[i] - MIN[i]);
+        }
+        return vitals;
+    }
+
+    private static void patch(Path file, int offset, ByteBuffer bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(bytes.flip(), offset);
+        }
+    }
+
+    private static ByteBuffer bytes(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    void gridPointsAreExactAndOutsideIsClamped() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CompiledModel model = model(trigger);
+        ControlSurface surface = surface(trigger);
+        assertEquals(9 * 11 * 13 * 7, surface.size());
+
+        int index = 0;
+        double[] point = new double[4];
+        for (int a = 0; a < GRID[0]; a++) {
+            for (int b = 0; b < GRID[1]; b++) {
+                for (int c = 0; c < GRID[2]; c++) {
+                    for (int d = 0; d < GRID[3]; d++) {
+                        point[0] = 40 + 10 * a;
+                        point[1] = 95 + b;
+                        point[2] = 60 + 10 * c;
+                        point[3] = 70 + 5 * d;
+                        double expected = model.evaluate(point.clone());
+                        assertEquals(expected, surface.valueAt(index++), 0.0);
+                        assertEquals(expected, surface.evaluate(point), 0.0);
+                    }
+                }
+            }
+        }
+
+        assertEquals(surface.evaluate(new double[]{40, 105, 60, 100}),
+                surface.evaluate(new double[]{0, 200, -5, 150}), 0.0);
+        assertEquals(surface.evaluate(new double[]{120, 95, 180, 70}),
+                surface.evaluate(new double[]{Double.POSITIVE_INFINITY, 90, 1e9, Double.NEGATIVE_INFINITY}), 0.0);
+        assertEquals(surface.evaluate(new double[]{40, 98.3, 115, 70}),
+                surface.evaluate(new double[]{Double.NaN, 98.3, 115, Double.NaN}), 0.0);
+    }
+
+    @Test
+    void staysWithinTheMeasuredError() {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CompiledModel model = model(trigger);
+        ControlSurface surface = surface(trigger);
+        assertTrue(surface.getMeanError() > 0);
+        assertTrue(surface.getMeanError() <= surface.getMaxError());
+
+        // Fresh points, not the ones the error was measured at
+        Random random = new Random(99);
+        double sum = 0;
+        int samples = 10_000;
+        for (int i = 0; i < samples; i++) {
+            double[] vitals = randomVitals(random);
+            double error = Math.abs(surface.evaluate(vitals) - model.evaluate(vitals.clone()));
+            assertTrue(error <= surface.getMaxError(), "Error " + error + " at row " + i);
+            sum += error;
+        }
+        assertEquals(surface.getMeanError(), sum / samples, surface.getMeanError());
+    }
+
+    @Test
+    void mapsWhatWasSavedForTheSameModelOnly() throws IOException {
+        MedicalTrigger trigger = new MedicalTrigger();
+        CompiledModel model = model(trigger);
+        ControlSurface surface = surface(trigger);
+        Path file = dir.resolve("alert.surface");
+        surface.save(file);
+
+        ControlSurface mapped = ControlSurface.map(file, model);
+        assertEquals(model.fingerprint(), mapped.getFingerprint());
+        assertArrayEquals(MedicalTrigger.INPUTS, mapped.getInputNames());
+        assertEquals(surface.getMaxError(), mapped.getMaxError(), 0.0);
+        assertEquals(surface.getMeanError(), mapped.getMeanError(), 0.0);
+        for (int i = 0; i < GRID.length; i++) {
+            assertEquals(GRID[i], mapped.getPoints(i));
+        }
+        for (int i = 0; i < surface.size(); i++) {
+            assertEquals(surface.valueAt(i), mapped.valueAt(i), 0.0);
+        }
+        Random random = new Random(5);
+        for (int i = 0; i < 1_000; i++) {
+            double[] vitals = randomVitals(random);
+            assertEquals(surface.evaluate(vitals), mapped.evaluate(vitals), 0.0);
+        }
+
+        trigger.getRuleBase().removeRule(5);
+        IOException e = assertThrows(IOException.class, () -> ControlSurface.map(file, model(trigger)));
+        assertTrue(e.getMessage().contains("fingerprint"), e.getMessage());
+        // Unchecked mapping still reads it
+        assertEquals(model.fingerprint(), ControlSurface.map(file).getFingerprint());
+    }
+
+    @Test
+    void rejectsCorruptHeaders() throws IOException {
+        ControlSurface surface = surface(new MedicalTrigger());
+        Path file = dir.resolve("alert.surface");
+
+        surface.save(file);
+        patch(file, DIMS, bytes(4).putInt(-1));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+
+        surface.save(file);
+        patch(file, DIMS, bytes(4).putInt(64));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+
+        // min, max, points of the first input
+        surface.save(file);
+        patch(file, FIRST_INPUT + 16, bytes(4).putInt(1));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+
+        surface.save(file);
+        patch(file, FIRST_INPUT + 8, bytes(8).putDouble(40));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+
+        surface.save(file);
+        patch(file, FIRST_INPUT + 20, bytes(4).putInt(Integer.MAX_VALUE));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+
+        surface.save(file);
+        byte[] all = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(all, all.length - 8));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+        Files.write(file, Arrays.copyOf(all, 20));
+        assertThrows(IOException.class, () -> ControlSurface.map(file));
+
+        surface.save(file);
+        ControlSurface.map(file);
+    }
+}
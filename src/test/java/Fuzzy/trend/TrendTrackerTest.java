@@ -0,0 +1,191 @@
+package Fuzzy.trend;
+
+import Fuzzy.variables.LinguisticVariable;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every feature is checked against a computation over the whole window after
+ * each sample.
+ */
+class TrendTrackerTest {
+
+    private static final int CAPACITY = 16;
+    private static final String[] VITALS = {"A", "B"};
+    private static final TrendFeature[] FEATURES = {
+            TrendFeature.delta("DeltaA", "A", Duration.ofSeconds(30)),
+            TrendFeature.slope("SlopeA", "A", Duration.ofSeconds(30)),
+            TrendFeature.slope("SlopeB", "B", Duration.ofSeconds(75)),
+            TrendFeature.min("MinB", "B", Duration.ofSeconds(20)),
+            TrendFeature.max("MaxB", "B", Duration.ofSeconds(45)),
+            TrendFeature.mean("MeanA", "A", Duration.ofSeconds(40)),
+    };
+
+    private static Map<String, LinguisticVariable> variables() {
+        Map<String, LinguisticVariable> variables = new HashMap<>();
+        for (TrendFeature feature : FEATURES) {
+            // Wide enough that nothing is clamped
+            variables.put(feature.getName(), new LinguisticVariable(feature.getName(), -1e6, 1e6));
+        }
+        return variables;
+    }
+
+    /**
+     * All samples of one patient, newest last.
+     */
+    private static final class History {
+        final List<Long> times = new ArrayList<>();
+        final List<double[]> values = new ArrayList<>();
+    }
+
+    private static double expected(TrendFeature feature, History h) {
+        int vital = feature.getInput().equals("A") ? 0 : 1;
+        int newest = h.times.size() - 1;
+        long from = h.times.get(newest) - feature.getWindowMillis();
+        int oldest = Math.max(0, newest - CAPACITY + 1);
+        while (h.times.get(oldest) < from) {
+            oldest++;
+        }
+        int count = newest - oldest + 1;
+        switch (feature.getKind()) {
+            case DELTA:
+                return h.values.get(newest)[vital] - h.values.get(oldest)[vital];
+            case MEAN: {
+                double sum = 0;
+                for (int i = oldest; i <= newest; i++) sum += h.values.get(i)[vital];
+                return sum / count;
+            }
+            case MIN:
+            case MAX: {
+                double extreme = h.values.get(oldest)[vital];
+                for (int i = oldest; i <= newest; i++) {
+                    double v = h.values.get(i)[vital];
+                    extreme = feature.getKind() == TrendFeature.Kind.MIN ? Math.min(extreme, v) : Math.max(extreme, v);
+                }
+                return extreme;
+            }
+            default: {
+                if (h.times.get(oldest).equals(h.times.get(newest))) {
+                    return 0;
+                }
+                // Centred two-pass least squares
+                double mx = 0, my = 0;
+                for (int i = oldest; i <= newest; i++) {
+                    mx += (h.times.get(i) - h.times.get(oldest)) / 1000.0;
+                    my += h.values.get(i)[vital];
+                }
+                mx /= count;
+                my /= count;
+                double sxx = 0, sxy = 0;
+                for (int i = oldest; i <= newest; i++) {
+                    double dx = (h.times.get(i) - h.times.get(oldest)) / 1000.0 - mx;
+                    sxx += dx * dx;
+                    sxy += dx * (h.values.get(i)[vital] - my);
+                }
+                return sxy / sxx;
+            }
+        }
+    }
+
+    private static void assertFeatures(History h, double[] row, String where) {
+        for (int f = 0; f < FEATURES.length; f++) {
+            double expected = expected(FEATURES[f], h);
+            double actual = row[VITALS.length + f];
+            TrendFeature.Kind kind = FEATURES[f].getKind();
+            // Running sums differ from the two-pass result by rounding only
+            double tolerance = kind == TrendFeature.Kind.SLOPE || kind == TrendFeature.Kind.MEAN
+                    ? 1e-9 * (1 + Math.abs(expected)) : 0;
+            assertEquals(expected, actual, tolerance, FEATURES[f].getName() + " " + where);
+        }
+    }
+
+    @Test
+    void featuresMatchTheWholeWindow() {
+        TrendTracker tracker = new TrendTracker(variables(), VITALS, CAPACITY, FEATURES);
+        assertArrayEquals(new String[]{"A", "B", "DeltaA", "SlopeA", "SlopeB", "MinB", "MaxB", "MeanA"},
+                tracker.getInputNames());
+
+        Random random = new Random(21);
+        Map<Long, History> histories = new HashMap<>();
+        Map<Long, Long> clocks = new HashMap<>();
+        double[] row = new double[VITALS.length + FEATURES.length];
+        for (int step = 0; step < 20_000; step++) {
+            long patient = random.nextInt(6);
+            if (random.nextInt(500) == 0) {
+                // Discharged; a later sample of the id starts over, possibly in another patient's old slot
+                assertEquals(histories.remove(patient) != null, tracker.remove(patient));
+                assertFalse(tracker.remove(patient));
+                continue;
+            }
+            // Same time, a few seconds, or long enough to empty every window
+            long clock = clocks.getOrDefault(patient, 1_700_000_000_000L + random.nextInt(1_000_000));
+            int gap = random.nextInt(10);
+            clock += gap < 2 ? 0 : gap < 9 ? random.nextInt(5_000) : 60_000 + random.nextInt(60_000);
+            clocks.put(patient, clock);
+
+            History h = histories.computeIfAbsent(patient, id -> new History());
+            double[] previous = h.values.isEmpty() ? new double[]{95, 80} : h.values.get(h.values.size() - 1);
+            double[] vitals = {previous[0] + random.nextGaussian() * 0.5,
+                    random.nextInt(20) == 0 ? previous[1] : 60 + random.nextInt(40)};
+            h.times.add(clock);
+            h.values.add(vitals);
+
+            tracker.update(patient, clock, vitals.clone(), row);
+            assertArrayEquals(vitals, new double[]{row[0], row[1]});
+            assertFeatures(h, row, "at step " + step + ", patient " + patient);
+        }
+        assertEquals(histories.size(), tracker.getPatientCount());
+    }
+
+    @Test
+    void reusesSlotsOfRemovedPatients() {
+        TrendTracker tracker = new TrendTracker(variables(), VITALS, CAPACITY, FEATURES);
+        double[] row = new double[VITALS.length + FEATURES.length];
+        for (int i = 0; i < 40; i++) {
+            tracker.update(1, i * 1000L, new double[]{90 + i, 100 - i}, row);
+        }
+        assertTrue(tracker.remove(1));
+        assertEquals(0, tracker.getPatientCount());
+
+        // Patient 2 takes the freed slot and sees none of patient 1's samples
+        tracker.update(2, 5_000, new double[]{97, 70}, row);
+        assertArrayEquals(new double[]{97, 70, 0, 0, 0, 70, 70, 97}, row);
+        tracker.update(2, 7_000, new double[]{95, 72}, row);
+        assertArrayEquals(new double[]{95, 72, -2, -1, 1, 70, 72, 96}, row);
+
+        // A returning id starts over, even at an earlier time
+        tracker.update(1, 0, new double[]{50, 50}, row);
+        assertArrayEquals(new double[]{50, 50, 0, 0, 0, 50, 50, 50}, row);
+        assertEquals(2, tracker.getPatientCount());
+    }
+
+    @Test
+    void clampsFeaturesAndRejectsTimeGoingBackwards() {
+        Map<String, LinguisticVariable> variables = variables();
+        variables.put("DeltaA", new LinguisticVariable("DeltaA", -3, 3));
+        TrendTracker tracker = new TrendTracker(variables, VITALS, CAPACITY, FEATURES);
+        double[] row = new double[VITALS.length + FEATURES.length];
+        tracker.update(1, 1000, new double[]{90, 80}, row);
+        tracker.update(1, 2000, new double[]{80, 80}, row);
+        assertEquals(-3, row[2], 0.0);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> tracker.update(1, 1999, new double[]{80, 80}, row));
+        assertEquals("Sample time of patient 1 goes backwards: 1999", e.getMessage());
+        // Equal times are fine
+        tracker.update(1, 2000, new double[]{86, 80}, row);
+        assertEquals(-3, row[2], 0.0);
+    }
+}
@@ -0,0 +1,96 @@
+package Fuzzy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LongIntHashMapTest {
+
+    private static final int MISSING = -7;
+
+    private static int expected(Integer value) {
+        return value == null ? MISSING : value;
+    }
+
+    private static void assertSameEntries(Map<Long, Integer> expected, LongIntHashMap map) {
+        assertEquals(expected.size(), map.size());
+        Map<Long, Integer> entries = new HashMap<>();
+        map.forEach((key, value) -> assertEquals(null, entries.put(key, value), "Key " + key + " twice"));
+        assertEquals(expected, entries);
+    }
+
+    /**
+     * Keys drawn from small pools, so runs of colliding keys are removed from
+     * the middle and the entries after them shifted back; key 0 and the
+     * extreme longs are in every pool.
+     */
+    @Test
+    void matchesAHashMapUnderChurn() {
+        Random random = new Random(12);
+        for (int pool : new int[]{4, 12, 40, 300, 5000}) {
+            long[] keys = new long[pool];
+            for (int i = 0; i < pool; i++) {
+                keys[i] = i < 3 ? new long[]{0, Long.MIN_VALUE, Long.MAX_VALUE}[i]
+                        : random.nextBoolean() ? random.nextInt(2 * pool) - pool : random.nextLong();
+            }
+            LongIntHashMap map = new LongIntHashMap(0, MISSING);
+            Map<Long, Integer> expected = new HashMap<>();
+            for (int step = 0; step < 200_000; step++) {
+                long key = keys[random.nextInt(pool)];
+                int op = random.nextInt(10);
+                // Mostly removals in some stretches, mostly puts in others
+                boolean removing = (step / 5000) % 2 == 1;
+                if (op < (removing ? 6 : 3)) {
+                    assertEquals(expected(expected.remove(key)), map.remove(key), "remove " + key);
+                } else if (op < 8) {
+                    int value = random.nextInt();
+                    assertEquals(expected(expected.put(key, value)), map.put(key, value), "put " + key);
+                } else {
+                    assertEquals(expected(expected.get(key)), map.get(key), "get " + key);
+                    assertEquals(expected.containsKey(key), map.containsKey(key), "contains " + key);
+                }
+                assertEquals(expected.size(), map.size());
+                if (step % 997 == 0) {
+                    for (long k : keys) {
+                        assertEquals(expected(expected.get(k)), map.get(k), "get " + k);
+                    }
+                    assertSameEntries(expected, map);
+                }
+            }
+            assertSameEntries(expected, map);
+            map.clear();
+            expected.clear();
+            assertSameEntries(expected, map);
+            assertEquals(MISSING, map.get(0));
+            assertEquals(MISSING, map.get(keys[pool - 1]));
+        }
+    }
+
+    @Test
+    void keepsKeyZeroApart() {
+        LongIntHashMap map = new LongIntHashMap(2, MISSING);
+        assertEquals(MISSING, map.get(0));
+        assertEquals(MISSING, map.remove(0));
+        assertEquals(MISSING, map.put(0, 5));
+        assertEquals(5, map.put(0, 6));
+        assertEquals(1, map.size());
+
+        // Growing the table keeps it
+        for (long key = 1; key <= 100; key++) {
+            map.put(key, (int) key);
+        }
+        assertEquals(6, map.get(0));
+        assertEquals(101, map.size());
+        assertEquals(6, map.remove(0));
+        assertEquals(MISSING, map.get(0));
+        assertEquals(100, map.size());
+        for (long key = 1; key <= 100; key++) {
+            assertEquals((int) key, map.remove(key));
+        }
+        assertEquals(0, map.size());
+    }
+}